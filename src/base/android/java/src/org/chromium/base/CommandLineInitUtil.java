@@ -10,6 +10,7 @@ import android.provider.Settings;
 import androidx.annotation.Nullable;
 
 import org.chromium.base.supplier.Supplier;
+import org.chromium.base.task.TaskInstrumentation;
 
 import java.io.File;
 
@@ -60,6 +61,8 @@ public final class CommandLineInitUtil {
             commandLineFile = new File(COMMAND_LINE_FILE_PATH, fileName);
         }
         CommandLine.initFromFile(commandLineFile.getPath());
+        // Before native is loaded, and before most of the tasks it measures are posted.
+        TaskInstrumentation.maybeEnable();
     }
 
     /**
@@ -8,6 +8,7 @@ import android.os.Process;
 import android.os.StrictMode;
 import android.os.SystemClock;
 
+import androidx.annotation.IntDef;
 import androidx.annotation.VisibleForTesting;
 
 import org.chromium.base.annotations.CalledByNative;
@@ -16,8 +17,14 @@ import org.chromium.base.annotations.MainDex;
 import org.chromium.base.annotations.NativeMethods;
 
 import java.io.File;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.annotation.concurrent.GuardedBy;
 
@@ -30,9 +37,17 @@ import javax.annotation.concurrent.GuardedBy;
  * Events recorded here are buffered in Java until the native library is available, at which point
  * they are flushed to the native side and regular java tracing (TraceEvent) takes over.
  *
+ * Each thread records its events into its own fixed-capacity ring buffer of primitive records, with
+ * event names replaced by interned ids, so recording an event doesn't lock, and only allocates when
+ * it starts a new chunk of the buffer. When a buffer is full, the {@link OverflowPolicy} decides
+ * whether the oldest or the newest events are dropped. The buffers are released once their events
+ * are dumped or reset.
+ *
  * Locking: This class is threadsafe. It is enabled when general tracing is, and then disabled when
  *          tracing is enabled from the native side. At this point, buffered events are flushed to
  *          the native side and then early tracing is permanently disabled after dumping the events.
+ *          Threads only synchronize to create their buffer, and while tracing is being enabled or
+ *          disabled.
  *
  * Like the TraceEvent, the event name of the trace events must be a string literal or a |static
  * final String| class member. Otherwise NoDynamicStringsInTraceEventCheck error will be thrown.
@@ -40,7 +55,19 @@ import javax.annotation.concurrent.GuardedBy;
 @JNINamespace("base::android")
 @MainDex
 public class EarlyTraceEvent {
-    /** Single trace event. */
+    private static final String TAG = "EarlyTraceEvent";
+
+    /** What to do when a thread records an event into its full buffer. */
+    @IntDef({OverflowPolicy.OVERWRITE_OLDEST, OverflowPolicy.DROP_NEWEST})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface OverflowPolicy {
+        /** Keeps the latest events, for traces of what happened just before native loaded. */
+        int OVERWRITE_OLDEST = 0;
+        /** Keeps the earliest events, for traces of the beginning of startup. */
+        int DROP_NEWEST = 1;
+    }
+
+    /** Single trace event, as read back from the buffers. */
     @VisibleForTesting
     static final class Event {
         final boolean mIsStart;
@@ -50,16 +77,18 @@ public class EarlyTraceEvent {
         final long mTimeNanos;
         final long mThreadTimeMillis;
 
-        Event(String name, boolean isStart, boolean isToplevel) {
+        Event(String name, boolean isStart, boolean isToplevel, int threadId, long timeNanos,
+                long threadTimeMillis) {
             mIsStart = isStart;
             mIsToplevel = isToplevel;
             mName = name;
-            mThreadId = Process.myTid();
-            mTimeNanos = SystemClock.elapsedRealtimeNanos();
-            mThreadTimeMillis = SystemClock.currentThreadTimeMillis();
+            mThreadId = threadId;
+            mTimeNanos = timeNanos;
+            mThreadTimeMillis = threadTimeMillis;
         }
     }
 
+    /** Single async trace event, as read back from the buffers. */
     @VisibleForTesting
     static final class AsyncEvent {
         final boolean mIsStart;
@@ -67,14 +96,202 @@ public class EarlyTraceEvent {
         final long mId;
         final long mTimestampNanos;
 
-        AsyncEvent(String name, long id, boolean isStart) {
+        AsyncEvent(String name, long id, boolean isStart, long timestampNanos) {
             mName = name;
             mId = id;
             mIsStart = isStart;
-            mTimestampNanos = SystemClock.elapsedRealtimeNanos();
+            mTimestampNanos = timestampNanos;
+        }
+    }
+
+    // Types of the records in the buffers.
+    private static final byte TYPE_BEGIN = 0;
+    private static final byte TYPE_END = 1;
+    private static final byte TYPE_TOPLEVEL_BEGIN = 2;
+    private static final byte TYPE_TOPLEVEL_END = 3;
+    private static final byte TYPE_ASYNC_BEGIN = 4;
+    private static final byte TYPE_ASYNC_END = 5;
+
+    // Number of records in a chunk of a ring buffer, unless the whole buffer is smaller.
+    private static final int CHUNK_SHIFT = 8;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    /** Records of a part of a ring buffer. */
+    private static final class Chunk {
+        final byte[] mTypes;
+        final int[] mNameIds;
+        final long[] mTimeNanos;
+        // The thread time in milliseconds for begin and end events, the id for async events.
+        final long[] mThreadTimeMillisOrIds;
+
+        Chunk(int size) {
+            mTypes = new byte[size];
+            mNameIds = new int[size];
+            mTimeNanos = new long[size];
+            mThreadTimeMillisOrIds = new long[size];
+        }
+    }
+
+    /**
+     * Ring buffer of the events of a single thread. Only that thread writes to it; other threads
+     * only read the records published by {@code mCount}.
+     */
+    private static final class ThreadBuffer {
+        final int mThreadId = Process.myTid();
+        private final int mCapacity;
+        private final int mMask;
+        private final boolean mDropNewest;
+        // Allocated when first written to, so that threads recording few events stay small.
+        private final Chunk[] mChunks;
+
+        // Number of records written, including the overwritten ones. Publishes the records.
+        volatile long mCount;
+        // Number of events not recorded because the buffer was full, with DROP_NEWEST.
+        long mDroppedCount;
+        // Whether the owning thread may be writing a record. It is set before checking that
+        // recording is enabled, and disable() clears the state before reading it, so either the
+        // record isn't written or disable() waits for it.
+        volatile boolean mWriting;
+
+        ThreadBuffer(int capacity, @OverflowPolicy int overflowPolicy) {
+            mCapacity = capacity;
+            mMask = capacity - 1;
+            mDropNewest = overflowPolicy == OverflowPolicy.DROP_NEWEST;
+            mChunks = new Chunk[Math.max(1, capacity >> CHUNK_SHIFT)];
+        }
+
+        void record(byte type, int nameId, long timeNanos, long threadTimeMillisOrId) {
+            long count = mCount;
+            if (mDropNewest && count > mMask) {
+                mDroppedCount++;
+                return;
+            }
+            int chunkIndex = ((int) count & mMask) >>> CHUNK_SHIFT;
+            Chunk chunk = mChunks[chunkIndex];
+            if (chunk == null) {
+                // Published along with the record, by mCount.
+                chunk = new Chunk(Math.min(mCapacity, CHUNK_SIZE));
+                mChunks[chunkIndex] = chunk;
+            }
+            int offset = getOffset(count);
+            chunk.mTypes[offset] = type;
+            chunk.mNameIds[offset] = nameId;
+            chunk.mTimeNanos[offset] = timeNanos;
+            chunk.mThreadTimeMillisOrIds[offset] = threadTimeMillisOrId;
+            mCount = count + 1;
+        }
+
+        /** Returns the chunk holding the event {@code i}, among all written ones. */
+        Chunk getChunk(long i) {
+            return mChunks[((int) i & mMask) >>> CHUNK_SHIFT];
+        }
+
+        /** Returns the offset of the event {@code i} in its chunk, among all written ones. */
+        int getOffset(long i) {
+            return (int) i & mMask & (CHUNK_SIZE - 1);
+        }
+
+        /** Returns the number of events which were dropped or overwritten. */
+        long getLostCount() {
+            return mDroppedCount + Math.max(0, mCount - mCapacity);
+        }
+
+        /** Returns the index of the oldest event still in the buffer, among all written ones. */
+        long getFirst() {
+            return Math.max(0, mCount - mCapacity);
+        }
+
+        /** Drops the records. Must only be called once the owning thread can't write anymore. */
+        void release() {
+            Arrays.fill(mChunks, null);
         }
     }
 
+    /** The buffers and interned names of an early tracing session. */
+    @VisibleForTesting
+    static final class Buffers {
+        private final int mCapacity;
+        @OverflowPolicy
+        private final int mOverflowPolicy;
+        private final ConcurrentHashMap<String, Integer> mNameIds = new ConcurrentHashMap<>();
+        private final ConcurrentLinkedQueue<ThreadBuffer> mThreadBuffers =
+                new ConcurrentLinkedQueue<>();
+        private final ThreadLocal<ThreadBuffer> mCurrentThreadBuffer = new ThreadLocal<>();
+
+        Buffers(int capacity, @OverflowPolicy int overflowPolicy) {
+            mCapacity = capacity;
+            mOverflowPolicy = overflowPolicy;
+        }
+
+        ThreadBuffer getCurrentThreadBuffer() {
+            ThreadBuffer buffer = mCurrentThreadBuffer.get();
+            if (buffer == null) {
+                buffer = new ThreadBuffer(mCapacity, mOverflowPolicy);
+                mCurrentThreadBuffer.set(buffer);
+                mThreadBuffers.add(buffer);
+            }
+            return buffer;
+        }
+
+        int internName(String name) {
+            Integer id = mNameIds.get(name);
+            if (id == null) {
+                // New names are rare, adding them under a lock keeps the ids dense.
+                synchronized (mNameIds) {
+                    id = mNameIds.get(name);
+                    if (id == null) {
+                        id = mNameIds.size();
+                        mNameIds.put(name, id);
+                    }
+                }
+            }
+            return id;
+        }
+
+        String[] getNames() {
+            synchronized (mNameIds) {
+                String[] names = new String[mNameIds.size()];
+                for (Map.Entry<String, Integer> entry : mNameIds.entrySet()) {
+                    names[entry.getValue()] = entry.getKey();
+                }
+                return names;
+            }
+        }
+
+        /** Waits until no thread is writing a record. Must be called once recording is disabled. */
+        void awaitWriters() {
+            for (ThreadBuffer buffer : mThreadBuffers) {
+                while (buffer.mWriting) {
+                    Thread.yield();
+                }
+            }
+        }
+
+        Iterable<ThreadBuffer> getThreadBuffers() {
+            return mThreadBuffers;
+        }
+
+        /**
+         * Drops the records of all threads. Must be called once recording is disabled, after
+         * {@link #awaitWriters()}. The buffers stay referenced by their threads until they exit, so
+         * only their records take memory.
+         */
+        void release() {
+            for (ThreadBuffer buffer : mThreadBuffers) {
+                buffer.release();
+            }
+            mThreadBuffers.clear();
+        }
+
+        boolean isEmpty() {
+            return mThreadBuffers.isEmpty();
+        }
+    }
+
+    // Default number of events buffered per thread. Must be a power of 2.
+    @VisibleForTesting
+    static final int DEFAULT_EVENTS_PER_THREAD = 4096;
+
     // State transitions are:
     // - enable(): DISABLED -> ENABLED
     // - disable(): ENABLED -> FINISHED
@@ -112,13 +329,16 @@ public class EarlyTraceEvent {
     // Protects the fields below.
     private static final Object sLock = new Object();
 
-    // Not final because in many configurations these objects are not used.
     @GuardedBy("sLock")
-    @VisibleForTesting
-    static List<Event> sEvents;
+    private static int sEventsPerThread = DEFAULT_EVENTS_PER_THREAD;
     @GuardedBy("sLock")
+    @OverflowPolicy
+    private static int sOverflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+    // Written with sLock held, read without it to record events. Not final because in many
+    // configurations these objects are not used.
     @VisibleForTesting
-    static List<AsyncEvent> sAsyncEvents;
+    static volatile Buffers sBuffers;
 
     /** @see TraceEvent#maybeEnableEarlyTracing(long, boolean) */
     static void maybeEnableInBrowserProcess() {
@@ -187,11 +407,25 @@ public class EarlyTraceEvent {
         }
     }
 
+    /**
+     * Sets the number of events buffered per thread and what happens when a buffer is full, for the
+     * next time early tracing is enabled.
+     *
+     * @param eventsPerThread capacity of the buffer of each thread, rounded up to a power of 2.
+     * @param overflowPolicy what to do when a thread records an event into its full buffer.
+     */
+    public static void setBufferOptions(int eventsPerThread, @OverflowPolicy int overflowPolicy) {
+        assert eventsPerThread > 0;
+        synchronized (sLock) {
+            sEventsPerThread = Math.max(1, Integer.highestOneBit(eventsPerThread - 1) << 1);
+            sOverflowPolicy = overflowPolicy;
+        }
+    }
+
     static void enable() {
         synchronized (sLock) {
             if (sState != STATE_DISABLED) return;
-            sEvents = new ArrayList<Event>();
-            sAsyncEvents = new ArrayList<AsyncEvent>();
+            sBuffers = new Buffers(sEventsPerThread, sOverflowPolicy);
             sState = STATE_ENABLED;
         }
     }
@@ -205,18 +439,12 @@ public class EarlyTraceEvent {
         synchronized (sLock) {
             if (!enabled()) return;
 
-            if (!sEvents.isEmpty()) {
-                dumpEvents(sEvents);
-                sEvents.clear();
-            }
-            if (!sAsyncEvents.isEmpty()) {
-                dumpAsyncEvents(sAsyncEvents);
-                sAsyncEvents.clear();
-            }
-
+            Buffers buffers = sBuffers;
             sState = STATE_FINISHED;
-            sEvents = null;
-            sAsyncEvents = null;
+            sBuffers = null;
+            buffers.awaitWriters();
+            dumpEvents(buffers);
+            buffers.release();
         }
     }
 
@@ -227,8 +455,12 @@ public class EarlyTraceEvent {
     static void reset() {
         synchronized (sLock) {
             sState = STATE_DISABLED;
-            sEvents = null;
-            sAsyncEvents = null;
+            Buffers buffers = sBuffers;
+            sBuffers = null;
+            if (buffers != null) {
+                buffers.awaitWriters();
+                buffers.release();
+            }
         }
     }
 
@@ -260,92 +492,138 @@ public class EarlyTraceEvent {
 
     /** @see TraceEvent#begin */
     public static void begin(String name, boolean isToplevel) {
-        // begin() and end() are going to be called once per TraceEvent, this avoids entering a
-        // synchronized block at each and every call.
+        // begin() and end() are going to be called once per TraceEvent, this avoids looking up the
+        // thread's buffer at each and every call.
         if (!enabled()) return;
-        Event event = new Event(name, true /*isStart*/, isToplevel);
-        synchronized (sLock) {
-            if (!enabled()) return;
-            sEvents.add(event);
-        }
+        record(isToplevel ? TYPE_TOPLEVEL_BEGIN : TYPE_BEGIN, name,
+                SystemClock.currentThreadTimeMillis());
     }
 
     /** @see TraceEvent#end */
     public static void end(String name, boolean isToplevel) {
         if (!enabled()) return;
-        Event event = new Event(name, false /*isStart*/, isToplevel);
-        synchronized (sLock) {
-            if (!enabled()) return;
-            sEvents.add(event);
-        }
+        record(isToplevel ? TYPE_TOPLEVEL_END : TYPE_END, name,
+                SystemClock.currentThreadTimeMillis());
     }
 
     /** @see TraceEvent#startAsync */
     public static void startAsync(String name, long id) {
         if (!enabled()) return;
-        AsyncEvent event = new AsyncEvent(name, id, true /*isStart*/);
-        synchronized (sLock) {
-            if (!enabled()) return;
-            sAsyncEvents.add(event);
-        }
+        record(TYPE_ASYNC_BEGIN, name, id);
     }
 
     /** @see TraceEvent#finishAsync */
     public static void finishAsync(String name, long id) {
         if (!enabled()) return;
-        AsyncEvent event = new AsyncEvent(name, id, false /*isStart*/);
-        synchronized (sLock) {
-            if (!enabled()) return;
-            sAsyncEvents.add(event);
+        record(TYPE_ASYNC_END, name, id);
+    }
+
+    private static void record(byte type, String name, long threadTimeMillisOrId) {
+        long timeNanos = SystemClock.elapsedRealtimeNanos();
+        Buffers buffers = sBuffers;
+        if (buffers == null) return;
+        ThreadBuffer buffer = buffers.getCurrentThreadBuffer();
+        buffer.mWriting = true;
+        try {
+            // The buffers may have been flushed or reset since they were read.
+            if (!enabled() || sBuffers != buffers) return;
+            buffer.record(type, buffers.internName(name), timeNanos, threadTimeMillisOrId);
+        } finally {
+            buffer.mWriting = false;
         }
     }
 
     @VisibleForTesting
     static List<Event> getMatchingCompletedEventsForTesting(String eventName) {
-        synchronized (sLock) {
-            List<Event> matchingEvents = new ArrayList<Event>();
-            for (Event evt : EarlyTraceEvent.sEvents) {
-                if (evt.mName.equals(eventName)) {
-                    matchingEvents.add(evt);
-                }
+        List<Event> matchingEvents = new ArrayList<Event>();
+        Buffers buffers = sBuffers;
+        if (buffers == null) return matchingEvents;
+        String[] names = buffers.getNames();
+        for (ThreadBuffer buffer : buffers.getThreadBuffers()) {
+            long count = buffer.mCount;
+            for (long i = buffer.getFirst(); i < count; i++) {
+                Chunk chunk = buffer.getChunk(i);
+                int offset = buffer.getOffset(i);
+                byte type = chunk.mTypes[offset];
+                String name = names[chunk.mNameIds[offset]];
+                if (type >= TYPE_ASYNC_BEGIN || !name.equals(eventName)) continue;
+                matchingEvents.add(new Event(name,
+                        type == TYPE_BEGIN || type == TYPE_TOPLEVEL_BEGIN,
+                        type == TYPE_TOPLEVEL_BEGIN || type == TYPE_TOPLEVEL_END, buffer.mThreadId,
+                        chunk.mTimeNanos[offset], chunk.mThreadTimeMillisOrIds[offset]));
             }
-            return matchingEvents;
         }
+        return matchingEvents;
     }
 
-    private static void dumpEvents(List<Event> events) {
-        long offsetNanos = getOffsetNanos();
-        for (Event e : events) {
-            if (e.mIsStart) {
-                if (e.mIsToplevel) {
-                    EarlyTraceEventJni.get().recordEarlyToplevelBeginEvent(
-                            e.mName, e.mTimeNanos + offsetNanos, e.mThreadId, e.mThreadTimeMillis);
-                } else {
-                    EarlyTraceEventJni.get().recordEarlyBeginEvent(
-                            e.mName, e.mTimeNanos + offsetNanos, e.mThreadId, e.mThreadTimeMillis);
-                }
-            } else {
-                if (e.mIsToplevel) {
-                    EarlyTraceEventJni.get().recordEarlyToplevelEndEvent(
-                            e.mName, e.mTimeNanos + offsetNanos, e.mThreadId, e.mThreadTimeMillis);
-                } else {
-                    EarlyTraceEventJni.get().recordEarlyEndEvent(
-                            e.mName, e.mTimeNanos + offsetNanos, e.mThreadId, e.mThreadTimeMillis);
-                }
+    @VisibleForTesting
+    static List<AsyncEvent> getMatchingAsyncEventsForTesting(String eventName) {
+        List<AsyncEvent> matchingEvents = new ArrayList<AsyncEvent>();
+        Buffers buffers = sBuffers;
+        if (buffers == null) return matchingEvents;
+        String[] names = buffers.getNames();
+        for (ThreadBuffer buffer : buffers.getThreadBuffers()) {
+            long count = buffer.mCount;
+            for (long i = buffer.getFirst(); i < count; i++) {
+                Chunk chunk = buffer.getChunk(i);
+                int offset = buffer.getOffset(i);
+                byte type = chunk.mTypes[offset];
+                String name = names[chunk.mNameIds[offset]];
+                if (type < TYPE_ASYNC_BEGIN || !name.equals(eventName)) continue;
+                matchingEvents.add(new AsyncEvent(name, chunk.mThreadTimeMillisOrIds[offset],
+                        type == TYPE_ASYNC_BEGIN, chunk.mTimeNanos[offset]));
             }
         }
+        return matchingEvents;
     }
-    private static void dumpAsyncEvents(List<AsyncEvent> events) {
+
+    private static void dumpEvents(Buffers buffers) {
         long offsetNanos = getOffsetNanos();
-        for (AsyncEvent e : events) {
-            if (e.mIsStart) {
-                EarlyTraceEventJni.get().recordEarlyAsyncBeginEvent(
-                        e.mName, e.mId, e.mTimestampNanos + offsetNanos);
-            } else {
-                EarlyTraceEventJni.get().recordEarlyAsyncEndEvent(
-                        e.mName, e.mId, e.mTimestampNanos + offsetNanos);
+        String[] names = buffers.getNames();
+        long lostCount = 0;
+        for (ThreadBuffer buffer : buffers.getThreadBuffers()) {
+            lostCount += buffer.getLostCount();
+            int threadId = buffer.mThreadId;
+            long count = buffer.mCount;
+            for (long i = buffer.getFirst(); i < count; i++) {
+                Chunk chunk = buffer.getChunk(i);
+                int offset = buffer.getOffset(i);
+                String name = names[chunk.mNameIds[offset]];
+                long timeNanos = chunk.mTimeNanos[offset] + offsetNanos;
+                long threadTimeMillisOrId = chunk.mThreadTimeMillisOrIds[offset];
+                switch (chunk.mTypes[offset]) {
+                    case TYPE_BEGIN:
+                        EarlyTraceEventJni.get().recordEarlyBeginEvent(
+                                name, timeNanos, threadId, threadTimeMillisOrId);
+                        break;
+                    case TYPE_END:
+                        EarlyTraceEventJni.get().recordEarlyEndEvent(
+                                name, timeNanos, threadId, threadTimeMillisOrId);
+                        break;
+                    case TYPE_TOPLEVEL_BEGIN:
+                        EarlyTraceEventJni.get().recordEarlyToplevelBeginEvent(
+                                name, timeNanos, threadId, threadTimeMillisOrId);
+                        break;
+                    case TYPE_TOPLEVEL_END:
+                        EarlyTraceEventJni.get().recordEarlyToplevelEndEvent(
+                                name, timeNanos, threadId, threadTimeMillisOrId);
+                        break;
+                    case TYPE_ASYNC_BEGIN:
+                        EarlyTraceEventJni.get().recordEarlyAsyncBeginEvent(
+                                name, threadTimeMillisOrId, timeNanos);
+                        break;
+                    case TYPE_ASYNC_END:
+                        EarlyTraceEventJni.get().recordEarlyAsyncEndEvent(
+                                name, threadTimeMillisOrId, timeNanos);
+                        break;
+                    default:
+                        assert false : "Unknown event type";
+                }
             }
         }
+        if (lostCount > 0) {
+            Log.w(TAG, "Dropped %d early trace events, the buffers were full.", lostCount);
+        }
     }
 
     private static long getOffsetNanos() {
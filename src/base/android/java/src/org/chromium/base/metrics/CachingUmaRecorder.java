@@ -13,10 +13,11 @@ import org.chromium.base.Log;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.concurrent.GuardedBy;
@@ -24,6 +25,9 @@ import javax.annotation.concurrent.GuardedBy;
 /**
  * Stores metrics until given an {@link UmaRecorder} to forward the samples to. After flushing, no
  * longer stores metrics, instead immediately forwards them to the given {@link UmaRecorder}.
+ * <p>
+ * Histogram samples are cached without taking any lock, in a {@link HistogramCache}, since many
+ * threads record them before native is loaded.
  */
 /* package */ final class CachingUmaRecorder implements UmaRecorder {
     private static final String TAG = "CachingUmaRecorder";
@@ -32,7 +36,7 @@ import javax.annotation.concurrent.GuardedBy;
      * Maximum number of histograms cached at the same time. It is better to drop some samples
      * rather than have a bug cause the cache to grow without limit.
      * <p>
-     * Each sample uses 4 bytes, each histogram uses approx. 12 references (at least 4 bytes each).
+     * Each sample uses 4 bytes, each histogram uses approx. 20 references (at least 4 bytes each).
      * With {@code MAX_HISTOGRAM_COUNT = 256} and {@code MAX_SAMPLE_COUNT = 256} this limits cache
      * size to 270KiB. Changing either value by one, adds or removes approx. 1KiB.
      */
@@ -94,8 +98,18 @@ import javax.annotation.concurrent.GuardedBy;
         private final int mMax;
         private final int mNumBuckets;
 
-        @GuardedBy("this")
-        private final List<Integer> mSamples;
+        /**
+         * Samples are stored in segments allocated as they fill up, so that adding a sample never
+         * copies the previous ones. The first two segments have {@code FIRST_SEGMENT_SIZE}
+         * samples, and each following segment twice as many as the previous one.
+         */
+        private static final int FIRST_SEGMENT_SIZE = 8;
+        private static final int SEGMENT_COUNT = getSegment(MAX_SAMPLE_COUNT - 1) + 1;
+
+        /** Number of samples added, including the ones dropped. */
+        private final AtomicInteger mSampleCount = new AtomicInteger();
+        private final AtomicReferenceArray<int[]> mSegments =
+                new AtomicReferenceArray<>(SEGMENT_COUNT);
 
         /**
          * Constructs a {@code Histogram} with the specified definition and no samples.
@@ -116,14 +130,29 @@ import javax.annotation.concurrent.GuardedBy;
             mMin = min;
             mMax = max;
             mNumBuckets = numBuckets;
+        }
+
+        private static int getSegment(int index) {
+            if (index < FIRST_SEGMENT_SIZE) return 0;
+            return Integer.numberOfTrailingZeros(Integer.highestOneBit(index))
+                    - Integer.numberOfTrailingZeros(FIRST_SEGMENT_SIZE) + 1;
+        }
+
+        private static int getSegmentStart(int segment) {
+            return segment == 0 ? 0 : FIRST_SEGMENT_SIZE << (segment - 1);
+        }
 
-            mSamples = new ArrayList<>(/*initialCapacity=*/1);
+        private static int getSegmentSize(int segment) {
+            return segment == 0 ? FIRST_SEGMENT_SIZE : FIRST_SEGMENT_SIZE << (segment - 1);
         }
 
         /**
          * Appends a sample to values cached in this histogram. Verifies that histogram definition
          * matches the definition used to create this object: attempts to fail with an assertion,
          * otherwise records failure statistics.
+         * <p>
+         * Can be called concurrently, without locking, and doesn't allocate unless the sample
+         * starts a new segment.
          *
          * @param type histogram type.
          * @param name histogram name.
@@ -134,60 +163,179 @@ import javax.annotation.concurrent.GuardedBy;
          *         histograms.
          * @return true if the sample was recorded.
          */
-        synchronized boolean addSample(
+        boolean addSample(
                 @Type int type, String name, int sample, int min, int max, int numBuckets) {
             assert mType == type;
             assert mName.equals(name);
             assert mMin == min;
             assert mMax == max;
             assert mNumBuckets == numBuckets;
-            if (mSamples.size() >= MAX_SAMPLE_COUNT) {
+            // Once the cache is full, the count only grows by the number of dropped samples, so it
+            // can't reasonably overflow.
+            final int index = mSampleCount.getAndIncrement();
+            if (index >= MAX_SAMPLE_COUNT) {
                 // A cache filling up is most likely an indication of a bug.
                 assert false : "Histogram exceeded sample cache size limit";
                 return false;
             }
-            mSamples.add(sample);
+            final int segment = getSegment(index);
+            int[] samples = mSegments.get(segment);
+            if (samples == null) {
+                mSegments.compareAndSet(segment, null, new int[getSegmentSize(segment)]);
+                samples = mSegments.get(segment);
+            }
+            samples[index - getSegmentStart(segment)] = sample;
             return true;
         }
 
         /**
-         * Writes all histogram samples to {@code recorder}, clears the cache.
+         * Writes all histogram samples to {@code recorder}. Must only be called once no sample can
+         * be added anymore, see {@link HistogramCache#close()}.
          *
          * @param recorder destination {@link UmaRecorder}.
          * @return number of flushed histogram samples.
          */
-        synchronized int flushTo(UmaRecorder recorder) {
+        int flushTo(UmaRecorder recorder) {
+            final int count = Math.min(mSampleCount.get(), MAX_SAMPLE_COUNT);
+            for (int segment = 0; segment < SEGMENT_COUNT; segment++) {
+                final int start = getSegmentStart(segment);
+                if (start >= count) break;
+                final int[] samples = mSegments.get(segment);
+                final int end = Math.min(count - start, samples.length);
+                for (int i = 0; i < end; i++) {
+                    flushSampleTo(recorder, samples[i]);
+                }
+            }
+            return count;
+        }
+
+        private void flushSampleTo(UmaRecorder recorder, int sample) {
             switch (mType) {
                 case Type.BOOLEAN:
-                    for (int i = 0; i < mSamples.size(); i++) {
-                        final int sample = mSamples.get(i);
-                        recorder.recordBooleanHistogram(mName, sample != 0);
-                    }
+                    recorder.recordBooleanHistogram(mName, sample != 0);
                     break;
                 case Type.EXPONENTIAL:
-                    for (int i = 0; i < mSamples.size(); i++) {
-                        final int sample = mSamples.get(i);
-                        recorder.recordExponentialHistogram(mName, sample, mMin, mMax, mNumBuckets);
-                    }
+                    recorder.recordExponentialHistogram(mName, sample, mMin, mMax, mNumBuckets);
                     break;
                 case Type.LINEAR:
-                    for (int i = 0; i < mSamples.size(); i++) {
-                        final int sample = mSamples.get(i);
-                        recorder.recordLinearHistogram(mName, sample, mMin, mMax, mNumBuckets);
-                    }
+                    recorder.recordLinearHistogram(mName, sample, mMin, mMax, mNumBuckets);
                     break;
                 case Type.SPARSE:
-                    for (int i = 0; i < mSamples.size(); i++) {
-                        final int sample = mSamples.get(i);
-                        recorder.recordSparseHistogram(mName, sample);
-                    }
+                    recorder.recordSparseHistogram(mName, sample);
                     break;
                 default:
                     assert false : "Unknown histogram type " + mType;
             }
-            int count = mSamples.size();
-            mSamples.clear();
-            return count;
+        }
+    }
+
+    /**
+     * Cached histograms, which can be added to by any number of threads without locking until the
+     * cache is closed.
+     */
+    @VisibleForTesting
+    static final class HistogramCache {
+        /**
+         * Number of counters of the samples being added. A power of 2, so that the counter of a
+         * thread is picked with a mask.
+         */
+        private static final int STRIPE_COUNT = 8;
+        /** Distance between two counters, so that they don't share a cache line. */
+        private static final int STRIPE_STRIDE = 16;
+
+        /** Cached histograms keyed by histogram name. */
+        private final ConcurrentHashMap<String, Histogram> mHistogramByName =
+                new ConcurrentHashMap<>();
+        /**
+         * Number of samples being added, by thread stripe. A thread adding a sample increments its
+         * counter before reading {@code mClosed}, and {@link #close()} sets {@code mClosed} before
+         * reading the counters, so either the sample isn't added or {@code close()} waits for it.
+         */
+        private final AtomicIntegerArray mPendingSampleCounts =
+                new AtomicIntegerArray(STRIPE_COUNT * STRIPE_STRIDE);
+        private volatile boolean mClosed;
+
+        /**
+         * Number of histogram samples that couldn't be cached, because some limit of cache size
+         * been reached.
+         */
+        private final AtomicInteger mDroppedSampleCount = new AtomicInteger();
+
+        /**
+         * Caches a histogram sample, see {@link Histogram#addSample}.
+         *
+         * @return {@code false} if the cache is closed, in which case the sample isn't cached.
+         */
+        boolean addSample(@Histogram.Type int type, String name, int sample, int min, int max,
+                int numBuckets) {
+            final int stripe =
+                    ((int) Thread.currentThread().getId() & (STRIPE_COUNT - 1)) * STRIPE_STRIDE;
+            mPendingSampleCounts.incrementAndGet(stripe);
+            try {
+                if (mClosed) return false;
+                Histogram histogram = mHistogramByName.get(name);
+                if (histogram == null) {
+                    if (mHistogramByName.size() >= MAX_HISTOGRAM_COUNT) {
+                        // A cache filling up is most likely an indication of a bug.
+                        assert false : "Too many histograms in cache";
+                        mDroppedSampleCount.incrementAndGet();
+                        return true;
+                    }
+                    Histogram newHistogram = new Histogram(type, name, min, max, numBuckets);
+                    histogram = mHistogramByName.putIfAbsent(name, newHistogram);
+                    if (histogram == null) histogram = newHistogram;
+                }
+                if (!histogram.addSample(type, name, sample, min, max, numBuckets)) {
+                    mDroppedSampleCount.incrementAndGet();
+                }
+                return true;
+            } finally {
+                mPendingSampleCounts.decrementAndGet(stripe);
+            }
+        }
+
+        /**
+         * Makes the following calls to {@link #addSample} fail, and waits for the ones in progress
+         * to complete.
+         */
+        void close() {
+            mClosed = true;
+            for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+                while (mPendingSampleCounts.get(stripe * STRIPE_STRIDE) != 0) {
+                    Thread.yield();
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return mHistogramByName.isEmpty() && mDroppedSampleCount.get() == 0;
+        }
+
+        /**
+         * Writes all histogram samples to {@code recorder}, and statistics about the cache. Must
+         * only be called once the cache is closed.
+         *
+         * @param recorder destination {@link UmaRecorder}.
+         */
+        void flushTo(UmaRecorder recorder) {
+            assert mClosed;
+            int flushedHistogramSampleCount = 0;
+            final int flushedHistogramCount = mHistogramByName.size();
+            for (Histogram histogram : mHistogramByName.values()) {
+                flushedHistogramSampleCount += histogram.flushTo(recorder);
+            }
+            final int droppedHistogramSampleCount = mDroppedSampleCount.get();
+            Log.i(TAG, "Flushed %d samples from %d histograms.", flushedHistogramSampleCount,
+                    flushedHistogramCount);
+            // Using RecordHistogram here could cause an infinite recursion.
+            recorder.recordExponentialHistogram(
+                    "UMA.JavaCachingRecorder.DroppedHistogramSampleCount",
+                    droppedHistogramSampleCount, 1, 1_000_000, 50);
+            recorder.recordExponentialHistogram("UMA.JavaCachingRecorder.FlushedHistogramCount",
+                    flushedHistogramCount, 1, 100_000, 50);
+            recorder.recordExponentialHistogram(
+                    "UMA.JavaCachingRecorder.InputHistogramSampleCount",
+                    flushedHistogramSampleCount + droppedHistogramSampleCount, 1, 1_000_000, 50);
         }
     }
 
@@ -216,17 +364,12 @@ import javax.annotation.concurrent.GuardedBy;
      */
     private final ReentrantReadWriteLock mRwLock = new ReentrantReadWriteLock(/*fair=*/false);
 
-    /** Cached histograms keyed by histogram name. */
-    @GuardedBy("mRwLock")
-    private Map<String, Histogram> mHistogramByName = new HashMap<>();
-
     /**
-     * Number of histogram samples that couldn't be cached, because some limit of cache size been
-     * reached.
-     * <p>
-     * Using {@link AtomicInteger} because the value may need to be updated with a read lock held.
+     * Cache of histograms, {@code null} iff there is a delegate. Histogram samples are added to it
+     * without holding the lock, but it is only replaced with the write lock held.
      */
-    private AtomicInteger mDroppedHistogramSampleCount = new AtomicInteger();
+    @Nullable
+    private volatile HistogramCache mHistogramCache = new HistogramCache();
 
     /** Cache of user actions. */
     @GuardedBy("mRwLock")
@@ -257,8 +400,7 @@ import javax.annotation.concurrent.GuardedBy;
      */
     public UmaRecorder setDelegate(@Nullable final UmaRecorder recorder) {
         UmaRecorder previous;
-        Map<String, Histogram> histogramCache = null;
-        int droppedHistogramSampleCount = 0;
+        HistogramCache histogramCache = null;
         List<UserAction> userActionCache = null;
         int droppedUserActionCount = 0;
 
@@ -267,12 +409,15 @@ import javax.annotation.concurrent.GuardedBy;
             previous = mDelegate;
             mDelegate = recorder;
             if (recorder == null) {
+                if (mHistogramCache == null) mHistogramCache = new HistogramCache();
                 return previous;
             }
-            if (!mHistogramByName.isEmpty()) {
-                histogramCache = mHistogramByName;
-                mHistogramByName = new HashMap<>();
-                droppedHistogramSampleCount = mDroppedHistogramSampleCount.getAndSet(0);
+            if (mHistogramCache != null) {
+                // The samples added concurrently are either in the cache once it is closed, or
+                // recorded once the lock is downgraded.
+                mHistogramCache.close();
+                if (!mHistogramCache.isEmpty()) histogramCache = mHistogramCache;
+                mHistogramCache = null;
             }
             if (!mUserActions.isEmpty()) {
                 userActionCache = mUserActions;
@@ -288,7 +433,7 @@ import javax.annotation.concurrent.GuardedBy;
         // Cache is flushed only after downgrading from a write lock to a read lock.
         try {
             if (histogramCache != null) {
-                flushHistogramsAlreadyLocked(histogramCache, droppedHistogramSampleCount);
+                flushHistogramsAlreadyLocked(histogramCache);
             }
             if (userActionCache != null) {
                 flushUserActionsAlreadyLocked(userActionCache, droppedUserActionCount);
@@ -300,32 +445,16 @@ import javax.annotation.concurrent.GuardedBy;
     }
 
     /**
-     * Writes histogram samples from {@code cache} to the delegate. Assumes that a read lock is held
-     * by the current thread.
+     * Writes histogram samples from the closed {@code cache} to the delegate. Assumes that a read
+     * lock is held by the current thread.
      *
      * @param cache the cache to be flushed.
-     * @param droppedHistogramSampleCount number of histogram samples that were not recorded due to
-     *         cache size limits.
      */
     @GuardedBy("mRwLock")
-    private void flushHistogramsAlreadyLocked(
-            Map<String, Histogram> cache, int droppedHistogramSampleCount) {
+    private void flushHistogramsAlreadyLocked(HistogramCache cache) {
         assert mDelegate != null : "Unexpected: cache is flushed, but delegate is null";
         assert mRwLock.getReadHoldCount() > 0;
-        int flushedHistogramSampleCount = 0;
-        final int flushedHistogramCount = cache.size();
-        for (Histogram histogram : cache.values()) {
-            flushedHistogramSampleCount += histogram.flushTo(mDelegate);
-        }
-        Log.i(TAG, "Flushed %d samples from %d histograms.", flushedHistogramSampleCount,
-                flushedHistogramCount);
-        // Using RecordHistogram here could cause an infinite recursion.
-        mDelegate.recordExponentialHistogram("UMA.JavaCachingRecorder.DroppedHistogramSampleCount",
-                droppedHistogramSampleCount, 1, 1_000_000, 50);
-        mDelegate.recordExponentialHistogram("UMA.JavaCachingRecorder.FlushedHistogramCount",
-                flushedHistogramCount, 1, 100_000, 50);
-        mDelegate.recordExponentialHistogram("UMA.JavaCachingRecorder.InputHistogramSampleCount",
-                flushedHistogramSampleCount + droppedHistogramSampleCount, 1, 1_000_000, 50);
+        cache.flushTo(mDelegate);
     }
 
     /**
@@ -362,93 +491,23 @@ import javax.annotation.concurrent.GuardedBy;
      */
     private void cacheOrRecordHistogramSample(
             @Histogram.Type int type, String name, int sample, int min, int max, int numBuckets) {
-        // Optimistic attempt without creating a Histogram.
-        if (tryAppendOrRecordSample(type, name, sample, min, max, numBuckets)) {
-            return;
-        }
-
-        mRwLock.writeLock().lock();
-        try {
-            if (mDelegate == null) {
-                cacheHistogramSampleAlreadyWriteLocked(type, name, sample, min, max, numBuckets);
-                return; // Skip the lock downgrade.
-            }
-            // Downgrade by acquiring read lock before releasing write lock
-            mRwLock.readLock().lock();
-        } finally {
-            mRwLock.writeLock().unlock();
-        }
-
-        // Downgraded to read lock.
-        // See base/android/java/src/org/chromium/base/metrics/forwarding_synchronization.md
-        try {
-            assert mDelegate != null;
-            recordHistogramSampleAlreadyLocked(type, name, sample, min, max, numBuckets);
-        } finally {
-            mRwLock.readLock().unlock();
-        }
-    }
-
-    /**
-     * Tries to cache or record a histogram sample without creating a new {@link Histogram}.
-     *
-     * @param type histogram type.
-     * @param name histogram name.
-     * @param sample sample value.
-     * @param min histogram min value.
-     * @param max histogram max value.
-     * @param numBuckets number of histogram buckets.
-     * @return {@code false} if the sample needs to be recorded with a write lock.
-     */
-    private boolean tryAppendOrRecordSample(
-            @Histogram.Type int type, String name, int sample, int min, int max, int numBuckets) {
-        mRwLock.readLock().lock();
-        try {
-            if (mDelegate != null) {
-                recordHistogramSampleAlreadyLocked(type, name, sample, min, max, numBuckets);
-                return true;
-            }
-            Histogram histogram = mHistogramByName.get(name);
-            if (histogram == null) {
-                return false;
-            }
-            if (!histogram.addSample(type, name, sample, min, max, numBuckets)) {
-                mDroppedHistogramSampleCount.incrementAndGet();
+        while (true) {
+            // Lock-free attempt while there is no delegate.
+            HistogramCache cache = mHistogramCache;
+            if (cache != null && cache.addSample(type, name, sample, min, max, numBuckets)) {
+                return;
             }
-            return true;
-        } finally {
-            mRwLock.readLock().unlock();
-        }
-    }
 
-    /**
-     * Appends a histogram {@code sample} to a cached {@link Histogram}. Creates the {@code
-     * Histogram} if needed. Assumes that the <b>write lock</b> is held by the current thread.
-     *
-     * @param type histogram type.
-     * @param name histogram name.
-     * @param sample sample value.
-     * @param min histogram min value.
-     * @param max histogram max value.
-     * @param numBuckets number of histogram buckets.
-     */
-    @GuardedBy("mRwLock")
-    private void cacheHistogramSampleAlreadyWriteLocked(
-            @Histogram.Type int type, String name, int sample, int min, int max, int numBuckets) {
-        assert mRwLock.isWriteLockedByCurrentThread();
-        Histogram histogram = mHistogramByName.get(name);
-        if (histogram == null) {
-            if (mHistogramByName.size() >= MAX_HISTOGRAM_COUNT) {
-                // A cache filling up is most likely an indication of a bug.
-                assert false : "Too many histograms in cache";
-                mDroppedHistogramSampleCount.incrementAndGet();
-                return;
+            mRwLock.readLock().lock();
+            try {
+                if (mDelegate != null) {
+                    recordHistogramSampleAlreadyLocked(type, name, sample, min, max, numBuckets);
+                    return;
+                }
+            } finally {
+                mRwLock.readLock().unlock();
             }
-            histogram = new Histogram(type, name, min, max, numBuckets);
-            mHistogramByName.put(name, histogram);
-        }
-        if (!histogram.addSample(type, name, sample, min, max, numBuckets)) {
-            mDroppedHistogramSampleCount.incrementAndGet();
+            // The delegate was set and reset since the cache was read, try the new cache.
         }
     }
 
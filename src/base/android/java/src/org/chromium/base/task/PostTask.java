@@ -245,6 +245,10 @@ public class PostTask {
         for (TaskRunnerImpl taskRunner : preNativeTaskRunners) {
             taskRunner.initNativeTaskRunner();
         }
+        if (TaskInstrumentation.isEnabled()) {
+            // Off the startup path, as the samples are recorded to UMA one by one.
+            postTask(TaskTraits.THREAD_POOL_BEST_EFFORT, TaskInstrumentation::recordHistograms);
+        }
     }
 
     // TODO(agrieve): Move this to a test-only java file.
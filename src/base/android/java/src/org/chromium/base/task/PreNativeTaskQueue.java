@@ -0,0 +1,64 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.base.task;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free queue of the tasks posted to a {@link TaskRunnerImpl} before native is initialized.
+ *
+ * Any thread can offer and poll tasks without blocking. Once {@link #close()} returns, offers fail
+ * and every task offered successfully is in the queue, so the tasks can be drained to the native
+ * task runner without losing any of them.
+ */
+final class PreNativeTaskQueue {
+    private final ConcurrentLinkedQueue<Runnable> mTasks = new ConcurrentLinkedQueue<>();
+    // Number of offers in progress. Each offer increments it before reading |mClosed|, and close()
+    // sets |mClosed| before reading it, so either the offer sees the queue closed or close() waits
+    // for the offer to complete.
+    private final AtomicInteger mPendingOffers = new AtomicInteger();
+    private volatile boolean mClosed;
+
+    /**
+     * Adds |task| at the end of the queue.
+     *
+     * @return false, without adding it, if the queue is closed.
+     */
+    boolean offer(Runnable task) {
+        mPendingOffers.incrementAndGet();
+        try {
+            if (mClosed) return false;
+            mTasks.offer(task);
+            return true;
+        } finally {
+            mPendingOffers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Removes and returns the task at the front of the queue, or null if it is empty.
+     */
+    @Nullable
+    Runnable poll() {
+        return mTasks.poll();
+    }
+
+    /**
+     * Makes the following offers fail, and waits for the ones in progress to complete.
+     */
+    void close() {
+        mClosed = true;
+        while (mPendingOffers.get() != 0) {
+            Thread.yield();
+        }
+    }
+
+    boolean isClosed() {
+        return mClosed;
+    }
+}
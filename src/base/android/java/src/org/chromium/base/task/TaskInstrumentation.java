@@ -0,0 +1,250 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.base.task;
+
+import android.os.SystemClock;
+
+import androidx.annotation.VisibleForTesting;
+
+import org.chromium.base.BaseSwitches;
+import org.chromium.base.CommandLine;
+import org.chromium.base.metrics.RecordHistogram;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures the tasks posted to {@link TaskRunnerImpl}s before native is initialized: how long they
+ * wait in the queue and how long they run, per {@link TaskPriority}, and which classes of tasks run
+ * for longer than a frame. After native initialization, the native scheduler records these.
+ *
+ * Disabled by default, and enabled at startup by {@link #maybeEnable()} with the
+ * {@link BaseSwitches#ENABLE_PRE_NATIVE_TASK_INSTRUMENTATION} switch. Samples are aggregated in
+ * memory, into histograms striped by thread so that posting threads don't contend, until
+ * {@link #recordHistograms()} records them to UMA once native is initialized. Tasks still running
+ * then record their samples to UMA directly when they end.
+ */
+public final class TaskInstrumentation {
+    private static final String HISTOGRAM_PREFIX = "Android.TaskScheduler.PreNativeTask.";
+    private static final String[] PRIORITY_SUFFIXES = {"BestEffort", "UserVisible", "UserBlocking"};
+    private static final int PRIORITY_COUNT = TaskPriority.HIGHEST + 1;
+
+    // Tasks running for longer than this are reported by class.
+    @VisibleForTesting
+    static final long SLOW_TASK_THRESHOLD_MS = 16;
+
+    private static volatile boolean sEnabled;
+    // Whether the aggregated samples were recorded, so that new samples are recorded directly.
+    private static volatile boolean sHistogramsRecorded;
+
+    private static final StripedHistogram[] sQueueingDelayHistograms =
+            createHistograms("QueueingDelay.");
+    private static final StripedHistogram[] sRunTimeHistograms = createHistograms("RunTime.");
+    // Number of tasks of each class which ran for longer than SLOW_TASK_THRESHOLD_MS.
+    private static final ConcurrentHashMap<Class<?>, AtomicInteger> sSlowTaskCounts =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Counts samples, in milliseconds, in exponential buckets: bucket 0 counts 0, bucket i counts
+     * [2^(i-1), 2^i), and the last one everything above. Each thread increments the counts of one
+     * of several stripes, which are summed when the histogram is recorded.
+     */
+    @VisibleForTesting
+    static final class StripedHistogram {
+        static final int BUCKET_COUNT = 16;
+        // A power of 2, so that the stripe is picked with a mask.
+        private static final int STRIPE_COUNT = 8;
+
+        final String mName;
+        private final AtomicLongArray mCounts = new AtomicLongArray(STRIPE_COUNT * BUCKET_COUNT);
+
+        StripedHistogram(String name) {
+            mName = name;
+        }
+
+        void record(long sampleMs) {
+            int stripe = (int) Thread.currentThread().getId() & (STRIPE_COUNT - 1);
+            mCounts.incrementAndGet(stripe * BUCKET_COUNT + getBucket(sampleMs));
+        }
+
+        /**
+         * Returns the number of samples in each bucket since the last call, and resets them.
+         */
+        long[] takeCounts() {
+            long[] counts = new long[BUCKET_COUNT];
+            for (int i = 0; i < mCounts.length(); i++) {
+                counts[i % BUCKET_COUNT] += mCounts.getAndSet(i, 0);
+            }
+            return counts;
+        }
+
+        static int getBucket(long sampleMs) {
+            if (sampleMs <= 0) return 0;
+            return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(sampleMs));
+        }
+
+        static long getBucketMinimum(int bucket) {
+            return bucket == 0 ? 0 : 1L << (bucket - 1);
+        }
+    }
+
+    /**
+     * A task along with the time it was posted.
+     */
+    private static final class TimedTask implements Runnable {
+        private final Runnable mTask;
+        private final int mPriority;
+        private final long mPostTimeMs;
+
+        TimedTask(Runnable task, int priority) {
+            mTask = task;
+            mPriority = priority;
+            mPostTimeMs = SystemClock.uptimeMillis();
+        }
+
+        @Override
+        public void run() {
+            long startTimeMs = SystemClock.uptimeMillis();
+            recordSample(sQueueingDelayHistograms[mPriority], startTimeMs - mPostTimeMs);
+            try {
+                mTask.run();
+            } finally {
+                long runTimeMs = SystemClock.uptimeMillis() - startTimeMs;
+                recordSample(sRunTimeHistograms[mPriority], runTimeMs);
+                if (runTimeMs > SLOW_TASK_THRESHOLD_MS) recordSlowTask(mTask.getClass());
+            }
+        }
+    }
+
+    private TaskInstrumentation() {}
+
+    // A sample aggregated while recordHistograms() runs may be left out of UMA.
+    private static void recordSample(StripedHistogram histogram, long sampleMs) {
+        if (sHistogramsRecorded) {
+            RecordHistogram.recordTimesHistogram(histogram.mName,
+                    StripedHistogram.getBucketMinimum(StripedHistogram.getBucket(sampleMs)));
+        } else {
+            histogram.record(sampleMs);
+        }
+    }
+
+    private static void recordSlowTask(Class<?> taskClass) {
+        if (sHistogramsRecorded) {
+            recordSlowTaskClass(taskClass, 1);
+            return;
+        }
+        AtomicInteger count = sSlowTaskCounts.get(taskClass);
+        if (count == null) {
+            AtomicInteger newCount = new AtomicInteger();
+            count = sSlowTaskCounts.putIfAbsent(taskClass, newCount);
+            if (count == null) count = newCount;
+        }
+        count.incrementAndGet();
+    }
+
+    private static StripedHistogram[] createHistograms(String name) {
+        StripedHistogram[] histograms = new StripedHistogram[PRIORITY_COUNT];
+        for (int priority = 0; priority < PRIORITY_COUNT; priority++) {
+            String suffix = PRIORITY_SUFFIXES[Math.min(priority, PRIORITY_SUFFIXES.length - 1)];
+            histograms[priority] = new StripedHistogram(HISTOGRAM_PREFIX + name + suffix);
+        }
+        return histograms;
+    }
+
+    /**
+     * Enables the measurement if the command line has the
+     * {@link BaseSwitches#ENABLE_PRE_NATIVE_TASK_INSTRUMENTATION} switch. Called once the command
+     * line is initialized at startup, before the tasks to measure are posted.
+     */
+    public static void maybeEnable() {
+        if (CommandLine.isInitialized()
+                && CommandLine.getInstance().hasSwitch(
+                        BaseSwitches.ENABLE_PRE_NATIVE_TASK_INSTRUMENTATION)) {
+            setEnabled(true);
+        }
+    }
+
+    /**
+     * Enables or disables the measurement of the tasks posted from now on.
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Returns whether the tasks posted from now on are measured.
+     */
+    static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Returns |task|, wrapped to be measured when it runs if instrumentation is enabled.
+     */
+    static Runnable wrap(Runnable task, int priority) {
+        if (!sEnabled) return task;
+        return new TimedTask(task, Math.max(0, Math.min(priority, PRIORITY_COUNT - 1)));
+    }
+
+    /**
+     * Returns the task wrapped by {@link #wrap}, so that it isn't measured when it runs.
+     */
+    static Runnable unwrap(Runnable task) {
+        return task instanceof TimedTask ? ((TimedTask) task).mTask : task;
+    }
+
+    /**
+     * Records the samples aggregated so far to UMA, and resets them. The samples of the tasks which
+     * end afterwards are recorded directly. Called once native is initialized.
+     *
+     * UMA records one sample per call, so this makes a call per task measured, and should be
+     * called off the critical path.
+     */
+    public static void recordHistograms() {
+        sHistogramsRecorded = true;
+        for (int priority = 0; priority < PRIORITY_COUNT; priority++) {
+            recordTimesHistogram(sQueueingDelayHistograms[priority]);
+            recordTimesHistogram(sRunTimeHistograms[priority]);
+        }
+        for (Map.Entry<Class<?>, AtomicInteger> entry : sSlowTaskCounts.entrySet()) {
+            recordSlowTaskClass(entry.getKey(), entry.getValue().getAndSet(0));
+        }
+    }
+
+    private static void recordTimesHistogram(StripedHistogram histogram) {
+        long[] counts = histogram.takeCounts();
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            // The samples of a bucket are recorded as its minimum, so the UMA histogram has the
+            // power of 2 resolution of the striped one.
+            long sampleMs = StripedHistogram.getBucketMinimum(bucket);
+            for (long i = 0; i < counts[bucket]; i++) {
+                RecordHistogram.recordTimesHistogram(histogram.mName, sampleMs);
+            }
+        }
+    }
+
+    private static void recordSlowTaskClass(Class<?> taskClass, int count) {
+        // Class names are recorded as their hash, like other sparse histograms of names.
+        int classHash = taskClass.getName().hashCode();
+        for (int i = 0; i < count; i++) {
+            RecordHistogram.recordSparseHistogram(HISTOGRAM_PREFIX + "SlowTaskClass", classHash);
+        }
+    }
+
+    /**
+     * Drops the aggregated samples, and aggregates the next ones again.
+     */
+    @VisibleForTesting
+    static void resetForTesting() {
+        for (int priority = 0; priority < PRIORITY_COUNT; priority++) {
+            sQueueingDelayHistograms[priority].takeCounts();
+            sRunTimeHistograms[priority].takeCounts();
+        }
+        sSlowTaskCounts.clear();
+        sHistogramsRecorded = false;
+    }
+}
@@ -5,7 +5,6 @@
 package org.chromium.base.task;
 
 import android.os.Process;
-import android.util.Pair;
 
 import androidx.annotation.Nullable;
 
@@ -15,10 +14,8 @@ import org.chromium.base.annotations.NativeMethods;
 
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Set;
 
 import javax.annotation.concurrent.GuardedBy;
@@ -37,6 +34,8 @@ public class TaskRunnerImpl implements TaskRunner {
     @GuardedBy("sCleaners")
     private static final Set<TaskRunnerCleaner> sCleaners = new HashSet<>();
 
+    private static final int INITIAL_PRE_NATIVE_DELAYED_TASK_CAPACITY = 4;
+
     private final TaskTraits mTaskTraits;
     private final String mTraceEvent;
     private final @TaskRunnerType int mTaskRunnerType;
@@ -50,12 +49,21 @@ public class TaskRunnerImpl implements TaskRunner {
     private final Object mPreNativeTaskLock = new Object();
     @GuardedBy("mPreNativeTaskLock")
     private boolean mDidOneTimeInitialization;
+    // Set by the one time initialization if native isn't initialized yet, so that tasks can be
+    // posted and run without taking |mPreNativeTaskLock|. It is only closed, and reset, with the
+    // lock held, when the tasks are migrated to the native task runner.
+    @Nullable
+    private volatile PreNativeTaskQueue mPreNativeTasks;
+    // Delayed tasks don't run before native is initialized, and we don't expect a whole lot of
+    // them, so they are only kept along with their delays until they are migrated.
     @Nullable
     @GuardedBy("mPreNativeTaskLock")
-    private LinkedList<Runnable> mPreNativeTasks;
+    private Runnable[] mPreNativeDelayedTasks;
     @Nullable
     @GuardedBy("mPreNativeTaskLock")
-    private List<Pair<Runnable, Long>> mPreNativeDelayedTasks;
+    private long[] mPreNativeDelays;
+    @GuardedBy("mPreNativeTaskLock")
+    private int mPreNativeDelayedTaskCount;
 
     private static class TaskRunnerCleaner extends WeakReference<TaskRunnerImpl> {
         final long mNativePtr;
@@ -131,31 +139,59 @@ public class TaskRunnerImpl implements TaskRunner {
     public void postDelayedTask(Runnable task, long delay) {
         // Lock-free path when native is initialized.
         if (mNativeTaskRunnerAndroid != 0) {
-            TaskRunnerImplJni.get().postDelayedTask(
-                    mNativeTaskRunnerAndroid, task, delay, task.getClass().getName());
+            postNativeTask(mNativeTaskRunnerAndroid, task, delay);
             return;
         }
+        // Lock-free path for immediate tasks before native is initialized.
+        PreNativeTaskQueue preNativeTasks = mPreNativeTasks;
+        if (delay == 0 && preNativeTasks != null) {
+            if (preNativeTasks.offer(TaskInstrumentation.wrap(task, mTaskTraits.mPriority))) {
+                schedulePreNativeTask();
+                return;
+            }
+            // The queue is closed while the tasks are migrated to the native task runner, which is
+            // set by the time the lock is released.
+        }
         synchronized (mPreNativeTaskLock) {
             oneTimeInitialization();
             if (mNativeTaskRunnerAndroid != 0) {
-                TaskRunnerImplJni.get().postDelayedTask(
-                        mNativeTaskRunnerAndroid, task, delay, task.getClass().getName());
+                postNativeTask(mNativeTaskRunnerAndroid, task, delay);
                 return;
             }
-            // We don't expect a whole lot of these, if that changes consider pooling them.
             // If a task is scheduled for immediate execution, we post it on the
             // pre-native task runner. Tasks scheduled to run with a delay will
             // wait until the native task runner is initialised.
             if (delay == 0) {
-                mPreNativeTasks.add(task);
+                Runnable preNativeTask = TaskInstrumentation.wrap(task, mTaskTraits.mPriority);
+                boolean added = mPreNativeTasks.offer(preNativeTask);
+                assert added;
                 schedulePreNativeTask();
             } else {
-                Pair<Runnable, Long> preNativeDelayedTask = new Pair<>(task, delay);
-                mPreNativeDelayedTasks.add(preNativeDelayedTask);
+                addPreNativeDelayedTask(task, delay);
             }
         }
     }
 
+    @GuardedBy("mPreNativeTaskLock")
+    private void addPreNativeDelayedTask(Runnable task, long delay) {
+        if (mPreNativeDelayedTasks == null) {
+            mPreNativeDelayedTasks = new Runnable[INITIAL_PRE_NATIVE_DELAYED_TASK_CAPACITY];
+            mPreNativeDelays = new long[INITIAL_PRE_NATIVE_DELAYED_TASK_CAPACITY];
+        } else if (mPreNativeDelayedTaskCount == mPreNativeDelayedTasks.length) {
+            int capacity = 2 * mPreNativeDelayedTaskCount;
+            mPreNativeDelayedTasks = Arrays.copyOf(mPreNativeDelayedTasks, capacity);
+            mPreNativeDelays = Arrays.copyOf(mPreNativeDelays, capacity);
+        }
+        mPreNativeDelayedTasks[mPreNativeDelayedTaskCount] = task;
+        mPreNativeDelays[mPreNativeDelayedTaskCount] = delay;
+        mPreNativeDelayedTaskCount++;
+    }
+
+    private static void postNativeTask(long nativeTaskRunnerAndroid, Runnable task, long delay) {
+        TaskRunnerImplJni.get().postDelayedTask(
+                nativeTaskRunnerAndroid, task, delay, task.getClass().getName());
+    }
+
     protected Boolean belongsToCurrentThreadInternal() {
         // TODO(https://crbug.com/1026641): This function shouldn't be here, and should only be used
         // by derived classes (eg. SingleThreadTaskRunner) until it is moved there, as TaskRunner
@@ -175,8 +211,7 @@ public class TaskRunnerImpl implements TaskRunner {
         if (!PostTask.registerPreNativeTaskRunner(this)) {
             initNativeTaskRunner();
         } else {
-            mPreNativeTasks = new LinkedList<>();
-            mPreNativeDelayedTasks = new ArrayList<>();
+            mPreNativeTasks = new PreNativeTaskQueue();
         }
     }
 
@@ -195,11 +230,11 @@ public class TaskRunnerImpl implements TaskRunner {
     @SuppressWarnings("NoDynamicStringsInTraceEventCheck")
     protected void runPreNativeTask() {
         try (TraceEvent te = TraceEvent.scoped(mTraceEvent)) {
-            Runnable task;
-            synchronized (mPreNativeTaskLock) {
-                if (mPreNativeTasks == null) return;
-                task = mPreNativeTasks.poll();
-            }
+            PreNativeTaskQueue preNativeTasks = mPreNativeTasks;
+            if (preNativeTasks == null) return;
+            Runnable task = preNativeTasks.poll();
+            // The task was migrated to the native task runner.
+            if (task == null) return;
             switch (mTaskTraits.mPriority) {
                 case TaskPriority.USER_VISIBLE:
                     Process.setThreadPriority(Process.THREAD_PRIORITY_DEFAULT);
@@ -224,20 +259,24 @@ public class TaskRunnerImpl implements TaskRunner {
                 mTaskTraits.mPriority, mTaskTraits.mMayBlock, mTaskTraits.mUseThreadPool,
                 mTaskTraits.mExtensionId, mTaskTraits.mExtensionData);
         synchronized (mPreNativeTaskLock) {
-            if (mPreNativeTasks != null) {
-                for (Runnable task : mPreNativeTasks) {
-                    TaskRunnerImplJni.get().postDelayedTask(
-                            nativeTaskRunnerAndroid, task, 0, task.getClass().getName());
+            PreNativeTaskQueue preNativeTasks = mPreNativeTasks;
+            if (preNativeTasks != null) {
+                // Once closed, no task can be added to the queue, and the ones posted concurrently
+                // wait for the lock to post to the native task runner.
+                preNativeTasks.close();
+                for (Runnable task = preNativeTasks.poll(); task != null;
+                        task = preNativeTasks.poll()) {
+                    postNativeTask(nativeTaskRunnerAndroid, TaskInstrumentation.unwrap(task), 0);
                 }
                 mPreNativeTasks = null;
             }
-            if (mPreNativeDelayedTasks != null) {
-                for (Pair<Runnable, Long> task : mPreNativeDelayedTasks) {
-                    TaskRunnerImplJni.get().postDelayedTask(nativeTaskRunnerAndroid, task.first,
-                            task.second, task.getClass().getName());
-                }
-                mPreNativeDelayedTasks = null;
+            for (int i = 0; i < mPreNativeDelayedTaskCount; i++) {
+                postNativeTask(nativeTaskRunnerAndroid, mPreNativeDelayedTasks[i],
+                        mPreNativeDelays[i]);
             }
+            mPreNativeDelayedTasks = null;
+            mPreNativeDelays = null;
+            mPreNativeDelayedTaskCount = 0;
 
             // mNativeTaskRunnerAndroid is volatile and setting this indicates we've have migrated
             // all pre-native tasks and are ready to use the native Task Runner.
@@ -9,6 +9,7 @@ import android.os.SystemClock;
 
 import androidx.test.filters.SmallTest;
 
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -16,11 +17,11 @@ import org.junit.runner.RunWith;
 
 import org.chromium.base.EarlyTraceEvent.AsyncEvent;
 import org.chromium.base.EarlyTraceEvent.Event;
+import org.chromium.base.EarlyTraceEvent.OverflowPolicy;
 import org.chromium.base.library_loader.LibraryLoader;
 import org.chromium.base.test.BaseJUnit4ClassRunner;
 import org.chromium.base.test.util.Feature;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -40,6 +41,13 @@ public class EarlyTraceEventTest {
         EarlyTraceEvent.reset();
     }
 
+    @After
+    public void tearDown() {
+        EarlyTraceEvent.reset();
+        EarlyTraceEvent.setBufferOptions(
+                EarlyTraceEvent.DEFAULT_EVENTS_PER_THREAD, OverflowPolicy.DROP_NEWEST);
+    }
+
     @Test
     @SmallTest
     @Feature({"Android-AppBase"})
@@ -81,12 +89,8 @@ public class EarlyTraceEventTest {
         EarlyTraceEvent.finishAsync(EVENT_NAME, EVENT_ID);
         long afterNanos = SystemClock.elapsedRealtimeNanos();
 
-        List<AsyncEvent> matchingEvents = new ArrayList<AsyncEvent>();
-        for (AsyncEvent evt : EarlyTraceEvent.sAsyncEvents) {
-            if (evt.mName.equals(EVENT_NAME)) {
-                matchingEvents.add(evt);
-            }
-        }
+        List<AsyncEvent> matchingEvents =
+                EarlyTraceEvent.getMatchingAsyncEventsForTesting(EVENT_NAME);
         Assert.assertEquals(2, matchingEvents.size());
         AsyncEvent eventStart = matchingEvents.get(0);
         AsyncEvent eventEnd = matchingEvents.get(1);
@@ -124,6 +128,76 @@ public class EarlyTraceEventTest {
         Assert.assertTrue(endEvent.mTimeNanos <= afterNanos);
     }
 
+    @Test
+    @SmallTest
+    @Feature({"Android-AppBase"})
+    public void testDropsNewestEventsWhenFull() {
+        EarlyTraceEvent.setBufferOptions(2, OverflowPolicy.DROP_NEWEST);
+        EarlyTraceEvent.enable();
+        EarlyTraceEvent.begin(EVENT_NAME, false /*isToplevel*/);
+        EarlyTraceEvent.end(EVENT_NAME, false /*isToplevel*/);
+        EarlyTraceEvent.begin(EVENT_NAME2, false /*isToplevel*/);
+
+        Assert.assertEquals(
+                2, EarlyTraceEvent.getMatchingCompletedEventsForTesting(EVENT_NAME).size());
+        Assert.assertTrue(
+                EarlyTraceEvent.getMatchingCompletedEventsForTesting(EVENT_NAME2).isEmpty());
+    }
+
+    @Test
+    @SmallTest
+    @Feature({"Android-AppBase"})
+    public void testOverwritesOldestEventsWhenFull() {
+        EarlyTraceEvent.setBufferOptions(2, OverflowPolicy.OVERWRITE_OLDEST);
+        EarlyTraceEvent.enable();
+        EarlyTraceEvent.begin(EVENT_NAME, false /*isToplevel*/);
+        EarlyTraceEvent.begin(EVENT_NAME2, false /*isToplevel*/);
+        EarlyTraceEvent.end(EVENT_NAME2, false /*isToplevel*/);
+
+        Assert.assertTrue(
+                EarlyTraceEvent.getMatchingCompletedEventsForTesting(EVENT_NAME).isEmpty());
+        List<Event> matchingEvents =
+                EarlyTraceEvent.getMatchingCompletedEventsForTesting(EVENT_NAME2);
+        Assert.assertEquals(2, matchingEvents.size());
+        Assert.assertTrue(matchingEvents.get(0).mIsStart);
+        Assert.assertFalse(matchingEvents.get(1).mIsStart);
+    }
+
+    @Test
+    @SmallTest
+    @Feature({"Android-AppBase"})
+    public void testOverwritesOldestEventsAcrossChunks() {
+        // Several chunks, the first of which gets overwritten.
+        final int capacity = 1024;
+        EarlyTraceEvent.setBufferOptions(capacity, OverflowPolicy.OVERWRITE_OLDEST);
+        EarlyTraceEvent.enable();
+        final int overwrittenCount = 300;
+        for (int i = 0; i < capacity + overwrittenCount; i++) {
+            EarlyTraceEvent.startAsync(EVENT_NAME, i);
+        }
+
+        List<AsyncEvent> matchingEvents =
+                EarlyTraceEvent.getMatchingAsyncEventsForTesting(EVENT_NAME);
+        Assert.assertEquals(capacity, matchingEvents.size());
+        for (int i = 0; i < capacity; i++) {
+            Assert.assertEquals(overwrittenCount + i, matchingEvents.get(i).mId);
+        }
+    }
+
+    @Test
+    @SmallTest
+    @Feature({"Android-AppBase"})
+    public void testReleasesBuffersOnceFinished() {
+        EarlyTraceEvent.enable();
+        EarlyTraceEvent.begin(EVENT_NAME, false /*isToplevel*/);
+        EarlyTraceEvent.end(EVENT_NAME, false /*isToplevel*/);
+        EarlyTraceEvent.Buffers buffers = EarlyTraceEvent.sBuffers;
+        Assert.assertFalse(buffers.isEmpty());
+
+        EarlyTraceEvent.disable();
+        Assert.assertTrue(buffers.isEmpty());
+    }
+
     @Test
     @SmallTest
     @Feature({"Android-AppBase"})
@@ -148,7 +222,7 @@ public class EarlyTraceEventTest {
         try (TraceEvent e = TraceEvent.scoped(EVENT_NAME2)) {
             // Required comment to pass presubmit checks.
         }
-        Assert.assertNull(EarlyTraceEvent.sEvents);
+        Assert.assertNull(EarlyTraceEvent.sBuffers);
     }
 
     @Test
@@ -157,7 +231,7 @@ public class EarlyTraceEventTest {
     public void testIgnoreAsyncEventsWhenDisabled() {
         EarlyTraceEvent.startAsync(EVENT_NAME, EVENT_ID);
         EarlyTraceEvent.finishAsync(EVENT_NAME, EVENT_ID);
-        Assert.assertNull(EarlyTraceEvent.sAsyncEvents);
+        Assert.assertNull(EarlyTraceEvent.sBuffers);
     }
 
     @Test
@@ -259,6 +333,6 @@ public class EarlyTraceEventTest {
         CommandLine.getInstance().removeSwitch("trace-early-java-in-child");
         EarlyTraceEvent.onCommandLineAvailableInChildProcess();
         Assert.assertFalse(EarlyTraceEvent.enabled());
-        Assert.assertNull(EarlyTraceEvent.sEvents);
+        Assert.assertNull(EarlyTraceEvent.sBuffers);
     }
 }
@@ -0,0 +1,128 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.base.task;
+
+import androidx.test.filters.LargeTest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.chromium.base.Log;
+import org.chromium.base.test.BaseJUnit4ClassRunner;
+import org.chromium.base.test.util.Manual;
+
+import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Microbenchmark of the pre-native task queue of {@link TaskRunnerImpl} under concurrent posting,
+ * against the lock guarded LinkedList it replaced. Run manually and read the results in logcat.
+ */
+@RunWith(BaseJUnit4ClassRunner.class)
+public class PreNativeTaskQueueBenchmarkTest {
+    private static final String TAG = "TaskBenchmark";
+
+    private static final int PRODUCER_COUNT = 4;
+    private static final int TASKS_PER_PRODUCER = 100000;
+    private static final int WARMUP_RUNS = 2;
+    private static final Runnable NOOP = () -> {};
+
+    /**
+     * The queue operations timed by the benchmark.
+     */
+    private interface Queue {
+        void offer(Runnable task);
+        Runnable poll();
+    }
+
+    /**
+     * Pre-native queue of TaskRunnerImpl before it was made lock-free.
+     */
+    private static class LockedQueue implements Queue {
+        private final Object mLock = new Object();
+        private final LinkedList<Runnable> mTasks = new LinkedList<>();
+
+        @Override
+        public void offer(Runnable task) {
+            synchronized (mLock) {
+                mTasks.add(task);
+            }
+        }
+
+        @Override
+        public Runnable poll() {
+            synchronized (mLock) {
+                return mTasks.poll();
+            }
+        }
+    }
+
+    private static class LockFreeQueue implements Queue {
+        private final PreNativeTaskQueue mTasks = new PreNativeTaskQueue();
+
+        @Override
+        public void offer(Runnable task) {
+            mTasks.offer(task);
+        }
+
+        @Override
+        public Runnable poll() {
+            return mTasks.poll();
+        }
+    }
+
+    /**
+     * Posts tasks to |queue| from |PRODUCER_COUNT| threads while the current thread polls them, as
+     * the pre-native thread pool does, and returns the elapsed time in nanoseconds.
+     */
+    private static long runProducersAndConsumer(final Queue queue) throws InterruptedException {
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        Thread[] producers = new Thread[PRODUCER_COUNT];
+        for (int i = 0; i < PRODUCER_COUNT; i++) {
+            producers[i] = new Thread(() -> {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < TASKS_PER_PRODUCER; j++) {
+                    queue.offer(NOOP);
+                }
+            });
+            producers[i].start();
+        }
+        long start = System.nanoTime();
+        startLatch.countDown();
+        int polled = 0;
+        while (polled < PRODUCER_COUNT * TASKS_PER_PRODUCER) {
+            if (queue.poll() != null) polled++;
+        }
+        long elapsed = System.nanoTime() - start;
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        Assert.assertNull(queue.poll());
+        return elapsed;
+    }
+
+    private static void measure(String name, Queue queue) throws InterruptedException {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            runProducersAndConsumer(queue);
+        }
+        int taskCount = PRODUCER_COUNT * TASKS_PER_PRODUCER;
+        long elapsed = runProducersAndConsumer(queue);
+        Log.i(TAG, "%s: %d ns/task over %d tasks posted from %d threads.", name,
+                elapsed / taskCount, taskCount, PRODUCER_COUNT);
+    }
+
+    @Test
+    @LargeTest
+    @Manual
+    public void testConcurrentPosting() throws Exception {
+        measure("Locked LinkedList", new LockedQueue());
+        measure("PreNativeTaskQueue", new LockFreeQueue());
+    }
+}
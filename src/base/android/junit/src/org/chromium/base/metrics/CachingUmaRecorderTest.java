@@ -8,6 +8,7 @@ import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -16,15 +17,19 @@ import static org.mockito.Mockito.verifyZeroInteractions;
 import androidx.test.filters.MediumTest;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import org.chromium.base.test.BaseRobolectricTestRunner;
+import org.chromium.base.test.util.JniMocker;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -32,6 +37,9 @@ import java.util.concurrent.locks.ReentrantLock;
 /** Unit tests for {@link CachingUmaRecorderTest}. */
 @RunWith(BaseRobolectricTestRunner.class)
 public final class CachingUmaRecorderTest {
+    @Rule
+    public JniMocker mMocker = new JniMocker();
+
     @Mock
     UmaRecorder mUmaRecorder;
 
@@ -105,6 +113,23 @@ public final class CachingUmaRecorderTest {
                 .recordSparseHistogram("cachingUmaRecorderTest.recordSparseHistogram", 72);
     }
 
+    @Test
+    public void testAllHistogramSamplesGetFlushedInOrder() {
+        CachingUmaRecorder cachingUmaRecorder = new CachingUmaRecorder();
+        // Fills all the segments of the sample cache.
+        for (int i = 0; i < CachingUmaRecorder.Histogram.MAX_SAMPLE_COUNT; i++) {
+            cachingUmaRecorder.recordSparseHistogram("CachingUmaRecorderTest.allSamples", i);
+        }
+
+        cachingUmaRecorder.setDelegate(mUmaRecorder);
+
+        InOrder inOrder = inOrder(mUmaRecorder);
+        for (int i = 0; i < CachingUmaRecorder.Histogram.MAX_SAMPLE_COUNT; i++) {
+            inOrder.verify(mUmaRecorder)
+                    .recordSparseHistogram("CachingUmaRecorderTest.allSamples", i);
+        }
+    }
+
     @Test
     public void testRecordUserActionGetsFlushed() {
         CachingUmaRecorder cachingUmaRecorder = new CachingUmaRecorder();
@@ -358,6 +383,88 @@ public final class CachingUmaRecorderTest {
         }
     }
 
+    /** Counts the sparse histogram samples recorded through {@link NativeUmaRecorder}. */
+    private static class FakeNativeUmaRecorderNatives implements NativeUmaRecorder.Natives {
+        public final AtomicIntegerArray recordedSamples;
+
+        FakeNativeUmaRecorderNatives(int sampleRange) {
+            recordedSamples = new AtomicIntegerArray(sampleRange);
+        }
+
+        @Override
+        public long recordBooleanHistogram(String name, long nativeHint, boolean sample) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long recordExponentialHistogram(
+                String name, long nativeHint, int sample, int min, int max, int numBuckets) {
+            // Ignore internal cache metrics.
+            if (name.startsWith("UMA.JavaCachingRecorder")) return nativeHint;
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long recordLinearHistogram(
+                String name, long nativeHint, int sample, int min, int max, int numBuckets) {
+            throw new UnsupportedOperationException();
+        }
+
+        @SuppressWarnings("ThreadPriorityCheck")
+        @Override
+        public long recordSparseHistogram(String name, long nativeHint, int sample) {
+            recordedSamples.incrementAndGet(sample);
+            // Make it more likely that samples are added while the cache is being flushed.
+            Thread.yield();
+            return nativeHint;
+        }
+
+        @Override
+        public void recordUserAction(String name, long millisSinceEvent) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Test
+    @MediumTest
+    @SuppressWarnings("ThreadPriorityCheck")
+    public void testParallelHistogramsWhileFlushingToNative() throws Exception {
+        final int numThreads = 16;
+        // Each thread records to its own histogram, so that no sample is dropped from the cache.
+        final int numSamples = CachingUmaRecorder.Histogram.MAX_SAMPLE_COUNT;
+        FakeNativeUmaRecorderNatives fakeNatives =
+                new FakeNativeUmaRecorderNatives(numThreads * numSamples);
+        mMocker.mock(NativeUmaRecorderJni.TEST_HOOKS, fakeNatives);
+        CachingUmaRecorder cachingRecorder = new CachingUmaRecorder();
+
+        CountDownLatch halfRecorded = new CountDownLatch(numThreads);
+        Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            final int thread = i;
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < numSamples; j++) {
+                    if (j == numSamples / 2) halfRecorded.countDown();
+                    // Each sample value is recorded once.
+                    cachingRecorder.recordSparseHistogram(
+                            "ParallelFlushTest." + thread, thread * numSamples + j);
+                    Thread.yield();
+                }
+            });
+            threads[i].start();
+        }
+        // Flush while the threads are still recording, so that samples race with the flush.
+        halfRecorded.await();
+        cachingRecorder.setDelegate(new NativeUmaRecorder());
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < numThreads * numSamples; i++) {
+            assertThat(String.format("sample %d recorded count", i),
+                    fakeNatives.recordedSamples.get(i), is(1));
+        }
+    }
+
     @SuppressWarnings("ThreadPriorityCheck")
     private static Thread startHistogramRecordingThread(
             int sample, int count, UmaRecorder recorder) {
@@ -0,0 +1,84 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.base.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import org.chromium.base.test.BaseRobolectricTestRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link PreNativeTaskQueue}.
+ */
+@RunWith(BaseRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class PreNativeTaskQueueTest {
+    private static final Runnable NOOP = () -> {};
+
+    @Test
+    public void testPollsInOfferOrder() {
+        PreNativeTaskQueue queue = new PreNativeTaskQueue();
+        Runnable first = () -> {};
+        Runnable second = () -> {};
+        Assert.assertTrue(queue.offer(first));
+        Assert.assertTrue(queue.offer(second));
+        Assert.assertSame(first, queue.poll());
+        Assert.assertSame(second, queue.poll());
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void testOfferFailsOnceClosed() {
+        PreNativeTaskQueue queue = new PreNativeTaskQueue();
+        Assert.assertTrue(queue.offer(NOOP));
+        queue.close();
+        Assert.assertTrue(queue.isClosed());
+        Assert.assertFalse(queue.offer(NOOP));
+        // The tasks offered before closing can still be drained.
+        Assert.assertSame(NOOP, queue.poll());
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void testNoTaskLostWhenClosingConcurrently() throws Exception {
+        final int threadCount = 4;
+        final int tasksPerThread = 10000;
+        final PreNativeTaskQueue queue = new PreNativeTaskQueue();
+        final AtomicInteger acceptedCount = new AtomicInteger();
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            executor.execute(() -> {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < tasksPerThread; j++) {
+                    if (queue.offer(NOOP)) acceptedCount.incrementAndGet();
+                }
+            });
+        }
+        startLatch.countDown();
+        Thread.sleep(1);
+        queue.close();
+
+        int drainedCount = 0;
+        while (queue.poll() != null) drainedCount++;
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        // Every task accepted was in the queue when close() returned.
+        Assert.assertEquals(acceptedCount.get(), drainedCount);
+        Assert.assertNull(queue.poll());
+    }
+}
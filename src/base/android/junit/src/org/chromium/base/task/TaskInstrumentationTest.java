@@ -0,0 +1,133 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.base.task;
+
+import android.os.SystemClock;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import org.chromium.base.BaseSwitches;
+import org.chromium.base.CommandLine;
+import org.chromium.base.metrics.RecordHistogram;
+import org.chromium.base.metrics.test.ShadowRecordHistogram;
+import org.chromium.base.test.BaseRobolectricTestRunner;
+
+/**
+ * Tests for {@link TaskInstrumentation}.
+ */
+@RunWith(BaseRobolectricTestRunner.class)
+@Config(manifest = Config.NONE, shadows = {ShadowRecordHistogram.class})
+public class TaskInstrumentationTest {
+    private static final String QUEUEING_DELAY_HISTOGRAM =
+            "Android.TaskScheduler.PreNativeTask.QueueingDelay.UserBlocking";
+    private static final String RUN_TIME_HISTOGRAM =
+            "Android.TaskScheduler.PreNativeTask.RunTime.UserBlocking";
+    private static final String SLOW_TASK_CLASS_HISTOGRAM =
+            "Android.TaskScheduler.PreNativeTask.SlowTaskClass";
+
+    private static class SlowTask implements Runnable {
+        @Override
+        public void run() {
+            SystemClock.sleep(TaskInstrumentation.SLOW_TASK_THRESHOLD_MS + 1);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        ShadowRecordHistogram.reset();
+    }
+
+    @After
+    public void tearDown() {
+        TaskInstrumentation.setEnabled(false);
+        CommandLine.reset();
+        TaskInstrumentation.resetForTesting();
+        ShadowRecordHistogram.reset();
+    }
+
+    @Test
+    public void testBuckets() {
+        Assert.assertEquals(0, TaskInstrumentation.StripedHistogram.getBucket(-1));
+        Assert.assertEquals(0, TaskInstrumentation.StripedHistogram.getBucket(0));
+        Assert.assertEquals(1, TaskInstrumentation.StripedHistogram.getBucket(1));
+        Assert.assertEquals(2, TaskInstrumentation.StripedHistogram.getBucket(2));
+        Assert.assertEquals(2, TaskInstrumentation.StripedHistogram.getBucket(3));
+        Assert.assertEquals(5, TaskInstrumentation.StripedHistogram.getBucket(16));
+        Assert.assertEquals(TaskInstrumentation.StripedHistogram.BUCKET_COUNT - 1,
+                TaskInstrumentation.StripedHistogram.getBucket(Long.MAX_VALUE));
+        Assert.assertEquals(16, TaskInstrumentation.StripedHistogram.getBucketMinimum(5));
+    }
+
+    @Test
+    public void testTasksNotWrappedWhenDisabled() {
+        Runnable task = () -> {};
+        Assert.assertSame(task, TaskInstrumentation.wrap(task, TaskPriority.USER_BLOCKING));
+    }
+
+    @Test
+    public void testEnabledBySwitch() {
+        Runnable task = () -> {};
+        CommandLine.init(null);
+        TaskInstrumentation.maybeEnable();
+        Assert.assertSame(task, TaskInstrumentation.wrap(task, TaskPriority.USER_BLOCKING));
+
+        CommandLine.getInstance().appendSwitch(BaseSwitches.ENABLE_PRE_NATIVE_TASK_INSTRUMENTATION);
+        TaskInstrumentation.maybeEnable();
+        Assert.assertNotSame(task, TaskInstrumentation.wrap(task, TaskPriority.USER_BLOCKING));
+    }
+
+    @Test
+    public void testRecordsQueueingDelayAndRunTime() {
+        TaskInstrumentation.setEnabled(true);
+        Runnable task = new SlowTask();
+        Runnable wrappedTask = TaskInstrumentation.wrap(task, TaskPriority.USER_BLOCKING);
+        Assert.assertNotSame(task, wrappedTask);
+        Assert.assertSame(task, TaskInstrumentation.unwrap(wrappedTask));
+
+        SystemClock.sleep(5);
+        wrappedTask.run();
+        TaskInstrumentation.recordHistograms();
+
+        Assert.assertEquals(1, RecordHistogram.getHistogramTotalCountForTesting(
+                QUEUEING_DELAY_HISTOGRAM));
+        // Samples are recorded as the minimum of their power of 2 bucket.
+        Assert.assertEquals(1, RecordHistogram.getHistogramValueCountForTesting(
+                QUEUEING_DELAY_HISTOGRAM, 4));
+        Assert.assertEquals(1, RecordHistogram.getHistogramValueCountForTesting(
+                RUN_TIME_HISTOGRAM, 16));
+        Assert.assertEquals(1, RecordHistogram.getHistogramValueCountForTesting(
+                SLOW_TASK_CLASS_HISTOGRAM, SlowTask.class.getName().hashCode()));
+
+        // The samples are only recorded once.
+        TaskInstrumentation.recordHistograms();
+        Assert.assertEquals(1, RecordHistogram.getHistogramTotalCountForTesting(
+                QUEUEING_DELAY_HISTOGRAM));
+    }
+
+    @Test
+    public void testRecordsTasksRunningWhenHistogramsAreRecorded() {
+        TaskInstrumentation.setEnabled(true);
+        Runnable wrappedTask = TaskInstrumentation.wrap(() -> {
+            TaskInstrumentation.recordHistograms();
+            SystemClock.sleep(TaskInstrumentation.SLOW_TASK_THRESHOLD_MS + 1);
+        }, TaskPriority.USER_BLOCKING);
+
+        wrappedTask.run();
+
+        // The queueing delay is recorded with the aggregated samples, and the run time when the
+        // task ends.
+        Assert.assertEquals(1, RecordHistogram.getHistogramTotalCountForTesting(
+                QUEUEING_DELAY_HISTOGRAM));
+        Assert.assertEquals(1, RecordHistogram.getHistogramValueCountForTesting(
+                RUN_TIME_HISTOGRAM, 16));
+        Assert.assertEquals(1, RecordHistogram.getHistogramTotalCountForTesting(
+                SLOW_TASK_CLASS_HISTOGRAM));
+    }
+}
@@ -56,18 +56,23 @@ public abstract class OfflineItemFilter
      * {@link OfflineItemFilterObserver#onItemsRemoved(Collection)} calls to observers downstream.
      */
     protected void onFilterChanged() {
-        Set<OfflineItem> removed = new HashSet<>();
-        for (Iterator<OfflineItem> iter = mItems.iterator(); iter.hasNext();) {
-            OfflineItem item = iter.next();
-            if (isFilteredOut(item)) {
-                iter.remove();
-                removed.add(item);
-            }
-        }
-        if (!removed.isEmpty()) {
-            for (OfflineItemFilterObserver obs : mObservers) obs.onItemsRemoved(removed);
-        }
+        removeFilteredOutItems();
+        addItems(mSource.getItems());
+    }
+
+    /**
+     * Like {@link #onFilterChanged()}, for a change of the filtering criteria that can only filter
+     * out more items.  Only the items currently exposed by this class are reevaluated.
+     */
+    protected void onFilterNarrowed() {
+        removeFilteredOutItems();
+    }
 
+    /**
+     * Like {@link #onFilterChanged()}, for a change of the filtering criteria that can only let more
+     * items through.  Only the items not currently exposed by this class are reevaluated.
+     */
+    protected void onFilterWidened() {
         addItems(mSource.getItems());
     }
 
@@ -135,14 +140,33 @@ public abstract class OfflineItemFilter
 
     // Helper method to help incorporate a collection of items into this filtered version.
     private void addItems(Collection<OfflineItem> items) {
-        Set<OfflineItem> added = new HashSet<>();
+        Set<OfflineItem> added = null;
         for (OfflineItem item : items) {
-            if (isFilteredOut(item)) continue;
-            if (mItems.add(item)) added.add(item);
+            if (mItems.contains(item) || isFilteredOut(item)) continue;
+            mItems.add(item);
+            if (added == null) added = new HashSet<>();
+            added.add(item);
         }
 
-        if (!added.isEmpty()) {
+        if (added != null) {
             for (OfflineItemFilterObserver obs : mObservers) obs.onItemsAdded(added);
         }
     }
+
+    // Helper method to remove the exposed items which no longer pass the filter.
+    private void removeFilteredOutItems() {
+        Set<OfflineItem> removed = null;
+        for (Iterator<OfflineItem> iter = mItems.iterator(); iter.hasNext();) {
+            OfflineItem item = iter.next();
+            if (isFilteredOut(item)) {
+                iter.remove();
+                if (removed == null) removed = new HashSet<>();
+                removed.add(item);
+            }
+        }
+
+        if (removed != null) {
+            for (OfflineItemFilterObserver obs : mObservers) obs.onItemsRemoved(removed);
+        }
+    }
 }
\ No newline at end of file
@@ -12,18 +12,39 @@ import org.chromium.components.offline_items_collection.OfflineItem;
 import org.chromium.components.url_formatter.SchemeDisplay;
 import org.chromium.components.url_formatter.UrlFormatter;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * An {@link OfflineItemFilter} responsible for pruning out items that don't match a specific search
  * query.
+ *
+ * The lowercased title and formatted URL of each {@link OfflineItem} are indexed as the items are
+ * added to the source, so that queries don't format and lowercase every item again.  A query that
+ * contains the previous one only reevaluates the items that matched the previous one, and a query
+ * contained in the previous one only reevaluates the items that did not.
  */
 public class SearchOfflineItemFilter extends OfflineItemFilter {
-    private String mQuery;
+    /** The normalized fields of an {@link OfflineItem} that queries are matched against. */
+    private static class SearchKey {
+        public final String url;
+        public final String title;
+
+        public SearchKey(String url, String title) {
+            this.url = url;
+            this.title = title;
+        }
+    }
+
+    private final Map<OfflineItem, SearchKey> mSearchKeys = new HashMap<>();
+    private String mQuery = "";
 
     /** Creates an instance of this fitler and wraps {@code source}. */
     public SearchOfflineItemFilter(OfflineItemFilterSource source) {
         super(source);
+        for (OfflineItem item : source.getItems()) addSearchKey(item);
         onFilterChanged();
     }
 
@@ -38,21 +59,56 @@ public class SearchOfflineItemFilter extends OfflineItemFilter {
         query = query.toLowerCase(Locale.getDefault());
         if (TextUtils.equals(mQuery, query)) return;
 
+        String previousQuery = mQuery;
         mQuery = query;
-        onFilterChanged();
+        if (query.contains(previousQuery)) {
+            // Every item matching the new query matched the previous one.
+            onFilterNarrowed();
+        } else if (previousQuery.contains(query)) {
+            // Every item matching the previous query matches the new one.
+            onFilterWidened();
+        } else {
+            onFilterChanged();
+        }
     }
 
     // OfflineItemFilter implementation.
     @Override
     protected boolean isFilteredOut(OfflineItem item) {
-        if (TextUtils.isEmpty(mQuery)) return false;
-        return !fieldContainsQuery(formatUrl(item.originalUrl)) && !fieldContainsQuery(item.title);
+        if (mQuery.isEmpty()) return false;
+        SearchKey key = mSearchKeys.get(item);
+        if (key == null) key = addSearchKey(item);
+        return !key.url.contains(mQuery) && !key.title.contains(mQuery);
+    }
+
+    @Override
+    public void onItemsAdded(Collection<OfflineItem> items) {
+        for (OfflineItem item : items) addSearchKey(item);
+        super.onItemsAdded(items);
     }
 
-    private boolean fieldContainsQuery(String field) {
-        if (TextUtils.isEmpty(field)) return false;
+    @Override
+    public void onItemsRemoved(Collection<OfflineItem> items) {
+        for (OfflineItem item : items) mSearchKeys.remove(item);
+        super.onItemsRemoved(items);
+    }
+
+    @Override
+    public void onItemUpdated(OfflineItem oldItem, OfflineItem item) {
+        mSearchKeys.remove(oldItem);
+        addSearchKey(item);
+        super.onItemUpdated(oldItem, item);
+    }
+
+    private SearchKey addSearchKey(OfflineItem item) {
+        SearchKey key = new SearchKey(normalize(formatUrl(item.originalUrl)), normalize(item.title));
+        mSearchKeys.put(item, key);
+        return key;
+    }
 
-        return field.toLowerCase(Locale.getDefault()).contains(mQuery);
+    private static String normalize(String field) {
+        if (TextUtils.isEmpty(field)) return "";
+        return field.toLowerCase(Locale.getDefault());
     }
 
     /** Visible to allow tests to avoid calls to native. */
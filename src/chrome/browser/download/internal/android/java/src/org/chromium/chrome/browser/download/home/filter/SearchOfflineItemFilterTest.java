@@ -154,6 +154,75 @@ public class SearchOfflineItemFilterTest {
         Assert.assertEquals(CollectionUtil.newHashSet(item1, item2), filter.getItems());
     }
 
+    @Test
+    public void testItemsAreIndexedOnce() {
+        OfflineItem item1 = buildItem("cows", "http://www.google.com/cows");
+        OfflineItem item2 = buildItem("dogs", "http://www.google.com/dogs");
+        Collection<OfflineItem> sourceItems = CollectionUtil.newHashSet(item1, item2);
+        when(mSource.getItems()).thenReturn(sourceItems);
+
+        final int[] formatCount = new int[1];
+        SearchOfflineItemFilter filter = new SearchOfflineItemFilter(mSource) {
+            @Override
+            protected String formatUrl(String url) {
+                formatCount[0]++;
+                return url;
+            }
+        };
+        filter.addObserver(mObserver);
+        Assert.assertEquals(2, formatCount[0]);
+
+        filter.onQueryChanged("c");
+        filter.onQueryChanged("co");
+        filter.onQueryChanged("d");
+        filter.onQueryChanged("");
+        Assert.assertEquals(2, formatCount[0]);
+
+        // Added items are indexed once, and updated items are reindexed.
+        OfflineItem item3 = buildItem("cows are", "");
+        filter.onItemsAdded(CollectionUtil.newHashSet(item3));
+        Assert.assertEquals(3, formatCount[0]);
+        OfflineItem updatedItem3 = buildItem("pigs", "");
+        filter.onItemUpdated(item3, updatedItem3);
+        Assert.assertEquals(4, formatCount[0]);
+
+        filter.onQueryChanged("cows");
+        Assert.assertEquals(CollectionUtil.newHashSet(item1), filter.getItems());
+        Assert.assertEquals(4, formatCount[0]);
+    }
+
+    @Test
+    public void testRefinedQueriesOnlySendChanges() {
+        OfflineItem item1 = buildItem("cow", "");
+        OfflineItem item2 = buildItem("cows", "");
+        OfflineItem item3 = buildItem("dog", "");
+        Collection<OfflineItem> sourceItems = CollectionUtil.newHashSet(item1, item2, item3);
+        when(mSource.getItems()).thenReturn(sourceItems);
+
+        SearchOfflineItemFilter filter = buildFilter(mSource);
+        filter.addObserver(mObserver);
+
+        filter.onQueryChanged("cow");
+        verify(mObserver, times(1)).onItemsRemoved(CollectionUtil.newHashSet(item3));
+
+        // Extending the query only removes items.
+        filter.onQueryChanged("cows");
+        verify(mObserver, times(1)).onItemsRemoved(CollectionUtil.newHashSet(item1));
+        Assert.assertEquals(CollectionUtil.newHashSet(item2), filter.getItems());
+
+        // Shortening the query only adds items.
+        filter.onQueryChanged("ow");
+        verify(mObserver, times(1)).onItemsAdded(CollectionUtil.newHashSet(item1));
+        Assert.assertEquals(CollectionUtil.newHashSet(item1, item2), filter.getItems());
+
+        // Removed items can't be matched again.
+        filter.onItemsRemoved(CollectionUtil.newHashSet(item1));
+        sourceItems.remove(item1);
+        filter.onQueryChanged("");
+        verify(mObserver, times(1)).onItemsAdded(CollectionUtil.newHashSet(item3));
+        Assert.assertEquals(CollectionUtil.newHashSet(item2, item3), filter.getItems());
+    }
+
     private static SearchOfflineItemFilter buildFilter(OfflineItemFilterSource source) {
         return new SearchOfflineItemFilter(source) {
             /** Override this method to avoid calls into native. */
@@ -0,0 +1,691 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.chrome.browser.tab.state;
+
+import android.os.SystemClock;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import org.chromium.base.Callback;
+import org.chromium.base.Log;
+import org.chromium.base.StreamUtil;
+import org.chromium.base.metrics.RecordHistogram;
+import org.chromium.base.supplier.Supplier;
+import org.chromium.base.task.PostTask;
+import org.chromium.base.task.SequencedTaskRunner;
+import org.chromium.base.task.TaskTraits;
+import org.chromium.content_public.browser.UiThreadTaskTraits;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * {@link PersistedTabDataStorage} which appends the data of every {@link Tab} to a single log
+ * file, instead of writing one file per {@link Tab} and data type.
+ *
+ * Saves and deletes are coalesced per key for a short delay and appended to the log in one write
+ * and one sync. An in-memory index maps each key to the offset of its latest record, so restores
+ * are a single read, and {@link #restoreAll} reads the data of every {@link Tab} of a type in log
+ * order. The log is compacted in the background once most of it is made of overwritten records.
+ *
+ * The log is only written and compacted on the storage task runner. The index is loaded there as
+ * soon as the storage is created, or by the first synchronous restore if that comes first.
+ * Synchronous restores never wait for writes, and are served from the pending writes and the
+ * index. Writes which fail to be appended are retried later.
+ *
+ * A record is the tab id, the length prefixed UTF-8 data id, the length of the data (or
+ * {@link #TOMBSTONE_LENGTH} for a delete), the data and the CRC32 of all of the above. A torn
+ * record at the end of the log, left by a crash while appending, is truncated when the log is
+ * opened.
+ */
+public class LogPersistedTabDataStorage implements PersistedTabDataStorage {
+    private static final String TAG = "LogPTDS";
+    private static final String LOG_FILE_NAME = "persisted_tab_data_log";
+    private static final String COMPACTION_FILE_SUFFIX = ".compacting";
+    private static final int LOG_MAGIC = 0x50544431; // "PTD1"
+    @VisibleForTesting
+    static final int LOG_HEADER_SIZE = 4;
+    private static final int TOMBSTONE_LENGTH = -1;
+    // Tab id, data id length, data length and CRC.
+    @VisibleForTesting
+    static final int RECORD_OVERHEAD = 4 + 2 + 4 + 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Saves and deletes of the same key within this delay only write the latest one.
+    private static final long WRITE_COALESCING_DELAY_MS = 200;
+    // Delay before appending writes again after they failed to be appended.
+    private static final long WRITE_RETRY_DELAY_MS = 5000;
+    // The log is compacted when it is larger than this and most of it is garbage.
+    @VisibleForTesting
+    static final long MIN_COMPACTION_SIZE = 64 * 1024;
+
+    /**
+     * Location of the latest record of a key in the log.
+     */
+    private static class IndexEntry {
+        final int mTabId;
+        final String mDataId;
+        final long mDataOffset;
+        final int mDataLength;
+        final int mRecordSize;
+
+        IndexEntry(int tabId, String dataId, long dataOffset, int dataLength, int recordSize) {
+            mTabId = tabId;
+            mDataId = dataId;
+            mDataOffset = dataOffset;
+            mDataLength = dataLength;
+            mRecordSize = recordSize;
+        }
+    }
+
+    /**
+     * Save or delete waiting to be appended to the log.
+     */
+    private static class PendingWrite {
+        final int mTabId;
+        final String mDataId;
+        // Null for a delete.
+        final @Nullable Supplier<byte[]> mDataSupplier;
+
+        PendingWrite(int tabId, String dataId, @Nullable Supplier<byte[]> dataSupplier) {
+            mTabId = tabId;
+            mDataId = dataId;
+            mDataSupplier = dataSupplier;
+        }
+    }
+
+    private final SequencedTaskRunner mSequencedTaskRunner;
+    private final File mLogFile;
+
+    private final Object mPendingWritesLock = new Object();
+    // Latest pending write of each key, in the order the keys were first written.
+    @GuardedBy("mPendingWritesLock")
+    private LinkedHashMap<String, PendingWrite> mPendingWrites = new LinkedHashMap<>();
+    // The writes being appended to the log, until the index points to them.
+    @GuardedBy("mPendingWritesLock")
+    private Map<String, PendingWrite> mFlushingWrites = Collections.emptyMap();
+    @GuardedBy("mPendingWritesLock")
+    private boolean mFlushScheduled;
+
+    // Guards the index, and the log against being opened twice, or closed or replaced while it is
+    // read. The log is only written and replaced on the task runner, which reads it without holding
+    // the lock. Holders of the lock do no more than one read of the log, except to open it.
+    private final Object mIndexLock = new Object();
+    // Null until the log is opened. Only replaced under the lock.
+    private volatile RandomAccessFile mLog;
+    @GuardedBy("mIndexLock")
+    private Map<String, IndexEntry> mIndex = new HashMap<>();
+    // Total size of the records in the index.
+    @GuardedBy("mIndexLock")
+    private long mLiveBytes;
+
+    // Accessed on the task runner only.
+    private boolean mCompactionScheduled;
+
+    protected LogPersistedTabDataStorage() {
+        this(new File(FilePersistedTabDataStorage.getOrCreateBaseStorageDirectory(), LOG_FILE_NAME),
+                PostTask.createSequencedTaskRunner(TaskTraits.USER_BLOCKING_MAY_BLOCK));
+    }
+
+    @VisibleForTesting
+    LogPersistedTabDataStorage(File logFile, SequencedTaskRunner sequencedTaskRunner) {
+        mLogFile = logFile;
+        mSequencedTaskRunner = sequencedTaskRunner;
+        mSequencedTaskRunner.postTask(this::ensureLogOpen);
+    }
+
+    @MainThread
+    @Override
+    public void save(int tabId, String dataId, Supplier<byte[]> dataSupplier) {
+        addPendingWrite(new PendingWrite(tabId, dataId, dataSupplier));
+    }
+
+    @MainThread
+    @Override
+    public void restore(int tabId, String dataId, Callback<byte[]> callback) {
+        mSequencedTaskRunner.postTask(() -> {
+            byte[] res = restoreOnCurrentThread(tabId, dataId);
+            PostTask.runOrPostTask(UiThreadTaskTraits.DEFAULT, () -> { callback.onResult(res); });
+        });
+    }
+
+    /**
+     * Restores the data from the pending writes and the index, without writing the log. Loads the
+     * log first if the task runner hasn't loaded it yet.
+     */
+    @MainThread
+    @Override
+    public byte[] restore(int tabId, String dataId) {
+        return restoreOnCurrentThread(tabId, dataId);
+    }
+
+    /**
+     * Restores the data of type |dataId| of every {@link Tab}, reading their latest records from
+     * the log in log order.
+     * @param dataId unique identifier representing the type of {@link PersistedTabData}
+     * @param callback to pass back the serialized {@link PersistedTabData} by tab id in
+     */
+    @MainThread
+    public void restoreAll(String dataId, Callback<Map<Integer, byte[]>> callback) {
+        mSequencedTaskRunner.postTask(() -> {
+            // The pending writes are appended first, so that they are read along with the rest.
+            flushPendingWrites();
+            Map<Integer, byte[]> res = new HashMap<>();
+            boolean success = ensureLogOpen();
+            if (success) {
+                long startTime = SystemClock.elapsedRealtime();
+                List<IndexEntry> entries = new ArrayList<>();
+                synchronized (mIndexLock) {
+                    for (IndexEntry entry : mIndex.values()) {
+                        if (dataId.equals(entry.mDataId)) entries.add(entry);
+                    }
+                }
+                Collections.sort(
+                        entries, (a, b) -> Long.compare(a.mDataOffset, b.mDataOffset));
+                try {
+                    for (IndexEntry entry : entries) {
+                        res.put(entry.mTabId, readData(mLog.getChannel(), entry));
+                    }
+                    RecordHistogram.recordTimesHistogram(
+                            String.format(Locale.US,
+                                    "Tabs.PersistedTabData.Storage.LoadTime.%s", getUmaTag()),
+                            SystemClock.elapsedRealtime() - startTime);
+                } catch (IOException e) {
+                    Log.e(TAG,
+                            String.format(Locale.ENGLISH,
+                                    "IOException while attempting to restore %s from %s. "
+                                            + "Details: %s",
+                                    dataId, mLogFile, e.getMessage()));
+                    res.clear();
+                    success = false;
+                }
+            }
+            RecordHistogram.recordBooleanHistogram(
+                    "Tabs.PersistedTabData.Storage.Restore." + getUmaTag(), success);
+            PostTask.runOrPostTask(UiThreadTaskTraits.DEFAULT, () -> { callback.onResult(res); });
+        });
+    }
+
+    @MainThread
+    @Override
+    public void delete(int tabId, String dataId) {
+        addPendingWrite(new PendingWrite(tabId, dataId, null));
+    }
+
+    @Override
+    public String getUmaTag() {
+        return "Log";
+    }
+
+    private static String getKey(int tabId, String dataId) {
+        return tabId + "_" + dataId;
+    }
+
+    private void addPendingWrite(PendingWrite write) {
+        synchronized (mPendingWritesLock) {
+            mPendingWrites.put(getKey(write.mTabId, write.mDataId), write);
+            if (mFlushScheduled) return;
+            mFlushScheduled = true;
+        }
+        mSequencedTaskRunner.postDelayedTask(this::flushPendingWrites, WRITE_COALESCING_DELAY_MS);
+    }
+
+    private byte[] restoreOnCurrentThread(int tabId, String dataId) {
+        String key = getKey(tabId, dataId);
+        PendingWrite write;
+        synchronized (mPendingWritesLock) {
+            write = mPendingWrites.get(key);
+            if (write == null) write = mFlushingWrites.get(key);
+        }
+        if (write != null) {
+            byte[] data = write.mDataSupplier == null ? null : write.mDataSupplier.get();
+            // A save whose supplier has no data leaves the previous record in place.
+            if (data != null || write.mDataSupplier == null) {
+                RecordHistogram.recordBooleanHistogram(
+                        "Tabs.PersistedTabData.Storage.Restore." + getUmaTag(), data != null);
+                return data;
+            }
+        }
+
+        boolean success = false;
+        byte[] res = null;
+        try {
+            long startTime = SystemClock.elapsedRealtime();
+            ensureLogOpen();
+            synchronized (mIndexLock) {
+                IndexEntry entry = mLog == null ? null : mIndex.get(key);
+                if (entry != null) res = readData(mLog.getChannel(), entry);
+            }
+            if (res != null) {
+                success = true;
+                RecordHistogram.recordTimesHistogram(
+                        String.format(Locale.US, "Tabs.PersistedTabData.Storage.LoadTime.%s",
+                                getUmaTag()),
+                        SystemClock.elapsedRealtime() - startTime);
+            }
+        } catch (IOException e) {
+            Log.e(TAG,
+                    String.format(Locale.ENGLISH,
+                            "IOException while attempting to restore %s from %s. Details: %s", key,
+                            mLogFile, e.getMessage()));
+            res = null;
+        }
+        RecordHistogram.recordBooleanHistogram(
+                "Tabs.PersistedTabData.Storage.Restore." + getUmaTag(), success);
+        return res;
+    }
+
+    /**
+     * Reads the data of |entry| with a positional read, which leaves the position of the log, used
+     * by the writes, untouched.
+     */
+    private static byte[] readData(FileChannel channel, IndexEntry entry) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(entry.mDataLength);
+        while (data.hasRemaining()) {
+            if (channel.read(data, entry.mDataOffset + data.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return data.array();
+    }
+
+    /**
+     * Appends the pending writes to the log, in one write followed by one sync. If that fails, the
+     * writes are pending again, unless newer ones replaced them, and are retried later. Runs on the
+     * task runner.
+     */
+    private void flushPendingWrites() {
+        synchronized (mPendingWritesLock) {
+            if (mPendingWrites.isEmpty()) return;
+            mFlushingWrites = mPendingWrites;
+            mPendingWrites = new LinkedHashMap<>();
+            mFlushScheduled = false;
+        }
+        boolean success = false;
+        try {
+            success = ensureLogOpen() && appendFlushingWrites();
+        } finally {
+            boolean scheduleRetry = false;
+            synchronized (mPendingWritesLock) {
+                if (!success) {
+                    LinkedHashMap<String, PendingWrite> writes =
+                            new LinkedHashMap<>(mFlushingWrites);
+                    writes.putAll(mPendingWrites);
+                    mPendingWrites = writes;
+                    scheduleRetry = !mFlushScheduled;
+                    mFlushScheduled = true;
+                }
+                mFlushingWrites = Collections.emptyMap();
+            }
+            if (scheduleRetry) {
+                mSequencedTaskRunner.postDelayedTask(
+                        this::flushPendingWrites, WRITE_RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    /**
+     * Appends the writes being flushed to the log.
+     * @return whether the log holds the writes
+     */
+    private boolean appendFlushingWrites() {
+        Map<String, PendingWrite> flushingWrites;
+        synchronized (mPendingWritesLock) {
+            flushingWrites = mFlushingWrites;
+        }
+        long startTime = SystemClock.elapsedRealtime();
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        DataOutputStream batchStream = new DataOutputStream(batch);
+        List<String> batchKeys = new ArrayList<>();
+        // Null for a delete.
+        List<IndexEntry> batchEntries = new ArrayList<>();
+        boolean success = false;
+        try {
+            long logLength = mLog.length();
+            for (PendingWrite write : flushingWrites.values()) {
+                String key = getKey(write.mTabId, write.mDataId);
+                byte[] data = null;
+                if (write.mDataSupplier != null) {
+                    data = write.mDataSupplier.get();
+                    if (data == null) continue;
+                } else {
+                    synchronized (mIndexLock) {
+                        if (!mIndex.containsKey(key)) continue;
+                    }
+                }
+                long recordOffset = logLength + batch.size();
+                int recordSize = writeRecord(batchStream, write.mTabId, write.mDataId, data);
+                batchKeys.add(key);
+                batchEntries.add(data == null ? null
+                                              : new IndexEntry(write.mTabId, write.mDataId,
+                                                      recordOffset + recordSize - 4 - data.length,
+                                                      data.length, recordSize));
+            }
+            if (batch.size() == 0) return true;
+            mLog.seek(logLength);
+            mLog.write(batch.toByteArray());
+            mLog.getFD().sync();
+            success = true;
+            synchronized (mIndexLock) {
+                for (int i = 0; i < batchKeys.size(); i++) {
+                    putIndexEntryLocked(batchKeys.get(i), batchEntries.get(i));
+                }
+            }
+            RecordHistogram.recordTimesHistogram(
+                    String.format(
+                            Locale.US, "Tabs.PersistedTabData.Storage.SaveTime.%s", getUmaTag()),
+                    SystemClock.elapsedRealtime() - startTime);
+            maybeScheduleCompaction();
+        } catch (IOException e) {
+            Log.e(TAG,
+                    String.format(Locale.ENGLISH,
+                            "IOException while attempting to append to %s. Details: %s", mLogFile,
+                            e.getMessage()));
+            // The log may end with a partial batch, which will be truncated when it is reopened.
+            closeLog();
+        }
+        RecordHistogram.recordBooleanHistogram(
+                "Tabs.PersistedTabData.Storage.Save." + getUmaTag(), success);
+        return success;
+    }
+
+    /**
+     * Writes a record, or a tombstone if |data| is null, and returns its size.
+     */
+    private static int writeRecord(DataOutputStream stream, int tabId, String dataId,
+            @Nullable byte[] data) throws IOException {
+        byte[] dataIdBytes = dataId.getBytes(UTF_8);
+        int dataLength = data == null ? TOMBSTONE_LENGTH : data.length;
+        CRC32 crc = new CRC32();
+        ByteArrayOutputStream record = new ByteArrayOutputStream(
+                RECORD_OVERHEAD + dataIdBytes.length + Math.max(0, dataLength));
+        DataOutputStream recordStream = new DataOutputStream(record);
+        recordStream.writeInt(tabId);
+        recordStream.writeShort(dataIdBytes.length);
+        recordStream.write(dataIdBytes);
+        recordStream.writeInt(dataLength);
+        if (data != null) recordStream.write(data);
+        crc.update(record.toByteArray());
+        recordStream.writeInt((int) crc.getValue());
+        record.writeTo(stream);
+        return record.size();
+    }
+
+    @GuardedBy("mIndexLock")
+    private void putIndexEntryLocked(String key, @Nullable IndexEntry entry) {
+        IndexEntry previous = entry == null ? mIndex.remove(key) : mIndex.put(key, entry);
+        if (previous != null) mLiveBytes -= previous.mRecordSize;
+        if (entry != null) mLiveBytes += entry.mRecordSize;
+    }
+
+    /**
+     * Opens the log and loads its index, unless it is open. Runs on the task runner, or on the UI
+     * thread for a synchronous restore.
+     * @return whether the log is open
+     */
+    private boolean ensureLogOpen() {
+        if (mLog != null) return true;
+        synchronized (mIndexLock) {
+            return mLog != null || openLog();
+        }
+    }
+
+    /**
+     * Opens the log and builds the index in one sequential pass over the log, truncating any
+     * torn record at its end. The index is only published once it is complete.
+     * @return whether the log is open
+     */
+    @GuardedBy("mIndexLock")
+    private boolean openLog() {
+        closeLog();
+        RandomAccessFile log = null;
+        DataInputStream inputStream = null;
+        Map<String, IndexEntry> index = new HashMap<>();
+        try {
+            log = new RandomAccessFile(mLogFile, "rw");
+            if (log.length() < LOG_HEADER_SIZE) {
+                log.setLength(0);
+                log.writeInt(LOG_MAGIC);
+            } else {
+                inputStream = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(mLogFile)));
+                if (inputStream.readInt() != LOG_MAGIC) {
+                    Log.e(TAG,
+                            String.format(Locale.ENGLISH, "Discarding unknown log %s", mLogFile));
+                    log.setLength(0);
+                    log.writeInt(LOG_MAGIC);
+                } else {
+                    long validLength = readRecords(inputStream, log.length(), index);
+                    if (validLength < log.length()) {
+                        Log.w(TAG,
+                                String.format(Locale.ENGLISH,
+                                        "Truncating %d bytes of torn records in %s",
+                                        log.length() - validLength, mLogFile));
+                        log.setLength(validLength);
+                    }
+                }
+            }
+            synchronized (mIndexLock) {
+                mLog = log;
+                mIndex = new HashMap<>();
+                mLiveBytes = 0;
+                for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+                    putIndexEntryLocked(entry.getKey(), entry.getValue());
+                }
+            }
+            // The log may have been opened off the task runner.
+            mSequencedTaskRunner.postTask(this::maybeScheduleCompaction);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG,
+                    String.format(Locale.ENGLISH,
+                            "IOException while attempting to open %s. Details: %s", mLogFile,
+                            e.getMessage()));
+            StreamUtil.closeQuietly(log);
+            closeLog();
+            return false;
+        } finally {
+            StreamUtil.closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * Reads the records following the header of the log into |index|.
+     * @return the length of the log up to the first torn or corrupt record
+     */
+    private static long readRecords(DataInputStream inputStream, long logLength,
+            Map<String, IndexEntry> index) throws IOException {
+        long offset = LOG_HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerStream = new DataOutputStream(header);
+        while (true) {
+            int tabId;
+            String dataId;
+            byte[] data = null;
+            int recordSize;
+            try {
+                tabId = inputStream.readInt();
+                byte[] dataIdBytes = new byte[inputStream.readUnsignedShort()];
+                inputStream.readFully(dataIdBytes);
+                int dataLength = inputStream.readInt();
+                recordSize = RECORD_OVERHEAD + dataIdBytes.length + Math.max(0, dataLength);
+                // A corrupt length.
+                if (dataLength < TOMBSTONE_LENGTH || offset + recordSize > logLength) return offset;
+                if (dataLength != TOMBSTONE_LENGTH) {
+                    data = new byte[dataLength];
+                    inputStream.readFully(data);
+                }
+                int expectedCrc = inputStream.readInt();
+
+                header.reset();
+                headerStream.writeInt(tabId);
+                headerStream.writeShort(dataIdBytes.length);
+                headerStream.write(dataIdBytes);
+                headerStream.writeInt(dataLength);
+                crc.reset();
+                crc.update(header.toByteArray());
+                if (data != null) crc.update(data);
+                if ((int) crc.getValue() != expectedCrc) return offset;
+                dataId = new String(dataIdBytes, UTF_8);
+            } catch (EOFException e) {
+                return offset;
+            }
+            String key = getKey(tabId, dataId);
+            if (data == null) {
+                index.remove(key);
+            } else {
+                index.put(key,
+                        new IndexEntry(tabId, dataId, offset + recordSize - 4 - data.length,
+                                data.length, recordSize));
+            }
+            offset += recordSize;
+        }
+    }
+
+    private void closeLog() {
+        synchronized (mIndexLock) {
+            StreamUtil.closeQuietly(mLog);
+            mLog = null;
+            mIndex = new HashMap<>();
+            mLiveBytes = 0;
+        }
+    }
+
+    /** Runs on the task runner. */
+    private void maybeScheduleCompaction() {
+        RandomAccessFile log = mLog;
+        if (mCompactionScheduled || log == null) return;
+        long logLength;
+        try {
+            logLength = log.length();
+        } catch (IOException e) {
+            // The next write reports the error.
+            return;
+        }
+        synchronized (mIndexLock) {
+            if (logLength < MIN_COMPACTION_SIZE || mLiveBytes * 2 > logLength) return;
+        }
+        mCompactionScheduled = true;
+        mSequencedTaskRunner.postTask(() -> {
+            mCompactionScheduled = false;
+            compact();
+        });
+    }
+
+    /**
+     * Rewrites the log with only the latest record of each key, in log order, and replaces the
+     * log with it once it is synced. Runs on the task runner; restores only wait for the log and
+     * the index to be swapped, the file I/O is done without holding the lock.
+     */
+    private void compact() {
+        if (!ensureLogOpen()) return;
+        List<Map.Entry<String, IndexEntry>> entries;
+        synchronized (mIndexLock) {
+            entries = new ArrayList<>(mIndex.entrySet());
+        }
+        Collections.sort(entries,
+                (a, b) -> Long.compare(a.getValue().mDataOffset, b.getValue().mDataOffset));
+
+        File compactionFile = new File(mLogFile.getPath() + COMPACTION_FILE_SUFFIX);
+        Map<String, IndexEntry> compactedIndex = new HashMap<>();
+        FileOutputStream fileStream = null;
+        boolean success = false;
+        try {
+            fileStream = new FileOutputStream(compactionFile);
+            DataOutputStream outputStream =
+                    new DataOutputStream(new BufferedOutputStream(fileStream));
+            outputStream.writeInt(LOG_MAGIC);
+            long offset = LOG_HEADER_SIZE;
+            for (Map.Entry<String, IndexEntry> entry : entries) {
+                IndexEntry indexEntry = entry.getValue();
+                byte[] data = readData(mLog.getChannel(), indexEntry);
+                int recordSize =
+                        writeRecord(outputStream, indexEntry.mTabId, indexEntry.mDataId, data);
+                compactedIndex.put(entry.getKey(),
+                        new IndexEntry(indexEntry.mTabId, indexEntry.mDataId,
+                                offset + recordSize - 4 - data.length, data.length,
+                                recordSize));
+                offset += recordSize;
+            }
+            outputStream.flush();
+            fileStream.getFD().sync();
+            success = true;
+        } catch (IOException e) {
+            Log.e(TAG,
+                    String.format(Locale.ENGLISH,
+                            "IOException while attempting to compact %s. Details: %s", mLogFile,
+                            e.getMessage()));
+        } finally {
+            StreamUtil.closeQuietly(fileStream);
+        }
+        if (!success) {
+            compactionFile.delete();
+            RecordHistogram.recordBooleanHistogram(
+                    "Tabs.PersistedTabData.Storage.Compact." + getUmaTag(), false);
+            return;
+        }
+        // Restores keep reading the previous log, which stays open after being replaced on disk,
+        // until the compacted one is swapped in.
+        if (!compactionFile.renameTo(mLogFile)) {
+            compactionFile.delete();
+            RecordHistogram.recordBooleanHistogram(
+                    "Tabs.PersistedTabData.Storage.Compact." + getUmaTag(), false);
+            return;
+        }
+        RandomAccessFile compactedLog = null;
+        try {
+            compactedLog = new RandomAccessFile(mLogFile, "rw");
+        } catch (IOException e) {
+            Log.e(TAG,
+                    String.format(Locale.ENGLISH,
+                            "IOException while attempting to reopen %s. Details: %s", mLogFile,
+                            e.getMessage()));
+            success = false;
+        }
+        if (success) {
+            RandomAccessFile previousLog;
+            synchronized (mIndexLock) {
+                previousLog = mLog;
+                mLog = compactedLog;
+                mIndex = new HashMap<>();
+                mLiveBytes = 0;
+                for (Map.Entry<String, IndexEntry> entry : compactedIndex.entrySet()) {
+                    putIndexEntryLocked(entry.getKey(), entry.getValue());
+                }
+            }
+            StreamUtil.closeQuietly(previousLog);
+        } else {
+            // The log is reopened from disk, where it is already compacted.
+            closeLog();
+        }
+        RecordHistogram.recordBooleanHistogram(
+                "Tabs.PersistedTabData.Storage.Compact." + getUmaTag(), success);
+    }
+}
@@ -0,0 +1,322 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.chrome.browser.tab.state;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import org.chromium.base.task.SequencedTaskRunner;
+import org.chromium.base.test.BaseRobolectricTestRunner;
+import org.chromium.content_public.browser.BrowserTaskExecutor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Tests for LogPersistedTabDataStorage. */
+@RunWith(BaseRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class LogPersistedTabDataStorageTest {
+    private static final int TAB_ID_1 = 1;
+    private static final int TAB_ID_2 = 2;
+    private static final String DATA_ID_1 = "DataId1";
+    private static final String DATA_ID_2 = "DataId2";
+    private static final byte[] DATA_A = {1, 2, 3, 4, 5};
+    private static final byte[] DATA_B = {6, 7, 8};
+
+    /**
+     * Task runner which only runs its tasks, delayed or not, when asked to.
+     */
+    private static class ManualTaskRunner implements SequencedTaskRunner {
+        private final List<Runnable> mTasks = new ArrayList<>();
+
+        @Override
+        public void postTask(Runnable task) {
+            mTasks.add(task);
+        }
+
+        @Override
+        public void postDelayedTask(Runnable task, long delay) {
+            mTasks.add(task);
+        }
+
+        /** Runs the posted tasks, and those they post, in order. */
+        void runAllTasks() {
+            while (!mTasks.isEmpty()) {
+                mTasks.remove(0).run();
+            }
+        }
+
+        /** Runs the tasks posted so far, but not those they post. */
+        void runPendingTasks() {
+            for (int count = mTasks.size(); count > 0; count--) {
+                mTasks.remove(0).run();
+            }
+        }
+
+        int getPendingTaskCount() {
+            return mTasks.size();
+        }
+    }
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mLogFile;
+    private ManualTaskRunner mTaskRunner;
+
+    @Before
+    public void setUp() throws Exception {
+        BrowserTaskExecutor.register();
+        mLogFile = new File(mTemporaryFolder.getRoot(), "log");
+        mTaskRunner = new ManualTaskRunner();
+    }
+
+    private LogPersistedTabDataStorage createStorage() {
+        LogPersistedTabDataStorage storage =
+                new LogPersistedTabDataStorage(mLogFile, mTaskRunner);
+        mTaskRunner.runAllTasks();
+        return storage;
+    }
+
+    private byte[] restoreAsync(LogPersistedTabDataStorage storage, int tabId, String dataId) {
+        AtomicReference<byte[]> res = new AtomicReference<>();
+        storage.restore(tabId, dataId, res::set);
+        mTaskRunner.runAllTasks();
+        return res.get();
+    }
+
+    private Map<Integer, byte[]> restoreAll(LogPersistedTabDataStorage storage, String dataId) {
+        AtomicReference<Map<Integer, byte[]>> res = new AtomicReference<>();
+        storage.restoreAll(dataId, res::set);
+        mTaskRunner.runAllTasks();
+        return res.get();
+    }
+
+    private static long getRecordSize(String dataId, byte[] data) {
+        return LogPersistedTabDataStorage.RECORD_OVERHEAD + dataId.length()
+                + (data == null ? 0 : data.length);
+    }
+
+    @Test
+    public void testSaveRestore() {
+        LogPersistedTabDataStorage storage = createStorage();
+        storage.save(TAB_ID_1, DATA_ID_1, () -> DATA_A);
+        storage.save(TAB_ID_2, DATA_ID_1, () -> DATA_B);
+        mTaskRunner.runAllTasks();
+        assertArrayEquals(DATA_A, storage.restore(TAB_ID_1, DATA_ID_1));
+        assertArrayEquals(DATA_B, restoreAsync(storage, TAB_ID_2, DATA_ID_1));
+        assertNull(storage.restore(TAB_ID_1, DATA_ID_2));
+
+        // The data is read back from the log by a new instance.
+        LogPersistedTabDataStorage reopenedStorage = createStorage();
+        assertArrayEquals(DATA_A, reopenedStorage.restore(TAB_ID_1, DATA_ID_1));
+        assertArrayEquals(DATA_B, reopenedStorage.restore(TAB_ID_2, DATA_ID_1));
+    }
+
+    @Test
+    public void testSyncRestoreDoesNotWriteLog() {
+        LogPersistedTabDataStorage storage = createStorage();
+        storage.save(TAB_ID_1, DATA_ID_1, () -> DATA_A);
+        long logLength = mLogFile.length();
+
+        // The pending save is served without being appended to the log.
+        assertArrayEquals(DATA_A, storage.restore(TAB_ID_1, DATA_ID_1));
+        assertEquals(logLength, mLogFile.length());
+        assertEquals(1, mTaskRunner.getPendingTaskCount());
+
+        mTaskRunner.runAllTasks();
+        assertEquals(logLength + getRecordSize(DATA_ID_1, DATA_A), mLogFile.length());
+        storage.delete(TAB_ID_1, DATA_ID_1);
+        assertNull(storage.restore(TAB_ID_1, DATA_ID_1));
+    }
+
+    @Test
+    public void testSyncRestoreLoadsLog() {
+        LogPersistedTabDataStorage storage = createStorage();
+        storage.save(TAB_ID_1, DATA_ID_1, () -> DATA_A);
+        mTaskRunner.runAllTasks();
+
+        // The log is loaded by the restore, before the task runner gets to it.
+        LogPersistedTabDataStorage reopenedStorage =
+                new LogPersistedTabDataStorage(mLogFile, mTaskRunner);
+        assertArrayEquals(DATA_A, reopenedStorage.restore(TAB_ID_1, DATA_ID_1));
+        mTaskRunner.runAllTasks();
+        assertArrayEquals(DATA_A, reopenedStorage.restore(TAB_ID_1, DATA_ID_1));
+    }
+
+    @Test
+    public void testFailedWritesAreRetried() {
+        // The log can't be opened while a directory is in its way.
+        assertTrue(mLogFile.mkdir());
+        LogPersistedTabDataStorage storage = new LogPersistedTabDataStorage(mLogFile, mTaskRunner);
+        storage.save(TAB_ID_1, DATA_ID_1, () -> DATA_A);
+        storage.save(TAB_ID_2, DATA_ID_1, () -> DATA_A);
+        mTaskRunner.runPendingTasks();
+
+        // The writes are still served, and are retried later.
+        assertArrayEquals(DATA_A, storage.restore(TAB_ID_1, DATA_ID_1));
+        assertEquals(1, mTaskRunner.getPendingTaskCount());
+
+        // A newer write replaces the failed one.
+        storage.save(TAB_ID_2, DATA_ID_1, () -> DATA_B);
+        assertEquals(1, mTaskRunner.getPendingTaskCount());
+        assertTrue(mLogFile.delete());
+        mTaskRunner.runAllTasks();
+
+        LogPersistedTabDataStorage reopenedStorage = createStorage();
+        assertArrayEquals(DATA_A, reopenedStorage.restore(TAB_ID_1, DATA_ID_1));
+        assertArrayEquals(DATA_B, reopenedStorage.restore(TAB_ID_2, DATA_ID_1));
+    }
+
+    @Test
+    public void testWriteCoalescing() {
+        LogPersistedTabDataStorage storage = createStorage();
+        long logLength = mLogFile.length();
+        AtomicInteger supplierCalls = new AtomicInteger();
+        storage.save(TAB_ID_1, DATA_ID_1, () -> {
+            supplierCalls.incrementAndGet();
+            return DATA_A;
+        });
+        storage.save(TAB_ID_1, DATA_ID_1, () -> DATA_B);
+        storage.save(TAB_ID_2, DATA_ID_1, () -> DATA_A);
+        // Both keys are appended by a single flush.
+        assertEquals(1, mTaskRunner.getPendingTaskCount());
+        mTaskRunner.runAllTasks();
+
+        // Only the latest save of each key is written.
+        assertEquals(0, supplierCalls.get());
+        assertEquals(logLength + getRecordSize(DATA_ID_1, DATA_B)
+                        + getRecordSize(DATA_ID_1, DATA_A),
+                mLogFile.length());
+        assertArrayEquals(DATA_B, storage.restore(TAB_ID_1, DATA_ID_1));
+        assertArrayEquals(DATA_A, storage.restore(TAB_ID_2, DATA_ID_1));
+    }
+
+    @Test
+    public void testDelete() {
+        LogPersistedTabDataStorage storage = createStorage();
+        storage.save(TAB_ID_1, DATA_ID_1, () -> DATA_A);
+        storage.save(TAB_ID_1, DATA_ID_2, () -> DATA_B);
+        mTaskRunner.runAllTasks();
+        storage.delete(TAB_ID_1, DATA_ID_1);
+        mTaskRunner.runAllTasks();
+        assertNull(storage.restore(TAB_ID_1, DATA_ID_1));
+        assertArrayEquals(DATA_B, storage.restore(TAB_ID_1, DATA_ID_2));
+
+        // The tombstone hides the deleted record after reopening.
+        LogPersistedTabDataStorage reopenedStorage = createStorage();
+        assertNull(reopenedStorage.restore(TAB_ID_1, DATA_ID_1));
+        assertArrayEquals(DATA_B, reopenedStorage.restore(TAB_ID_1, DATA_ID_2));
+
+        // Deleting a key which isn't in the log appends nothing.
+        long logLength = mLogFile.length();
+        reopenedStorage.delete(TAB_ID_2, DATA_ID_1);
+        mTaskRunner.runAllTasks();
+        assertEquals(logLength, mLogFile.length());
+    }
+
+    @Test
+    public void testTornTailTruncatedOnReopen() throws IOException {
+        LogPersistedTabDataStorage storage = createStorage();
+        storage.save(TAB_ID_1, DATA_ID_1, () -> DATA_A);
+        mTaskRunner.runAllTasks();
+        long logLength = mLogFile.length();
+
+        // Append the start of a record, as left by a crash while appending.
+        try (FileOutputStream stream = new FileOutputStream(mLogFile, true)) {
+            stream.write(new byte[] {0, 0, 0, TAB_ID_2, 0, 7, 'D', 'a'});
+        }
+        LogPersistedTabDataStorage reopenedStorage = createStorage();
+        assertEquals(logLength, mLogFile.length());
+        assertArrayEquals(DATA_A, reopenedStorage.restore(TAB_ID_1, DATA_ID_1));
+        assertNull(reopenedStorage.restore(TAB_ID_2, DATA_ID_1));
+
+        // Records appended after the truncation are read back.
+        reopenedStorage.save(TAB_ID_2, DATA_ID_1, () -> DATA_B);
+        mTaskRunner.runAllTasks();
+        assertArrayEquals(DATA_B, createStorage().restore(TAB_ID_2, DATA_ID_1));
+    }
+
+    @Test
+    public void testCompactionPreservesLiveRecords() {
+        LogPersistedTabDataStorage storage = createStorage();
+        storage.save(TAB_ID_1, DATA_ID_1, () -> DATA_A);
+        storage.save(TAB_ID_2, DATA_ID_2, () -> DATA_B);
+        storage.save(TAB_ID_2, DATA_ID_1, () -> DATA_B);
+        mTaskRunner.runAllTasks();
+        storage.delete(TAB_ID_2, DATA_ID_1);
+        mTaskRunner.runAllTasks();
+
+        // Overwrite a key until most of the log is garbage, which triggers a compaction.
+        byte[] largeData = new byte[1024];
+        long liveSize = getRecordSize(DATA_ID_1, DATA_A) + getRecordSize(DATA_ID_2, DATA_B)
+                + getRecordSize(DATA_ID_2, largeData);
+        int maxOverwrites = 2
+                * (int) (LogPersistedTabDataStorage.MIN_COMPACTION_SIZE
+                        / getRecordSize(DATA_ID_2, largeData));
+        boolean compacted = false;
+        for (int i = 0; i < maxOverwrites && !compacted; i++) {
+            largeData[0] = (byte) i;
+            byte[] data = largeData.clone();
+            long logLength = mLogFile.length();
+            storage.save(TAB_ID_1, DATA_ID_2, () -> data);
+            mTaskRunner.runAllTasks();
+            compacted = mLogFile.length() < logLength;
+        }
+        assertTrue(compacted);
+        assertEquals(LogPersistedTabDataStorage.LOG_HEADER_SIZE + liveSize, mLogFile.length());
+        assertFalse(new File(mLogFile.getPath() + ".compacting").exists());
+
+        assertArrayEquals(DATA_A, storage.restore(TAB_ID_1, DATA_ID_1));
+        assertArrayEquals(DATA_B, storage.restore(TAB_ID_2, DATA_ID_2));
+        assertNull(storage.restore(TAB_ID_2, DATA_ID_1));
+        assertArrayEquals(largeData, storage.restore(TAB_ID_1, DATA_ID_2));
+
+        LogPersistedTabDataStorage reopenedStorage = createStorage();
+        assertArrayEquals(DATA_A, reopenedStorage.restore(TAB_ID_1, DATA_ID_1));
+        assertArrayEquals(DATA_B, reopenedStorage.restore(TAB_ID_2, DATA_ID_2));
+        assertNull(reopenedStorage.restore(TAB_ID_2, DATA_ID_1));
+        assertArrayEquals(largeData, reopenedStorage.restore(TAB_ID_1, DATA_ID_2));
+    }
+
+    @Test
+    public void testRestoreAll() {
+        LogPersistedTabDataStorage storage = createStorage();
+        storage.save(TAB_ID_1, DATA_ID_1, () -> DATA_A);
+        storage.save(TAB_ID_2, DATA_ID_1, () -> DATA_A);
+        storage.save(TAB_ID_1, DATA_ID_2, () -> DATA_B);
+        mTaskRunner.runAllTasks();
+        storage.save(TAB_ID_1, DATA_ID_1, () -> DATA_B);
+        storage.delete(TAB_ID_2, DATA_ID_1);
+        storage.save(3, DATA_ID_1, () -> DATA_A);
+
+        // Pending writes are included.
+        Map<Integer, byte[]> res = restoreAll(storage, DATA_ID_1);
+        assertEquals(2, res.size());
+        assertArrayEquals(DATA_B, res.get(TAB_ID_1));
+        assertArrayEquals(DATA_A, res.get(3));
+
+        res = restoreAll(createStorage(), DATA_ID_2);
+        assertEquals(1, res.size());
+        assertArrayEquals(DATA_B, res.get(TAB_ID_1));
+        assertTrue(restoreAll(createStorage(), "unknown").isEmpty());
+    }
+}
@@ -0,0 +1,1056 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.net.impl;
+
+import android.net.TrafficStats;
+import android.util.Log;
+
+import androidx.annotation.IntDef;
+
+import org.chromium.net.CronetException;
+import org.chromium.net.ExperimentalBidirectionalStream;
+import org.chromium.net.ThreadStatsUid;
+import org.chromium.net.UrlResponseInfo;
+import org.chromium.net.impl.JavaUrlRequestUtils.SerializingExecutor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.ProtocolException;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * {@link org.chromium.net.BidirectionalStream} implementation for {@link JavaCronetEngine}, sending
+ * the request body with the chunked transfer coding of HTTP/1.1 on a socket of its own.
+ *
+ * <p>Unlike {@link java.net.HttpURLConnection}, which only reads the response once the request body
+ * is complete, the request and the response are handled independently: writes run on a
+ * {@link SerializingExecutor} of the engine executor and each read runs as a separate task, so the
+ * response can be read while the request body is still being written. All the buffers flushed
+ * together, and the request headers if they were delayed, are sent with a single socket write.
+ *
+ * <p>The stream holds a slot of the {@link JavaRequestScheduler} of the engine from the time it is
+ * admitted until it is done, and only connects once admitted.
+ *
+ * <p>Does not support HTTP/2, QUIC, proxies, connection reuse, or metrics. As it connects its own
+ * socket, it can't go through the proxy selected by {@link ProxySelector} for the URL, and fails
+ * instead of bypassing it.
+ */
+final class JavaBidirectionalStream extends ExperimentalBidirectionalStream {
+    private static final String TAG = JavaBidirectionalStream.class.getSimpleName();
+    private static final String USER_AGENT = "User-Agent";
+    private static final String PROTOCOL = "http/1.1";
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+    /**
+     * States of the stream, tracked separately for reads and writes as in
+     * {@link CronetBidirectionalStream}.
+     */
+    @IntDef({State.NOT_STARTED, State.STARTED, State.WAITING_FOR_READ, State.READING,
+            State.READING_DONE, State.CANCELED, State.ERROR, State.SUCCESS, State.WAITING_FOR_FLUSH,
+            State.WRITING, State.WRITING_DONE})
+    @Retention(RetentionPolicy.SOURCE)
+    private @interface State {
+        /* Initial state, stream not started. */
+        int NOT_STARTED = 0;
+        /* Stream started, connecting. */
+        int STARTED = 1;
+        /* Waiting for {@code read()} to be called. */
+        int WAITING_FOR_READ = 2;
+        /* Reading from the remote, {@code onReadCompleted()} callback will be called when done. */
+        int READING = 3;
+        /* There is no more data to read and stream is half-closed by the remote side. */
+        int READING_DONE = 4;
+        /* Stream is canceled. */
+        int CANCELED = 5;
+        /* Error has occurred, stream is closed. */
+        int ERROR = 6;
+        /* Reading and writing are done, and the stream is closed successfully. */
+        int SUCCESS = 7;
+        /* Waiting for {@code flush()} to be called. */
+        int WAITING_FOR_FLUSH = 8;
+        /* Writing to the remote, {@code onWriteCompleted()} callback will be called when done. */
+        int WRITING = 9;
+        /* There is no more data to write and stream is half-closed by the local side. */
+        int WRITING_DONE = 10;
+    }
+
+    private final Executor mExecutor;
+    private final Executor mNetworkExecutor;
+    // Runs the connection and the writes, one at a time.
+    private final Executor mWriteExecutor;
+    private final JavaRequestScheduler mRequestScheduler;
+    private final JavaRequestScheduler.Ticket mSchedulerTicket;
+    private final VersionSafeCallbacks.BidirectionalStreamCallback mCallback;
+    private final String mInitialUrl;
+    private final String mInitialMethod;
+    private final List<Map.Entry<String, String>> mRequestHeaders;
+    private final String mUserAgent;
+    private final boolean mDelayRequestHeadersUntilFirstFlush;
+    private final boolean mTrafficStatsTagSet;
+    private final int mTrafficStatsTag;
+    private final boolean mTrafficStatsUidSet;
+    private final int mTrafficStatsUid;
+
+    private final Object mLock = new Object();
+
+    @GuardedBy("mLock")
+    private @State int mReadState = State.NOT_STARTED;
+    @GuardedBy("mLock")
+    private @State int mWriteState = State.NOT_STARTED;
+    // Whether the stream reached a final state.
+    @GuardedBy("mLock")
+    private boolean mDone;
+    @GuardedBy("mLock")
+    private Socket mSocket;
+    // Buffers written but not flushed yet.
+    @GuardedBy("mLock")
+    private final ArrayDeque<ByteBuffer> mPendingData = new ArrayDeque<>();
+    // Buffers flushed while a previous write was in progress.
+    @GuardedBy("mLock")
+    private final ArrayDeque<ByteBuffer> mFlushData = new ArrayDeque<>();
+    @GuardedBy("mLock")
+    private boolean mEndOfStreamWritten;
+    @GuardedBy("mLock")
+    private boolean mRequestHeadersSent;
+    @GuardedBy("mLock")
+    private boolean mResponseHeadersReceived;
+    // Buffer passed to read() before the response headers were received.
+    @GuardedBy("mLock")
+    private ByteBuffer mPendingReadBuffer;
+
+    // Only accessed by tasks of mWriteExecutor.
+    private OutputStream mOutputStream;
+    private byte[] mWriteScratch;
+    // Only accessed by the response reading tasks, which never run concurrently.
+    private ResponseBodyReader mResponseBody;
+    private byte[] mReadScratch;
+    private volatile UrlResponseInfoImpl mResponseInfo;
+
+    /**
+     * Reads the response of a connection, keeping count of the received bytes.
+     */
+    private static final class ResponseReader {
+        private final InputStream mInputStream;
+        private long mReceivedByteCount;
+
+        ResponseReader(InputStream inputStream) {
+            mInputStream = inputStream;
+        }
+
+        /**
+         * Reads a line terminated by CRLF or LF, without the terminator.
+         */
+        String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            while (true) {
+                int c = mInputStream.read();
+                if (c < 0) {
+                    throw new EOFException("Connection closed in the response headers");
+                }
+                mReceivedByteCount++;
+                if (c == '\n') {
+                    int length = line.length();
+                    if (length > 0 && line.charAt(length - 1) == '\r') {
+                        line.setLength(length - 1);
+                    }
+                    return line.toString();
+                }
+                line.append((char) c);
+            }
+        }
+
+        /**
+         * Reads header fields up to and including the empty line ending them.
+         */
+        List<Map.Entry<String, String>> readHeaders() throws IOException {
+            List<Map.Entry<String, String>> headers = new ArrayList<>();
+            String line;
+            while (!(line = readLine()).isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon <= 0) {
+                    throw new ProtocolException("Invalid header line: " + line);
+                }
+                headers.add(new AbstractMap.SimpleImmutableEntry<>(
+                        line.substring(0, colon).trim(), line.substring(colon + 1).trim()));
+            }
+            return headers;
+        }
+
+        int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = mInputStream.read(buffer, offset, length);
+            if (read > 0) {
+                mReceivedByteCount += read;
+            }
+            return read;
+        }
+
+        long getReceivedByteCount() {
+            return mReceivedByteCount;
+        }
+    }
+
+    /**
+     * Decodes the framing of a response body: chunked, delimited by Content-Length, or by the end
+     * of the connection.
+     */
+    private static final class ResponseBodyReader {
+        private final ResponseReader mReader;
+        private final boolean mChunked;
+        // Bytes left in the current chunk or in the body, -1 if unknown.
+        private long mRemaining;
+        private boolean mDone;
+        // Whether the size line of a chunk was read.
+        private boolean mInChunks;
+        private List<Map.Entry<String, String>> mTrailers = Collections.emptyList();
+
+        ResponseBodyReader(ResponseReader reader, boolean chunked, long contentLength) {
+            mReader = reader;
+            mChunked = chunked;
+            mRemaining = chunked ? 0 : contentLength;
+            mDone = !chunked && contentLength == 0;
+        }
+
+        /**
+         * Reads up to |length| bytes of the body, or returns -1 at its end.
+         */
+        int read(byte[] buffer, int length) throws IOException {
+            if (mDone) {
+                return -1;
+            }
+            if (mChunked && mRemaining == 0) {
+                if (!startChunk()) {
+                    mDone = true;
+                    return -1;
+                }
+            }
+            int toRead = mRemaining < 0 ? length : (int) Math.min(length, mRemaining);
+            int read = mReader.read(buffer, 0, toRead);
+            if (read < 0) {
+                if (mRemaining >= 0) {
+                    throw new EOFException("Connection closed in the response body");
+                }
+                mDone = true;
+                return -1;
+            }
+            if (mRemaining > 0) {
+                mRemaining -= read;
+                if (mRemaining == 0 && !mChunked) {
+                    mDone = true;
+                }
+            }
+            return read;
+        }
+
+        /**
+         * Reads the size line of the next chunk. Returns false, after reading the trailers, if it
+         * is the last one.
+         */
+        private boolean startChunk() throws IOException {
+            if (mInChunks) {
+                // CRLF ending the data of the previous chunk.
+                if (!mReader.readLine().isEmpty()) {
+                    throw new ProtocolException("Invalid chunk terminator");
+                }
+            }
+            mInChunks = true;
+            String line = mReader.readLine();
+            int extension = line.indexOf(';');
+            String size = (extension < 0 ? line : line.substring(0, extension)).trim();
+            try {
+                mRemaining = Long.parseLong(size, 16);
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Invalid chunk size: " + line);
+            }
+            if (mRemaining < 0) {
+                throw new ProtocolException("Invalid chunk size: " + line);
+            }
+            if (mRemaining == 0) {
+                mTrailers = mReader.readHeaders();
+                return false;
+            }
+            return true;
+        }
+
+        long getReceivedByteCount() {
+            return mReader.getReceivedByteCount();
+        }
+
+        List<Map.Entry<String, String>> getTrailers() {
+            return mTrailers;
+        }
+    }
+
+    private final class OnReadCompletedRunnable implements Runnable {
+        private final ByteBuffer mByteBuffer;
+        private final boolean mEndOfStream;
+
+        OnReadCompletedRunnable(ByteBuffer buffer, boolean endOfStream) {
+            mByteBuffer = buffer;
+            mEndOfStream = endOfStream;
+        }
+
+        @Override
+        public void run() {
+            try {
+                boolean maybeOnSucceeded = false;
+                synchronized (mLock) {
+                    if (isDoneLocked()) {
+                        return;
+                    }
+                    if (mEndOfStream) {
+                        mReadState = State.READING_DONE;
+                        maybeOnSucceeded = (mWriteState == State.WRITING_DONE);
+                    } else {
+                        mReadState = State.WAITING_FOR_READ;
+                    }
+                }
+                mCallback.onReadCompleted(
+                        JavaBidirectionalStream.this, mResponseInfo, mByteBuffer, mEndOfStream);
+                if (maybeOnSucceeded) {
+                    maybeOnSucceededOnExecutor();
+                }
+            } catch (Exception e) {
+                onCallbackException(e);
+            }
+        }
+    }
+
+    private final class OnWriteCompletedRunnable implements Runnable {
+        private final ByteBuffer mByteBuffer;
+        private final boolean mEndOfStream;
+
+        OnWriteCompletedRunnable(ByteBuffer buffer, boolean endOfStream) {
+            mByteBuffer = buffer;
+            mEndOfStream = endOfStream;
+        }
+
+        @Override
+        public void run() {
+            try {
+                boolean maybeOnSucceeded = false;
+                synchronized (mLock) {
+                    if (isDoneLocked()) {
+                        return;
+                    }
+                    if (mEndOfStream) {
+                        mWriteState = State.WRITING_DONE;
+                        maybeOnSucceeded = (mReadState == State.READING_DONE);
+                    }
+                }
+                mCallback.onWriteCompleted(
+                        JavaBidirectionalStream.this, mResponseInfo, mByteBuffer, mEndOfStream);
+                if (maybeOnSucceeded) {
+                    maybeOnSucceededOnExecutor();
+                }
+            } catch (Exception e) {
+                onCallbackException(e);
+            }
+        }
+    }
+
+    /**
+     * @param networkExecutor The executor used for reading and writing from sockets
+     * @param requestScheduler The scheduler admitting the stream once it is started
+     * @param executor The executor used to dispatch to {@code callback}
+     */
+    JavaBidirectionalStream(Executor networkExecutor, String url, String userAgent,
+            @CronetEngineBase.StreamPriority int priority, JavaRequestScheduler requestScheduler,
+            Callback callback, Executor executor, String httpMethod,
+            List<Map.Entry<String, String>> requestHeaders,
+            boolean delayRequestHeadersUntilFirstFlush, boolean trafficStatsTagSet,
+            int trafficStatsTag, boolean trafficStatsUidSet, int trafficStatsUid) {
+        mNetworkExecutor = networkExecutor;
+        mWriteExecutor = new SerializingExecutor(networkExecutor);
+        mRequestScheduler = requestScheduler;
+        mSchedulerTicket = new JavaRequestScheduler.Ticket(getHost(url), priority, new Runnable() {
+            @Override
+            public void run() {
+                if (isDone()) {
+                    // Finished while it was being admitted.
+                    mRequestScheduler.finish(mSchedulerTicket);
+                    return;
+                }
+                executeNetworkTask(mWriteExecutor, new JavaUrlRequestUtils.CheckedRunnable() {
+                    @Override
+                    public void run() throws Exception {
+                        connect();
+                    }
+                });
+            }
+        });
+        mInitialUrl = url;
+        mUserAgent = userAgent;
+        mCallback = new VersionSafeCallbacks.BidirectionalStreamCallback(callback);
+        mExecutor = executor;
+        mInitialMethod = httpMethod;
+        mRequestHeaders = new ArrayList<>(requestHeaders);
+        mDelayRequestHeadersUntilFirstFlush = delayRequestHeadersUntilFirstFlush;
+        mTrafficStatsTagSet = trafficStatsTagSet;
+        mTrafficStatsTag = trafficStatsTag;
+        mTrafficStatsUidSet = trafficStatsUidSet;
+        mTrafficStatsUid = trafficStatsUid;
+    }
+
+    @Override
+    public void start() {
+        synchronized (mLock) {
+            if (mReadState != State.NOT_STARTED) {
+                throw new IllegalStateException("Stream is already started.");
+            }
+            if (!JavaUrlRequestUtils.isValidHeaderName(mInitialMethod)) {
+                throw new IllegalArgumentException("Invalid http method " + mInitialMethod);
+            }
+            for (Map.Entry<String, String> header : mRequestHeaders) {
+                if (!JavaUrlRequestUtils.isValidHeaderName(header.getKey())
+                        || header.getValue().contains("\r") || header.getValue().contains("\n")) {
+                    throw new IllegalArgumentException(
+                            "Invalid header " + header.getKey() + "=" + header.getValue());
+                }
+            }
+            mReadState = mWriteState = State.STARTED;
+        }
+        try {
+            mRequestScheduler.schedule(mSchedulerTicket);
+        } catch (RejectedExecutionException e) {
+            failWithException(new CronetExceptionImpl("Exception scheduling stream", e));
+        }
+    }
+
+    /**
+     * Returns the host of {@code url}, or an empty string if it has none. The stream fails to
+     * connect if the URL is invalid.
+     */
+    private static String getHost(String url) {
+        try {
+            String host = new URL(url).getHost();
+            return host == null ? "" : host;
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
+
+    @Override
+    public void read(ByteBuffer buffer) {
+        synchronized (mLock) {
+            Preconditions.checkHasRemaining(buffer);
+            Preconditions.checkDirect(buffer);
+            if (mReadState != State.WAITING_FOR_READ) {
+                throw new IllegalStateException("Unexpected read attempt.");
+            }
+            if (isDoneLocked()) {
+                return;
+            }
+            mReadState = State.READING;
+            if (!mResponseHeadersReceived) {
+                // Served once the response headers are received.
+                mPendingReadBuffer = buffer;
+                return;
+            }
+        }
+        startRead(buffer);
+    }
+
+    @Override
+    public void write(ByteBuffer buffer, boolean endOfStream) {
+        synchronized (mLock) {
+            Preconditions.checkDirect(buffer);
+            if (!buffer.hasRemaining() && !endOfStream) {
+                throw new IllegalArgumentException("Empty buffer before end of stream.");
+            }
+            if (mEndOfStreamWritten) {
+                throw new IllegalArgumentException("Write after writing end of stream.");
+            }
+            if (isDoneLocked()) {
+                return;
+            }
+            mPendingData.add(buffer);
+            if (endOfStream) {
+                mEndOfStreamWritten = true;
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        synchronized (mLock) {
+            if (isDoneLocked()
+                    || (mWriteState != State.WAITING_FOR_FLUSH && mWriteState != State.WRITING)) {
+                return;
+            }
+            if (mPendingData.isEmpty() && mFlushData.isEmpty()) {
+                // If there is no pending write when flush() is called, see if
+                // request headers need to be flushed.
+                if (!mRequestHeadersSent) {
+                    mRequestHeadersSent = true;
+                    if (!doesMethodAllowWriteData(mInitialMethod)) {
+                        mWriteState = State.WRITING_DONE;
+                    }
+                    executeNetworkTask(mWriteExecutor, new JavaUrlRequestUtils.CheckedRunnable() {
+                        @Override
+                        public void run() throws Exception {
+                            writeRequestHeaders();
+                            mOutputStream.flush();
+                            startReadingResponse();
+                        }
+                    });
+                }
+                return;
+            }
+            mFlushData.addAll(mPendingData);
+            mPendingData.clear();
+            if (mWriteState == State.WRITING) {
+                // Sent when the write in progress completes.
+                return;
+            }
+            sendFlushDataLocked();
+        }
+    }
+
+    /**
+     * Sends the buffers of {@link #mFlushData}, preceded by the request headers if they were not
+     * sent yet. The caller must ensure that the write state is {@link State#WAITING_FOR_FLUSH} and
+     * that {@link #mFlushData} is not empty.
+     */
+    @GuardedBy("mLock")
+    private void sendFlushDataLocked() {
+        assert mWriteState == State.WAITING_FOR_FLUSH;
+        final ByteBuffer[] buffers = mFlushData.toArray(new ByteBuffer[mFlushData.size()]);
+        mFlushData.clear();
+        final boolean sendRequestHeaders = !mRequestHeadersSent;
+        final boolean endOfStream = mEndOfStreamWritten && mPendingData.isEmpty();
+        mWriteState = State.WRITING;
+        mRequestHeadersSent = true;
+        executeNetworkTask(mWriteExecutor, new JavaUrlRequestUtils.CheckedRunnable() {
+            @Override
+            public void run() throws Exception {
+                if (sendRequestHeaders) {
+                    writeRequestHeaders();
+                }
+                for (ByteBuffer buffer : buffers) {
+                    writeChunk(buffer.duplicate());
+                }
+                if (endOfStream) {
+                    mOutputStream.write(LAST_CHUNK);
+                }
+                mOutputStream.flush();
+                if (sendRequestHeaders) {
+                    startReadingResponse();
+                }
+                onWritevCompleted(buffers, endOfStream);
+            }
+        });
+    }
+
+    @Override
+    public void cancel() {
+        synchronized (mLock) {
+            if (isDoneLocked() || mReadState == State.NOT_STARTED) {
+                return;
+            }
+            mReadState = mWriteState = State.CANCELED;
+            closeLocked();
+        }
+        mRequestScheduler.finish(mSchedulerTicket);
+        postTaskToExecutor(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mCallback.onCanceled(JavaBidirectionalStream.this, mResponseInfo);
+                } catch (Exception e) {
+                    Log.e(TAG, "Exception in onCanceled method", e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean isDone() {
+        synchronized (mLock) {
+            return isDoneLocked();
+        }
+    }
+
+    @GuardedBy("mLock")
+    private boolean isDoneLocked() {
+        return mReadState != State.NOT_STARTED && mDone;
+    }
+
+    /**
+     * Throws if the system selects a proxy for |url|, as the stream can only connect directly.
+     */
+    private static void checkNoProxy(URL url) throws IOException {
+        ProxySelector proxySelector = ProxySelector.getDefault();
+        if (proxySelector == null) {
+            return;
+        }
+        List<Proxy> proxies;
+        try {
+            proxies = proxySelector.select(url.toURI());
+        } catch (URISyntaxException e) {
+            throw new MalformedURLException(e.getMessage());
+        }
+        for (Proxy proxy : proxies) {
+            if (proxy.type() != Proxy.Type.DIRECT) {
+                throw new ProtocolException("Proxies are not supported, but " + proxy
+                        + " is configured for " + url);
+            }
+        }
+    }
+
+    /**
+     * Opens the connection, sends the request headers unless they are delayed, and notifies
+     * {@link Callback#onStreamReady}. Runs on {@link #mWriteExecutor}.
+     */
+    private void connect() throws IOException {
+        URL url = new URL(mInitialUrl);
+        boolean secure = "https".equalsIgnoreCase(url.getProtocol());
+        if (!secure && !"http".equalsIgnoreCase(url.getProtocol())) {
+            throw new ProtocolException("Unsupported scheme " + url.getProtocol());
+        }
+        String host = url.getHost();
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        checkNoProxy(url);
+        Socket socket = new Socket();
+        synchronized (mLock) {
+            if (mDone) {
+                return;
+            }
+            // Set now so that cancel() can interrupt the connection.
+            mSocket = socket;
+        }
+        socket.connect(new InetSocketAddress(host, port));
+        socket.setTcpNoDelay(true);
+        if (secure) {
+            SSLSocket sslSocket = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                                          .createSocket(socket, host, port, true);
+            sslSocket.startHandshake();
+            if (!HttpsURLConnection.getDefaultHostnameVerifier().verify(
+                        host, sslSocket.getSession())) {
+                sslSocket.close();
+                throw new SSLPeerUnverifiedException("Hostname " + host + " not verified");
+            }
+            synchronized (mLock) {
+                if (mDone) {
+                    sslSocket.close();
+                    return;
+                }
+                mSocket = sslSocket;
+            }
+            socket = sslSocket;
+        }
+        mOutputStream = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+        final boolean requestHeadersSent = !mDelayRequestHeadersUntilFirstFlush;
+        if (requestHeadersSent) {
+            writeRequestHeaders();
+            mOutputStream.flush();
+        }
+        postTaskToExecutor(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mLock) {
+                    if (isDoneLocked()) {
+                        return;
+                    }
+                    mRequestHeadersSent = requestHeadersSent;
+                    mReadState = State.WAITING_FOR_READ;
+                    if (!doesMethodAllowWriteData(mInitialMethod) && mRequestHeadersSent) {
+                        mWriteState = State.WRITING_DONE;
+                    } else {
+                        mWriteState = State.WAITING_FOR_FLUSH;
+                    }
+                }
+                try {
+                    mCallback.onStreamReady(JavaBidirectionalStream.this);
+                } catch (Exception e) {
+                    onCallbackException(e);
+                    return;
+                }
+                if (requestHeadersSent) {
+                    // Only started once onStreamReady returned, so that the response callbacks
+                    // can't be delivered before it.
+                    executeNetworkTask(mWriteExecutor, new JavaUrlRequestUtils.CheckedRunnable() {
+                        @Override
+                        public void run() throws Exception {
+                            startReadingResponse();
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the request line and headers, without flushing them. Runs on
+     * {@link #mWriteExecutor}.
+     */
+    private void writeRequestHeaders() throws IOException {
+        URL url = new URL(mInitialUrl);
+        String target = url.getFile().isEmpty() ? "/" : url.getFile();
+        StringBuilder headers = new StringBuilder();
+        headers.append(mInitialMethod).append(' ').append(target).append(" HTTP/1.1\r\n");
+        headers.append("Host: ").append(url.getHost());
+        if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+            headers.append(':').append(url.getPort());
+        }
+        headers.append("\r\n");
+        boolean hasUserAgent = false;
+        for (Map.Entry<String, String> header : mRequestHeaders) {
+            hasUserAgent |= USER_AGENT.equalsIgnoreCase(header.getKey());
+            headers.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        if (!hasUserAgent) {
+            headers.append(USER_AGENT).append(": ").append(mUserAgent).append("\r\n");
+        }
+        if (doesMethodAllowWriteData(mInitialMethod)) {
+            headers.append("Transfer-Encoding: chunked\r\n");
+        }
+        headers.append("\r\n");
+        mOutputStream.write(headers.toString().getBytes("ISO-8859-1"));
+    }
+
+    /**
+     * Writes the remaining bytes of |buffer| as a chunk. Runs on {@link #mWriteExecutor}.
+     */
+    private void writeChunk(ByteBuffer buffer) throws IOException {
+        int length = buffer.remaining();
+        if (length == 0) {
+            return;
+        }
+        mOutputStream.write(Integer.toHexString(length).getBytes("ISO-8859-1"));
+        mOutputStream.write(CRLF);
+        if (mWriteScratch == null) {
+            mWriteScratch = new byte[BUFFER_SIZE];
+        }
+        while (buffer.hasRemaining()) {
+            int count = Math.min(buffer.remaining(), mWriteScratch.length);
+            buffer.get(mWriteScratch, 0, count);
+            mOutputStream.write(mWriteScratch, 0, count);
+        }
+        mOutputStream.write(CRLF);
+    }
+
+    private void onWritevCompleted(ByteBuffer[] buffers, boolean endOfStream) {
+        synchronized (mLock) {
+            if (isDoneLocked()) {
+                return;
+            }
+            mWriteState = State.WAITING_FOR_FLUSH;
+            // Flush if there is anything in the flush queue mFlushData.
+            if (!mFlushData.isEmpty()) {
+                sendFlushDataLocked();
+            }
+        }
+        for (int i = 0; i < buffers.length; i++) {
+            ByteBuffer buffer = buffers[i];
+            buffer.position(buffer.limit());
+            postTaskToExecutor(new OnWriteCompletedRunnable(buffer,
+                    // Only set endOfStream flag if this buffer is the last in buffers.
+                    endOfStream && i == buffers.length - 1));
+        }
+    }
+
+    /**
+     * Starts reading the response headers, once the request headers are sent.
+     */
+    private void startReadingResponse() throws IOException {
+        final InputStream inputStream;
+        synchronized (mLock) {
+            if (mDone) {
+                return;
+            }
+            inputStream = new BufferedInputStream(mSocket.getInputStream(), BUFFER_SIZE);
+        }
+        executeNetworkTask(mNetworkExecutor, new JavaUrlRequestUtils.CheckedRunnable() {
+            @Override
+            public void run() throws Exception {
+                readResponseHeaders(new ResponseReader(inputStream));
+            }
+        });
+    }
+
+    private void readResponseHeaders(ResponseReader reader) throws IOException {
+        int httpStatusCode;
+        String httpStatusText;
+        List<Map.Entry<String, String>> headers;
+        do {
+            // Status-Line = HTTP-Version SP Status-Code SP Reason-Phrase
+            String statusLine = reader.readLine();
+            String[] parts = statusLine.split(" ", 3);
+            if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+                throw new ProtocolException("Invalid status line: " + statusLine);
+            }
+            try {
+                httpStatusCode = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Invalid status line: " + statusLine);
+            }
+            httpStatusText = parts.length > 2 ? parts[2] : "";
+            headers = reader.readHeaders();
+            // Skip interim responses, such as 100 Continue.
+        } while (httpStatusCode >= 100 && httpStatusCode < 200);
+
+        boolean chunked = false;
+        long contentLength = -1;
+        for (Map.Entry<String, String> header : headers) {
+            if ("Transfer-Encoding".equalsIgnoreCase(header.getKey())) {
+                chunked = header.getValue().toLowerCase().endsWith("chunked");
+            } else if ("Content-Length".equalsIgnoreCase(header.getKey())) {
+                try {
+                    contentLength = Long.parseLong(header.getValue());
+                } catch (NumberFormatException e) {
+                    throw new ProtocolException("Invalid Content-Length: " + header.getValue());
+                }
+            }
+        }
+        if ("HEAD".equalsIgnoreCase(mInitialMethod) || httpStatusCode == 204
+                || httpStatusCode == 304) {
+            chunked = false;
+            contentLength = 0;
+        }
+        mResponseBody = new ResponseBodyReader(reader, chunked, chunked ? -1 : contentLength);
+        mResponseInfo = new UrlResponseInfoImpl(Collections.singletonList(mInitialUrl),
+                httpStatusCode, httpStatusText, headers, false, PROTOCOL, null,
+                reader.getReceivedByteCount());
+        postTaskToExecutor(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mLock) {
+                    if (isDoneLocked()) {
+                        return;
+                    }
+                }
+                try {
+                    mCallback.onResponseHeadersReceived(
+                            JavaBidirectionalStream.this, mResponseInfo);
+                } catch (Exception e) {
+                    onCallbackException(e);
+                }
+            }
+        });
+        ByteBuffer pendingReadBuffer;
+        synchronized (mLock) {
+            mResponseHeadersReceived = true;
+            pendingReadBuffer = mPendingReadBuffer;
+            mPendingReadBuffer = null;
+        }
+        if (pendingReadBuffer != null) {
+            startRead(pendingReadBuffer);
+        }
+    }
+
+    private void startRead(final ByteBuffer buffer) {
+        executeNetworkTask(mNetworkExecutor, new JavaUrlRequestUtils.CheckedRunnable() {
+            @Override
+            public void run() throws Exception {
+                if (mReadScratch == null) {
+                    mReadScratch = new byte[BUFFER_SIZE];
+                }
+                int read = mResponseBody.read(
+                        mReadScratch, Math.min(buffer.remaining(), mReadScratch.length));
+                mResponseInfo.setReceivedByteCount(mResponseBody.getReceivedByteCount());
+                if (read > 0) {
+                    buffer.put(mReadScratch, 0, read);
+                    postTaskToExecutor(new OnReadCompletedRunnable(buffer, false));
+                    return;
+                }
+                final List<Map.Entry<String, String>> trailers = mResponseBody.getTrailers();
+                if (!trailers.isEmpty()) {
+                    postTaskToExecutor(new Runnable() {
+                        @Override
+                        public void run() {
+                            synchronized (mLock) {
+                                if (isDoneLocked()) {
+                                    return;
+                                }
+                            }
+                            try {
+                                mCallback.onResponseTrailersReceived(JavaBidirectionalStream.this,
+                                        mResponseInfo,
+                                        new UrlResponseInfoImpl.HeaderBlockImpl(trailers));
+                            } catch (Exception e) {
+                                onCallbackException(e);
+                            }
+                        }
+                    });
+                }
+                postTaskToExecutor(new OnReadCompletedRunnable(buffer, true));
+            }
+        });
+    }
+
+    /*
+     * Runs an onSucceeded callback if both Read and Write sides are closed.
+     */
+    private void maybeOnSucceededOnExecutor() {
+        synchronized (mLock) {
+            if (isDoneLocked()) {
+                return;
+            }
+            if (!(mWriteState == State.WRITING_DONE && mReadState == State.READING_DONE)) {
+                return;
+            }
+            mReadState = mWriteState = State.SUCCESS;
+            closeLocked();
+        }
+        mRequestScheduler.finish(mSchedulerTicket);
+        try {
+            mCallback.onSucceeded(JavaBidirectionalStream.this, mResponseInfo);
+        } catch (Exception e) {
+            Log.e(TAG, "Exception in onSucceeded method", e);
+        }
+    }
+
+    /**
+     * Marks the stream as done and closes its socket, which makes the blocked network tasks fail.
+     */
+    @GuardedBy("mLock")
+    private void closeLocked() {
+        mDone = true;
+        mPendingData.clear();
+        mFlushData.clear();
+        mPendingReadBuffer = null;
+        if (mSocket != null) {
+            try {
+                mSocket.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Exception when closing socket", e);
+            }
+            mSocket = null;
+        }
+    }
+
+    /**
+     * Runs |task| on |executor| with the traffic stats tags of the stream, failing the stream if
+     * it throws.
+     */
+    private void executeNetworkTask(
+            Executor executor, final JavaUrlRequestUtils.CheckedRunnable task) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int oldTag = TrafficStats.getThreadStatsTag();
+                    if (mTrafficStatsTagSet) {
+                        TrafficStats.setThreadStatsTag(mTrafficStatsTag);
+                    }
+                    if (mTrafficStatsUidSet) {
+                        ThreadStatsUid.set(mTrafficStatsUid);
+                    }
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        failWithException(new CronetExceptionImpl("System error", t));
+                    } finally {
+                        if (mTrafficStatsUidSet) {
+                            ThreadStatsUid.clear();
+                        }
+                        TrafficStats.setThreadStatsTag(oldTag);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            failWithException(new CronetExceptionImpl("Exception posting task to executor", e));
+        }
+    }
+
+    private static boolean doesMethodAllowWriteData(String methodName) {
+        return !methodName.equals("GET") && !methodName.equals("HEAD");
+    }
+
+    /**
+     * Posts task to application Executor. Used for callbacks
+     * and other tasks that should not be executed on network thread.
+     */
+    private void postTaskToExecutor(Runnable task) {
+        try {
+            mExecutor.execute(task);
+        } catch (RejectedExecutionException failException) {
+            Log.e(TAG, "Exception posting task to executor", failException);
+            // If posting a task throws an exception, then there is no choice
+            // but to close the stream without invoking the callback.
+            synchronized (mLock) {
+                mReadState = mWriteState = State.ERROR;
+                closeLocked();
+            }
+            mRequestScheduler.finish(mSchedulerTicket);
+        }
+    }
+
+    /**
+     * If callback method throws an exception, stream gets canceled
+     * and exception is reported via onFailed callback.
+     * Only called on the Executor.
+     */
+    private void onCallbackException(Exception e) {
+        CronetException streamError = new CallbackExceptionImpl(
+                "Exception received from BidirectionalStream.Callback", e);
+        Log.e(TAG, "Exception in callback method", e);
+        failWithExceptionOnExecutor(streamError);
+    }
+
+    /**
+     * Fails the stream with an exception. Can be called on any thread.
+     */
+    private void failWithException(final CronetException exception) {
+        postTaskToExecutor(new Runnable() {
+            @Override
+            public void run() {
+                failWithExceptionOnExecutor(exception);
+            }
+        });
+    }
+
+    /**
+     * Fails the stream with an exception. Only called on the Executor.
+     */
+    private void failWithExceptionOnExecutor(CronetException e) {
+        // Do not call into mCallback if request is complete.
+        synchronized (mLock) {
+            if (isDoneLocked()) {
+                return;
+            }
+            mReadState = mWriteState = State.ERROR;
+            closeLocked();
+        }
+        mRequestScheduler.finish(mSchedulerTicket);
+        try {
+            mCallback.onFailed(this, mResponseInfo, e);
+        } catch (Exception failException) {
+            Log.e(TAG, "Exception notifying of failed request", failException);
+        }
+    }
+}
@@ -7,6 +7,10 @@ package org.chromium.net.impl;
 import static android.os.Process.THREAD_PRIORITY_BACKGROUND;
 import static android.os.Process.THREAD_PRIORITY_MORE_FAVORABLE;
 
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
 import org.chromium.net.BidirectionalStream;
 import org.chromium.net.ExperimentalBidirectionalStream;
 import org.chromium.net.NetworkQualityRttListener;
@@ -20,24 +24,48 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
 import java.net.URLStreamHandlerFactory;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.GuardedBy;
+
 /**
  * {@link java.net.HttpURLConnection} backed CronetEngine.
  *
- * <p>Does not support netlogs, transferred data measurement, bidistream, cache, or priority.
+ * <p>Does not support netlogs or transferred data measurement. The HTTP cache is
+ * implemented by {@link JavaHttpCache}, bidirectional streams by {@link JavaBidirectionalStream},
+ * and network quality estimation by {@link JavaNetworkQualityEstimator}. Requests and streams are
+ * admitted by priority by a {@link JavaRequestScheduler}, whose limits also size the thread pool.
  */
 public final class JavaCronetEngine extends CronetEngineBase {
+    private static final String TAG = JavaCronetEngine.class.getSimpleName();
+
     private final String mUserAgent;
     private final ExecutorService mExecutorService;
+    private final JavaRequestScheduler mRequestScheduler;
+    @Nullable
+    private final JavaHttpCache mHttpCache;
+    private final boolean mNetworkQualityEstimatorEnabled;
+    private final JavaNetworkQualityEstimator mNetworkQualityEstimator =
+            new JavaNetworkQualityEstimator();
+
+    private final Object mFinishedListenerLock = new Object();
+    @GuardedBy("mFinishedListenerLock")
+    private final Map<RequestFinishedInfo.Listener,
+            VersionSafeCallbacks.RequestFinishedInfoListener> mFinishedListenerMap =
+            new HashMap<RequestFinishedInfo.Listener,
+                    VersionSafeCallbacks.RequestFinishedInfoListener>();
 
     public JavaCronetEngine(CronetEngineBuilderImpl builder) {
         // On android, all background threads (and all threads that are part
@@ -49,8 +77,15 @@ public final class JavaCronetEngine extends CronetEngineBase {
         final int threadPriority =
                 builder.threadPriority(THREAD_PRIORITY_BACKGROUND + THREAD_PRIORITY_MORE_FAVORABLE);
         this.mUserAgent = builder.getUserAgent();
-        this.mExecutorService = new ThreadPoolExecutor(10, 20, 50, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        this.mHttpCache = JavaHttpCache.create(builder);
+        this.mNetworkQualityEstimatorEnabled = builder.networkQualityEstimatorEnabled();
+        this.mRequestScheduler = JavaRequestScheduler.create(builder);
+        // A request runs at most one task at a time, and a stream two, so that tasks only wait for
+        // a thread when every admitted request is a stream. Idle threads time out, so the pool
+        // doesn't hold on to them between bursts.
+        final int threadCount = 2 * mRequestScheduler.getMaxConcurrentRequests();
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(threadCount, threadCount, 50,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
                     @Override
                     public Thread newThread(final Runnable r) {
                         return Executors.defaultThreadFactory().newThread(new Runnable() {
@@ -63,6 +98,8 @@ public final class JavaCronetEngine extends CronetEngineBase {
                         });
                     }
                 });
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        this.mExecutorService = threadPoolExecutor;
     }
 
     @Override
@@ -72,9 +109,10 @@ public final class JavaCronetEngine extends CronetEngineBase {
             boolean trafficStatsTagSet, int trafficStatsTag, boolean trafficStatsUidSet,
             int trafficStatsUid, RequestFinishedInfo.Listener requestFinishedListener,
             int idempotency) {
-        return new JavaUrlRequest(callback, mExecutorService, executor, url, mUserAgent,
-                allowDirectExecutor, trafficStatsTagSet, trafficStatsTag, trafficStatsUidSet,
-                trafficStatsUid);
+        return new JavaUrlRequest(callback, mExecutorService, executor, url, mUserAgent, priority,
+                mRequestScheduler, allowDirectExecutor, trafficStatsTagSet, trafficStatsTag,
+                trafficStatsUidSet, trafficStatsUid, disableCache ? null : mHttpCache, this,
+                connectionAnnotations, requestFinishedListener);
     }
 
     @Override
@@ -84,16 +122,16 @@ public final class JavaCronetEngine extends CronetEngineBase {
             boolean delayRequestHeadersUntilFirstFlush, Collection<Object> connectionAnnotations,
             boolean trafficStatsTagSet, int trafficStatsTag, boolean trafficStatsUidSet,
             int trafficStatsUid) {
-        throw new UnsupportedOperationException(
-                "Can't create a bidi stream - httpurlconnection doesn't have those APIs");
+        return new JavaBidirectionalStream(mExecutorService, url, mUserAgent, priority,
+                mRequestScheduler, callback, executor, httpMethod, requestHeaders,
+                delayRequestHeadersUntilFirstFlush, trafficStatsTagSet, trafficStatsTag,
+                trafficStatsUidSet, trafficStatsUid);
     }
 
     @Override
     public ExperimentalBidirectionalStream.Builder newBidirectionalStreamBuilder(
             String url, BidirectionalStream.Callback callback, Executor executor) {
-        throw new UnsupportedOperationException(
-                "The bidirectional stream API is not supported by the Java implementation "
-                + "of Cronet Engine");
+        return new BidirectionalStreamBuilderImpl(url, callback, executor, this);
     }
 
     @Override
@@ -122,12 +160,16 @@ public final class JavaCronetEngine extends CronetEngineBase {
 
     @Override
     public int getEffectiveConnectionType() {
-        return EFFECTIVE_CONNECTION_TYPE_UNKNOWN;
+        // Unlike the native engine, which throws, the Java engine has always ignored these calls
+        // and returned unknown metrics while the estimator is disabled, and apps rely on it.
+        if (!mNetworkQualityEstimatorEnabled) return EFFECTIVE_CONNECTION_TYPE_UNKNOWN;
+        return mNetworkQualityEstimator.getEffectiveConnectionType();
     }
 
     @Override
     public int getHttpRttMs() {
-        return CONNECTION_METRIC_UNKNOWN;
+        if (!mNetworkQualityEstimatorEnabled) return CONNECTION_METRIC_UNKNOWN;
+        return mNetworkQualityEstimator.getHttpRttMs();
     }
 
     @Override
@@ -137,30 +179,154 @@ public final class JavaCronetEngine extends CronetEngineBase {
 
     @Override
     public int getDownstreamThroughputKbps() {
-        return CONNECTION_METRIC_UNKNOWN;
+        if (!mNetworkQualityEstimatorEnabled) return CONNECTION_METRIC_UNKNOWN;
+        return mNetworkQualityEstimator.getDownstreamThroughputKbps();
     }
 
     @Override
     public void configureNetworkQualityEstimatorForTesting(boolean useLocalHostRequests,
-            boolean useSmallerResponses, boolean disableOfflineCheck) {}
+            boolean useSmallerResponses, boolean disableOfflineCheck) {
+        if (!mNetworkQualityEstimatorEnabled) return;
+        mNetworkQualityEstimator.configureForTesting(useLocalHostRequests, useSmallerResponses);
+    }
 
     @Override
-    public void addRttListener(NetworkQualityRttListener listener) {}
+    public void addRttListener(NetworkQualityRttListener listener) {
+        if (!mNetworkQualityEstimatorEnabled) return;
+        mNetworkQualityEstimator.addRttListener(listener);
+    }
 
     @Override
-    public void removeRttListener(NetworkQualityRttListener listener) {}
+    public void removeRttListener(NetworkQualityRttListener listener) {
+        if (!mNetworkQualityEstimatorEnabled) return;
+        mNetworkQualityEstimator.removeRttListener(listener);
+    }
 
     @Override
-    public void addThroughputListener(NetworkQualityThroughputListener listener) {}
+    public void addThroughputListener(NetworkQualityThroughputListener listener) {
+        if (!mNetworkQualityEstimatorEnabled) return;
+        mNetworkQualityEstimator.addThroughputListener(listener);
+    }
 
     @Override
-    public void removeThroughputListener(NetworkQualityThroughputListener listener) {}
+    public void removeThroughputListener(NetworkQualityThroughputListener listener) {
+        if (!mNetworkQualityEstimatorEnabled) return;
+        mNetworkQualityEstimator.removeThroughputListener(listener);
+    }
 
     @Override
-    public void addRequestFinishedListener(RequestFinishedInfo.Listener listener) {}
+    public void addRequestFinishedListener(RequestFinishedInfo.Listener listener) {
+        synchronized (mFinishedListenerLock) {
+            mFinishedListenerMap.put(
+                    listener, new VersionSafeCallbacks.RequestFinishedInfoListener(listener));
+        }
+    }
 
     @Override
-    public void removeRequestFinishedListener(RequestFinishedInfo.Listener listener) {}
+    public void removeRequestFinishedListener(RequestFinishedInfo.Listener listener) {
+        synchronized (mFinishedListenerLock) {
+            mFinishedListenerMap.remove(listener);
+        }
+    }
+
+    /**
+     * Snapshot of the admission metrics of the requests and streams of a {@link JavaCronetEngine}.
+     * Experimental.
+     */
+    public static final class RequestSchedulerMetrics {
+        private final int mQueueDepth;
+        private final int mPeakQueueDepth;
+        private final int mRunningCount;
+        private final long mRejectedCount;
+        private final long mAverageWaitTimeMs;
+        private final long mMaxWaitTimeMs;
+
+        RequestSchedulerMetrics(int queueDepth, int peakQueueDepth, int runningCount,
+                long rejectedCount, long averageWaitTimeMs, long maxWaitTimeMs) {
+            mQueueDepth = queueDepth;
+            mPeakQueueDepth = peakQueueDepth;
+            mRunningCount = runningCount;
+            mRejectedCount = rejectedCount;
+            mAverageWaitTimeMs = averageWaitTimeMs;
+            mMaxWaitTimeMs = maxWaitTimeMs;
+        }
+
+        /** Returns the number of requests waiting to start. */
+        public int getQueueDepth() {
+            return mQueueDepth;
+        }
+
+        /** Returns the largest number of requests that have waited to start at the same time. */
+        public int getPeakQueueDepth() {
+            return mPeakQueueDepth;
+        }
+
+        /** Returns the number of requests running. */
+        public int getRunningCount() {
+            return mRunningCount;
+        }
+
+        /** Returns the number of requests rejected because the queue was full. */
+        public long getRejectedCount() {
+            return mRejectedCount;
+        }
+
+        /**
+         * Returns the average time spent in the queue by the requests that had to wait, in
+         * milliseconds.
+         */
+        public long getAverageWaitTimeMs() {
+            return mAverageWaitTimeMs;
+        }
+
+        /** Returns the longest time spent in the queue by a request, in milliseconds. */
+        public long getMaxWaitTimeMs() {
+            return mMaxWaitTimeMs;
+        }
+    }
+
+    /**
+     * Returns the current admission metrics of the requests and streams of this engine, whose
+     * limits are set by the "JavaEngine" experimental options. Experimental.
+     */
+    public RequestSchedulerMetrics getRequestSchedulerMetrics() {
+        return mRequestScheduler.getMetrics();
+    }
+
+    /**
+     * Returns the estimator fed by the requests, or null if it is not enabled.
+     */
+    @Nullable
+    JavaNetworkQualityEstimator getNetworkQualityEstimator() {
+        return mNetworkQualityEstimatorEnabled ? mNetworkQualityEstimator : null;
+    }
+
+    boolean hasRequestFinishedListener() {
+        synchronized (mFinishedListenerLock) {
+            return !mFinishedListenerMap.isEmpty();
+        }
+    }
+
+    void reportRequestFinished(final RequestFinishedInfo requestInfo) {
+        ArrayList<VersionSafeCallbacks.RequestFinishedInfoListener> currentListeners;
+        synchronized (mFinishedListenerLock) {
+            if (mFinishedListenerMap.isEmpty()) return;
+            currentListeners = new ArrayList<VersionSafeCallbacks.RequestFinishedInfoListener>(
+                    mFinishedListenerMap.values());
+        }
+        for (final VersionSafeCallbacks.RequestFinishedInfoListener listener : currentListeners) {
+            try {
+                listener.getExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onRequestFinished(requestInfo);
+                    }
+                });
+            } catch (RejectedExecutionException failException) {
+                Log.e(TAG, "Exception posting task to executor", failException);
+            }
+        }
+    }
 
     @Override
     public URLConnection openConnection(URL url) throws IOException {
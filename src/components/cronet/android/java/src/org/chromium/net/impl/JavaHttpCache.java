@@ -0,0 +1,694 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.net.impl;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * HTTP cache of {@link JavaCronetEngine}, storing responses either in memory or in a directory of
+ * the engine storage path, and evicting the least recently used ones to stay within the maximum
+ * size set with {@link CronetEngineBuilderImpl#enableHttpCache}. The caching rules are in
+ * {@link JavaHttpCachePolicy}.
+ *
+ * There is at most one stored response per URL. On disk, each one is kept in two files named
+ * after a hash of the URL: {@code <key>.0} with the response metadata and {@code <key>.1} with the
+ * body. Both are written to temporary files first and renamed once complete, so that interrupted
+ * writes never leave a truncated response behind.
+ */
+final class JavaHttpCache {
+    private static final String TAG = JavaHttpCache.class.getSimpleName();
+
+    /**
+     * Name of the cache directory in the storage path.
+     */
+    static final String DIRECTORY_NAME = "java_http_cache";
+
+    private static final String METADATA_SUFFIX = ".0";
+    private static final String BODY_SUFFIX = ".1";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private static final int METADATA_MAGIC = 0x4a484331;
+    private static final int METADATA_VERSION = 1;
+
+    /**
+     * Responses larger than this fraction of the maximum size are not stored, so that a single
+     * response cannot evict most of the cache.
+     */
+    private static final int MAX_ENTRY_SIZE_DIVISOR = 8;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * A stored response. Entries are immutable; revalidating one replaces it.
+     */
+    static final class Entry {
+        final String mUrl;
+        final int mHttpStatusCode;
+        final String mHttpStatusText;
+        final List<Map.Entry<String, String>> mHeaders;
+        final String mNegotiatedProtocol;
+        /** Time at which the request of the response was sent, in ms since the epoch. */
+        final long mRequestTimeMs;
+        /** Time at which the response headers were received, in ms since the epoch. */
+        final long mResponseTimeMs;
+        /** The request headers listed by Vary and their values, null for absent headers. */
+        final Map<String, String> mVaryRequestHeaders;
+        final long mBodyLength;
+        /** The body of in-memory entries, null on disk. */
+        @Nullable
+        final byte[] mBody;
+
+        Entry(String url, int httpStatusCode, String httpStatusText,
+                List<Map.Entry<String, String>> headers, String negotiatedProtocol,
+                long requestTimeMs, long responseTimeMs, Map<String, String> varyRequestHeaders,
+                long bodyLength, @Nullable byte[] body) {
+            mUrl = url;
+            mHttpStatusCode = httpStatusCode;
+            mHttpStatusText = httpStatusText;
+            mHeaders = Collections.unmodifiableList(headers);
+            mNegotiatedProtocol = negotiatedProtocol;
+            mRequestTimeMs = requestTimeMs;
+            mResponseTimeMs = responseTimeMs;
+            mVaryRequestHeaders = varyRequestHeaders;
+            mBodyLength = bodyLength;
+            mBody = body;
+        }
+
+        /**
+         * Returns whether this response was selected by request headers matching |requestHeaders|.
+         */
+        boolean matches(Map<String, String> requestHeaders) {
+            for (Map.Entry<String, String> header : mVaryRequestHeaders.entrySet()) {
+                String value = requestHeaders.get(header.getKey());
+                if (value == null ? header.getValue() != null : !value.equals(header.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns an estimate of the metadata size, to account for entries without body.
+         */
+        long getMetadataSize() {
+            long size = mUrl.length() + mHttpStatusText.length() + mNegotiatedProtocol.length();
+            for (Map.Entry<String, String> header : mHeaders) {
+                size += header.getKey().length() + header.getValue().length();
+            }
+            return size;
+        }
+
+        long getSize() {
+            return getMetadataSize() + mBodyLength;
+        }
+    }
+
+    /**
+     * Stores a response while its body is read. Exactly one of {@link #commit} and {@link #abort}
+     * must be called when done.
+     */
+    final class Writer {
+        private final Entry mMetadata;
+        private final long mMaxBodyLength;
+        /** Destination of the body of in-memory entries. */
+        @Nullable
+        private final ByteArrayOutputStream mMemoryBody;
+        /** Temporary file receiving the body of disk entries. */
+        @Nullable
+        private final File mBodyFile;
+        @Nullable
+        private final FileChannel mBodyChannel;
+        private long mBodyLength;
+        private boolean mDone;
+
+        private Writer(Entry metadata) throws IOException {
+            mMetadata = metadata;
+            mMaxBodyLength = mMaxSize / MAX_ENTRY_SIZE_DIVISOR - metadata.getMetadataSize();
+            if (mDirectory == null) {
+                mMemoryBody = new ByteArrayOutputStream();
+                mBodyFile = null;
+                mBodyChannel = null;
+            } else {
+                mMemoryBody = null;
+                mBodyFile =
+                        File.createTempFile(getKey(metadata.mUrl), TEMPORARY_SUFFIX, mDirectory);
+                mBodyChannel = new FileOutputStream(mBodyFile).getChannel();
+            }
+        }
+
+        /**
+         * Appends the bytes between the position and the limit of |buffer| to the body, without
+         * changing the position of |buffer|. Aborts if the body becomes too large.
+         */
+        void write(ByteBuffer buffer) {
+            if (mDone) {
+                return;
+            }
+            int length = buffer.remaining();
+            mBodyLength += length;
+            if (mBodyLength > mMaxBodyLength) {
+                abort();
+                return;
+            }
+            ByteBuffer data = buffer.duplicate();
+            try {
+                if (mMemoryBody != null) {
+                    if (data.hasArray()) {
+                        mMemoryBody.write(
+                                data.array(), data.arrayOffset() + data.position(), length);
+                    } else {
+                        byte[] bytes = new byte[length];
+                        data.get(bytes);
+                        mMemoryBody.write(bytes, 0, length);
+                    }
+                } else {
+                    while (data.hasRemaining()) {
+                        mBodyChannel.write(data);
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Exception when writing to the cache", e);
+                abort();
+            }
+        }
+
+        /**
+         * Stores the response, replacing any previous response for the same URL.
+         */
+        void commit() {
+            if (mDone) {
+                return;
+            }
+            mDone = true;
+            Entry metadata = mMetadata;
+            Entry entry = new Entry(metadata.mUrl, metadata.mHttpStatusCode,
+                    metadata.mHttpStatusText, metadata.mHeaders, metadata.mNegotiatedProtocol,
+                    metadata.mRequestTimeMs, metadata.mResponseTimeMs,
+                    metadata.mVaryRequestHeaders, mBodyLength,
+                    mMemoryBody == null ? null : mMemoryBody.toByteArray());
+            if (mDirectory == null) {
+                put(entry);
+                return;
+            }
+            File metadataFile = null;
+            try {
+                mBodyChannel.close();
+                metadataFile = writeMetadata(entry);
+                synchronized (mLock) {
+                    String key = getKey(entry.mUrl);
+                    File bodyDestination = new File(mDirectory, key + BODY_SUFFIX);
+                    File metadataDestination = new File(mDirectory, key + METADATA_SUFFIX);
+                    if (!mBodyFile.renameTo(bodyDestination)
+                            || !metadataFile.renameTo(metadataDestination)) {
+                        throw new IOException("Cannot rename cache files");
+                    }
+                    putLocked(entry);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Exception when committing to the cache", e);
+                remove(entry.mUrl);
+            } finally {
+                mBodyFile.delete();
+                if (metadataFile != null) {
+                    metadataFile.delete();
+                }
+            }
+        }
+
+        /**
+         * Discards the response.
+         */
+        void abort() {
+            if (mDone) {
+                return;
+            }
+            mDone = true;
+            if (mBodyChannel != null) {
+                try {
+                    mBodyChannel.close();
+                } catch (IOException e) {
+                    // Nothing to do, the file is deleted anyway.
+                }
+                mBodyFile.delete();
+            }
+        }
+
+        /**
+         * Returns a channel reading from |channel| and storing what it reads, committing at the
+         * end of the stream and aborting if closed before.
+         */
+        ReadableByteChannel wrap(final ReadableByteChannel channel) {
+            return new ReadableByteChannel() {
+                @Override
+                public int read(ByteBuffer dst) throws IOException {
+                    int start = dst.position();
+                    int read;
+                    try {
+                        read = channel.read(dst);
+                    } catch (IOException e) {
+                        abort();
+                        throw e;
+                    }
+                    if (read < 0) {
+                        commit();
+                    } else if (read > 0) {
+                        ByteBuffer data = dst.duplicate();
+                        data.position(start);
+                        data.limit(start + read);
+                        write(data);
+                    }
+                    return read;
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return channel.isOpen();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    abort();
+                    channel.close();
+                }
+            };
+        }
+    }
+
+    /**
+     * The directory of the disk cache, or null for an in-memory cache.
+     */
+    @Nullable
+    private final File mDirectory;
+    private final long mMaxSize;
+
+    private final Object mLock = new Object();
+
+    /**
+     * The stored responses by URL, from the least to the most recently used.
+     */
+    @GuardedBy("mLock")
+    private final LinkedHashMap<String, Entry> mEntries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    @GuardedBy("mLock")
+    private long mSize;
+    @GuardedBy("mLock")
+    private boolean mIndexLoaded;
+
+    private JavaHttpCache(@Nullable File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Returns the cache configured by |builder|, or null if caching is disabled.
+     */
+    @Nullable
+    static JavaHttpCache create(CronetEngineBuilderImpl builder) {
+        if (builder.cacheDisabled() || builder.httpCacheMaxSize() <= 0) {
+            return null;
+        }
+        switch (builder.httpCacheMode()) {
+            case HttpCacheType.MEMORY:
+                return new JavaHttpCache(null, builder.httpCacheMaxSize());
+            case HttpCacheType.DISK:
+                return new JavaHttpCache(new File(builder.storagePath(), DIRECTORY_NAME),
+                        builder.httpCacheMaxSize());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the stored response for |url| matching |requestHeaders|, or null if there is none.
+     * The first call on a disk cache loads the index, it must not be made on a user thread.
+     */
+    @Nullable
+    Entry get(String url, Map<String, String> requestHeaders) {
+        Entry entry;
+        synchronized (mLock) {
+            loadIndexLocked();
+            entry = mEntries.get(url);
+        }
+        return entry != null && entry.matches(requestHeaders) ? entry : null;
+    }
+
+    /**
+     * Opens the body of |entry|. Returns null if |entry| is no longer stored or cannot be read.
+     */
+    @Nullable
+    InputStream openBody(Entry entry) {
+        if (entry.mBody != null) {
+            return new ByteArrayInputStream(entry.mBody);
+        }
+        synchronized (mLock) {
+            // Opening under the lock ensures that the body file belongs to |entry|.
+            if (mEntries.get(entry.mUrl) != entry) {
+                return null;
+            }
+            try {
+                return new FileInputStream(new File(mDirectory, getKey(entry.mUrl) + BODY_SUFFIX));
+            } catch (IOException e) {
+                Log.e(TAG, "Exception when reading from the cache", e);
+                removeLocked(entry.mUrl);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns a {@link Writer} storing a response, or null if it is too large to be stored.
+     *
+     * @param varyRequestHeaders the request headers used to select the response.
+     * @param contentLength the value of the Content-Length header of the response, or -1.
+     */
+    @Nullable
+    Writer newWriter(String url, int httpStatusCode, String httpStatusText,
+            List<Map.Entry<String, String>> headers, String negotiatedProtocol,
+            long requestTimeMs, long responseTimeMs, Map<String, String> varyRequestHeaders,
+            long contentLength) {
+        Entry metadata = new Entry(url, httpStatusCode, nullToEmpty(httpStatusText),
+                withoutNullValues(headers), nullToEmpty(negotiatedProtocol), requestTimeMs,
+                responseTimeMs, varyRequestHeaders, Math.max(0, contentLength), null);
+        if (metadata.getSize() > mMaxSize / MAX_ENTRY_SIZE_DIVISOR) {
+            return null;
+        }
+        try {
+            if (mDirectory != null) {
+                synchronized (mLock) {
+                    loadIndexLocked();
+                }
+            }
+            return new Writer(metadata);
+        } catch (IOException e) {
+            Log.e(TAG, "Exception when writing to the cache", e);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces |entry| with a copy updated with the headers of the 304 response which revalidated
+     * it, and returns the copy. The body is kept.
+     */
+    Entry update(Entry entry, List<Map.Entry<String, String>> validationHeaders,
+            long requestTimeMs, long responseTimeMs) {
+        List<Map.Entry<String, String>> headers = JavaHttpCachePolicy.mergeHeaders(
+                entry.mHeaders, withoutNullValues(validationHeaders));
+        Entry updated = new Entry(entry.mUrl, entry.mHttpStatusCode, entry.mHttpStatusText,
+                headers, entry.mNegotiatedProtocol, requestTimeMs, responseTimeMs,
+                entry.mVaryRequestHeaders, entry.mBodyLength, entry.mBody);
+        if (mDirectory == null) {
+            synchronized (mLock) {
+                if (mEntries.get(entry.mUrl) == entry) {
+                    putLocked(updated);
+                }
+            }
+            return updated;
+        }
+        File metadataFile = null;
+        try {
+            metadataFile = writeMetadata(updated);
+            synchronized (mLock) {
+                // Another request may have replaced the response in the meantime.
+                if (mEntries.get(entry.mUrl) == entry) {
+                    File destination = new File(mDirectory, getKey(entry.mUrl) + METADATA_SUFFIX);
+                    if (!metadataFile.renameTo(destination)) {
+                        throw new IOException("Cannot rename cache files");
+                    }
+                    putLocked(updated);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Exception when updating the cache", e);
+            remove(entry.mUrl);
+        } finally {
+            if (metadataFile != null) {
+                metadataFile.delete();
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Removes the stored response for |url|, if any.
+     */
+    void remove(String url) {
+        synchronized (mLock) {
+            loadIndexLocked();
+            removeLocked(url);
+        }
+    }
+
+    private void put(Entry entry) {
+        synchronized (mLock) {
+            putLocked(entry);
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void putLocked(Entry entry) {
+        Entry previous = mEntries.put(entry.mUrl, entry);
+        if (previous != null) {
+            mSize -= previous.getSize();
+        }
+        mSize += entry.getSize();
+        trimLocked();
+    }
+
+    @GuardedBy("mLock")
+    private void removeLocked(String url) {
+        Entry entry = mEntries.remove(url);
+        if (entry == null) {
+            return;
+        }
+        mSize -= entry.getSize();
+        deleteFilesLocked(url);
+    }
+
+    /**
+     * Evicts the least recently used responses until the cache fits in its maximum size.
+     */
+    @GuardedBy("mLock")
+    private void trimLocked() {
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            iterator.remove();
+            mSize -= entry.getSize();
+            deleteFilesLocked(entry.mUrl);
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void deleteFilesLocked(String url) {
+        if (mDirectory != null) {
+            String key = getKey(url);
+            new File(mDirectory, key + METADATA_SUFFIX).delete();
+            new File(mDirectory, key + BODY_SUFFIX).delete();
+        }
+    }
+
+    /**
+     * Builds the index of a disk cache from the files left by previous engines, deleting those
+     * which are incomplete or unreadable.
+     */
+    @GuardedBy("mLock")
+    private void loadIndexLocked() {
+        if (mIndexLoaded || mDirectory == null) {
+            return;
+        }
+        mIndexLoaded = true;
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.e(TAG, "Cannot create cache directory " + mDirectory);
+            return;
+        }
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Files are touched when written or revalidated, which approximates the use order.
+        List<Map.Entry<Long, File>> metadataFiles = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(METADATA_SUFFIX)) {
+                metadataFiles.add(new SimpleEntry<>(file.lastModified(), file));
+            } else if (!name.endsWith(BODY_SUFFIX)) {
+                // Left over by an interrupted write.
+                file.delete();
+            }
+        }
+        Collections.sort(metadataFiles, new Comparator<Map.Entry<Long, File>>() {
+            @Override
+            public int compare(Map.Entry<Long, File> a, Map.Entry<Long, File> b) {
+                return Long.compare(a.getKey(), b.getKey());
+            }
+        });
+        for (Map.Entry<Long, File> file : metadataFiles) {
+            File metadataFile = file.getValue();
+            String name = metadataFile.getName();
+            String key = name.substring(0, name.length() - METADATA_SUFFIX.length());
+            File bodyFile = new File(mDirectory, key + BODY_SUFFIX);
+            Entry entry = readMetadata(metadataFile);
+            if (entry == null || !key.equals(getKey(entry.mUrl))
+                    || bodyFile.length() != entry.mBodyLength) {
+                metadataFile.delete();
+                bodyFile.delete();
+                continue;
+            }
+            putLocked(entry);
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(BODY_SUFFIX)
+                    && !new File(mDirectory, name.substring(0, name.length() - BODY_SUFFIX.length())
+                                    + METADATA_SUFFIX)
+                                .exists()) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of |headers| without the headers that have no value. HttpURLConnection
+     * reports malformed header lines that way, and they can't be stored.
+     */
+    private static List<Map.Entry<String, String>> withoutNullValues(
+            List<Map.Entry<String, String>> headers) {
+        List<Map.Entry<String, String>> copy = new ArrayList<>(headers.size());
+        for (Map.Entry<String, String> header : headers) {
+            if (header.getValue() != null) {
+                copy.add(header);
+            }
+        }
+        return copy;
+    }
+
+    private static String nullToEmpty(@Nullable String value) {
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Writes the metadata of |entry| to a new temporary file and returns it.
+     */
+    private File writeMetadata(Entry entry) throws IOException {
+        File file = File.createTempFile(getKey(entry.mUrl), TEMPORARY_SUFFIX, mDirectory);
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(METADATA_MAGIC);
+            out.writeInt(METADATA_VERSION);
+            out.writeUTF(entry.mUrl);
+            out.writeInt(entry.mHttpStatusCode);
+            out.writeUTF(entry.mHttpStatusText);
+            out.writeUTF(entry.mNegotiatedProtocol);
+            out.writeLong(entry.mRequestTimeMs);
+            out.writeLong(entry.mResponseTimeMs);
+            out.writeLong(entry.mBodyLength);
+            out.writeInt(entry.mHeaders.size());
+            for (Map.Entry<String, String> header : entry.mHeaders) {
+                out.writeUTF(header.getKey());
+                out.writeUTF(header.getValue());
+            }
+            out.writeInt(entry.mVaryRequestHeaders.size());
+            for (Map.Entry<String, String> header : entry.mVaryRequestHeaders.entrySet()) {
+                out.writeUTF(header.getKey());
+                out.writeBoolean(header.getValue() != null);
+                if (header.getValue() != null) {
+                    out.writeUTF(header.getValue());
+                }
+            }
+        } catch (IOException e) {
+            out.close();
+            file.delete();
+            throw e;
+        }
+        out.close();
+        return file;
+    }
+
+    /**
+     * Reads the metadata written by {@link #writeMetadata}, or returns null if |file| is invalid.
+     */
+    @Nullable
+    private static Entry readMetadata(File file) {
+        try (DataInputStream in =
+                        new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != METADATA_MAGIC || in.readInt() != METADATA_VERSION) {
+                return null;
+            }
+            String url = in.readUTF();
+            int httpStatusCode = in.readInt();
+            String httpStatusText = in.readUTF();
+            String negotiatedProtocol = in.readUTF();
+            long requestTimeMs = in.readLong();
+            long responseTimeMs = in.readLong();
+            long bodyLength = in.readLong();
+            int headerCount = in.readInt();
+            List<Map.Entry<String, String>> headers = new ArrayList<>(headerCount);
+            for (int i = 0; i < headerCount; ++i) {
+                headers.add(new SimpleEntry<>(in.readUTF(), in.readUTF()));
+            }
+            int varyCount = in.readInt();
+            Map<String, String> varyRequestHeaders = new LinkedHashMap<>();
+            for (int i = 0; i < varyCount; ++i) {
+                String name = in.readUTF();
+                varyRequestHeaders.put(name, in.readBoolean() ? in.readUTF() : null);
+            }
+            return new Entry(url, httpStatusCode, httpStatusText, headers, negotiatedProtocol,
+                    requestTimeMs, responseTimeMs, varyRequestHeaders, bodyLength, null);
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding invalid cache file " + file.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the file name prefix of the response for |url|.
+     */
+    private static String getKey(String url) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        char[] key = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; ++i) {
+            key[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            key[2 * i + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        return new String(key);
+    }
+}
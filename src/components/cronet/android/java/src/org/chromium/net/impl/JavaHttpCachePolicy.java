@@ -0,0 +1,421 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.net.impl;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+/**
+ * The caching rules of RFC 7234 used by {@link JavaHttpCache}: which responses may be stored, how
+ * long they stay fresh, and how a stale response is revalidated.
+ */
+final class JavaHttpCachePolicy {
+    /**
+     * What to do with a stored response for a request.
+     */
+    @IntDef({CacheAction.NETWORK, CacheAction.USE, CacheAction.VALIDATE})
+    @Retention(RetentionPolicy.SOURCE)
+    @interface CacheAction {
+        /** The stored response cannot be used, the request goes to the network. */
+        int NETWORK = 0;
+        /** The stored response is fresh and is used without contacting the server. */
+        int USE = 1;
+        /** The stored response is stale and is revalidated with a conditional request. */
+        int VALIDATE = 2;
+    }
+
+    /**
+     * Status codes cacheable by default, per section 6.1 of RFC 7231 and RFC 7538.
+     */
+    private static final int[] CACHEABLE_STATUS_CODES = {
+            200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501};
+
+    /**
+     * Request headers making a request conditional or partial. Such requests bypass the cache
+     * since the responses they get are not complete representations.
+     */
+    private static final String[] BYPASS_REQUEST_HEADERS = {"If-Match", "If-Modified-Since",
+            "If-None-Match", "If-Range", "If-Unmodified-Since", "Range"};
+
+    /**
+     * Headers of a 304 response which must not replace the stored ones, since they describe the
+     * message rather than the stored representation.
+     */
+    private static final Set<String> NON_UPDATABLE_HEADERS;
+    static {
+        Set<String> headers = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        Collections.addAll(headers, "Connection", "Content-Encoding", "Content-Length",
+                "Content-Range", "Keep-Alive", "Proxy-Authenticate", "Proxy-Authorization",
+                "Proxy-Connection", "TE", "Trailer", "Transfer-Encoding", "Upgrade");
+        NON_UPDATABLE_HEADERS = Collections.unmodifiableSet(headers);
+    }
+
+    /**
+     * Fraction of the time since the last modification used as the heuristic freshness lifetime
+     * of responses without explicit expiration, as suggested by section 4.2.2 of RFC 7234.
+     */
+    private static final int HEURISTIC_LIFETIME_DIVISOR = 10;
+
+    /**
+     * The formats of HTTP-date, per section 7.1.1.1 of RFC 7231. The first one is the preferred
+     * one, the others are obsolete but must be accepted.
+     */
+    private static final String[] HTTP_DATE_FORMATS = {"EEE, dd MMM yyyy HH:mm:ss zzz",
+            "EEEE, dd-MMM-yy HH:mm:ss zzz", "EEE MMM d HH:mm:ss yyyy"};
+
+    private JavaHttpCachePolicy() {}
+
+    /**
+     * The directives of Cache-Control headers relevant to a private cache.
+     */
+    static final class CacheControl {
+        /** Value of max-age in seconds, or -1 if absent. */
+        long mMaxAgeSeconds = -1;
+        /** Value of max-stale in seconds, -1 if absent, or Long.MAX_VALUE without a value. */
+        long mMaxStaleSeconds = -1;
+        /** Value of min-fresh in seconds, or -1 if absent. */
+        long mMinFreshSeconds = -1;
+        boolean mNoCache;
+        boolean mNoStore;
+        boolean mMustRevalidate;
+        boolean mPublic;
+
+        /**
+         * Parses the directives of all the given Cache-Control header values. Unknown directives
+         * and malformed values are ignored.
+         */
+        static CacheControl parse(List<String> values) {
+            CacheControl cacheControl = new CacheControl();
+            for (String value : values) {
+                for (String directive : value.split(",")) {
+                    cacheControl.parseDirective(directive.trim());
+                }
+            }
+            return cacheControl;
+        }
+
+        private void parseDirective(String directive) {
+            int equals = directive.indexOf('=');
+            String name = (equals < 0 ? directive : directive.substring(0, equals)).trim();
+            String argument = equals < 0 ? null : unquote(directive.substring(equals + 1).trim());
+            if ("no-cache".equalsIgnoreCase(name)) {
+                mNoCache = true;
+            } else if ("no-store".equalsIgnoreCase(name)) {
+                mNoStore = true;
+            } else if ("must-revalidate".equalsIgnoreCase(name)) {
+                mMustRevalidate = true;
+            } else if ("public".equalsIgnoreCase(name)) {
+                mPublic = true;
+            } else if ("max-age".equalsIgnoreCase(name)) {
+                mMaxAgeSeconds = parseSeconds(argument);
+            } else if ("min-fresh".equalsIgnoreCase(name)) {
+                mMinFreshSeconds = parseSeconds(argument);
+            } else if ("max-stale".equalsIgnoreCase(name)) {
+                mMaxStaleSeconds = argument == null ? Long.MAX_VALUE : parseSeconds(argument);
+            }
+        }
+
+        private static String unquote(String value) {
+            if (value.length() >= 2 && value.charAt(0) == '"'
+                    && value.charAt(value.length() - 1) == '"') {
+                return value.substring(1, value.length() - 1);
+            }
+            return value;
+        }
+
+        /**
+         * Parses a delta-seconds value, saturating large values as section 1.2.1 of RFC 7234
+         * requires. Returns -1 if |value| is not a valid delta-seconds.
+         */
+        private static long parseSeconds(@Nullable String value) {
+            if (value == null || value.isEmpty()) {
+                return -1;
+            }
+            long seconds = 0;
+            for (int i = 0; i < value.length(); ++i) {
+                char c = value.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                seconds = Math.min(seconds * 10 + (c - '0'), Integer.MAX_VALUE);
+            }
+            return seconds;
+        }
+    }
+
+    /**
+     * Returns whether a request may be served from, and stored in, the cache at all.
+     *
+     * @param method the method of the request.
+     * @param requestHeaders the headers of the request, with case insensitive keys.
+     */
+    static boolean canUseCache(String method, Map<String, String> requestHeaders) {
+        if (!"GET".equalsIgnoreCase(method)) {
+            return false;
+        }
+        for (String header : BYPASS_REQUEST_HEADERS) {
+            if (requestHeaders.containsKey(header)) {
+                return false;
+            }
+        }
+        return !getRequestCacheControl(requestHeaders).mNoStore;
+    }
+
+    /**
+     * Returns whether |method| is safe, per section 4.2.1 of RFC 7231. Successful responses to
+     * unsafe requests invalidate the stored responses of their URL.
+     */
+    static boolean isSafeMethod(String method) {
+        return "GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method)
+                || "OPTIONS".equalsIgnoreCase(method) || "TRACE".equalsIgnoreCase(method);
+    }
+
+    /**
+     * Returns whether a response may be stored, per section 3 of RFC 7234. Responses which would
+     * be stale as soon as they are stored and cannot be revalidated are not worth storing.
+     *
+     * @param requestHeaders the headers of the request, with case insensitive keys.
+     * @param httpStatusCode the status code of the response.
+     * @param responseHeaders the headers of the response.
+     */
+    static boolean isStorable(Map<String, String> requestHeaders, int httpStatusCode,
+            List<Map.Entry<String, String>> responseHeaders) {
+        if (Arrays.binarySearch(CACHEABLE_STATUS_CODES, httpStatusCode) < 0) {
+            return false;
+        }
+        CacheControl cacheControl =
+                CacheControl.parse(getHeaders(responseHeaders, "Cache-Control"));
+        if (cacheControl.mNoStore) {
+            return false;
+        }
+        if (requestHeaders.containsKey("Authorization") && !cacheControl.mPublic
+                && !cacheControl.mMustRevalidate) {
+            return false;
+        }
+        for (String name : getVaryHeaderNames(responseHeaders)) {
+            if ("*".equals(name)) {
+                return false;
+            }
+        }
+        return cacheControl.mMaxAgeSeconds >= 0
+                || getHeader(responseHeaders, "Expires") != null
+                || getHeader(responseHeaders, "Last-Modified") != null
+                || getHeader(responseHeaders, "ETag") != null;
+    }
+
+    /**
+     * Returns what to do with the stored response |entry| for a request with |requestHeaders|.
+     *
+     * @param entry the stored response, already matched against the request.
+     * @param requestHeaders the headers of the request, with case insensitive keys.
+     * @param nowMs the current time, in milliseconds since the epoch.
+     */
+    static @CacheAction int getAction(
+            JavaHttpCache.Entry entry, Map<String, String> requestHeaders, long nowMs) {
+        CacheControl requestCacheControl = getRequestCacheControl(requestHeaders);
+        CacheControl responseCacheControl =
+                CacheControl.parse(getHeaders(entry.mHeaders, "Cache-Control"));
+        if (!requestCacheControl.mNoCache && !responseCacheControl.mNoCache) {
+            long ageMs = getCurrentAgeMs(entry, nowMs);
+            long lifetimeMs = getFreshnessLifetimeMs(entry, responseCacheControl);
+            if (requestCacheControl.mMaxAgeSeconds >= 0) {
+                lifetimeMs = Math.min(lifetimeMs, requestCacheControl.mMaxAgeSeconds * 1000);
+            }
+            if (requestCacheControl.mMinFreshSeconds >= 0) {
+                ageMs += requestCacheControl.mMinFreshSeconds * 1000;
+            }
+            if (ageMs < lifetimeMs) {
+                return CacheAction.USE;
+            }
+            // A request may accept stale responses unless the server forbids it.
+            if (requestCacheControl.mMaxStaleSeconds >= 0 && !responseCacheControl.mMustRevalidate
+                    && (requestCacheControl.mMaxStaleSeconds == Long.MAX_VALUE
+                            || ageMs - lifetimeMs < requestCacheControl.mMaxStaleSeconds * 1000)) {
+                return CacheAction.USE;
+            }
+        }
+        return getValidationHeaders(entry.mHeaders).isEmpty() ? CacheAction.NETWORK
+                                                              : CacheAction.VALIDATE;
+    }
+
+    /**
+     * Returns the headers to add to a request to revalidate a stored response with
+     * |responseHeaders|, or an empty list if the response has no validator.
+     */
+    static List<Map.Entry<String, String>> getValidationHeaders(
+            List<Map.Entry<String, String>> responseHeaders) {
+        List<Map.Entry<String, String>> validationHeaders = new ArrayList<>(2);
+        String etag = getHeader(responseHeaders, "ETag");
+        if (etag != null) {
+            validationHeaders.add(new SimpleEntry<>("If-None-Match", etag));
+        }
+        String lastModified = getHeader(responseHeaders, "Last-Modified");
+        if (lastModified != null) {
+            validationHeaders.add(new SimpleEntry<>("If-Modified-Since", lastModified));
+        }
+        return validationHeaders;
+    }
+
+    /**
+     * Returns the headers of a stored response updated with those of a 304 response, per section
+     * 4.3.4 of RFC 7234.
+     */
+    static List<Map.Entry<String, String>> mergeHeaders(
+            List<Map.Entry<String, String>> storedHeaders,
+            List<Map.Entry<String, String>> validationHeaders) {
+        Set<String> updatedNames = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, String> header : validationHeaders) {
+            if (!NON_UPDATABLE_HEADERS.contains(header.getKey())) {
+                updatedNames.add(header.getKey());
+            }
+        }
+        List<Map.Entry<String, String>> merged =
+                new ArrayList<>(storedHeaders.size() + validationHeaders.size());
+        for (Map.Entry<String, String> header : storedHeaders) {
+            if (!updatedNames.contains(header.getKey())) {
+                merged.add(header);
+            }
+        }
+        for (Map.Entry<String, String> header : validationHeaders) {
+            if (updatedNames.contains(header.getKey())) {
+                merged.add(header);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the names of the request headers listed by the Vary headers of a response.
+     */
+    static List<String> getVaryHeaderNames(List<Map.Entry<String, String>> responseHeaders) {
+        List<String> names = new ArrayList<>();
+        for (String value : getHeaders(responseHeaders, "Vary")) {
+            for (String name : value.split(",")) {
+                name = name.trim();
+                if (!name.isEmpty()) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Returns the value of the first header named |name|, or null if there is none.
+     */
+    @Nullable
+    static String getHeader(List<Map.Entry<String, String>> headers, String name) {
+        for (Map.Entry<String, String> header : headers) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the values of all the headers named |name|, skipping headers without value.
+     */
+    static List<String> getHeaders(List<Map.Entry<String, String>> headers, String name) {
+        List<String> values = new ArrayList<>(1);
+        for (Map.Entry<String, String> header : headers) {
+            if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null) {
+                values.add(header.getValue());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Parses an HTTP-date. Returns the time in milliseconds since the epoch, or -1 if |value| is
+     * null or malformed.
+     */
+    static long parseHttpDate(@Nullable String value) {
+        if (value == null) {
+            return -1;
+        }
+        value = value.trim();
+        for (String pattern : HTTP_DATE_FORMATS) {
+            // SimpleDateFormat is not thread safe and is cheap compared to a request.
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            ParsePosition position = new ParsePosition(0);
+            Date date = format.parse(value, position);
+            if (date != null && position.getIndex() == value.length()) {
+                return date.getTime();
+            }
+        }
+        return -1;
+    }
+
+    private static CacheControl getRequestCacheControl(Map<String, String> requestHeaders) {
+        String value = requestHeaders.get("Cache-Control");
+        CacheControl cacheControl = CacheControl.parse(
+                value == null ? Collections.<String>emptyList() : Collections.singletonList(value));
+        // Pragma: no-cache is only meaningful without a Cache-Control header, per section 5.4 of
+        // RFC 7234.
+        String pragma = requestHeaders.get("Pragma");
+        if (value == null && pragma != null && pragma.trim().equalsIgnoreCase("no-cache")) {
+            cacheControl.mNoCache = true;
+        }
+        return cacheControl;
+    }
+
+    /**
+     * Returns the freshness lifetime of a stored response, per section 4.2.1 of RFC 7234.
+     */
+    private static long getFreshnessLifetimeMs(
+            JavaHttpCache.Entry entry, CacheControl cacheControl) {
+        if (cacheControl.mMaxAgeSeconds >= 0) {
+            return cacheControl.mMaxAgeSeconds * 1000;
+        }
+        long dateMs = parseHttpDate(getHeader(entry.mHeaders, "Date"));
+        if (dateMs < 0) {
+            dateMs = entry.mResponseTimeMs;
+        }
+        String expires = getHeader(entry.mHeaders, "Expires");
+        if (expires != null) {
+            // Invalid dates, such as 0, represent a time in the past.
+            long expiresMs = parseHttpDate(expires);
+            return expiresMs < 0 ? 0 : Math.max(0, expiresMs - dateMs);
+        }
+        long lastModifiedMs = parseHttpDate(getHeader(entry.mHeaders, "Last-Modified"));
+        if (lastModifiedMs >= 0 && lastModifiedMs < dateMs) {
+            return (dateMs - lastModifiedMs) / HEURISTIC_LIFETIME_DIVISOR;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the current age of a stored response, per section 4.2.3 of RFC 7234.
+     */
+    private static long getCurrentAgeMs(JavaHttpCache.Entry entry, long nowMs) {
+        long dateMs = parseHttpDate(getHeader(entry.mHeaders, "Date"));
+        long apparentAgeMs = dateMs < 0 ? 0 : Math.max(0, entry.mResponseTimeMs - dateMs);
+        long ageValueMs = Math.max(0, CacheControl.parseSeconds(getHeader(entry.mHeaders, "Age")))
+                * 1000;
+        long responseDelayMs = entry.mResponseTimeMs - entry.mRequestTimeMs;
+        long correctedAgeValueMs = ageValueMs + responseDelayMs;
+        long correctedInitialAgeMs = Math.max(apparentAgeMs, correctedAgeValueMs);
+        long residentTimeMs = nowMs - entry.mResponseTimeMs;
+        return correctedInitialAgeMs + residentTimeMs;
+    }
+}
@@ -0,0 +1,284 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.net.impl;
+
+import android.util.Log;
+
+import org.chromium.net.ExperimentalCronetEngine;
+import org.chromium.net.NetworkQualityRttListener;
+import org.chromium.net.NetworkQualityThroughputListener;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Network quality estimator of {@link JavaCronetEngine}.
+ *
+ * <p>HTTP RTT observations are the times to first byte of the requests, and downstream throughput
+ * observations the rates at which their response bodies are received. As in the native estimator,
+ * estimates are weighted medians of the most recent observations, the weight of an observation
+ * halving every {@link #HALF_LIFE_MS}, and requests to local hosts are ignored unless
+ * {@link #configureForTesting} says otherwise. The effective connection type is derived from the
+ * HTTP RTT with the default thresholds of the native estimator.
+ */
+final class JavaNetworkQualityEstimator {
+    private static final String TAG = JavaNetworkQualityEstimator.class.getSimpleName();
+
+    // NETWORK_QUALITY_OBSERVATION_SOURCE_HTTP in net/nqe/network_quality_observation_source.h.
+    private static final int OBSERVATION_SOURCE_HTTP = 0;
+
+    private static final int MAX_OBSERVATIONS = 300;
+    private static final long HALF_LIFE_MS = 60 * 1000;
+
+    // Smallest response body for which a throughput observation is taken.
+    private static final long MIN_THROUGHPUT_TRANSFER_BYTES = 32000;
+
+    // Lowest HTTP RTTs of each effective connection type.
+    private static final int SLOW_2G_HTTP_RTT_MS = 2010;
+    private static final int TYPE_2G_HTTP_RTT_MS = 1420;
+    private static final int TYPE_3G_HTTP_RTT_MS = 272;
+
+    /**
+     * Fixed size ring of observations, kept in primitive arrays.
+     */
+    private static final class ObservationBuffer {
+        private final int[] mValues = new int[MAX_OBSERVATIONS];
+        private final long[] mTimesMs = new long[MAX_OBSERVATIONS];
+        // Sort keys of the weighted median, each one a value and an index packed in a long.
+        private final long[] mSortKeys = new long[MAX_OBSERVATIONS];
+        private int mNext;
+        private int mSize;
+
+        void add(int value, long timeMs) {
+            mValues[mNext] = value;
+            mTimesMs[mNext] = timeMs;
+            mNext = (mNext + 1) % MAX_OBSERVATIONS;
+            mSize = Math.min(mSize + 1, MAX_OBSERVATIONS);
+        }
+
+        /**
+         * Returns the median of the observations weighted by their age at |nowMs|, or
+         * {@link ExperimentalCronetEngine#CONNECTION_METRIC_UNKNOWN} if there are none.
+         */
+        int weightedMedian(long nowMs) {
+            if (mSize == 0) {
+                return ExperimentalCronetEngine.CONNECTION_METRIC_UNKNOWN;
+            }
+            double totalWeight = 0;
+            for (int i = 0; i < mSize; i++) {
+                mSortKeys[i] = ((long) mValues[i] << 32) | i;
+                totalWeight += weight(mTimesMs[i], nowMs);
+            }
+            Arrays.sort(mSortKeys, 0, mSize);
+            double cumulativeWeight = 0;
+            for (int i = 0; i < mSize; i++) {
+                int index = (int) mSortKeys[i];
+                cumulativeWeight += weight(mTimesMs[index], nowMs);
+                if (cumulativeWeight >= totalWeight / 2) {
+                    return mValues[index];
+                }
+            }
+            return mValues[(int) mSortKeys[mSize - 1]];
+        }
+
+        private static double weight(long timeMs, long nowMs) {
+            return Math.pow(0.5, (double) Math.max(0, nowMs - timeMs) / HALF_LIFE_MS);
+        }
+    }
+
+    private final Object mLock = new Object();
+
+    @GuardedBy("mLock")
+    private final ObservationBuffer mRttObservations = new ObservationBuffer();
+    @GuardedBy("mLock")
+    private final ObservationBuffer mThroughputObservations = new ObservationBuffer();
+    @GuardedBy("mLock")
+    private int mHttpRttMs = ExperimentalCronetEngine.CONNECTION_METRIC_UNKNOWN;
+    @GuardedBy("mLock")
+    private int mDownstreamThroughputKbps = ExperimentalCronetEngine.CONNECTION_METRIC_UNKNOWN;
+    @GuardedBy("mLock")
+    private final List<VersionSafeCallbacks.NetworkQualityRttListenerWrapper> mRttListenerList =
+            new ArrayList<>();
+    @GuardedBy("mLock")
+    private final List<VersionSafeCallbacks.NetworkQualityThroughputListenerWrapper>
+            mThroughputListenerList = new ArrayList<>();
+    @GuardedBy("mLock")
+    private boolean mUseLocalHostRequests;
+    @GuardedBy("mLock")
+    private long mMinThroughputTransferBytes = MIN_THROUGHPUT_TRANSFER_BYTES;
+
+    void configureForTesting(boolean useLocalHostRequests, boolean useSmallerResponses) {
+        synchronized (mLock) {
+            mUseLocalHostRequests = useLocalHostRequests;
+            mMinThroughputTransferBytes = useSmallerResponses ? 1 : MIN_THROUGHPUT_TRANSFER_BYTES;
+        }
+    }
+
+    int getHttpRttMs() {
+        synchronized (mLock) {
+            return mHttpRttMs;
+        }
+    }
+
+    int getDownstreamThroughputKbps() {
+        synchronized (mLock) {
+            return mDownstreamThroughputKbps;
+        }
+    }
+
+    int getEffectiveConnectionType() {
+        int httpRttMs = getHttpRttMs();
+        if (httpRttMs == ExperimentalCronetEngine.CONNECTION_METRIC_UNKNOWN) {
+            return ExperimentalCronetEngine.EFFECTIVE_CONNECTION_TYPE_UNKNOWN;
+        }
+        if (httpRttMs >= SLOW_2G_HTTP_RTT_MS) {
+            return ExperimentalCronetEngine.EFFECTIVE_CONNECTION_TYPE_SLOW_2G;
+        }
+        if (httpRttMs >= TYPE_2G_HTTP_RTT_MS) {
+            return ExperimentalCronetEngine.EFFECTIVE_CONNECTION_TYPE_2G;
+        }
+        if (httpRttMs >= TYPE_3G_HTTP_RTT_MS) {
+            return ExperimentalCronetEngine.EFFECTIVE_CONNECTION_TYPE_3G;
+        }
+        return ExperimentalCronetEngine.EFFECTIVE_CONNECTION_TYPE_4G;
+    }
+
+    void addRttListener(NetworkQualityRttListener listener) {
+        synchronized (mLock) {
+            mRttListenerList.add(new VersionSafeCallbacks.NetworkQualityRttListenerWrapper(listener));
+        }
+    }
+
+    void removeRttListener(NetworkQualityRttListener listener) {
+        synchronized (mLock) {
+            mRttListenerList.remove(
+                    new VersionSafeCallbacks.NetworkQualityRttListenerWrapper(listener));
+        }
+    }
+
+    void addThroughputListener(NetworkQualityThroughputListener listener) {
+        synchronized (mLock) {
+            mThroughputListenerList.add(
+                    new VersionSafeCallbacks.NetworkQualityThroughputListenerWrapper(listener));
+        }
+    }
+
+    void removeThroughputListener(NetworkQualityThroughputListener listener) {
+        synchronized (mLock) {
+            mThroughputListenerList.remove(
+                    new VersionSafeCallbacks.NetworkQualityThroughputListenerWrapper(listener));
+        }
+    }
+
+    /**
+     * Records the time to first byte of a request to |url| sent at |requestTimeMs| whose response
+     * headers were received at |responseTimeMs|.
+     */
+    void onResponseStarted(String url, long requestTimeMs, long responseTimeMs) {
+        if (responseTimeMs < requestTimeMs || !shouldObserve(url)) {
+            return;
+        }
+        final int rttMs = (int) Math.min(responseTimeMs - requestTimeMs, Integer.MAX_VALUE);
+        final long whenMs = responseTimeMs;
+        synchronized (mLock) {
+            mRttObservations.add(rttMs, whenMs);
+            mHttpRttMs = mRttObservations.weightedMedian(whenMs);
+            for (final VersionSafeCallbacks.NetworkQualityRttListenerWrapper listener :
+                    mRttListenerList) {
+                postObservationTaskToExecutor(listener.getExecutor(), new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onRttObservation(rttMs, whenMs, OBSERVATION_SOURCE_HTTP);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Records the reception of |byteCount| bytes of the response body of a request to |url|,
+     * between |startTimeMs| and |endTimeMs|.
+     */
+    void onResponseBodyReceived(String url, long byteCount, long startTimeMs, long endTimeMs) {
+        if (endTimeMs <= startTimeMs || !shouldObserve(url)) {
+            return;
+        }
+        // Bytes per millisecond times 8 is kilobits per second.
+        final int throughputKbps =
+                (int) Math.min(byteCount * 8 / (endTimeMs - startTimeMs), Integer.MAX_VALUE);
+        final long whenMs = endTimeMs;
+        synchronized (mLock) {
+            if (byteCount < mMinThroughputTransferBytes) {
+                return;
+            }
+            mThroughputObservations.add(throughputKbps, whenMs);
+            mDownstreamThroughputKbps = mThroughputObservations.weightedMedian(whenMs);
+            for (final VersionSafeCallbacks.NetworkQualityThroughputListenerWrapper listener :
+                    mThroughputListenerList) {
+                postObservationTaskToExecutor(listener.getExecutor(), new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onThroughputObservation(
+                                throughputKbps, whenMs, OBSERVATION_SOURCE_HTTP);
+                    }
+                });
+            }
+        }
+    }
+
+    private boolean shouldObserve(String url) {
+        synchronized (mLock) {
+            if (mUseLocalHostRequests) {
+                return true;
+            }
+        }
+        return !isLocalHost(url);
+    }
+
+    /**
+     * Returns whether the host of |url| is localhost or a loopback, link-local or private IP
+     * literal. Does not resolve host names.
+     */
+    private static boolean isLocalHost(String url) {
+        String host;
+        try {
+            host = URI.create(url).getHost();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (host == null) {
+            return false;
+        }
+        if (host.equalsIgnoreCase("localhost") || host.toLowerCase().endsWith(".localhost")) {
+            return true;
+        }
+        if (!host.startsWith("[") && !host.matches("[0-9.]+")) {
+            return false;
+        }
+        try {
+            InetAddress address = InetAddress.getByName(host);
+            return address.isLoopbackAddress() || address.isLinkLocalAddress()
+                    || address.isSiteLocalAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    private static void postObservationTaskToExecutor(Executor executor, Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException failException) {
+            Log.e(TAG, "Exception posting task to executor", failException);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.net.impl;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Admission control of the requests of {@link JavaCronetEngine}.
+ *
+ * <p>At most {@link #getMaxConcurrentRequests()} requests run at a time, and at most
+ * {@link #getMaxRequestsPerHost()} of them to the same host. The others wait in a queue ordered by
+ * priority, then by arrival, which holds at most {@link #getMaxQueuedRequests()} requests; further
+ * requests are rejected. The limits are read from the "JavaEngine" dictionary of the experimental
+ * options, e.g. {@code {"JavaEngine": {"max_concurrent_requests": 16, "max_requests_per_host": 6,
+ * "max_queued_requests": 256}}}.
+ */
+final class JavaRequestScheduler {
+    private static final String TAG = JavaRequestScheduler.class.getSimpleName();
+
+    static final String EXPERIMENTAL_OPTIONS_KEY = "JavaEngine";
+    private static final String MAX_CONCURRENT_REQUESTS = "max_concurrent_requests";
+    private static final String MAX_REQUESTS_PER_HOST = "max_requests_per_host";
+    private static final String MAX_QUEUED_REQUESTS = "max_queued_requests";
+
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 16;
+    private static final int DEFAULT_MAX_REQUESTS_PER_HOST = 6;
+    private static final int DEFAULT_MAX_QUEUED_REQUESTS = 256;
+
+    /**
+     * A request waiting for, or holding, one of the slots of the scheduler.
+     */
+    static final class Ticket implements Comparable<Ticket> {
+        private final String mHost;
+        private final int mPriority;
+        private final Runnable mOnAdmitted;
+        // Arrival order among the tickets of the same priority.
+        private long mSequenceNumber;
+        private long mEnqueueTimeMs;
+        private boolean mQueued;
+        private boolean mRunning;
+
+        /**
+         * @param host The host the request connects to
+         * @param priority One of {@link CronetEngineBase.RequestPriority}
+         * @param onAdmitted Run once the request can start
+         */
+        Ticket(String host, @CronetEngineBase.RequestPriority int priority, Runnable onAdmitted) {
+            mHost = host;
+            mPriority = priority;
+            mOnAdmitted = onAdmitted;
+        }
+
+        @Override
+        public int compareTo(Ticket other) {
+            if (mPriority != other.mPriority) {
+                return mPriority > other.mPriority ? -1 : 1;
+            }
+            return Long.compare(mSequenceNumber, other.mSequenceNumber);
+        }
+    }
+
+    private final int mMaxConcurrentRequests;
+    private final int mMaxRequestsPerHost;
+    private final int mMaxQueuedRequests;
+
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    private final TreeSet<Ticket> mQueue = new TreeSet<>();
+    @GuardedBy("mLock")
+    private final Map<String, Integer> mRunningPerHost = new HashMap<>();
+    @GuardedBy("mLock")
+    private int mRunningCount;
+    @GuardedBy("mLock")
+    private long mNextSequenceNumber;
+
+    /* Queueing metrics. */
+    @GuardedBy("mLock")
+    private int mPeakQueueDepth;
+    @GuardedBy("mLock")
+    private long mAdmittedAfterWaitCount;
+    @GuardedBy("mLock")
+    private long mTotalWaitTimeMs;
+    @GuardedBy("mLock")
+    private long mMaxWaitTimeMs;
+    @GuardedBy("mLock")
+    private long mRejectedCount;
+
+    JavaRequestScheduler(int maxConcurrentRequests, int maxRequestsPerHost, int maxQueuedRequests) {
+        if (maxConcurrentRequests < 1 || maxRequestsPerHost < 1 || maxQueuedRequests < 0) {
+            throw new IllegalArgumentException("Invalid request scheduler limits");
+        }
+        mMaxConcurrentRequests = maxConcurrentRequests;
+        mMaxRequestsPerHost = maxRequestsPerHost;
+        mMaxQueuedRequests = maxQueuedRequests;
+    }
+
+    /**
+     * Creates a scheduler with the limits of the experimental options of {@code builder}, or the
+     * default ones.
+     */
+    static JavaRequestScheduler create(CronetEngineBuilderImpl builder) {
+        int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+        int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+        int maxQueuedRequests = DEFAULT_MAX_QUEUED_REQUESTS;
+        String experimentalOptions = builder.experimentalOptions();
+        if (experimentalOptions != null) {
+            try {
+                JSONObject options = new JSONObject(experimentalOptions)
+                                             .optJSONObject(EXPERIMENTAL_OPTIONS_KEY);
+                if (options != null) {
+                    maxConcurrentRequests =
+                            options.optInt(MAX_CONCURRENT_REQUESTS, maxConcurrentRequests);
+                    maxRequestsPerHost = options.optInt(MAX_REQUESTS_PER_HOST, maxRequestsPerHost);
+                    maxQueuedRequests = options.optInt(MAX_QUEUED_REQUESTS, maxQueuedRequests);
+                }
+            } catch (JSONException e) {
+                Log.e(TAG, "Invalid experimental options, using the default limits", e);
+            }
+        }
+        return new JavaRequestScheduler(maxConcurrentRequests, maxRequestsPerHost,
+                maxQueuedRequests);
+    }
+
+    int getMaxConcurrentRequests() {
+        return mMaxConcurrentRequests;
+    }
+
+    int getMaxRequestsPerHost() {
+        return mMaxRequestsPerHost;
+    }
+
+    int getMaxQueuedRequests() {
+        return mMaxQueuedRequests;
+    }
+
+    /**
+     * Runs the admission callback of {@code ticket} now if a slot is free, or queues it.
+     *
+     * @throws RejectedExecutionException if the queue is full.
+     */
+    void schedule(Ticket ticket) {
+        synchronized (mLock) {
+            assert !ticket.mQueued && !ticket.mRunning;
+            // No queued request can run, so the slot is not taken from one of a higher priority.
+            if (canRunLocked(ticket.mHost)) {
+                markRunningLocked(ticket);
+            } else {
+                if (mQueue.size() >= mMaxQueuedRequests) {
+                    mRejectedCount++;
+                    throw new RejectedExecutionException(
+                            "Too many queued requests: " + mQueue.size());
+                }
+                ticket.mSequenceNumber = mNextSequenceNumber++;
+                ticket.mEnqueueTimeMs = System.currentTimeMillis();
+                ticket.mQueued = true;
+                mQueue.add(ticket);
+                mPeakQueueDepth = Math.max(mPeakQueueDepth, mQueue.size());
+                return;
+            }
+        }
+        ticket.mOnAdmitted.run();
+    }
+
+    /**
+     * Releases the slot of {@code ticket}, or removes it from the queue, and admits the requests
+     * that can run in its place. Does nothing if it was already finished.
+     */
+    void finish(Ticket ticket) {
+        List<Ticket> admitted;
+        synchronized (mLock) {
+            if (ticket.mQueued) {
+                ticket.mQueued = false;
+                mQueue.remove(ticket);
+                return;
+            }
+            if (!ticket.mRunning) {
+                return;
+            }
+            ticket.mRunning = false;
+            mRunningCount--;
+            int runningForHost = mRunningPerHost.get(ticket.mHost) - 1;
+            if (runningForHost == 0) {
+                mRunningPerHost.remove(ticket.mHost);
+            } else {
+                mRunningPerHost.put(ticket.mHost, runningForHost);
+            }
+            admitted = admitQueuedLocked();
+        }
+        for (Ticket next : admitted) {
+            next.mOnAdmitted.run();
+        }
+    }
+
+    /**
+     * Returns a consistent snapshot of the admission metrics.
+     */
+    JavaCronetEngine.RequestSchedulerMetrics getMetrics() {
+        synchronized (mLock) {
+            long averageWaitTimeMs =
+                    mAdmittedAfterWaitCount == 0 ? 0 : mTotalWaitTimeMs / mAdmittedAfterWaitCount;
+            return new JavaCronetEngine.RequestSchedulerMetrics(mQueue.size(), mPeakQueueDepth,
+                    mRunningCount, mRejectedCount, averageWaitTimeMs, mMaxWaitTimeMs);
+        }
+    }
+
+    @GuardedBy("mLock")
+    private boolean canRunLocked(String host) {
+        if (mRunningCount >= mMaxConcurrentRequests) {
+            return false;
+        }
+        Integer runningForHost = mRunningPerHost.get(host);
+        return runningForHost == null || runningForHost < mMaxRequestsPerHost;
+    }
+
+    @GuardedBy("mLock")
+    private void markRunningLocked(Ticket ticket) {
+        ticket.mRunning = true;
+        mRunningCount++;
+        Integer runningForHost = mRunningPerHost.get(ticket.mHost);
+        mRunningPerHost.put(ticket.mHost, runningForHost == null ? 1 : runningForHost + 1);
+    }
+
+    /**
+     * Removes from the queue, in priority order, the requests that can run now, skipping those
+     * whose host is at its limit. Afterwards, no queued request can run.
+     */
+    @GuardedBy("mLock")
+    private List<Ticket> admitQueuedLocked() {
+        List<Ticket> admitted = new ArrayList<>();
+        if (mQueue.isEmpty() || mRunningCount >= mMaxConcurrentRequests) {
+            return admitted;
+        }
+        long nowMs = System.currentTimeMillis();
+        for (Iterator<Ticket> it = mQueue.iterator();
+                it.hasNext() && mRunningCount < mMaxConcurrentRequests;) {
+            Ticket ticket = it.next();
+            if (!canRunLocked(ticket.mHost)) {
+                continue;
+            }
+            it.remove();
+            ticket.mQueued = false;
+            markRunningLocked(ticket);
+            long waitTimeMs = Math.max(0, nowMs - ticket.mEnqueueTimeMs);
+            mAdmittedAfterWaitCount++;
+            mTotalWaitTimeMs += waitTimeMs;
+            mMaxWaitTimeMs = Math.max(mMaxWaitTimeMs, waitTimeMs);
+            admitted.add(ticket);
+        }
+        return admitted;
+    }
+}
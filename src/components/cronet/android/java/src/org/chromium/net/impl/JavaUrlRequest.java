@@ -13,11 +13,13 @@ import androidx.annotation.Nullable;
 
 import org.chromium.net.CronetException;
 import org.chromium.net.InlineExecutionProhibitedException;
+import org.chromium.net.RequestFinishedInfo;
 import org.chromium.net.ThreadStatsUid;
 import org.chromium.net.UploadDataProvider;
 import org.chromium.net.UrlResponseInfo;
 import org.chromium.net.impl.JavaUrlRequestUtils.CheckedRunnable;
 import org.chromium.net.impl.JavaUrlRequestUtils.DirectPreventingExecutor;
+import org.chromium.net.impl.JavaUrlRequestUtils.SerializingExecutor;
 import org.chromium.net.impl.JavaUrlRequestUtils.State;
 
 import java.io.IOException;
@@ -31,8 +33,8 @@ import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.AbstractMap.SimpleEntry;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -42,8 +44,6 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.annotation.concurrent.GuardedBy;
-
 /**
  * Pure java UrlRequest, backed by {@link HttpURLConnection}.
  */
@@ -74,8 +74,19 @@ final class JavaUrlRequest extends UrlRequestBase {
     private final AtomicBoolean mUploadProviderClosed = new AtomicBoolean(false);
 
     private final boolean mAllowDirectExecutor;
+    private final JavaRequestScheduler mRequestScheduler;
+    private final JavaRequestScheduler.Ticket mSchedulerTicket;
+    @Nullable
+    private final JavaHttpCache mHttpCache;
+    private final JavaCronetEngine mRequestContext;
+    @Nullable
+    private final JavaNetworkQualityEstimator mNetworkQualityEstimator;
+    private final Collection<Object> mRequestAnnotations;
+    @Nullable
+    private final VersionSafeCallbacks.RequestFinishedInfoListener mRequestFinishedListener;
 
     /* These don't change with redirects */
+    private final String mInitialUrl;
     private String mInitialMethod;
     private VersionSafeCallbacks.UploadDataProviderWrapper mUploadDataProvider;
     private Executor mUploadExecutor;
@@ -101,81 +112,43 @@ final class JavaUrlRequest extends UrlRequestBase {
     private String mPendingRedirectUrl;
     private HttpURLConnection mCurrentUrlConnection; // Only accessed on mExecutor.
     private OutputStreamDataSink mOutputStreamDataSink; // Only accessed on mExecutor.
+    // Stale response revalidated by mCurrentUrlConnection, and its body. Only accessed on
+    // mExecutor.
+    @Nullable
+    private JavaHttpCache.Entry mCacheCandidate;
+    @Nullable
+    private InputStream mCacheCandidateBody;
+    private long mRequestTimeMs; // Only accessed on mExecutor.
 
-    // Executor that runs one task at a time on an underlying Executor.
-    // NOTE: Do not use to wrap user supplied Executor as lock is held while underlying execute()
-    // is called.
-    private static final class SerializingExecutor implements Executor {
-        private final Executor mUnderlyingExecutor;
-        private final Runnable mRunTasks = new Runnable() {
-            @Override
-            public void run() {
-                Runnable task;
-                synchronized (mTaskQueue) {
-                    if (mRunning) {
-                        return;
-                    }
-                    task = mTaskQueue.pollFirst();
-                    mRunning = task != null;
-                }
-                while (task != null) {
-                    boolean threw = true;
-                    try {
-                        task.run();
-                        threw = false;
-                    } finally {
-                        synchronized (mTaskQueue) {
-                            if (threw) {
-                                // If task.run() threw, this method will abort without looping
-                                // again, so repost to keep running tasks.
-                                mRunning = false;
-                                try {
-                                    mUnderlyingExecutor.execute(mRunTasks);
-                                } catch (RejectedExecutionException e) {
-                                    // Give up if a task run at shutdown throws.
-                                }
-                            } else {
-                                task = mTaskQueue.pollFirst();
-                                mRunning = task != null;
-                            }
-                        }
-                    }
-                }
-            }
-        };
-        // Queue of tasks to run.  Tasks are added to the end and taken from the front.
-        // Synchronized on itself.
-        @GuardedBy("mTaskQueue")
-        private final ArrayDeque<Runnable> mTaskQueue = new ArrayDeque<>();
-        // Indicates if mRunTasks is actively running tasks.  Synchronized on mTaskQueue.
-        @GuardedBy("mTaskQueue")
-        private boolean mRunning;
-
-        SerializingExecutor(Executor underlyingExecutor) {
-            mUnderlyingExecutor = underlyingExecutor;
-        }
-
-        @Override
-        public void execute(Runnable command) {
-            synchronized (mTaskQueue) {
-                mTaskQueue.addLast(command);
-                try {
-                    mUnderlyingExecutor.execute(mRunTasks);
-                } catch (RejectedExecutionException e) {
-                    // If shutting down, do not add new tasks to the queue.
-                    mTaskQueue.removeLast();
-                }
-            }
-        };
-    }
+    /*
+     * Timings and byte counts of the request, reported in its RequestFinishedInfo. Written on
+     * mExecutor, and read when the request finishes. Timings are -1 until known.
+     */
+    private volatile long mRequestStartMs = -1;
+    private volatile long mSendingStartMs = -1;
+    private volatile long mSendingEndMs = -1;
+    private volatile long mResponseStartMs = -1;
+    private volatile long mSentByteCount;
+    private volatile long mReceivedByteCount;
+    // Bytes of the current response body read from the network. Only accessed on mExecutor.
+    private long mResponseBodyByteCount;
 
     /**
      * @param executor The executor used for reading and writing from sockets
      * @param userExecutor The executor used to dispatch to {@code callback}
+     * @param requestScheduler The scheduler admitting the request once it is started
+     * @param httpCache The cache used for the request, or null to bypass it
+     * @param requestContext The engine of the request, fed its network quality observations and
+     *         notified when it finishes
      */
     JavaUrlRequest(Callback callback, final Executor executor, Executor userExecutor, String url,
-            String userAgent, boolean allowDirectExecutor, boolean trafficStatsTagSet,
-            int trafficStatsTag, final boolean trafficStatsUidSet, final int trafficStatsUid) {
+            String userAgent, @CronetEngineBase.RequestPriority int priority,
+            JavaRequestScheduler requestScheduler, boolean allowDirectExecutor,
+            boolean trafficStatsTagSet,
+            int trafficStatsTag, final boolean trafficStatsUidSet, final int trafficStatsUid,
+            @Nullable JavaHttpCache httpCache, JavaCronetEngine requestContext,
+            Collection<Object> requestAnnotations,
+            @Nullable RequestFinishedInfo.Listener requestFinishedListener) {
         if (url == null) {
             throw new NullPointerException("URL is required");
         }
@@ -190,6 +163,27 @@ final class JavaUrlRequest extends UrlRequestBase {
         }
 
         this.mAllowDirectExecutor = allowDirectExecutor;
+        this.mRequestScheduler = requestScheduler;
+        this.mSchedulerTicket = new JavaRequestScheduler.Ticket(
+                getHost(url), priority, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isDone()) {
+                            // Finished while it was being admitted.
+                            mRequestScheduler.finish(mSchedulerTicket);
+                            return;
+                        }
+                        mAdditionalStatusDetails = Status.CONNECTING;
+                        fireOpenConnection();
+                    }
+                });
+        this.mHttpCache = httpCache;
+        this.mRequestContext = requestContext;
+        this.mNetworkQualityEstimator = requestContext.getNetworkQualityEstimator();
+        this.mRequestAnnotations = requestAnnotations;
+        this.mRequestFinishedListener = requestFinishedListener != null
+                ? new VersionSafeCallbacks.RequestFinishedInfoListener(requestFinishedListener)
+                : null;
         this.mCallbackAsync = new AsyncUrlRequestCallback(callback, userExecutor);
         final int trafficStatsTagToUse =
                 trafficStatsTagSet ? trafficStatsTag : TrafficStats.getThreadStatsTag();
@@ -216,6 +210,7 @@ final class JavaUrlRequest extends UrlRequestBase {
                 });
             }
         });
+        this.mInitialUrl = url;
         this.mCurrentUrl = url;
         this.mUserAgent = userAgent;
     }
@@ -247,7 +242,7 @@ final class JavaUrlRequest extends UrlRequestBase {
     @Override
     public void addHeader(String header, String value) {
         checkNotStarted();
-        if (!isValidHeaderName(header) || value.contains("\r\n")) {
+        if (!JavaUrlRequestUtils.isValidHeaderName(header) || value.contains("\r\n")) {
             throw new IllegalArgumentException("Invalid header " + header + "=" + value);
         }
         if (mRequestHeaders.containsKey(header)) {
@@ -256,38 +251,6 @@ final class JavaUrlRequest extends UrlRequestBase {
         mRequestHeaders.put(header, value);
     }
 
-    private boolean isValidHeaderName(String header) {
-        for (int i = 0; i < header.length(); i++) {
-            char c = header.charAt(i);
-            switch (c) {
-                case '(':
-                case ')':
-                case '<':
-                case '>':
-                case '@':
-                case ',':
-                case ';':
-                case ':':
-                case '\\':
-                case '\'':
-                case '/':
-                case '[':
-                case ']':
-                case '?':
-                case '=':
-                case '{':
-                case '}':
-                    return false;
-                default: {
-                    if (Character.isISOControl(c) || Character.isWhitespace(c)) {
-                        return false;
-                    }
-                }
-            }
-        }
-        return true;
-    }
-
     @Override
     public void setUploadDataProvider(UploadDataProvider uploadDataProvider, Executor executor) {
         if (uploadDataProvider == null) {
@@ -370,6 +333,7 @@ final class JavaUrlRequest extends UrlRequestBase {
             while (buffer.hasRemaining()) {
                 totalBytesProcessed += mOutputChannel.write(buffer);
             }
+            mSentByteCount += totalBytesProcessed;
             // Forces a chunk to be sent, rather than buffering to the DEFAULT_CHUNK_LENGTH.
             // This allows clients to trickle-upload bytes as they become available without
             // introducing latency due to buffering.
@@ -395,18 +359,37 @@ final class JavaUrlRequest extends UrlRequestBase {
 
     @Override
     public void start() {
-        mAdditionalStatusDetails = Status.CONNECTING;
+        mAdditionalStatusDetails = Status.WAITING_FOR_AVAILABLE_SOCKET;
         transitionStates(State.NOT_STARTED, State.STARTED, new Runnable() {
             @Override
             public void run() {
+                mRequestStartMs = System.currentTimeMillis();
                 mUrlChain.add(mCurrentUrl);
-                fireOpenConnection();
+                try {
+                    mRequestScheduler.schedule(mSchedulerTicket);
+                } catch (RejectedExecutionException e) {
+                    enterErrorState(new CronetExceptionImpl("Exception scheduling request", e));
+                }
             }
         });
     }
 
+    /**
+     * Returns the host of {@code url}, or an empty string if it has none. The request fails later
+     * if the URL is invalid.
+     */
+    private static String getHost(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? "" : host;
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+
     private void enterErrorState(final CronetException error) {
         if (setTerminalState(State.ERROR)) {
+            mRequestScheduler.finish(mSchedulerTicket);
             fireDisconnect();
             fireCloseUploadDataProvider();
             mCallbackAsync.onFailed(mUrlResponseInfo, error);
@@ -491,6 +474,7 @@ final class JavaUrlRequest extends UrlRequestBase {
                 if (mCurrentUrlConnection == null) {
                     return; // We've been cancelled
                 }
+                mSendingEndMs = System.currentTimeMillis();
                 final List<Map.Entry<String, String>> headerList = new ArrayList<>();
                 String selectedTransport = "http/1.1";
                 String headerKey;
@@ -506,35 +490,151 @@ final class JavaUrlRequest extends UrlRequestBase {
                 }
 
                 int responseCode = mCurrentUrlConnection.getResponseCode();
+                long responseTimeMs = System.currentTimeMillis();
+                mResponseStartMs = responseTimeMs;
+                mReceivedByteCount += JavaUrlRequestUtils.estimateHeadersSize(
+                        responseCode + " " + mCurrentUrlConnection.getResponseMessage(),
+                        headerList);
+                if (mNetworkQualityEstimator != null && mUploadDataProvider == null) {
+                    mNetworkQualityEstimator.onResponseStarted(
+                            mCurrentUrl, mRequestTimeMs, responseTimeMs);
+                }
+                if (mCacheCandidate != null) {
+                    JavaHttpCache.Entry candidate = mCacheCandidate;
+                    InputStream candidateBody = mCacheCandidateBody;
+                    mCacheCandidate = null;
+                    mCacheCandidateBody = null;
+                    if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                        serveFromCache(mHttpCache.update(candidate, headerList, mRequestTimeMs,
+                                               responseTimeMs),
+                                candidateBody);
+                        return;
+                    }
+                    candidateBody.close();
+                }
+                if (mHttpCache != null && !JavaHttpCachePolicy.isSafeMethod(mInitialMethod)
+                        && responseCode < 400) {
+                    mHttpCache.remove(mCurrentUrl);
+                }
                 // Important to copy the list here, because although we never concurrently modify
                 // the list ourselves, user code might iterate over it while we're redirecting, and
                 // that would throw ConcurrentModificationException.
                 mUrlResponseInfo = new UrlResponseInfoImpl(new ArrayList<>(mUrlChain), responseCode,
                         mCurrentUrlConnection.getResponseMessage(),
-                        Collections.unmodifiableList(headerList), false, selectedTransport, "", 0);
+                        Collections.unmodifiableList(headerList), false, selectedTransport, "",
+                        mReceivedByteCount);
+                mResponseBodyByteCount = 0;
+                JavaHttpCache.Writer cacheWriter = newCacheWriter(responseTimeMs);
                 // TODO(clm) actual redirect handling? post -> get and whatnot?
                 if (responseCode >= 300 && responseCode < 400) {
                     List<String> locationFields = mUrlResponseInfo.getAllHeaders().get("location");
                     if (locationFields != null) {
+                        if (cacheWriter != null) {
+                            cacheWriter.commit();
+                        }
                         fireRedirectReceived(locationFields.get(0));
                         return;
                     }
                 }
                 fireCloseUploadDataProvider();
+                ReadableByteChannel responseChannel;
                 if (responseCode >= 400) {
                     InputStream inputStream = mCurrentUrlConnection.getErrorStream();
-                    mResponseChannel =
+                    responseChannel =
                             inputStream == null ? null : InputStreamChannel.wrap(inputStream);
-                    mCallbackAsync.onResponseStarted(mUrlResponseInfo);
                 } else {
-                    mResponseChannel =
+                    responseChannel =
                             InputStreamChannel.wrap(mCurrentUrlConnection.getInputStream());
-                    mCallbackAsync.onResponseStarted(mUrlResponseInfo);
                 }
+                if (cacheWriter != null) {
+                    if (responseChannel == null) {
+                        cacheWriter.commit();
+                    } else {
+                        responseChannel = cacheWriter.wrap(responseChannel);
+                    }
+                }
+                mResponseChannel = responseChannel;
+                mCallbackAsync.onResponseStarted(mUrlResponseInfo);
             }
         }));
     }
 
+    /**
+     * Looks up the cache for the current URL. Serves a fresh stored response and returns true, or
+     * keeps a stale one in {@link #mCacheCandidate} to be revalidated by the connection.
+     */
+    private boolean maybeServeFromCache() throws IOException {
+        if (mHttpCache == null || mUploadDataProvider != null
+                || !JavaHttpCachePolicy.canUseCache(mInitialMethod, mRequestHeaders)) {
+            return false;
+        }
+        JavaHttpCache.Entry entry = mHttpCache.get(mCurrentUrl, mRequestHeaders);
+        if (entry == null) {
+            return false;
+        }
+        @JavaHttpCachePolicy.CacheAction
+        int action = JavaHttpCachePolicy.getAction(
+                entry, mRequestHeaders, System.currentTimeMillis());
+        if (action == JavaHttpCachePolicy.CacheAction.NETWORK) {
+            return false;
+        }
+        InputStream body = mHttpCache.openBody(entry);
+        if (body == null) {
+            return false;
+        }
+        if (action == JavaHttpCachePolicy.CacheAction.VALIDATE) {
+            mCacheCandidate = entry;
+            mCacheCandidateBody = body;
+            return false;
+        }
+        serveFromCache(entry, body);
+        return true;
+    }
+
+    /**
+     * Delivers a stored response, as a redirect or with |body| as the response body.
+     */
+    private void serveFromCache(JavaHttpCache.Entry entry, InputStream body) throws IOException {
+        mResponseStartMs = System.currentTimeMillis();
+        mUrlResponseInfo = new UrlResponseInfoImpl(new ArrayList<>(mUrlChain),
+                entry.mHttpStatusCode, entry.mHttpStatusText, entry.mHeaders, true,
+                entry.mNegotiatedProtocol, "", mReceivedByteCount);
+        if (entry.mHttpStatusCode >= 300 && entry.mHttpStatusCode < 400) {
+            List<String> locationFields = mUrlResponseInfo.getAllHeaders().get("location");
+            if (locationFields != null) {
+                body.close();
+                fireRedirectReceived(locationFields.get(0));
+                return;
+            }
+        }
+        fireCloseUploadDataProvider();
+        mResponseChannel = InputStreamChannel.wrap(body);
+        mCallbackAsync.onResponseStarted(mUrlResponseInfo);
+    }
+
+    /**
+     * Returns a writer storing the response of {@link #mCurrentUrlConnection} in the cache, or null
+     * if it must not be stored.
+     */
+    @Nullable
+    private JavaHttpCache.Writer newCacheWriter(long responseTimeMs) {
+        List<Map.Entry<String, String>> headers = mUrlResponseInfo.getAllHeadersAsList();
+        if (mHttpCache == null || mUploadDataProvider != null
+                || !JavaHttpCachePolicy.canUseCache(mInitialMethod, mRequestHeaders)
+                || !JavaHttpCachePolicy.isStorable(
+                        mRequestHeaders, mUrlResponseInfo.getHttpStatusCode(), headers)) {
+            return null;
+        }
+        Map<String, String> varyRequestHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (String name : JavaHttpCachePolicy.getVaryHeaderNames(headers)) {
+            varyRequestHeaders.put(name, mRequestHeaders.get(name));
+        }
+        return mHttpCache.newWriter(mCurrentUrl, mUrlResponseInfo.getHttpStatusCode(),
+                mUrlResponseInfo.getHttpStatusText(), headers,
+                mUrlResponseInfo.getNegotiatedProtocol(), mRequestTimeMs, responseTimeMs,
+                varyRequestHeaders, mCurrentUrlConnection.getContentLength());
+    }
+
     private void fireCloseUploadDataProvider() {
         if (mUploadDataProvider != null
                 && mUploadProviderClosed.compareAndSet(
@@ -585,18 +685,33 @@ final class JavaUrlRequest extends UrlRequestBase {
                     mCurrentUrlConnection.disconnect();
                     mCurrentUrlConnection = null;
                 }
-                mCurrentUrlConnection = (HttpURLConnection) url.openConnection();
-                mCurrentUrlConnection.setInstanceFollowRedirects(false);
                 if (!mRequestHeaders.containsKey(USER_AGENT)) {
                     mRequestHeaders.put(USER_AGENT, mUserAgent);
                 }
+                if (mInitialMethod == null) {
+                    mInitialMethod = "GET";
+                }
+                if (maybeServeFromCache()) {
+                    return;
+                }
+                mCurrentUrlConnection = (HttpURLConnection) url.openConnection();
+                mCurrentUrlConnection.setInstanceFollowRedirects(false);
                 for (Map.Entry<String, String> entry : mRequestHeaders.entrySet()) {
                     mCurrentUrlConnection.setRequestProperty(entry.getKey(), entry.getValue());
                 }
-                if (mInitialMethod == null) {
-                    mInitialMethod = "GET";
+                if (mCacheCandidate != null) {
+                    for (Map.Entry<String, String> entry :
+                            JavaHttpCachePolicy.getValidationHeaders(mCacheCandidate.mHeaders)) {
+                        mCurrentUrlConnection.setRequestProperty(entry.getKey(), entry.getValue());
+                    }
                 }
                 mCurrentUrlConnection.setRequestMethod(mInitialMethod);
+                mRequestTimeMs = System.currentTimeMillis();
+                if (mSendingStartMs == -1) {
+                    mSendingStartMs = mRequestTimeMs;
+                }
+                mSentByteCount += JavaUrlRequestUtils.estimateHeadersSize(
+                        mInitialMethod + " " + url.getFile(), mRequestHeaders.entrySet());
                 if (mUploadDataProvider != null) {
                     mOutputStreamDataSink = new OutputStreamDataSink(
                             mUploadExecutor, mExecutor, mCurrentUrlConnection, mUploadDataProvider);
@@ -669,13 +784,23 @@ final class JavaUrlRequest extends UrlRequestBase {
 
     private void processReadResult(int read, final ByteBuffer buffer) throws IOException {
         if (read != -1) {
+            if (!mUrlResponseInfo.wasCached()) {
+                mResponseBodyByteCount += read;
+                mReceivedByteCount += read;
+                mUrlResponseInfo.setReceivedByteCount(mReceivedByteCount);
+            }
             mCallbackAsync.onReadCompleted(mUrlResponseInfo, buffer);
         } else {
             if (mResponseChannel != null) {
                 mResponseChannel.close();
             }
+            if (mNetworkQualityEstimator != null && !mUrlResponseInfo.wasCached()) {
+                mNetworkQualityEstimator.onResponseBodyReceived(mCurrentUrl,
+                        mResponseBodyByteCount, mResponseStartMs, System.currentTimeMillis());
+            }
             if (mState.compareAndSet(
                         /* expected= */ State.READING, /* updated= */ State.COMPLETE)) {
+                mRequestScheduler.finish(mSchedulerTicket);
                 fireDisconnect();
                 mCallbackAsync.onSucceeded(mUrlResponseInfo);
             }
@@ -697,6 +822,15 @@ final class JavaUrlRequest extends UrlRequestBase {
                     mCurrentUrlConnection.disconnect();
                     mCurrentUrlConnection = null;
                 }
+                if (mCacheCandidateBody != null) {
+                    try {
+                        mCacheCandidateBody.close();
+                    } catch (IOException e) {
+                        Log.e(TAG, "Exception when closing cached body", e);
+                    }
+                    mCacheCandidate = null;
+                    mCacheCandidateBody = null;
+                }
             }
         });
     }
@@ -717,6 +851,7 @@ final class JavaUrlRequest extends UrlRequestBase {
             // User code is waiting on us - cancel away!
             case State.STARTED:
             case State.READING:
+                mRequestScheduler.finish(mSchedulerTicket);
                 fireDisconnect();
                 fireCloseUploadDataProvider();
                 mCallbackAsync.onCanceled(mUrlResponseInfo);
@@ -850,6 +985,7 @@ final class JavaUrlRequest extends UrlRequestBase {
                     } catch (Exception exception) {
                         Log.e(TAG, "Exception in onCanceled method", exception);
                     }
+                    maybeReportMetrics(RequestFinishedInfo.CANCELED, info, null);
                 }
             });
         }
@@ -863,6 +999,7 @@ final class JavaUrlRequest extends UrlRequestBase {
                     } catch (Exception exception) {
                         Log.e(TAG, "Exception in onSucceeded method", exception);
                     }
+                    maybeReportMetrics(RequestFinishedInfo.SUCCEEDED, info, null);
                 }
             });
         }
@@ -877,6 +1014,7 @@ final class JavaUrlRequest extends UrlRequestBase {
                     } catch (Exception exception) {
                         Log.e(TAG, "Exception in onFailed method", exception);
                     }
+                    maybeReportMetrics(RequestFinishedInfo.FAILED, urlResponseInfo, e);
                 }
             };
             try {
@@ -889,6 +1027,38 @@ final class JavaUrlRequest extends UrlRequestBase {
         }
     }
 
+    /**
+     * Reports the metrics of the request to the RequestFinishedInfo listeners, if there are any.
+     * Only called on the user executor, after the final callback.
+     */
+    private void maybeReportMetrics(@RequestFinishedInfoImpl.FinishedReason int finishedReason,
+            @Nullable UrlResponseInfo responseInfo, @Nullable CronetException exception) {
+        if (mRequestFinishedListener == null && !mRequestContext.hasRequestFinishedListener()) {
+            return;
+        }
+        long requestStartMs = mRequestStartMs;
+        long responseStartMs = mResponseStartMs;
+        RequestFinishedInfo.Metrics metrics = new CronetMetrics(requestStartMs, -1, -1, -1, -1, -1,
+                -1, mSendingStartMs, mSendingEndMs, -1, -1, responseStartMs,
+                Math.max(System.currentTimeMillis(), Math.max(requestStartMs, responseStartMs)),
+                false, mSentByteCount, mReceivedByteCount);
+        final RequestFinishedInfo requestInfo = new RequestFinishedInfoImpl(mInitialUrl,
+                mRequestAnnotations, metrics, finishedReason, responseInfo, exception);
+        mRequestContext.reportRequestFinished(requestInfo);
+        if (mRequestFinishedListener != null) {
+            try {
+                mRequestFinishedListener.getExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        mRequestFinishedListener.onRequestFinished(requestInfo);
+                    }
+                });
+            } catch (RejectedExecutionException failException) {
+                Log.e(TAG, "Exception posting task to executor", failException);
+            }
+        }
+    }
+
     private void closeResponseChannel() {
         mExecutor.execute(new Runnable() {
             @Override
@@ -10,7 +10,13 @@ import org.chromium.net.InlineExecutionProhibitedException;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.concurrent.GuardedBy;
 
 /**
  * Utilities for Java-based UrlRequest implementations.
@@ -118,4 +124,121 @@ public final class JavaUrlRequestUtils {
             }
         }
     }
+
+    // Executor that runs one task at a time on an underlying Executor.
+    // NOTE: Do not use to wrap user supplied Executor as lock is held while underlying execute()
+    // is called.
+    static final class SerializingExecutor implements Executor {
+        private final Executor mUnderlyingExecutor;
+        private final Runnable mRunTasks = new Runnable() {
+            @Override
+            public void run() {
+                Runnable task;
+                synchronized (mTaskQueue) {
+                    if (mRunning) {
+                        return;
+                    }
+                    task = mTaskQueue.pollFirst();
+                    mRunning = task != null;
+                }
+                while (task != null) {
+                    boolean threw = true;
+                    try {
+                        task.run();
+                        threw = false;
+                    } finally {
+                        synchronized (mTaskQueue) {
+                            if (threw) {
+                                // If task.run() threw, this method will abort without looping
+                                // again, so repost to keep running tasks.
+                                mRunning = false;
+                                try {
+                                    mUnderlyingExecutor.execute(mRunTasks);
+                                } catch (RejectedExecutionException e) {
+                                    // Give up if a task run at shutdown throws.
+                                }
+                            } else {
+                                task = mTaskQueue.pollFirst();
+                                mRunning = task != null;
+                            }
+                        }
+                    }
+                }
+            }
+        };
+        // Queue of tasks to run.  Tasks are added to the end and taken from the front.
+        // Synchronized on itself.
+        @GuardedBy("mTaskQueue")
+        private final ArrayDeque<Runnable> mTaskQueue = new ArrayDeque<>();
+        // Indicates if mRunTasks is actively running tasks.  Synchronized on mTaskQueue.
+        @GuardedBy("mTaskQueue")
+        private boolean mRunning;
+
+        SerializingExecutor(Executor underlyingExecutor) {
+            mUnderlyingExecutor = underlyingExecutor;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            synchronized (mTaskQueue) {
+                mTaskQueue.addLast(command);
+                try {
+                    mUnderlyingExecutor.execute(mRunTasks);
+                } catch (RejectedExecutionException e) {
+                    // If shutting down, do not add new tasks to the queue.
+                    mTaskQueue.removeLast();
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns whether {@code header} is a valid HTTP header name.
+     */
+    static boolean isValidHeaderName(String header) {
+        for (int i = 0; i < header.length(); i++) {
+            char c = header.charAt(i);
+            switch (c) {
+                case '(':
+                case ')':
+                case '<':
+                case '>':
+                case '@':
+                case ',':
+                case ';':
+                case ':':
+                case '\\':
+                case '\'':
+                case '/':
+                case '[':
+                case ']':
+                case '?':
+                case '=':
+                case '{':
+                case '}':
+                    return false;
+                default: {
+                    if (Character.isISOControl(c) || Character.isWhitespace(c)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the size of a header block of HTTP/1.1 starting with {@code firstLine}, as an estimate
+     * of the bytes transferred for it when the connection does not report them.
+     */
+    static long estimateHeadersSize(
+            String firstLine, Collection<? extends Map.Entry<String, String>> headers) {
+        // "HTTP/1.1 " or " HTTP/1.1", and CRLFs ending the first line and the header block.
+        long size = firstLine.length() + 9 + 4;
+        for (Map.Entry<String, String> header : headers) {
+            // ": " and CRLF.
+            size += header.getKey().length() + header.getValue().length() + 4;
+        }
+        return size;
+    }
 }
@@ -32,6 +32,7 @@ import org.junit.runner.RunWith;
 import org.chromium.base.Log;
 import org.chromium.base.test.util.DisabledTest;
 import org.chromium.base.test.util.Feature;
+import org.chromium.net.CronetTestRule.OnlyRunJavaCronet;
 import org.chromium.net.CronetTestRule.OnlyRunNativeCronet;
 import org.chromium.net.CronetTestRule.RequiresMinApi;
 import org.chromium.net.MetricsTestUtil.TestRequestFinishedListener;
@@ -63,6 +64,9 @@ public class BidirectionalStreamTest {
     public final CronetTestRule mTestRule = new CronetTestRule();
 
     private ExperimentalCronetEngine mCronetEngine;
+    // Used by the tests of the Java implementation, which only supports HTTP/1.1.
+    private ExperimentalCronetEngine mJavaCronetEngine;
+    private ChunkedEchoServer mChunkedEchoServer;
 
     @Before
     public void setUp() throws Exception {
@@ -84,6 +88,17 @@ public class BidirectionalStreamTest {
         if (mCronetEngine != null) {
             mCronetEngine.shutdown();
         }
+        if (mJavaCronetEngine != null) {
+            mJavaCronetEngine.shutdown();
+        }
+        if (mChunkedEchoServer != null) {
+            mChunkedEchoServer.shutdown();
+        }
+    }
+
+    private void startJavaEngineAndChunkedEchoServer() throws Exception {
+        mJavaCronetEngine = mTestRule.createJavaEngineBuilder().build();
+        mChunkedEchoServer = new ChunkedEchoServer();
     }
 
     private static void checkResponseInfo(UrlResponseInfo responseInfo, String expectedUrl,
@@ -149,36 +164,38 @@ public class BidirectionalStreamTest {
     @Feature({"Cronet"})
     public void testBuilderCheck() throws Exception {
         if (mTestRule.testingJavaImpl()) {
-            runBuilderCheckJavaImpl();
+            ExperimentalCronetEngine javaEngine = mTestRule.createJavaEngineBuilder().build();
+            runBuilderCheck(javaEngine);
+            javaEngine.shutdown();
         } else {
-            runBuilderCheckNativeImpl();
+            runBuilderCheck(mCronetEngine);
         }
     }
 
-    private void runBuilderCheckNativeImpl() throws Exception {
+    private void runBuilderCheck(ExperimentalCronetEngine cronetEngine) throws Exception {
         TestBidirectionalStreamCallback callback = new TestBidirectionalStreamCallback();
         try {
-            mCronetEngine.newBidirectionalStreamBuilder(null, callback, callback.getExecutor());
+            cronetEngine.newBidirectionalStreamBuilder(null, callback, callback.getExecutor());
             fail("URL not null-checked");
         } catch (NullPointerException e) {
             assertEquals("URL is required.", e.getMessage());
         }
         try {
-            mCronetEngine.newBidirectionalStreamBuilder(
+            cronetEngine.newBidirectionalStreamBuilder(
                     Http2TestServer.getServerUrl(), null, callback.getExecutor());
             fail("Callback not null-checked");
         } catch (NullPointerException e) {
             assertEquals("Callback is required.", e.getMessage());
         }
         try {
-            mCronetEngine.newBidirectionalStreamBuilder(
+            cronetEngine.newBidirectionalStreamBuilder(
                     Http2TestServer.getServerUrl(), callback, null);
             fail("Executor not null-checked");
         } catch (NullPointerException e) {
             assertEquals("Executor is required.", e.getMessage());
         }
         // Verify successful creation doesn't throw.
-        BidirectionalStream.Builder builder = mCronetEngine.newBidirectionalStreamBuilder(
+        BidirectionalStream.Builder builder = cronetEngine.newBidirectionalStreamBuilder(
                 Http2TestServer.getServerUrl(), callback, callback.getExecutor());
         try {
             builder.addHeader(null, "value");
@@ -200,18 +217,6 @@ public class BidirectionalStreamTest {
         }
     }
 
-    private void runBuilderCheckJavaImpl() {
-        try {
-            TestBidirectionalStreamCallback callback = new TestBidirectionalStreamCallback();
-            mTestRule.createJavaEngineBuilder().build().newBidirectionalStreamBuilder(
-                    Http2TestServer.getServerUrl(), callback, callback.getExecutor());
-            fail("JavaCronetEngine doesn't support BidirectionalStream."
-                    + " Expected UnsupportedOperationException");
-        } catch (UnsupportedOperationException e) {
-            // Expected.
-        }
-    }
-
     @Test
     @SmallTest
     @Feature({"Cronet"})
@@ -1670,4 +1675,276 @@ public class BidirectionalStreamTest {
         callback.blockForDone();
         assertTrue(CronetTestUtil.nativeGetTaggedBytes(tag) > priorBytes);
     }
+
+    @Test
+    @SmallTest
+    @Feature({"Cronet"})
+    @OnlyRunJavaCronet
+    public void testJavaImplEchoStream() throws Exception {
+        startJavaEngineAndChunkedEchoServer();
+        TestBidirectionalStreamCallback callback = new TestBidirectionalStreamCallback();
+        String[] testData = {"Test String", createLongString("1234567890", 50000), "woot!"};
+        StringBuilder stringData = new StringBuilder();
+        for (String writeData : testData) {
+            callback.addWriteData(writeData.getBytes());
+            stringData.append(writeData);
+        }
+        BidirectionalStream stream =
+                mJavaCronetEngine
+                        .newBidirectionalStreamBuilder(
+                                mChunkedEchoServer.getUrl(ChunkedEchoServer.ECHO_PATH), callback,
+                                callback.getExecutor())
+                        .addHeader("foo", "Value with Spaces")
+                        .addHeader("Content-Type", "zebra")
+                        .build();
+        stream.start();
+        callback.blockForDone();
+        assertTrue(stream.isDone());
+        assertNull(callback.mError);
+        assertEquals(200, callback.mResponseInfo.getHttpStatusCode());
+        assertEquals(stringData.toString(), callback.mResponseAsString);
+        assertEquals("POST", callback.mResponseInfo.getAllHeaders().get("echo-method").get(0));
+        assertEquals(
+                "Value with Spaces", callback.mResponseInfo.getAllHeaders().get("echo-foo").get(0));
+        assertEquals(
+                "zebra", callback.mResponseInfo.getAllHeaders().get("echo-content-type").get(0));
+    }
+
+    @Test
+    @SmallTest
+    @Feature({"Cronet"})
+    @OnlyRunJavaCronet
+    // Tests that each flushed write is echoed back before the next one is sent, which requires the
+    // response to be read while the request body is still being written.
+    public void testJavaImplFullDuplexStepByStep() throws Exception {
+        startJavaEngineAndChunkedEchoServer();
+        TestBidirectionalStreamCallback callback = new TestBidirectionalStreamCallback();
+        callback.setAutoAdvance(false);
+        String[] testData = {"a", "bb", "ccc", "Test String", "1234567890", "woot!"};
+        StringBuilder stringData = new StringBuilder();
+        for (String writeData : testData) {
+            callback.addWriteData(writeData.getBytes());
+            stringData.append(writeData);
+        }
+        BidirectionalStream stream = mJavaCronetEngine
+                                             .newBidirectionalStreamBuilder(
+                                                     mChunkedEchoServer.getUrl(
+                                                             ChunkedEchoServer.ECHO_PATH),
+                                                     callback, callback.getExecutor())
+                                             .build();
+        stream.start();
+        callback.waitForNextWriteStep();
+        callback.waitForNextReadStep();
+
+        for (String expected : testData) {
+            // Write next chunk of test data.
+            callback.startNextWrite(stream);
+            callback.waitForNextWriteStep();
+
+            // Read the echo of the chunk.
+            ByteBuffer readBuffer = ByteBuffer.allocateDirect(100);
+            callback.startNextRead(stream, readBuffer);
+            callback.waitForNextReadStep();
+            assertEquals(expected.length(), readBuffer.position());
+            assertFalse(stream.isDone());
+        }
+
+        callback.setAutoAdvance(true);
+        callback.startNextRead(stream);
+        callback.blockForDone();
+        assertTrue(stream.isDone());
+        assertNull(callback.mError);
+        assertEquals(200, callback.mResponseInfo.getHttpStatusCode());
+        assertEquals(stringData.toString(), callback.mResponseAsString);
+    }
+
+    @Test
+    @SmallTest
+    @Feature({"Cronet"})
+    @OnlyRunJavaCronet
+    // Tests that the delayed request headers and the buffers written before the first flush()
+    // are sent together.
+    public void testJavaImplFlushWithDelayedRequestHeaders() throws Exception {
+        startJavaEngineAndChunkedEchoServer();
+        TestBidirectionalStreamCallback callback = new TestBidirectionalStreamCallback();
+        callback.addWriteData("1".getBytes(), false);
+        callback.addWriteData("2".getBytes(), false);
+        callback.addWriteData("3".getBytes(), true);
+        BidirectionalStream stream =
+                mJavaCronetEngine
+                        .newBidirectionalStreamBuilder(
+                                mChunkedEchoServer.getUrl(ChunkedEchoServer.ECHO_PATH), callback,
+                                callback.getExecutor())
+                        .delayRequestHeadersUntilFirstFlush(true)
+                        .addHeader("foo", "bar")
+                        .build();
+        stream.start();
+        callback.blockForDone();
+        assertNull(callback.mError);
+        assertEquals(200, callback.mResponseInfo.getHttpStatusCode());
+        assertEquals("123", callback.mResponseAsString);
+        assertEquals("bar", callback.mResponseInfo.getAllHeaders().get("echo-foo").get(0));
+        // The three chunks ("1\r\n1\r\n" and so on) arrived with the request headers.
+        assertTrue(mChunkedEchoServer.takeBodyBytesReceivedWithHeaders() >= 3 * 6);
+    }
+
+    @Test
+    @SmallTest
+    @Feature({"Cronet"})
+    @OnlyRunJavaCronet
+    public void testJavaImplSimpleGetWithFlush() throws Exception {
+        startJavaEngineAndChunkedEchoServer();
+        for (int i = 0; i < 2; i++) {
+            TestBidirectionalStreamCallback callback = new TestBidirectionalStreamCallback() {
+                @Override
+                public void onStreamReady(BidirectionalStream stream) {
+                    // If there are delayed headers, this flush should send them.
+                    stream.flush();
+                    super.onStreamReady(stream);
+                }
+            };
+            BidirectionalStream stream =
+                    mJavaCronetEngine
+                            .newBidirectionalStreamBuilder(
+                                    mChunkedEchoServer.getUrl(ChunkedEchoServer.ECHO_PATH),
+                                    callback, callback.getExecutor())
+                            .setHttpMethod("GET")
+                            .delayRequestHeadersUntilFirstFlush(i == 0)
+                            .addHeader("foo", "bar")
+                            .addHeader("empty", "")
+                            .build();
+            // Flush before stream is started should not crash.
+            stream.flush();
+            stream.start();
+            callback.blockForDone();
+            assertTrue(stream.isDone());
+            // Flush after stream is completed is no-op.
+            stream.flush();
+
+            assertNull(callback.mError);
+            assertEquals(200, callback.mResponseInfo.getHttpStatusCode());
+            assertEquals("", callback.mResponseAsString);
+            assertEquals("GET", callback.mResponseInfo.getAllHeaders().get("echo-method").get(0));
+            assertEquals("bar", callback.mResponseInfo.getAllHeaders().get("echo-foo").get(0));
+            assertEquals("", callback.mResponseInfo.getAllHeaders().get("echo-empty").get(0));
+        }
+    }
+
+    @Test
+    @SmallTest
+    @Feature({"Cronet"})
+    @OnlyRunJavaCronet
+    // Tests that the response callbacks are not delivered before onStreamReady() returns, even
+    // when the response arrives first and the executor runs the callbacks concurrently.
+    public void testJavaImplResponseCallbacksFollowOnStreamReady() throws Exception {
+        startJavaEngineAndChunkedEchoServer();
+        TestBidirectionalStreamCallback callback =
+                new TestBidirectionalStreamCallback(/*useDirectExecutor*/ true) {
+                    @Override
+                    public void onStreamReady(BidirectionalStream stream) {
+                        try {
+                            // Leaves time for the response to arrive.
+                            Thread.sleep(200);
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        // Fails if onResponseHeadersReceived() was already called.
+                        super.onStreamReady(stream);
+                    }
+                };
+        BidirectionalStream stream =
+                mJavaCronetEngine
+                        .newBidirectionalStreamBuilder(
+                                mChunkedEchoServer.getUrl(ChunkedEchoServer.ECHO_PATH), callback,
+                                callback.getExecutor())
+                        .setHttpMethod("GET")
+                        .build();
+        stream.start();
+        callback.blockForDone();
+        assertNull(callback.mError);
+        assertEquals(200, callback.mResponseInfo.getHttpStatusCode());
+    }
+
+    @Test
+    @SmallTest
+    @Feature({"Cronet"})
+    @OnlyRunJavaCronet
+    public void testJavaImplFailures() throws Exception {
+        startJavaEngineAndChunkedEchoServer();
+        for (ResponseStep failureStep : new ResponseStep[] {ResponseStep.ON_STREAM_READY,
+                     ResponseStep.ON_RESPONSE_STARTED, ResponseStep.ON_READ_COMPLETED}) {
+            javaImplThrowOrCancel(FailureType.CANCEL_SYNC, failureStep, false);
+            javaImplThrowOrCancel(FailureType.CANCEL_ASYNC, failureStep, false);
+            javaImplThrowOrCancel(FailureType.CANCEL_ASYNC_WITHOUT_PAUSE, failureStep, false);
+            javaImplThrowOrCancel(FailureType.THROW_SYNC, failureStep, true);
+        }
+    }
+
+    private void javaImplThrowOrCancel(
+            FailureType failureType, ResponseStep failureStep, boolean expectError) {
+        TestBidirectionalStreamCallback callback = new TestBidirectionalStreamCallback();
+        callback.setFailure(failureType, failureStep);
+        // The response body is empty, so an echoed body gives a read to fail on.
+        callback.addWriteData("data".getBytes());
+        BidirectionalStream stream = mJavaCronetEngine
+                                             .newBidirectionalStreamBuilder(
+                                                     mChunkedEchoServer.getUrl(
+                                                             ChunkedEchoServer.ECHO_PATH),
+                                                     callback, callback.getExecutor())
+                                             .build();
+        stream.start();
+        callback.blockForDone();
+        assertTrue(stream.isDone());
+        assertEquals(failureStep + " " + failureType, expectError, callback.mOnErrorCalled);
+        assertEquals(expectError, callback.mError instanceof CallbackException);
+        assertEquals(!expectError, callback.mOnCanceledCalled);
+    }
+
+    @Test
+    @SmallTest
+    @Feature({"Cronet"})
+    @OnlyRunJavaCronet
+    public void testJavaImplCancelWhileWaitingForResponse() throws Exception {
+        startJavaEngineAndChunkedEchoServer();
+        TestBidirectionalStreamCallback callback = new TestBidirectionalStreamCallback();
+        callback.setAutoAdvance(false);
+        BidirectionalStream stream =
+                mJavaCronetEngine
+                        .newBidirectionalStreamBuilder(
+                                mChunkedEchoServer.getUrl(ChunkedEchoServer.HANG_PATH), callback,
+                                callback.getExecutor())
+                        .setHttpMethod("GET")
+                        .build();
+        stream.start();
+        // The response headers are received, but the body never completes.
+        callback.waitForNextReadStep();
+        callback.startNextRead(stream);
+        stream.cancel();
+        callback.blockForDone();
+        assertTrue(stream.isDone());
+        assertTrue(callback.mOnCanceledCalled);
+        assertFalse(callback.mOnErrorCalled);
+    }
+
+    @Test
+    @SmallTest
+    @Feature({"Cronet"})
+    @OnlyRunJavaCronet
+    public void testJavaImplConnectionClosedWithoutResponse() throws Exception {
+        startJavaEngineAndChunkedEchoServer();
+        TestBidirectionalStreamCallback callback = new TestBidirectionalStreamCallback();
+        BidirectionalStream stream =
+                mJavaCronetEngine
+                        .newBidirectionalStreamBuilder(
+                                mChunkedEchoServer.getUrl(ChunkedEchoServer.CLOSE_PATH), callback,
+                                callback.getExecutor())
+                        .setHttpMethod("GET")
+                        .build();
+        stream.start();
+        callback.blockForDone();
+        assertTrue(stream.isDone());
+        assertTrue(callback.mOnErrorCalled);
+        assertNotNull(callback.mError);
+        assertNull(callback.mResponseInfo);
+    }
 }
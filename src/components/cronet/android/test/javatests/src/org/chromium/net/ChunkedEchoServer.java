@@ -0,0 +1,182 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.net;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal HTTP/1.1 server for the bidirectional stream tests of the Java implementation, which
+ * doesn't speak HTTP/2 and so can't use {@link Http2TestServer}. It serves one request per
+ * connection, on the following paths:
+ * <ul>
+ * <li>{@link #ECHO_PATH} responds with the request headers prefixed with "echo-", then echoes each
+ * chunk of the request body as soon as it is received.</li>
+ * <li>{@link #CLOSE_PATH} closes the connection without responding.</li>
+ * <li>{@link #HANG_PATH} sends the response headers, then never completes the response.</li>
+ * </ul>
+ */
+class ChunkedEchoServer {
+    static final String ECHO_PATH = "/echo";
+    static final String CLOSE_PATH = "/close";
+    static final String HANG_PATH = "/hang";
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final ServerSocket mServerSocket;
+    private final Thread mAcceptThread;
+    private final List<Socket> mSockets = new ArrayList<>();
+    // Number of bytes of request body already received with the request headers, by request.
+    private final LinkedBlockingQueue<Integer> mBodyBytesReceivedWithHeaders =
+            new LinkedBlockingQueue<>();
+
+    ChunkedEchoServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mAcceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "ChunkedEchoServer");
+        mAcceptThread.start();
+    }
+
+    String getUrl(String path) {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + path;
+    }
+
+    /**
+     * Waits for the next request and returns the number of bytes following its headers that
+     * were received along with them.
+     */
+    int takeBodyBytesReceivedWithHeaders() throws InterruptedException {
+        Integer count = mBodyBytesReceivedWithHeaders.poll(10, TimeUnit.SECONDS);
+        if (count == null) {
+            throw new IllegalStateException("No request received");
+        }
+        return count;
+    }
+
+    void shutdown() throws Exception {
+        mServerSocket.close();
+        synchronized (mSockets) {
+            for (Socket socket : mSockets) {
+                socket.close();
+            }
+        }
+        mAcceptThread.join();
+    }
+
+    private void acceptConnections() {
+        while (true) {
+            final Socket socket;
+            try {
+                socket = mServerSocket.accept();
+            } catch (IOException e) {
+                // Shut down.
+                return;
+            }
+            synchronized (mSockets) {
+                mSockets.add(socket);
+            }
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        serve(socket);
+                    } catch (IOException e) {
+                        // The client went away.
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            // Ignored.
+                        }
+                    }
+                }
+            }).start();
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+        String[] requestLine = readLine(in).split(" ");
+        String method = requestLine[0];
+        String path = requestLine[1];
+        StringBuilder response = new StringBuilder("HTTP/1.1 200 OK\r\n");
+        response.append("echo-method: ").append(method).append("\r\n");
+        boolean chunked = false;
+        for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+            int colon = line.indexOf(':');
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.US);
+            String value = line.substring(colon + 1).trim();
+            chunked |= name.equals("transfer-encoding") && value.endsWith("chunked");
+            response.append("echo-").append(name).append(": ").append(value).append("\r\n");
+        }
+        mBodyBytesReceivedWithHeaders.add(in.available());
+        if (path.equals(CLOSE_PATH)) {
+            return;
+        }
+        response.append("Transfer-Encoding: chunked\r\n\r\n");
+        out.write(response.toString().getBytes("ISO-8859-1"));
+        out.flush();
+        if (path.equals(HANG_PATH)) {
+            // Until the client closes the connection.
+            while (in.read() != -1) {
+            }
+            return;
+        }
+        if (chunked) {
+            while (true) {
+                int length = Integer.parseInt(readLine(in).trim(), 16);
+                if (length == 0) {
+                    readLine(in);
+                    break;
+                }
+                byte[] chunk = new byte[length];
+                for (int read = 0; read < length;) {
+                    int count = in.read(chunk, read, length - read);
+                    if (count == -1) {
+                        throw new IOException("Truncated chunk");
+                    }
+                    read += count;
+                }
+                readLine(in);
+                out.write(Integer.toHexString(length).getBytes("ISO-8859-1"));
+                out.write(CRLF);
+                out.write(chunk);
+                out.write(CRLF);
+                out.flush();
+            }
+        }
+        out.write("0\r\n\r\n".getBytes("ISO-8859-1"));
+        out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c == -1) {
+                throw new IOException("Connection closed");
+            }
+            if (c != '\r') {
+                line.write(c);
+            }
+        }
+        return line.toString("ISO-8859-1");
+    }
+}
@@ -152,7 +152,9 @@ public class CronetTestRule implements TestRule {
             }
         } else if (packageName.equals("org.chromium.net")) {
             try {
-                base.evaluate();
+                if (desc.getAnnotation(OnlyRunJavaCronet.class) == null) {
+                    base.evaluate();
+                }
                 if (desc.getAnnotation(OnlyRunNativeCronet.class) == null) {
                     setTestingJavaImpl(true);
                     base.evaluate();
@@ -288,6 +290,15 @@ public class CronetTestRule implements TestRule {
     @Retention(RetentionPolicy.RUNTIME)
     public @interface OnlyRunNativeCronet {}
 
+    /**
+     * Annotation for test methods in org.chromium.net package that disables running the test
+     * against the native implementation. When this annotation is present the test is only run
+     * against the Java-only implementation.
+     */
+    @Target(ElementType.METHOD)
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface OnlyRunJavaCronet {}
+
     /**
      * Annotation allowing classes or individual tests to be skipped based on the version of the
      * Cronet API present. Takes the minimum API version upon which the test should be run.
@@ -37,11 +37,13 @@ import org.chromium.base.PathUtils;
 import org.chromium.base.annotations.JNINamespace;
 import org.chromium.base.test.util.Feature;
 import org.chromium.net.CronetTestRule.CronetTestFramework;
+import org.chromium.net.CronetTestRule.OnlyRunJavaCronet;
 import org.chromium.net.CronetTestRule.OnlyRunNativeCronet;
 import org.chromium.net.CronetTestRule.RequiresMinApi;
 import org.chromium.net.TestUrlRequestCallback.ResponseStep;
 import org.chromium.net.impl.CronetEngineBuilderImpl;
 import org.chromium.net.impl.CronetUrlRequestContext;
+import org.chromium.net.impl.JavaCronetEngine;
 import org.chromium.net.impl.NativeCronetEngineBuilderImpl;
 import org.chromium.net.test.EmbeddedTestServer;
 
@@ -173,6 +175,172 @@ public class CronetUrlRequestContextTest {
         assertEquals(userAgentValue, callback.mResponseAsString);
     }
 
+    @Test
+    @SmallTest
+    @Feature({"Cronet"})
+    @OnlyRunJavaCronet
+    public void testJavaEngineRequestLimits() throws Exception {
+        ExperimentalCronetEngine.Builder cronetEngineBuilder = mTestRule.createJavaEngineBuilder();
+        JSONObject limits =
+                new JSONObject().put("max_concurrent_requests", 1).put("max_queued_requests", 1);
+        cronetEngineBuilder.setExperimentalOptions(
+                new JSONObject().put("JavaEngine", limits).toString());
+        final CronetEngine cronetEngine = cronetEngineBuilder.build();
+
+        // Hold the only slot until the first request is canceled.
+        TestUrlRequestCallback callback1 = new TestUrlRequestCallback();
+        callback1.setAutoAdvance(false);
+        UrlRequest urlRequest1 =
+                cronetEngine.newUrlRequestBuilder(mUrl, callback1, callback1.getExecutor()).build();
+        urlRequest1.start();
+        callback1.waitForNextStep();
+        assertEquals(ResponseStep.ON_RESPONSE_STARTED, callback1.mResponseStep);
+
+        // The second request is queued, and the third one rejected.
+        TestUrlRequestCallback callback2 = new TestUrlRequestCallback();
+        cronetEngine.newUrlRequestBuilder(mUrl, callback2, callback2.getExecutor())
+                .build()
+                .start();
+        TestUrlRequestCallback callback3 = new TestUrlRequestCallback();
+        cronetEngine.newUrlRequestBuilder(mUrl, callback3, callback3.getExecutor())
+                .build()
+                .start();
+        callback3.blockForDone();
+        assertTrue(callback3.mOnErrorCalled);
+        assertContains("Exception scheduling request", callback3.mError.getMessage());
+        assertFalse(callback2.isDone());
+
+        JavaCronetEngine.RequestSchedulerMetrics metrics =
+                ((JavaCronetEngine) cronetEngine).getRequestSchedulerMetrics();
+        assertEquals(1, metrics.getRunningCount());
+        assertEquals(1, metrics.getQueueDepth());
+        assertEquals(1, metrics.getPeakQueueDepth());
+        assertEquals(1, metrics.getRejectedCount());
+
+        // Let the second request wait a little, so that its wait time is measurable.
+        Thread.sleep(50);
+        urlRequest1.cancel();
+        callback1.blockForDone();
+        callback2.blockForDone();
+        assertEquals(200, callback2.mResponseInfo.getHttpStatusCode());
+        metrics = ((JavaCronetEngine) cronetEngine).getRequestSchedulerMetrics();
+        assertEquals(0, metrics.getQueueDepth());
+        assertEquals(1, metrics.getPeakQueueDepth());
+        assertEquals(1, metrics.getRejectedCount());
+        assertTrue(metrics.getMaxWaitTimeMs() >= 50);
+        assertEquals(metrics.getMaxWaitTimeMs(), metrics.getAverageWaitTimeMs());
+        cronetEngine.shutdown();
+    }
+
+    @Test
+    @SmallTest
+    @Feature({"Cronet"})
+    @OnlyRunJavaCronet
+    public void testJavaEngineRequestPriority() throws Exception {
+        ExperimentalCronetEngine.Builder cronetEngineBuilder = mTestRule.createJavaEngineBuilder();
+        JSONObject limits = new JSONObject().put("max_concurrent_requests", 1);
+        cronetEngineBuilder.setExperimentalOptions(
+                new JSONObject().put("JavaEngine", limits).toString());
+        final CronetEngine cronetEngine = cronetEngineBuilder.build();
+
+        // Hold the only slot until the first request is canceled.
+        TestUrlRequestCallback callback1 = new TestUrlRequestCallback();
+        callback1.setAutoAdvance(false);
+        UrlRequest urlRequest1 =
+                cronetEngine.newUrlRequestBuilder(mUrl, callback1, callback1.getExecutor()).build();
+        urlRequest1.start();
+        callback1.waitForNextStep();
+
+        // Queue two idle requests, then a highest priority one.
+        TestUrlRequestCallback idleCallback1 = new TestUrlRequestCallback();
+        cronetEngine.newUrlRequestBuilder(mUrl, idleCallback1, idleCallback1.getExecutor())
+                .setPriority(UrlRequest.Builder.REQUEST_PRIORITY_IDLE)
+                .build()
+                .start();
+        TestUrlRequestCallback idleCallback2 = new TestUrlRequestCallback();
+        cronetEngine.newUrlRequestBuilder(mUrl, idleCallback2, idleCallback2.getExecutor())
+                .setPriority(UrlRequest.Builder.REQUEST_PRIORITY_IDLE)
+                .build()
+                .start();
+        TestUrlRequestCallback highestCallback = new TestUrlRequestCallback();
+        highestCallback.setAutoAdvance(false);
+        UrlRequest highestRequest =
+                cronetEngine
+                        .newUrlRequestBuilder(mUrl, highestCallback, highestCallback.getExecutor())
+                        .setPriority(UrlRequest.Builder.REQUEST_PRIORITY_HIGHEST)
+                        .build();
+        highestRequest.start();
+        assertEquals(3,
+                ((JavaCronetEngine) cronetEngine).getRequestSchedulerMetrics().getQueueDepth());
+
+        // The highest priority request takes the slot, ahead of the idle ones that queued first.
+        urlRequest1.cancel();
+        callback1.blockForDone();
+        highestCallback.waitForNextStep();
+        assertEquals(ResponseStep.ON_RESPONSE_STARTED, highestCallback.mResponseStep);
+        assertFalse(idleCallback1.isDone());
+        assertFalse(idleCallback2.isDone());
+        assertEquals(2,
+                ((JavaCronetEngine) cronetEngine).getRequestSchedulerMetrics().getQueueDepth());
+
+        highestRequest.cancel();
+        highestCallback.blockForDone();
+        idleCallback1.blockForDone();
+        idleCallback2.blockForDone();
+        assertEquals(200, idleCallback1.mResponseInfo.getHttpStatusCode());
+        assertEquals(200, idleCallback2.mResponseInfo.getHttpStatusCode());
+        cronetEngine.shutdown();
+    }
+
+    @Test
+    @SmallTest
+    @Feature({"Cronet"})
+    @OnlyRunJavaCronet
+    public void testJavaEngineRequestsPerHostLimit() throws Exception {
+        ExperimentalCronetEngine.Builder cronetEngineBuilder = mTestRule.createJavaEngineBuilder();
+        JSONObject limits =
+                new JSONObject().put("max_concurrent_requests", 4).put("max_requests_per_host", 1);
+        cronetEngineBuilder.setExperimentalOptions(
+                new JSONObject().put("JavaEngine", limits).toString());
+        final CronetEngine cronetEngine = cronetEngineBuilder.build();
+        // The same server, reached through another host name.
+        String otherHostUrl = mUrl.replace("127.0.0.1", "localhost");
+        assertFalse(mUrl.equals(otherHostUrl));
+
+        // Hold the only slot of the host until the first request is canceled.
+        TestUrlRequestCallback callback1 = new TestUrlRequestCallback();
+        callback1.setAutoAdvance(false);
+        UrlRequest urlRequest1 =
+                cronetEngine.newUrlRequestBuilder(mUrl, callback1, callback1.getExecutor()).build();
+        urlRequest1.start();
+        callback1.waitForNextStep();
+
+        // A second request to the same host waits, while one to another host proceeds.
+        TestUrlRequestCallback sameHostCallback = new TestUrlRequestCallback();
+        cronetEngine.newUrlRequestBuilder(mUrl, sameHostCallback, sameHostCallback.getExecutor())
+                .build()
+                .start();
+        TestUrlRequestCallback otherHostCallback = new TestUrlRequestCallback();
+        cronetEngine
+                .newUrlRequestBuilder(
+                        otherHostUrl, otherHostCallback, otherHostCallback.getExecutor())
+                .build()
+                .start();
+        otherHostCallback.blockForDone();
+        assertEquals(200, otherHostCallback.mResponseInfo.getHttpStatusCode());
+        assertFalse(sameHostCallback.isDone());
+        JavaCronetEngine.RequestSchedulerMetrics metrics =
+                ((JavaCronetEngine) cronetEngine).getRequestSchedulerMetrics();
+        assertEquals(1, metrics.getQueueDepth());
+        assertEquals(1, metrics.getRunningCount());
+
+        urlRequest1.cancel();
+        callback1.blockForDone();
+        sameHostCallback.blockForDone();
+        assertEquals(200, sameHostCallback.mResponseInfo.getHttpStatusCode());
+        cronetEngine.shutdown();
+    }
+
     @Test
     @SmallTest
     @Feature({"Cronet"})
@@ -575,7 +743,10 @@ public class CronetUrlRequestContextTest {
     }
 
     private CronetEngine createCronetEngineWithCache(int cacheType) {
-        CronetEngine.Builder builder = new CronetEngine.Builder(getContext());
+        return createCronetEngineWithCache(new CronetEngine.Builder(getContext()), cacheType);
+    }
+
+    private CronetEngine createCronetEngineWithCache(CronetEngine.Builder builder, int cacheType) {
         if (cacheType == CronetEngine.Builder.HTTP_CACHE_DISK
                 || cacheType == CronetEngine.Builder.HTTP_CACHE_DISK_NO_HTTP) {
             builder.setStoragePath(getTestStorage(getContext()));
@@ -1110,6 +1281,75 @@ public class CronetUrlRequestContextTest {
         cronetEngine.shutdown();
     }
 
+    @Test
+    @SmallTest
+    @Feature({"Cronet"})
+    @OnlyRunJavaCronet
+    public void testJavaEngineHttpCacheInMemory() throws Exception {
+        CronetEngine cronetEngine = createCronetEngineWithCache(
+                mTestRule.createJavaEngineBuilder(), CronetEngine.Builder.HTTP_CACHE_IN_MEMORY);
+        String url = NativeTestServer.getFileURL("/cacheable.txt");
+        checkRequestCaching(cronetEngine, url, false);
+        checkRequestCaching(cronetEngine, url, true);
+        NativeTestServer.shutdownNativeTestServer();
+        checkRequestCaching(cronetEngine, url, true);
+        cronetEngine.shutdown();
+    }
+
+    @Test
+    @SmallTest
+    @Feature({"Cronet"})
+    @OnlyRunJavaCronet
+    public void testJavaEngineHttpCacheDisk() throws Exception {
+        CronetEngine cronetEngine = createCronetEngineWithCache(
+                mTestRule.createJavaEngineBuilder(), CronetEngine.Builder.HTTP_CACHE_DISK);
+        String url = NativeTestServer.getFileURL("/cacheable.txt");
+        checkRequestCaching(cronetEngine, url, false);
+        checkRequestCaching(cronetEngine, url, true);
+        NativeTestServer.shutdownNativeTestServer();
+        checkRequestCaching(cronetEngine, url, true);
+
+        // A new engine using the same storage path reads the cache written by the first one.
+        cronetEngine.shutdown();
+        cronetEngine = mTestRule.enableDiskCache(mTestRule.createJavaEngineBuilder()).build();
+        checkRequestCaching(cronetEngine, url, true);
+        cronetEngine.shutdown();
+    }
+
+    @Test
+    @SmallTest
+    @Feature({"Cronet"})
+    @OnlyRunJavaCronet
+    public void testJavaEngineDisableCache() throws Exception {
+        CronetEngine cronetEngine = createCronetEngineWithCache(
+                mTestRule.createJavaEngineBuilder(), CronetEngine.Builder.HTTP_CACHE_DISK);
+        String url = NativeTestServer.getFileURL("/cacheable.txt");
+
+        // When cache is disabled, making a request does not write to the cache.
+        checkRequestCaching(cronetEngine, url, false, true /** disable cache */);
+        checkRequestCaching(cronetEngine, url, false);
+
+        // When cache is enabled, the second request is cached.
+        checkRequestCaching(cronetEngine, url, false, true /** disable cache */);
+        checkRequestCaching(cronetEngine, url, true);
+
+        // Shut down the server, next request should have a cached response.
+        NativeTestServer.shutdownNativeTestServer();
+        checkRequestCaching(cronetEngine, url, true);
+
+        // Cache is disabled after server is shut down, request should fail. The Java engine
+        // reports the exception of the connection rather than a net error.
+        TestUrlRequestCallback callback = new TestUrlRequestCallback();
+        UrlRequest.Builder urlRequestBuilder =
+                cronetEngine.newUrlRequestBuilder(url, callback, callback.getExecutor());
+        urlRequestBuilder.disableCache();
+        urlRequestBuilder.build().start();
+        callback.blockForDone();
+        assertNotNull(callback.mError);
+        assertContains("System error", callback.mError.getMessage());
+        cronetEngine.shutdown();
+    }
+
     @Test
     @SmallTest
     @Feature({"Cronet"})
@@ -27,14 +27,17 @@ import org.chromium.base.Log;
 import org.chromium.base.test.util.DisabledTest;
 import org.chromium.base.test.util.Feature;
 import org.chromium.base.test.util.MetricsUtils.HistogramDelta;
+import org.chromium.net.CronetTestRule.OnlyRunJavaCronet;
 import org.chromium.net.CronetTestRule.OnlyRunNativeCronet;
 import org.chromium.net.MetricsTestUtil.TestExecutor;
+import org.chromium.net.MetricsTestUtil.TestRequestFinishedListener;
 import org.chromium.net.test.EmbeddedTestServer;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.Date;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -266,6 +269,81 @@ public class NQETest {
         assertTrue(writeCountHistogram.getDelta() > 0);
     }
 
+    @Test
+    @SmallTest
+    @OnlyRunJavaCronet
+    @Feature({"Cronet"})
+    public void testJavaEngineEstimatorDisabled() throws Exception {
+        ExperimentalCronetEngine cronetEngine = mTestRule.createJavaEngineBuilder().build();
+        // Calls to the disabled estimator are ignored rather than rejected.
+        cronetEngine.configureNetworkQualityEstimatorForTesting(true, true, true);
+        TestNetworkQualityRttListener rttListener =
+                new TestNetworkQualityRttListener(Executors.newSingleThreadExecutor());
+        cronetEngine.addRttListener(rttListener);
+
+        TestUrlRequestCallback callback = new TestUrlRequestCallback();
+        cronetEngine.newUrlRequestBuilder(mUrl, callback, callback.getExecutor()).build().start();
+        callback.blockForDone();
+
+        assertEquals(0, rttListener.rttObservationCount());
+        assertEquals(ExperimentalCronetEngine.EFFECTIVE_CONNECTION_TYPE_UNKNOWN,
+                cronetEngine.getEffectiveConnectionType());
+        assertEquals(ExperimentalCronetEngine.CONNECTION_METRIC_UNKNOWN,
+                cronetEngine.getHttpRttMs());
+        assertEquals(ExperimentalCronetEngine.CONNECTION_METRIC_UNKNOWN,
+                cronetEngine.getTransportRttMs());
+        assertEquals(ExperimentalCronetEngine.CONNECTION_METRIC_UNKNOWN,
+                cronetEngine.getDownstreamThroughputKbps());
+        cronetEngine.removeRttListener(rttListener);
+        cronetEngine.shutdown();
+    }
+
+    @Test
+    @SmallTest
+    @OnlyRunJavaCronet
+    @Feature({"Cronet"})
+    public void testJavaEngineEstimates() throws Exception {
+        ExperimentalCronetEngine.Builder cronetEngineBuilder = mTestRule.createJavaEngineBuilder();
+        cronetEngineBuilder.enableNetworkQualityEstimator(true);
+        final ExperimentalCronetEngine cronetEngine = cronetEngineBuilder.build();
+        cronetEngine.configureNetworkQualityEstimatorForTesting(true, true, true);
+        assertEquals(ExperimentalCronetEngine.CONNECTION_METRIC_UNKNOWN,
+                cronetEngine.getHttpRttMs());
+
+        Executor listenersExecutor = Executors.newSingleThreadExecutor(new ExecutorThreadFactory());
+        TestNetworkQualityRttListener rttListener =
+                new TestNetworkQualityRttListener(listenersExecutor);
+        cronetEngine.addRttListener(rttListener);
+        TestRequestFinishedListener requestFinishedListener = new TestRequestFinishedListener();
+        cronetEngine.addRequestFinishedListener(requestFinishedListener);
+
+        TestUrlRequestCallback callback = new TestUrlRequestCallback();
+        Date startTime = new Date();
+        cronetEngine.newUrlRequestBuilder(mUrl, callback, callback.getExecutor()).build().start();
+        callback.blockForDone();
+        requestFinishedListener.blockUntilDone();
+        Date endTime = new Date();
+        rttListener.waitUntilFirstUrlRequestRTTReceived();
+
+        // NETWORK_QUALITY_OBSERVATION_SOURCE_HTTP
+        assertEquals(1, rttListener.rttObservationCount(0));
+        assertEquals(rttListener.rttObservationCount(), rttListener.rttObservationCount(0));
+        assertEquals(mNetworkQualityThread, rttListener.getThread());
+        assertTrue(cronetEngine.getHttpRttMs() >= 0);
+        assertTrue(cronetEngine.getEffectiveConnectionType()
+                != ExperimentalCronetEngine.EFFECTIVE_CONNECTION_TYPE_UNKNOWN);
+        // Not estimated by the Java implementation.
+        assertEquals(ExperimentalCronetEngine.CONNECTION_METRIC_UNKNOWN,
+                cronetEngine.getTransportRttMs());
+
+        RequestFinishedInfo requestInfo = requestFinishedListener.getRequestInfo();
+        MetricsTestUtil.checkRequestFinishedInfo(requestInfo, mUrl, startTime, endTime);
+        assertEquals(RequestFinishedInfo.SUCCEEDED, requestInfo.getFinishedReason());
+        assertEquals(callback.mResponseInfo.getReceivedByteCount(),
+                (long) requestInfo.getMetrics().getReceivedByteCount());
+        cronetEngine.shutdown();
+    }
+
     @Test
     @SmallTest
     @OnlyRunNativeCronet
@@ -0,0 +1,27 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.mojo.bindings;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A source of direct buffers for the {@link Encoder}. Buffers are borrowed when a message is
+ * encoded and given back once the message is no longer needed, which is either when a
+ * {@link Connector} has written it to its message pipe or when {@link Message#releaseBuffer()} is
+ * called. Pooling is opt-in, see {@link Encoder#setDefaultBufferPool(BufferPool)}.
+ */
+public interface BufferPool {
+    /**
+     * Returns a direct, little endian buffer of at least |minCapacity| bytes. The buffer is filled
+     * with zeros, its position is 0 and its limit is its capacity.
+     */
+    ByteBuffer acquire(int minCapacity);
+
+    /**
+     * Gives back a buffer obtained from {@link #acquire(int)}. Only the bytes between 0 and the
+     * limit of the buffer may have been written to. The caller must not use the buffer afterwards.
+     */
+    void release(ByteBuffer buffer);
+}
@@ -100,6 +100,11 @@ public class Connector implements MessageReceiver, HandleOwner<MessagePipeHandle
         } catch (MojoException e) {
             onError(e);
             return false;
+        } finally {
+            // The data has been copied by the write, the buffer can be reused. Only messages
+            // serialized with an opted-in pool own a pooled buffer, see
+            // Encoder#setDefaultBufferPool.
+            message.releaseBuffer();
         }
     }
 
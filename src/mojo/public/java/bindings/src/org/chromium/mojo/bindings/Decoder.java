@@ -12,7 +12,13 @@ import org.chromium.mojo.system.MessagePipeHandle;
 import org.chromium.mojo.system.SharedBufferHandle;
 import org.chromium.mojo.system.UntypedHandle;
 
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
 import java.nio.charset.Charset;
 
 /**
@@ -436,6 +442,85 @@ public class Decoder {
         return result;
     }
 
+    /**
+     * Deserializes an array of bytes at the given offset as a read-only view over the message data,
+     * without copying it. The view is only valid as long as the message data is, see
+     * {@link Message#releaseBuffer()}.
+     */
+    public ByteBuffer readBytesView(int offset, int arrayNullability, int expectedLength) {
+        Decoder d = readPointer(offset, BindingsHelper.isArrayNullable(arrayNullability));
+        if (d == null) {
+            return null;
+        }
+        DataHeader si = d.readDataHeaderForArray(1, expectedLength);
+        return d.sliceArray(1, si.elementsOrVersion);
+    }
+
+    /**
+     * Deserializes an array of shorts at the given offset as a read-only view over the message
+     * data. See {@link #readBytesView(int, int, int)}.
+     */
+    public ShortBuffer readShortsView(int offset, int arrayNullability, int expectedLength) {
+        Decoder d = readPointer(offset, BindingsHelper.isArrayNullable(arrayNullability));
+        if (d == null) {
+            return null;
+        }
+        DataHeader si = d.readDataHeaderForArray(2, expectedLength);
+        return d.sliceArray(2, si.elementsOrVersion).asShortBuffer();
+    }
+
+    /**
+     * Deserializes an array of ints at the given offset as a read-only view over the message data.
+     * See {@link #readBytesView(int, int, int)}.
+     */
+    public IntBuffer readIntsView(int offset, int arrayNullability, int expectedLength) {
+        Decoder d = readPointer(offset, BindingsHelper.isArrayNullable(arrayNullability));
+        if (d == null) {
+            return null;
+        }
+        DataHeader si = d.readDataHeaderForArray(4, expectedLength);
+        return d.sliceArray(4, si.elementsOrVersion).asIntBuffer();
+    }
+
+    /**
+     * Deserializes an array of floats at the given offset as a read-only view over the message
+     * data. See {@link #readBytesView(int, int, int)}.
+     */
+    public FloatBuffer readFloatsView(int offset, int arrayNullability, int expectedLength) {
+        Decoder d = readPointer(offset, BindingsHelper.isArrayNullable(arrayNullability));
+        if (d == null) {
+            return null;
+        }
+        DataHeader si = d.readDataHeaderForArray(4, expectedLength);
+        return d.sliceArray(4, si.elementsOrVersion).asFloatBuffer();
+    }
+
+    /**
+     * Deserializes an array of longs at the given offset as a read-only view over the message data.
+     * See {@link #readBytesView(int, int, int)}.
+     */
+    public LongBuffer readLongsView(int offset, int arrayNullability, int expectedLength) {
+        Decoder d = readPointer(offset, BindingsHelper.isArrayNullable(arrayNullability));
+        if (d == null) {
+            return null;
+        }
+        DataHeader si = d.readDataHeaderForArray(8, expectedLength);
+        return d.sliceArray(8, si.elementsOrVersion).asLongBuffer();
+    }
+
+    /**
+     * Deserializes an array of doubles at the given offset as a read-only view over the message
+     * data. See {@link #readBytesView(int, int, int)}.
+     */
+    public DoubleBuffer readDoublesView(int offset, int arrayNullability, int expectedLength) {
+        Decoder d = readPointer(offset, BindingsHelper.isArrayNullable(arrayNullability));
+        if (d == null) {
+            return null;
+        }
+        DataHeader si = d.readDataHeaderForArray(8, expectedLength);
+        return d.sliceArray(8, si.elementsOrVersion).asDoubleBuffer();
+    }
+
     /**
      * Deserializes an |Handle| at the given offset.
      */
@@ -760,6 +845,18 @@ public class Decoder {
         return dataHeader;
     }
 
+    /**
+     * Returns a read-only, little endian slice of the elements of the array whose header is at the
+     * start of this decoder. The header must have been validated.
+     */
+    private ByteBuffer sliceArray(int elementSize, int length) {
+        ByteBuffer data = mMessage.getData().duplicate();
+        int start = mBaseOffset + DataHeader.HEADER_SIZE;
+        data.limit(start + elementSize * length);
+        data.position(start);
+        return data.slice().asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
     private void validateBufferSize(int offset, int size) {
         if (mMessage.getData().limit() < offset + size) {
             throw new DeserializationException("Buffer is smaller than expected.");
@@ -12,6 +12,11 @@ import org.chromium.mojo.system.Pair;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
@@ -48,21 +53,35 @@ public class Encoder {
          */
         public int dataEnd;
 
+        /**
+         * The pool the buffers are borrowed from, or |null| if they are allocated directly.
+         */
+        private final BufferPool mBufferPool;
+
         /**
          * @param core the |Core| implementation used to generate handles. Only used if the data
          *            structure being encoded contains interfaces, can be |null| otherwise.
          * @param bufferSize A hint on the size of the message. Used to build the initial byte
          *            buffer.
+         * @param bufferPool the pool to borrow buffers from, can be |null|.
          */
-        private EncoderState(Core core, int bufferSize) {
+        private EncoderState(Core core, int bufferSize, BufferPool bufferPool) {
             assert bufferSize % BindingsHelper.ALIGNMENT == 0;
             this.core = core;
-            byteBuffer = ByteBuffer.allocateDirect(
-                    bufferSize > 0 ? bufferSize : INITIAL_BUFFER_SIZE);
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
+            mBufferPool = bufferPool;
+            byteBuffer = allocate(bufferSize > 0 ? bufferSize : INITIAL_BUFFER_SIZE);
             dataEnd = 0;
         }
 
+        private ByteBuffer allocate(int size) {
+            if (mBufferPool != null) {
+                return mBufferPool.acquire(size);
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        }
+
         /**
          * Claim the given amount of memory at the end of the buffer, resizing it if needed.
          */
@@ -82,11 +101,13 @@ public class Encoder {
             while (targetSize < dataEnd) {
                 targetSize *= 2;
             }
-            ByteBuffer newBuffer = ByteBuffer.allocateDirect(targetSize);
-            newBuffer.order(ByteOrder.nativeOrder());
+            ByteBuffer newBuffer = allocate(targetSize);
             byteBuffer.position(0);
             byteBuffer.limit(byteBuffer.capacity());
             newBuffer.put(byteBuffer);
+            if (mBufferPool != null) {
+                mBufferPool.release(byteBuffer);
+            }
             byteBuffer = newBuffer;
         }
     }
@@ -96,6 +117,12 @@ public class Encoder {
      */
     private static final int INITIAL_BUFFER_SIZE = 1024;
 
+    /**
+     * The pool used by encoders created for messages serialized with a header. |null| unless
+     * pooling is enabled with {@link #setDefaultBufferPool(BufferPool)}.
+     */
+    private static volatile BufferPool sDefaultBufferPool;
+
     /**
      * Base offset in the byte buffer for writing.
      */
@@ -112,7 +139,29 @@ public class Encoder {
     public Message getMessage() {
         mEncoderState.byteBuffer.position(0);
         mEncoderState.byteBuffer.limit(mEncoderState.dataEnd);
-        return new Message(mEncoderState.byteBuffer, mEncoderState.handles);
+        return new Message(
+                mEncoderState.byteBuffer, mEncoderState.handles, mEncoderState.mBufferPool);
+    }
+
+    /**
+     * Returns the pool used when serializing messages with a header, see
+     * {@link Struct#serializeWithHeader(Core, MessageHeader)}. Can be |null|.
+     */
+    public static BufferPool getDefaultBufferPool() {
+        return sDefaultBufferPool;
+    }
+
+    /**
+     * Replaces the pool returned by {@link #getDefaultBufferPool()}, which is |null| by default.
+     * |null| disables pooling.
+     * <p>
+     * Once a pool is set, a message serialized with a header owns a pooled buffer, and the
+     * {@link MessageReceiver} it is passed to owns the message: a {@link Connector} gives the
+     * buffer back once it has written the message, after which the message must not be used.
+     * Messages which are never given back are garbage collected as usual.
+     */
+    public static void setDefaultBufferPool(BufferPool bufferPool) {
+        sDefaultBufferPool = bufferPool;
     }
 
     /**
@@ -123,7 +172,20 @@ public class Encoder {
      * @param sizeHint A hint on the size of the message. Used to build the initial byte buffer.
      */
     public Encoder(Core core, int sizeHint) {
-        this(new EncoderState(core, sizeHint));
+        this(core, sizeHint, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param core the |Core| implementation used to generate handles. Only used if the data
+     *            structure being encoded contains interfaces, can be |null| otherwise.
+     * @param sizeHint A hint on the size of the message. Used to build the initial byte buffer.
+     * @param bufferPool the pool to borrow the byte buffer from. The resulting message gives the
+     *            buffer back when it is released. Can be |null|.
+     */
+    public Encoder(Core core, int sizeHint, BufferPool bufferPool) {
+        this(new EncoderState(core, sizeHint, bufferPool));
     }
 
     /**
@@ -423,6 +485,73 @@ public class Encoder {
         encoderForArray(8, v.length, offset, expectedLength).append(v);
     }
 
+    /**
+     * Encodes the remaining bytes of |v| as an array of bytes, without changing its position. This
+     * is the counterpart of {@link Decoder#readBytesView(int, int, int)}.
+     */
+    public void encode(ByteBuffer v, int offset, int arrayNullability, int expectedLength) {
+        if (v == null) {
+            encodeNullPointer(offset, BindingsHelper.isArrayNullable(arrayNullability));
+            return;
+        }
+        encoderForArray(1, v.remaining(), offset, expectedLength).append(v);
+    }
+
+    /**
+     * Encodes the remaining elements of |v| as an array of shorts, without changing its position.
+     */
+    public void encode(ShortBuffer v, int offset, int arrayNullability, int expectedLength) {
+        if (v == null) {
+            encodeNullPointer(offset, BindingsHelper.isArrayNullable(arrayNullability));
+            return;
+        }
+        encoderForArray(2, v.remaining(), offset, expectedLength).append(v);
+    }
+
+    /**
+     * Encodes the remaining elements of |v| as an array of ints, without changing its position.
+     */
+    public void encode(IntBuffer v, int offset, int arrayNullability, int expectedLength) {
+        if (v == null) {
+            encodeNullPointer(offset, BindingsHelper.isArrayNullable(arrayNullability));
+            return;
+        }
+        encoderForArray(4, v.remaining(), offset, expectedLength).append(v);
+    }
+
+    /**
+     * Encodes the remaining elements of |v| as an array of floats, without changing its position.
+     */
+    public void encode(FloatBuffer v, int offset, int arrayNullability, int expectedLength) {
+        if (v == null) {
+            encodeNullPointer(offset, BindingsHelper.isArrayNullable(arrayNullability));
+            return;
+        }
+        encoderForArray(4, v.remaining(), offset, expectedLength).append(v);
+    }
+
+    /**
+     * Encodes the remaining elements of |v| as an array of longs, without changing its position.
+     */
+    public void encode(LongBuffer v, int offset, int arrayNullability, int expectedLength) {
+        if (v == null) {
+            encodeNullPointer(offset, BindingsHelper.isArrayNullable(arrayNullability));
+            return;
+        }
+        encoderForArray(8, v.remaining(), offset, expectedLength).append(v);
+    }
+
+    /**
+     * Encodes the remaining elements of |v| as an array of doubles, without changing its position.
+     */
+    public void encode(DoubleBuffer v, int offset, int arrayNullability, int expectedLength) {
+        if (v == null) {
+            encodeNullPointer(offset, BindingsHelper.isArrayNullable(arrayNullability));
+            return;
+        }
+        encoderForArray(8, v.remaining(), offset, expectedLength).append(v);
+    }
+
     /**
      * Encodes an array of {@link Handle}.
      */
@@ -584,4 +713,34 @@ public class Encoder {
         mEncoderState.byteBuffer.asLongBuffer().put(v);
     }
 
+    private void append(ByteBuffer v) {
+        mEncoderState.byteBuffer.position(mBaseOffset + DataHeader.HEADER_SIZE);
+        mEncoderState.byteBuffer.put(v.duplicate());
+    }
+
+    private void append(ShortBuffer v) {
+        mEncoderState.byteBuffer.position(mBaseOffset + DataHeader.HEADER_SIZE);
+        mEncoderState.byteBuffer.asShortBuffer().put(v.duplicate());
+    }
+
+    private void append(IntBuffer v) {
+        mEncoderState.byteBuffer.position(mBaseOffset + DataHeader.HEADER_SIZE);
+        mEncoderState.byteBuffer.asIntBuffer().put(v.duplicate());
+    }
+
+    private void append(FloatBuffer v) {
+        mEncoderState.byteBuffer.position(mBaseOffset + DataHeader.HEADER_SIZE);
+        mEncoderState.byteBuffer.asFloatBuffer().put(v.duplicate());
+    }
+
+    private void append(LongBuffer v) {
+        mEncoderState.byteBuffer.position(mBaseOffset + DataHeader.HEADER_SIZE);
+        mEncoderState.byteBuffer.asLongBuffer().put(v.duplicate());
+    }
+
+    private void append(DoubleBuffer v) {
+        mEncoderState.byteBuffer.position(mBaseOffset + DataHeader.HEADER_SIZE);
+        mEncoderState.byteBuffer.asDoubleBuffer().put(v.duplicate());
+    }
+
 }
@@ -0,0 +1,187 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.mojo.bindings;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map from non zero |long| keys to objects, using linear probing. Unlike
+ * {@link java.util.HashMap}, it does not box the keys nor allocate an entry per mapping. The key 0
+ * is used to mark free slots and cannot be stored. This class is not thread safe.
+ *
+ * @param <V> the type of the values.
+ */
+class LongHashMap<V> {
+    /**
+     * The multiplier used to spread the keys, 2^64 divided by the golden ratio.
+     */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The keys of the mappings, 0 for free slots. The length is a power of two.
+     */
+    private long[] mKeys;
+
+    /**
+     * The values of the mappings, at the same index as their key.
+     */
+    private Object[] mValues;
+
+    /**
+     * The number of mappings.
+     */
+    private int mSize;
+
+    /**
+     * The right shift applied to the hash of a key to get its index in the tables.
+     */
+    private int mShift;
+
+    LongHashMap() {
+        allocateTables(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Returns the number of mappings in the map.
+     */
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns |true| if the map contains a mapping for |key|.
+     */
+    boolean containsKey(long key) {
+        return key != 0 && mKeys[indexOf(key)] == key;
+    }
+
+    /**
+     * Returns the value mapped to |key|, or |null| if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        if (key == 0) {
+            return null;
+        }
+        return (V) mValues[indexOf(key)];
+    }
+
+    /**
+     * Maps |key| to |value|, and returns the previous value mapped to |key|, if any.
+     *
+     * @throws IllegalArgumentException if |key| is 0.
+     */
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        if (key == 0) {
+            throw new IllegalArgumentException("0 cannot be used as a key.");
+        }
+        int index = indexOf(key);
+        if (mKeys[index] == key) {
+            V previous = (V) mValues[index];
+            mValues[index] = value;
+            return previous;
+        }
+        mKeys[index] = key;
+        mValues[index] = value;
+        // Keep the load factor at or below 1/2.
+        if (++mSize > mKeys.length / 2) {
+            resize(mKeys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the mapping for |key| and returns its value, or |null| if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        if (key == 0) {
+            return null;
+        }
+        int index = indexOf(key);
+        if (mKeys[index] != key) {
+            return null;
+        }
+        V previous = (V) mValues[index];
+        deleteAt(index);
+        mSize--;
+        return previous;
+    }
+
+    /**
+     * Removes all the mappings.
+     */
+    void clear() {
+        Arrays.fill(mKeys, 0);
+        Arrays.fill(mValues, null);
+        mSize = 0;
+    }
+
+    /**
+     * Returns the index of the slot holding |key|, or of the free slot where it would be inserted.
+     */
+    private int indexOf(long key) {
+        int mask = mKeys.length - 1;
+        int index = hash(key);
+        while (true) {
+            long current = mKeys[index];
+            if (current == key || current == 0) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private int hash(long key) {
+        return (int) ((key * HASH_MULTIPLIER) >>> mShift);
+    }
+
+    /**
+     * Frees the slot at |index|, moving back the following entries of the probe sequence so that
+     * lookups do not need tombstones.
+     */
+    private void deleteAt(int index) {
+        int mask = mKeys.length - 1;
+        int free = index;
+        int next = (free + 1) & mask;
+        while (mKeys[next] != 0) {
+            int home = hash(mKeys[next]);
+            // The entry at |next| can fill |free| unless its home slot is cyclically within
+            // (free, next].
+            boolean canMove = free <= next ? (home <= free || home > next)
+                                           : (home <= free && home > next);
+            if (canMove) {
+                mKeys[free] = mKeys[next];
+                mValues[free] = mValues[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        mKeys[free] = 0;
+        mValues[free] = null;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = mKeys;
+        Object[] oldValues = mValues;
+        allocateTables(capacity);
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] != 0) {
+                int index = indexOf(oldKeys[i]);
+                mKeys[index] = oldKeys[i];
+                mValues[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocateTables(int capacity) {
+        mKeys = new long[capacity];
+        mValues = new Object[capacity];
+        mShift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+}
@@ -31,6 +31,11 @@ public class Message {
      */
     private ServiceMessage mWithHeader;
 
+    /**
+     * The pool |mBuffer| must be given back to, or |null| if it is not owned by this message.
+     */
+    private BufferPool mBufferPool;
+
     /**
      * Constructor.
      *
@@ -38,8 +43,16 @@ public class Message {
      * @param handles The list of handles to send.
      */
     public Message(ByteBuffer buffer, List<? extends Handle> handles) {
+        this(buffer, handles, null);
+    }
+
+    /**
+     * Constructor for a message owning a buffer borrowed from |bufferPool|.
+     */
+    Message(ByteBuffer buffer, List<? extends Handle> handles, BufferPool bufferPool) {
         mBuffer = buffer;
         mHandles = handles;
+        mBufferPool = bufferPool;
     }
 
     /**
@@ -65,4 +78,28 @@ public class Message {
         }
         return mWithHeader;
     }
+
+    /**
+     * Gives the data buffer back to the pool it was borrowed from, if any. Neither this message nor
+     * any message sharing its data, such as its payload, can be used afterwards. Messages that do
+     * not own a pooled buffer are not affected.
+     */
+    public void releaseBuffer() {
+        if (mBufferPool != null) {
+            BufferPool bufferPool = mBufferPool;
+            mBufferPool = null;
+            bufferPool.release(mBuffer);
+        } else if (mWithHeader != null) {
+            mWithHeader.releaseBuffer();
+        }
+    }
+
+    /**
+     * Transfers the ownership of the pooled buffer, if any, to the caller.
+     */
+    BufferPool takeBufferPool() {
+        BufferPool bufferPool = mBufferPool;
+        mBufferPool = null;
+        return bufferPool;
+    }
 }
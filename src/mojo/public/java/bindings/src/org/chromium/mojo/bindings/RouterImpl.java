@@ -4,20 +4,17 @@
 
 package org.chromium.mojo.bindings;
 
-import android.annotation.SuppressLint;
-
 import org.chromium.mojo.system.Core;
 import org.chromium.mojo.system.MessagePipeHandle;
 import org.chromium.mojo.system.Watcher;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
 import java.util.concurrent.Executor;
 
 /**
  * Implementation of {@link Router}.
  */
-@SuppressLint("UseSparseArrays")  // https://crbug.com/600699
 public class RouterImpl implements Router {
 
     /**
@@ -48,7 +45,11 @@ public class RouterImpl implements Router {
      * {@link MessageReceiver} used to return responses to the caller.
      */
     class ResponderThunk implements MessageReceiver {
-        private boolean mAcceptWasInvoked;
+        private final ResponderReference mReference;
+
+        ResponderThunk() {
+            mReference = new ResponderReference(this, RouterImpl.this);
+        }
 
         /**
          * @see
@@ -56,7 +57,8 @@ public class RouterImpl implements Router {
          */
         @Override
         public boolean accept(Message message) {
-            mAcceptWasInvoked = true;
+            // A response has been sent, there is nothing to do when this thunk is collected.
+            mReference.untrack();
             return RouterImpl.this.accept(message);
         }
 
@@ -68,15 +70,116 @@ public class RouterImpl implements Router {
             RouterImpl.this.close();
         }
 
-        @Override
-        protected void finalize() throws Throwable {
-            if (!mAcceptWasInvoked) {
+        /**
+         * Runs the action taken when this thunk becomes unreachable. Visible for testing, as there
+         * is no way to force the garbage collector to collect it.
+         */
+        void clean() {
+            mReference.clean();
+        }
+    }
+
+    /**
+     * Tracks a {@link ResponderThunk} which has not been used to send a response yet, and closes
+     * the router once the thunk has been garbage collected. This replaces a finalizer on the
+     * thunk, which would have put every responder on the finalizer queue.
+     * <p>
+     * The tracked references are kept in a doubly linked list so that they stay reachable until
+     * they are either untracked or enqueued, without allocating anything but the reference.
+     */
+    private static class ResponderReference extends PhantomReference<ResponderThunk> {
+        private static final ReferenceQueue<ResponderThunk> sQueue =
+                new ReferenceQueue<ResponderThunk>();
+
+        /**
+         * Lock protecting the list of tracked references.
+         */
+        private static final Object sLock = new Object();
+
+        /**
+         * The head of the list of tracked references. Guarded by |sLock|.
+         */
+        private static ResponderReference sHead;
+
+        /**
+         * Whether the thread waiting on |sQueue| has been started. Guarded by |sLock|.
+         */
+        private static boolean sCleanerThreadStarted;
+
+        private final RouterImpl mRouter;
+        private ResponderReference mPrevious;
+        private ResponderReference mNext;
+        private boolean mTracked;
+
+        ResponderReference(ResponderThunk thunk, RouterImpl router) {
+            super(thunk, sQueue);
+            mRouter = router;
+            synchronized (sLock) {
+                if (!sCleanerThreadStarted) {
+                    startCleanerThread();
+                    sCleanerThreadStarted = true;
+                }
+                mNext = sHead;
+                if (sHead != null) {
+                    sHead.mPrevious = this;
+                }
+                sHead = this;
+                mTracked = true;
+            }
+        }
+
+        /**
+         * Stops tracking the thunk. Returns |true| if it was still tracked.
+         */
+        boolean untrack() {
+            synchronized (sLock) {
+                if (!mTracked) {
+                    return false;
+                }
+                mTracked = false;
+                if (mPrevious != null) {
+                    mPrevious.mNext = mNext;
+                } else {
+                    sHead = mNext;
+                }
+                if (mNext != null) {
+                    mNext.mPrevious = mPrevious;
+                }
+                mPrevious = null;
+                mNext = null;
+            }
+            // Once cleared, the reference will not be enqueued anymore.
+            clear();
+            return true;
+        }
+
+        /**
+         * Called when the thunk has been garbage collected without being used.
+         */
+        void clean() {
+            if (untrack()) {
                 // We close the pipe here as a way of signaling to the calling application that an
                 // error condition occurred. Without this the calling application would have no
                 // way of knowing it should stop waiting for a response.
-                RouterImpl.this.closeOnHandleThread();
+                mRouter.closeOnHandleThread();
             }
-            super.finalize();
+        }
+
+        private static void startCleanerThread() {
+            Thread thread = new Thread("MojoResponderCleaner") {
+                @Override
+                public void run() {
+                    while (true) {
+                        try {
+                            ((ResponderReference) sQueue.remove()).clean();
+                        } catch (InterruptedException e) {
+                            // Keep waiting, there is no other way to stop this thread.
+                        }
+                    }
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
         }
     }
 
@@ -99,7 +202,7 @@ public class RouterImpl implements Router {
     /**
      * The map from request ids to {@link MessageReceiver} of request currently in flight.
      */
-    private Map<Long, MessageReceiver> mResponders = new HashMap<Long, MessageReceiver>();
+    private final LongHashMap<MessageReceiver> mResponders = new LongHashMap<MessageReceiver>();
 
     /**
      * An Executor that will run on the thread associated with the MessagePipe to which
@@ -227,11 +330,10 @@ public class RouterImpl implements Router {
             return false;
         } else if (header.hasFlag(MessageHeader.MESSAGE_IS_RESPONSE_FLAG)) {
             long requestId = header.getRequestId();
-            MessageReceiver responder = mResponders.get(requestId);
+            MessageReceiver responder = mResponders.remove(requestId);
             if (responder == null) {
                 return false;
             }
-            mResponders.remove(requestId);
             return responder.accept(message);
         } else {
             if (mIncomingMessageReceiver != null) {
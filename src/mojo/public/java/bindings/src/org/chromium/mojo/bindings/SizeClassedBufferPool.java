@@ -0,0 +1,153 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.mojo.bindings;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+/**
+ * A thread safe {@link BufferPool} keeping a bounded number of free buffers for each power of two
+ * size between {@link #MIN_BUFFER_SIZE} and {@link #MAX_BUFFER_SIZE}. Larger requests are served
+ * with a new allocation and are not retained on release.
+ */
+public class SizeClassedBufferPool implements BufferPool {
+    /**
+     * The smallest size class. This must be a multiple of {@link BindingsHelper#ALIGNMENT}.
+     */
+    public static final int MIN_BUFFER_SIZE = 64;
+
+    /**
+     * The largest size class.
+     */
+    public static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Default number of free buffers kept for each size class.
+     */
+    private static final int DEFAULT_MAX_FREE_BUFFERS_PER_CLASS = 8;
+
+    private static final int MIN_SIZE_CLASS_SHIFT =
+            Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+
+    private static final int SIZE_CLASS_COUNT =
+            Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE) - MIN_SIZE_CLASS_SHIFT + 1;
+
+    /**
+     * Used to clear released buffers with bulk puts.
+     */
+    private static final byte[] ZEROS = new byte[1024];
+
+    /**
+     * The free buffers of each size class. Access to an element must be synchronized on it.
+     */
+    private final ArrayDeque<ByteBuffer>[] mFreeBuffers;
+
+    private final int mMaxFreeBuffersPerClass;
+
+    /**
+     * Constructor using the default number of free buffers per size class.
+     */
+    public SizeClassedBufferPool() {
+        this(DEFAULT_MAX_FREE_BUFFERS_PER_CLASS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxFreeBuffersPerClass the number of released buffers kept for each size class.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SizeClassedBufferPool(int maxFreeBuffersPerClass) {
+        mMaxFreeBuffersPerClass = maxFreeBuffersPerClass;
+        mFreeBuffers = new ArrayDeque[SIZE_CLASS_COUNT];
+        for (int i = 0; i < SIZE_CLASS_COUNT; ++i) {
+            mFreeBuffers[i] = new ArrayDeque<ByteBuffer>();
+        }
+    }
+
+    /**
+     * @see BufferPool#acquire(int)
+     */
+    @Override
+    public ByteBuffer acquire(int minCapacity) {
+        if (minCapacity > MAX_BUFFER_SIZE) {
+            return allocate(minCapacity);
+        }
+        int sizeClass = getSizeClass(minCapacity);
+        ArrayDeque<ByteBuffer> freeBuffers = mFreeBuffers[sizeClass];
+        ByteBuffer buffer;
+        synchronized (freeBuffers) {
+            buffer = freeBuffers.pollFirst();
+        }
+        if (buffer == null) {
+            buffer = allocate(MIN_BUFFER_SIZE << sizeClass);
+        }
+        return buffer;
+    }
+
+    /**
+     * @see BufferPool#release(ByteBuffer)
+     */
+    @Override
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (capacity < MIN_BUFFER_SIZE || capacity > MAX_BUFFER_SIZE
+                || Integer.bitCount(capacity) != 1 || !buffer.isDirect()) {
+            return;
+        }
+        ArrayDeque<ByteBuffer> freeBuffers = mFreeBuffers[getSizeClass(capacity)];
+        synchronized (freeBuffers) {
+            if (freeBuffers.size() >= mMaxFreeBuffersPerClass) {
+                return;
+            }
+        }
+        clear(buffer);
+        synchronized (freeBuffers) {
+            if (freeBuffers.size() < mMaxFreeBuffersPerClass) {
+                freeBuffers.addFirst(buffer);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of free buffers currently held for the size class of |capacity|.
+     */
+    int getFreeBufferCount(int capacity) {
+        ArrayDeque<ByteBuffer> freeBuffers = mFreeBuffers[getSizeClass(capacity)];
+        synchronized (freeBuffers) {
+            return freeBuffers.size();
+        }
+    }
+
+    /**
+     * Returns the index of the smallest size class holding |size| bytes.
+     */
+    private static int getSizeClass(int size) {
+        if (size <= MIN_BUFFER_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SIZE_CLASS_SHIFT;
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(capacity);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Zeroes the written part of |buffer| and resets its position and limit.
+     */
+    private static void clear(ByteBuffer buffer) {
+        int written = buffer.limit();
+        buffer.clear();
+        while (buffer.position() < written) {
+            buffer.put(ZEROS, 0, Math.min(ZEROS.length, written - buffer.position()));
+        }
+        buffer.clear();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -7,11 +7,26 @@ package org.chromium.mojo.bindings;
 import org.chromium.mojo.system.Core;
 
 import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Base class for all mojo structs.
  */
 public abstract class Struct {
+    /**
+     * The largest serialized size that is remembered as a size hint. Larger messages are unusual
+     * and would otherwise pin large buffers for every later message of the same type.
+     */
+    private static final int MAX_SIZE_HINT = SizeClassedBufferPool.MAX_BUFFER_SIZE;
+
+    /**
+     * The largest size seen so far when serializing each struct type with a header, used as the
+     * initial buffer size of the next serialization so that it does not need to grow the buffer.
+     */
+    private static final Map<Class<?>, Integer> sSerializedSizeHints =
+            new ConcurrentHashMap<Class<?>, Integer>();
+
     /**
      * The base size of the encoded struct.
      */
@@ -68,17 +83,29 @@ public abstract class Struct {
     }
 
     /**
-     * Returns the serialization of the struct prepended with the given header.
+     * Returns the serialization of the struct prepended with the given header. If pooling is
+     * enabled, the buffer of the message is borrowed from {@link Encoder#getDefaultBufferPool()},
+     * see {@link Encoder#setDefaultBufferPool(BufferPool)}.
      *
      * @param header the header to prepend to the returned message.
      * @param core the |Core| implementation used to generate handles. Only used if the |Struct|
      *            being encoded contains interfaces, can be |null| otherwise.
      */
     public ServiceMessage serializeWithHeader(Core core, MessageHeader header) {
-        Encoder encoder = new Encoder(core, mEncodedBaseSize + header.getSize());
+        int sizeHint = mEncodedBaseSize + header.getSize();
+        Integer learnedSizeHint = sSerializedSizeHints.get(getClass());
+        if (learnedSizeHint != null && learnedSizeHint > sizeHint) {
+            sizeHint = learnedSizeHint;
+        }
+        Encoder encoder = new Encoder(core, sizeHint, Encoder.getDefaultBufferPool());
         header.encode(encoder);
         encode(encoder);
-        return new ServiceMessage(encoder.getMessage(), header);
+        Message message = encoder.getMessage();
+        int size = message.getData().limit();
+        if (size > sizeHint && size <= MAX_SIZE_HINT) {
+            sSerializedSizeHints.put(getClass(), size);
+        }
+        return new ServiceMessage(message, header);
     }
 
     /**
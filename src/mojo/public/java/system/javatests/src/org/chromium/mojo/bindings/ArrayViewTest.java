@@ -0,0 +1,147 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.mojo.bindings;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.chromium.base.test.BaseJUnit4ClassRunner;
+import org.chromium.base.test.util.Batch;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.ReadOnlyBufferException;
+
+/**
+ * Testing the array view methods of {@link Decoder} and their {@link Encoder} counterparts.
+ */
+@RunWith(BaseJUnit4ClassRunner.class)
+@Batch(Batch.UNIT_TESTS)
+public class ArrayViewTest {
+    /**
+     * Header of a struct containing 3 array pointers.
+     */
+    private static final DataHeader STRUCT_HEADER =
+            new DataHeader(DataHeader.HEADER_SIZE + 3 * BindingsHelper.POINTER_SIZE, 0);
+
+    private static final int BYTES_OFFSET = DataHeader.HEADER_SIZE;
+    private static final int INTS_OFFSET = BYTES_OFFSET + BindingsHelper.POINTER_SIZE;
+    private static final int DOUBLES_OFFSET = INTS_OFFSET + BindingsHelper.POINTER_SIZE;
+
+    private static Message encode(byte[] bytes, int[] ints, double[] doubles) {
+        Encoder encoder = new Encoder(null, STRUCT_HEADER.size);
+        Encoder structEncoder = encoder.getEncoderAtDataOffset(STRUCT_HEADER);
+        structEncoder.encode(bytes, BYTES_OFFSET, BindingsHelper.ARRAY_NULLABLE,
+                BindingsHelper.UNSPECIFIED_ARRAY_LENGTH);
+        structEncoder.encode(ints, INTS_OFFSET, BindingsHelper.NOTHING_NULLABLE,
+                BindingsHelper.UNSPECIFIED_ARRAY_LENGTH);
+        structEncoder.encode(doubles, DOUBLES_OFFSET, BindingsHelper.NOTHING_NULLABLE,
+                BindingsHelper.UNSPECIFIED_ARRAY_LENGTH);
+        return encoder.getMessage();
+    }
+
+    /**
+     * Testing that views see the same values as the copying methods.
+     */
+    @Test
+    @SmallTest
+    public void testReadViews() {
+        byte[] bytes = {1, 2, 3, 4, 5};
+        int[] ints = {-1, 0, 1, Integer.MAX_VALUE};
+        double[] doubles = {0.5, -2.25};
+        Decoder decoder = new Decoder(encode(bytes, ints, doubles));
+        decoder.readDataHeader();
+
+        ByteBuffer bytesView = decoder.readBytesView(BYTES_OFFSET, BindingsHelper.ARRAY_NULLABLE,
+                BindingsHelper.UNSPECIFIED_ARRAY_LENGTH);
+        Assert.assertTrue(bytesView.isReadOnly());
+        Assert.assertEquals(bytes.length, bytesView.remaining());
+        for (int i = 0; i < bytes.length; ++i) {
+            Assert.assertEquals(bytes[i], bytesView.get(i));
+        }
+
+        IntBuffer intsView = decoder.readIntsView(INTS_OFFSET, BindingsHelper.NOTHING_NULLABLE,
+                ints.length);
+        Assert.assertEquals(ints.length, intsView.remaining());
+        for (int i = 0; i < ints.length; ++i) {
+            Assert.assertEquals(ints[i], intsView.get(i));
+        }
+        try {
+            intsView.put(0, 42);
+            Assert.fail("Views must be read-only.");
+        } catch (ReadOnlyBufferException e) {
+            // Expected.
+        }
+
+        DoubleBuffer doublesView = decoder.readDoublesView(DOUBLES_OFFSET,
+                BindingsHelper.NOTHING_NULLABLE, BindingsHelper.UNSPECIFIED_ARRAY_LENGTH);
+        Assert.assertEquals(doubles.length, doublesView.remaining());
+        for (int i = 0; i < doubles.length; ++i) {
+            Assert.assertEquals(doubles[i], doublesView.get(i), 0);
+        }
+    }
+
+    /**
+     * Testing null and fixed length arrays.
+     */
+    @Test
+    @SmallTest
+    public void testNullAndLengthValidation() {
+        Decoder decoder = new Decoder(encode(null, new int[2], new double[0]));
+        decoder.readDataHeader();
+        Assert.assertNull(decoder.readBytesView(BYTES_OFFSET, BindingsHelper.ARRAY_NULLABLE,
+                BindingsHelper.UNSPECIFIED_ARRAY_LENGTH));
+        try {
+            decoder.readBytesView(BYTES_OFFSET, BindingsHelper.NOTHING_NULLABLE,
+                    BindingsHelper.UNSPECIFIED_ARRAY_LENGTH);
+            Assert.fail("Null arrays must be rejected for non nullable types.");
+        } catch (DeserializationException e) {
+            // Expected.
+        }
+        try {
+            decoder.readIntsView(INTS_OFFSET, BindingsHelper.NOTHING_NULLABLE, 3);
+            Assert.fail("Arrays of the wrong length must be rejected.");
+        } catch (DeserializationException e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Testing that a view can be encoded again and produces the same message.
+     */
+    @Test
+    @SmallTest
+    public void testEncodeViews() {
+        byte[] bytes = {7, 8, 9};
+        int[] ints = {10, 20, 30};
+        double[] doubles = {1.5};
+        Message message = encode(bytes, ints, doubles);
+        Decoder decoder = new Decoder(message);
+        decoder.readDataHeader();
+        ByteBuffer bytesView = decoder.readBytesView(BYTES_OFFSET, BindingsHelper.ARRAY_NULLABLE,
+                BindingsHelper.UNSPECIFIED_ARRAY_LENGTH);
+        IntBuffer intsView = decoder.readIntsView(INTS_OFFSET, BindingsHelper.NOTHING_NULLABLE,
+                BindingsHelper.UNSPECIFIED_ARRAY_LENGTH);
+        DoubleBuffer doublesView = decoder.readDoublesView(DOUBLES_OFFSET,
+                BindingsHelper.NOTHING_NULLABLE, BindingsHelper.UNSPECIFIED_ARRAY_LENGTH);
+
+        Encoder encoder = new Encoder(null, STRUCT_HEADER.size);
+        Encoder structEncoder = encoder.getEncoderAtDataOffset(STRUCT_HEADER);
+        structEncoder.encode(bytesView, BYTES_OFFSET, BindingsHelper.ARRAY_NULLABLE,
+                BindingsHelper.UNSPECIFIED_ARRAY_LENGTH);
+        structEncoder.encode(intsView, INTS_OFFSET, BindingsHelper.NOTHING_NULLABLE,
+                BindingsHelper.UNSPECIFIED_ARRAY_LENGTH);
+        structEncoder.encode(doublesView, DOUBLES_OFFSET, BindingsHelper.NOTHING_NULLABLE,
+                BindingsHelper.UNSPECIFIED_ARRAY_LENGTH);
+
+        Assert.assertEquals(message.getData(), encoder.getMessage().getData());
+        Assert.assertEquals(0, bytesView.position());
+        Assert.assertEquals(0, intsView.position());
+    }
+}
@@ -17,6 +17,7 @@ import org.chromium.base.test.BaseJUnit4ClassRunner;
 import org.chromium.mojo.MojoTestRule;
 import org.chromium.mojo.bindings.BindingsTestUtils.CapturingErrorHandler;
 import org.chromium.mojo.bindings.BindingsTestUtils.RecordingMessageReceiver;
+import org.chromium.mojo.bindings.test.mojom.imported.Point;
 import org.chromium.mojo.system.Core;
 import org.chromium.mojo.system.Handle;
 import org.chromium.mojo.system.MessagePipeHandle;
@@ -88,6 +89,63 @@ public class ConnectorTest {
         Assert.assertEquals(mTestMessage.getData(), ByteBuffer.wrap(result.getValue().mData));
     }
 
+    /**
+     * Test that a message serialized with a header can still be used after being sent, while
+     * pooling isn't enabled.
+     */
+    @Test
+    @SmallTest
+    public void testMessageUsableAfterSending() {
+        Assert.assertNull(Encoder.getDefaultBufferPool());
+        Point p = new Point();
+        p.x = 1;
+        p.y = 2;
+        ServiceMessage message = p.serializeWithHeader(null, new MessageHeader(6));
+        ByteBuffer expectedData = ByteBuffer.allocate(message.getData().limit());
+        expectedData.put(message.getData().duplicate());
+        expectedData.flip();
+
+        mConnector.accept(message);
+        // Another message is serialized, which would reuse a released buffer.
+        p.x = 3;
+        p.y = 4;
+        p.serializeWithHeader(null, new MessageHeader(6));
+
+        Assert.assertEquals(expectedData, message.getData());
+        Point p2 = Point.deserialize(message.getPayload());
+        Assert.assertEquals(1, p2.x);
+        Assert.assertEquals(2, p2.y);
+        ResultAnd<MessagePipeHandle.ReadMessageResult> result =
+                mHandle.readMessage(MessagePipeHandle.ReadFlags.NONE);
+        Assert.assertEquals(MojoResult.OK, result.getMojoResult());
+        Assert.assertEquals(expectedData, ByteBuffer.wrap(result.getValue().mData));
+    }
+
+    /**
+     * Test that a {@link Connector} gives the buffer of a message back to the pool once the
+     * message is written, when pooling is enabled.
+     */
+    @Test
+    @SmallTest
+    public void testPooledMessageReleasedAfterSending() {
+        SizeClassedBufferPool pool = new SizeClassedBufferPool();
+        Encoder.setDefaultBufferPool(pool);
+        try {
+            Point p = new Point();
+            ServiceMessage message = p.serializeWithHeader(null, new MessageHeader(6));
+            int capacity = message.getData().capacity();
+            Assert.assertEquals(0, pool.getFreeBufferCount(capacity));
+
+            mConnector.accept(message);
+            Assert.assertEquals(1, pool.getFreeBufferCount(capacity));
+        } finally {
+            Encoder.setDefaultBufferPool(null);
+        }
+        ResultAnd<MessagePipeHandle.ReadMessageResult> result =
+                mHandle.readMessage(MessagePipeHandle.ReadFlags.NONE);
+        Assert.assertEquals(MojoResult.OK, result.getMojoResult());
+    }
+
     /**
      * Test receiving a message through a {@link Connector}
      */
@@ -0,0 +1,87 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.mojo.bindings;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.chromium.base.test.BaseJUnit4ClassRunner;
+import org.chromium.base.test.util.Batch;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Testing {@link LongHashMap}.
+ */
+@RunWith(BaseJUnit4ClassRunner.class)
+@Batch(Batch.UNIT_TESTS)
+public class LongHashMapTest {
+    /**
+     * Testing basic operations.
+     */
+    @Test
+    @SmallTest
+    public void testPutGetRemove() {
+        LongHashMap<String> map = new LongHashMap<String>();
+        Assert.assertNull(map.get(1));
+        Assert.assertNull(map.put(1, "a"));
+        Assert.assertEquals("a", map.put(1, "b"));
+        Assert.assertEquals("b", map.get(1));
+        Assert.assertTrue(map.containsKey(1));
+        Assert.assertEquals(1, map.size());
+        Assert.assertEquals("b", map.remove(1));
+        Assert.assertNull(map.remove(1));
+        Assert.assertFalse(map.containsKey(1));
+        Assert.assertEquals(0, map.size());
+
+        Assert.assertNull(map.get(0));
+        Assert.assertFalse(map.containsKey(0));
+        Assert.assertNull(map.remove(0));
+        try {
+            map.put(0, "c");
+            Assert.fail("0 must not be accepted as a key.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Testing the map against {@link HashMap} with random operations, including growth and removals
+     * in the middle of probe sequences.
+     */
+    @Test
+    @SmallTest
+    public void testRandomOperations() {
+        Random random = new Random(42);
+        LongHashMap<Long> map = new LongHashMap<Long>();
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        for (int i = 0; i < 10000; ++i) {
+            long key = random.nextBoolean() ? 1 + random.nextInt(200) : random.nextLong();
+            if (key == 0) {
+                continue;
+            }
+            switch (random.nextInt(3)) {
+                case 0:
+                    Assert.assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+                    break;
+                case 1:
+                    Assert.assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                default:
+                    Assert.assertEquals(expected.get(key), map.get(key));
+                    Assert.assertEquals(expected.containsKey(key), map.containsKey(key));
+                    break;
+            }
+            Assert.assertEquals(expected.size(), map.size());
+        }
+        map.clear();
+        Assert.assertEquals(0, map.size());
+    }
+}
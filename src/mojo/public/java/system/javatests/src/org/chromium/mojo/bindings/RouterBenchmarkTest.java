@@ -0,0 +1,131 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.mojo.bindings;
+
+import androidx.test.filters.LargeTest;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.chromium.base.Log;
+import org.chromium.base.test.BaseJUnit4ClassRunner;
+import org.chromium.base.test.util.Manual;
+import org.chromium.mojo.MojoTestRule;
+import org.chromium.mojo.system.Core;
+import org.chromium.mojo.system.MessagePipeHandle;
+import org.chromium.mojo.system.Pair;
+import org.chromium.mojo.system.impl.CoreImpl;
+
+/**
+ * Microbenchmark of request/response round trips through two {@link RouterImpl} and their
+ * {@link Connector}. Run manually and read the results in logcat.
+ */
+@RunWith(BaseJUnit4ClassRunner.class)
+public class RouterBenchmarkTest {
+    private static final String TAG = "MojoBenchmark";
+
+    private static final int REQUEST_MESSAGE_TYPE = 0x1;
+    private static final int RESPONSE_MESSAGE_TYPE = 0x2;
+    private static final int WARMUP_ITERATIONS = 2000;
+    private static final int ITERATIONS = 20000;
+
+    /**
+     * Number of requests in flight before the run loop is drained.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * Pool of the message buffers, which the {@link Connector}s give back once the messages are
+     * written.
+     */
+    private static final BufferPool BUFFER_POOL = new SizeClassedBufferPool();
+
+    @Rule
+    public MojoTestRule mTestRule = new MojoTestRule();
+
+    private RouterImpl mClient;
+    private RouterImpl mServer;
+    private int mResponseCount;
+
+    /**
+     * {@link MessageReceiverWithResponder} answering every request with an empty response.
+     */
+    private static class EchoReceiver extends SideEffectFreeCloseable
+            implements MessageReceiverWithResponder {
+        @Override
+        public boolean accept(Message message) {
+            return false;
+        }
+
+        @Override
+        public boolean acceptWithResponder(Message message, MessageReceiver responder) {
+            long requestId = message.asServiceMessage().getHeader().getRequestId();
+            return responder.accept(newHeaderOnlyMessage(new MessageHeader(
+                    RESPONSE_MESSAGE_TYPE, MessageHeader.MESSAGE_IS_RESPONSE_FLAG, requestId)));
+        }
+    }
+
+    /**
+     * {@link MessageReceiver} counting the responses.
+     */
+    private class CountingResponder extends SideEffectFreeCloseable implements MessageReceiver {
+        @Override
+        public boolean accept(Message message) {
+            mResponseCount++;
+            return true;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        Core core = CoreImpl.getInstance();
+        Pair<MessagePipeHandle, MessagePipeHandle> handles = core.createMessagePipe(null);
+        mClient = new RouterImpl(handles.first);
+        mServer = new RouterImpl(handles.second);
+        mServer.setIncomingMessageReceiver(new EchoReceiver());
+        mClient.start();
+        mServer.start();
+    }
+
+    private static Message newHeaderOnlyMessage(MessageHeader header) {
+        Encoder encoder = new Encoder(null, header.getSize(), BUFFER_POOL);
+        header.encode(encoder);
+        return encoder.getMessage();
+    }
+
+    private void runRoundTrips(int iterations) {
+        MessageReceiver responder = new CountingResponder();
+        mResponseCount = 0;
+        for (int i = 0; i < iterations; i += BATCH_SIZE) {
+            for (int j = 0; j < BATCH_SIZE; ++j) {
+                mClient.acceptWithResponder(newHeaderOnlyMessage(new MessageHeader(
+                        REQUEST_MESSAGE_TYPE, MessageHeader.MESSAGE_EXPECTS_RESPONSE_FLAG, 0)),
+                        responder);
+            }
+            mTestRule.runLoopUntilIdle();
+        }
+        Assert.assertEquals(iterations, mResponseCount);
+    }
+
+    /**
+     * Measures the average time of a round trip.
+     */
+    @Test
+    @LargeTest
+    @Manual
+    public void testRoundTrip() {
+        runRoundTrips(WARMUP_ITERATIONS);
+        long start = System.nanoTime();
+        runRoundTrips(ITERATIONS);
+        long elapsed = System.nanoTime() - start;
+        Log.i(TAG, "Router round trip: %d ns/op over %d iterations.", elapsed / ITERATIONS,
+                ITERATIONS);
+        mClient.close();
+        mServer.close();
+    }
+}
@@ -155,31 +155,28 @@ public class RouterTest {
 
     /**
      * Clears {@code mReceiver.messagesWithReceivers} allowing all message receivers to be
-     * finalized.
+     * collected.
      * <p>
-     * Since there is no way to force the Garbage Collector to actually call finalize and we want to
-     * test the effects of the finalize() method, we explicitly call finalize() on all of the
-     * message receivers. We do this in a custom thread to better approximate what the JVM does.
+     * Since there is no way to force the Garbage Collector to actually collect the receivers and we
+     * want to test the effects of their collection, we explicitly call clean() on all of the
+     * message receivers. We do this in a custom thread to better approximate what the cleaner
+     * thread does.
      */
     private void clearAllMessageReceivers() {
-        Thread myFinalizerThread = new Thread() {
+        Thread myCleanerThread = new Thread() {
             @Override
             public void run() {
                 for (Pair<Message, MessageReceiver> receivedMessage :
                         mReceiver.messagesWithReceivers) {
                     RouterImpl.ResponderThunk thunk =
                             (RouterImpl.ResponderThunk) receivedMessage.second;
-                    try {
-                        thunk.finalize();
-                    } catch (Throwable e) {
-                        throw new RuntimeException(e);
-                    }
+                    thunk.clean();
                 }
             }
         };
-        myFinalizerThread.start();
+        myCleanerThread.start();
         try {
-            myFinalizerThread.join();
+            myCleanerThread.join();
         } catch (InterruptedException e) {
             // ignore.
         }
@@ -204,7 +201,7 @@ public class RouterTest {
     }
 
     /**
-     * Tests that if a callback is dropped (i.e. becomes unreachable and is finalized
+     * Tests that if a callback is dropped (i.e. becomes unreachable and is collected
      * without being used), then the message pipe will be closed.
      */
     @Test
@@ -221,14 +218,14 @@ public class RouterTest {
         }
 
         // Clear all MessageRecievers so that the ResponderThunks will
-        // be finalized.
+        // be collected.
         clearAllMessageReceivers();
 
         // Send another  message to the router without sending a response.
         sendMessageToRouter(0, 0, 0);
 
         // Clear the MessageReciever so that the ResponderThunk will
-        // be finalized. Since the RespondeThunk was never used, this
+        // be collected. Since the RespondeThunk was never used, this
         // should close the pipe.
         clearAllMessageReceivers();
         // The close() occurs asynchronously on this thread.
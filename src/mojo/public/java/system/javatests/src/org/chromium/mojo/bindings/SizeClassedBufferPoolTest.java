@@ -0,0 +1,116 @@
+// Copyright 2021 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.mojo.bindings;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.chromium.base.test.BaseJUnit4ClassRunner;
+import org.chromium.base.test.util.Batch;
+import org.chromium.mojo.system.Handle;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+/**
+ * Testing {@link SizeClassedBufferPool} and its use by the {@link Encoder}.
+ */
+@RunWith(BaseJUnit4ClassRunner.class)
+@Batch(Batch.UNIT_TESTS)
+public class SizeClassedBufferPoolTest {
+    /**
+     * Testing that acquired buffers are rounded up to a size class and have the expected state.
+     */
+    @Test
+    @SmallTest
+    public void testAcquire() {
+        SizeClassedBufferPool pool = new SizeClassedBufferPool();
+        int[] sizes = {1, 8, 64, 65, 1000, 1024, SizeClassedBufferPool.MAX_BUFFER_SIZE};
+        int[] expectedCapacities = {64, 64, 64, 128, 1024, 1024,
+                SizeClassedBufferPool.MAX_BUFFER_SIZE};
+        for (int i = 0; i < sizes.length; ++i) {
+            ByteBuffer buffer = pool.acquire(sizes[i]);
+            Assert.assertTrue(buffer.isDirect());
+            Assert.assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+            Assert.assertEquals(expectedCapacities[i], buffer.capacity());
+            Assert.assertEquals(0, buffer.position());
+            Assert.assertEquals(buffer.capacity(), buffer.limit());
+        }
+        ByteBuffer large = pool.acquire(SizeClassedBufferPool.MAX_BUFFER_SIZE + 8);
+        Assert.assertEquals(SizeClassedBufferPool.MAX_BUFFER_SIZE + 8, large.capacity());
+    }
+
+    /**
+     * Testing that released buffers are reused and cleared.
+     */
+    @Test
+    @SmallTest
+    public void testReleaseClearsAndReuses() {
+        SizeClassedBufferPool pool = new SizeClassedBufferPool();
+        ByteBuffer buffer = pool.acquire(256);
+        for (int i = 0; i < buffer.capacity(); ++i) {
+            buffer.put(i, (byte) 0xff);
+        }
+        pool.release(buffer);
+        Assert.assertEquals(1, pool.getFreeBufferCount(256));
+
+        ByteBuffer reused = pool.acquire(200);
+        Assert.assertSame(buffer, reused);
+        Assert.assertEquals(0, pool.getFreeBufferCount(256));
+        for (int i = 0; i < reused.capacity(); ++i) {
+            Assert.assertEquals(0, reused.get(i));
+        }
+    }
+
+    /**
+     * Testing that the pool does not keep more than the given number of buffers per size class.
+     */
+    @Test
+    @SmallTest
+    public void testReleaseIsBounded() {
+        SizeClassedBufferPool pool = new SizeClassedBufferPool(2);
+        ByteBuffer[] buffers = new ByteBuffer[3];
+        for (int i = 0; i < buffers.length; ++i) {
+            buffers[i] = pool.acquire(128);
+        }
+        for (ByteBuffer buffer : buffers) {
+            pool.release(buffer);
+        }
+        Assert.assertEquals(2, pool.getFreeBufferCount(128));
+
+        pool.release(ByteBuffer.allocate(128));
+        pool.release(ByteBuffer.allocateDirect(SizeClassedBufferPool.MAX_BUFFER_SIZE + 8));
+        Assert.assertEquals(2, pool.getFreeBufferCount(128));
+    }
+
+    /**
+     * Testing that an {@link Encoder} borrows its buffers from the pool and that the resulting
+     * message gives its buffer back when released.
+     */
+    @Test
+    @SmallTest
+    public void testEncoderUsesPool() {
+        SizeClassedBufferPool pool = new SizeClassedBufferPool();
+        Encoder encoder = new Encoder(null, 64, pool);
+        // Force the encoder to grow its buffer, which gives the first one back to the pool.
+        encoder.getEncoderAtDataOffset(new DataHeader(512, 0));
+        Assert.assertEquals(1, pool.getFreeBufferCount(64));
+
+        Message message = encoder.getMessage();
+        Assert.assertEquals(512, message.getData().limit());
+        message.releaseBuffer();
+        Assert.assertEquals(1, pool.getFreeBufferCount(512));
+        message.releaseBuffer();
+        Assert.assertEquals(1, pool.getFreeBufferCount(512));
+
+        Message unpooled = new Message(ByteBuffer.allocateDirect(64), new ArrayList<Handle>());
+        unpooled.releaseBuffer();
+        Assert.assertEquals(1, pool.getFreeBufferCount(64));
+    }
+}
@@ -47,6 +47,10 @@ public class FlatBufferBuilder {
     boolean force_defaults = false; // False omits default values from the serialized data.
     ByteBufferFactory bb_factory;   // Factory for allocating the internal buffer
     final Utf8 utf8;                // UTF-8 encoder to use
+    String[] string_pool = null;    // Strings created by `createSharedString`, by hash.
+    int[] string_pool_offsets = null; // Offsets of the strings in `string_pool`.
+    int string_pool_size = 0;       // Number of strings in `string_pool`.
+    int[] sort_scratch = null;      // Temporary storage to sort tables by key.
     /// @endcond
 
     /**
@@ -147,6 +151,7 @@ public class FlatBufferBuilder {
         object_start = 0;
         num_vtables = 0;
         vector_num_elems = 0;
+        clearStringPool();
         return this;
     }
 
@@ -212,6 +217,9 @@ public class FlatBufferBuilder {
 
     /**
      * Reset the FlatBufferBuilder by purging all data that it holds.
+     *
+     * The buffer and the temporary storage, including the capacity of the shared string pool, are
+     * kept, so that building similar buffers after `clear()` doesn't allocate.
      */
     public void clear(){
         space = bb.capacity();
@@ -224,6 +232,14 @@ public class FlatBufferBuilder {
         object_start = 0;
         num_vtables = 0;
         vector_num_elems = 0;
+        clearStringPool();
+    }
+
+    private void clearStringPool() {
+        if (string_pool_size > 0) {
+            Arrays.fill(string_pool, null);
+            string_pool_size = 0;
+        }
     }
 
     /**
@@ -523,7 +539,10 @@ public class FlatBufferBuilder {
      * @return Returns offset of the sorted vector.
      */
     public <T extends Table> int createSortedVectorOfTables(T obj, int[] offsets) {
-        obj.sortTables(offsets, bb);
+        if (sort_scratch == null || sort_scratch.length < offsets.length) {
+            sort_scratch = new int[offsets.length];
+        }
+        obj.sortTables(offsets, bb, sort_scratch);
         return createVectorOfTables(offsets);
     }
 
@@ -543,6 +562,54 @@ public class FlatBufferBuilder {
         return endVector();
     }
 
+   /**
+    * Encode the string `s` in the buffer using UTF-8, unless an equal string was already created
+    * with this method since the builder was last cleared, in which case its offset is returned.
+    *
+    * Strings are pooled by hash, so this is cheaper than {@link #createString(CharSequence)} for
+    * repetitive strings, and more compact. Only strings created with this method are shared.
+    *
+    * @param s The string to encode.
+    * @return The offset in the buffer where the encoded string starts.
+    */
+    public int createSharedString(String s) {
+        if (string_pool == null) {
+            string_pool = new String[16];
+            string_pool_offsets = new int[16];
+        }
+        int mask = string_pool.length - 1;
+        int i = poolIndex(s, mask);
+        for (String pooled; (pooled = string_pool[i]) != null; i = (i + 1) & mask) {
+            if (pooled.equals(s)) return string_pool_offsets[i];
+        }
+        int offset = createString(s);
+        string_pool[i] = s;
+        string_pool_offsets[i] = offset;
+        // Keeps the pool at most half full, so that probe sequences stay short.
+        if (++string_pool_size * 2 > string_pool.length) growStringPool();
+        return offset;
+    }
+
+    private static int poolIndex(String s, int mask) {
+        int h = s.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void growStringPool() {
+        String[] old_pool = string_pool;
+        int[] old_offsets = string_pool_offsets;
+        string_pool = new String[old_pool.length << 1];
+        string_pool_offsets = new int[old_pool.length << 1];
+        int mask = string_pool.length - 1;
+        for (int j = 0; j < old_pool.length; j++) {
+            if (old_pool[j] == null) continue;
+            int i = poolIndex(old_pool[j], mask);
+            while (string_pool[i] != null) i = (i + 1) & mask;
+            string_pool[i] = old_pool[j];
+            string_pool_offsets[i] = old_offsets[j];
+        }
+    }
+
    /**
     * Create a string in the buffer from an already encoded UTF-8 string in a ByteBuffer.
     *
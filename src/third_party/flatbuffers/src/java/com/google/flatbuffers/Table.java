@@ -26,6 +26,8 @@ import java.nio.ByteOrder;
  * All tables in the generated code derive from this class, and add their own accessors.
  */
 public class Table {
+  /** Length of the runs sorted by insertion in `sortTables()`. */
+  private static final int SORT_RUN_LENGTH = 16;
   /** Used to hold the position of the `bb` buffer. */
   protected int bb_pos;
   /** The underlying ByteBuffer to hold the data of the Table. */
@@ -227,19 +229,74 @@ public class Table {
    * @param bb A {@code ByteBuffer} to get the tables.
    */
   protected void sortTables(int[] offsets, final ByteBuffer bb) {
-    Integer[] off = new Integer[offsets.length];
-    for (int i = 0; i < offsets.length; i++) off[i] = offsets[i];
-    java.util.Arrays.sort(off, new java.util.Comparator<Integer>() {
-      public int compare(Integer o1, Integer o2) {
-        return keysCompare(o1, o2, bb);
+    sortTables(offsets, bb, new int[offsets.length]);
+  }
+
+  /**
+   * Sort tables by the key, without boxing the offsets.
+   *
+   * The sort is stable, like the sort of boxed offsets it replaces, so that tables with equal
+   * keys keep their order and the resulting buffer is deterministic.
+   *
+   * @param offsets An 'int' indexes of the tables into the bb.
+   * @param bb A {@code ByteBuffer} to get the tables.
+   * @param scratch An array at least as long as `offsets`, used as temporary storage.
+   */
+  void sortTables(int[] offsets, ByteBuffer bb, int[] scratch) {
+    final int n = offsets.length;
+    // Sorts short runs by insertion, then merges them bottom-up.
+    for (int lo = 0; lo < n; lo += SORT_RUN_LENGTH) {
+      int hi = Math.min(lo + SORT_RUN_LENGTH, n);
+      for (int i = lo + 1; i < hi; i++) {
+        int o = offsets[i];
+        int j = i - 1;
+        while (j >= lo && keysCompare(offsets[j], o, bb) > 0) {
+          offsets[j + 1] = offsets[j];
+          j--;
+        }
+        offsets[j + 1] = o;
+      }
+    }
+    int[] src = offsets;
+    int[] dst = scratch;
+    for (int width = SORT_RUN_LENGTH; width < n; width <<= 1) {
+      for (int lo = 0; lo < n; lo += width << 1) {
+        int mid = Math.min(lo + width, n);
+        int hi = Math.min(lo + (width << 1), n);
+        int i = lo, j = mid, k = lo;
+        while (i < mid && j < hi) {
+          dst[k++] = keysCompare(src[i], src[j], bb) <= 0 ? src[i++] : src[j++];
+        }
+        while (i < mid) dst[k++] = src[i++];
+        while (j < hi) dst[k++] = src[j++];
       }
-    });
-    for (int i = 0; i < offsets.length; i++) offsets[i] = off[i];
+      int[] tmp = src;
+      src = dst;
+      dst = tmp;
+    }
+    if (src != offsets) System.arraycopy(src, 0, offsets, 0, n);
+  }
+
+  /**
+   * Compare two tables by the key.
+   *
+   * Generated code overrides this method. The default calls the boxed variant, for code
+   * generated before it existed.
+   *
+   * @param o1 An 'int' index of the first key into the bb.
+   * @param o2 An 'int' index of the second key into the bb.
+   * @param bb A {@code ByteBuffer} to get the keys.
+   */
+  protected int keysCompare(int o1, int o2, ByteBuffer bb) {
+    return keysCompare(Integer.valueOf(o1), Integer.valueOf(o2), bb);
   }
 
   /**
    * Compare two tables by the key.
    *
+   * Code generated before `keysCompare(int, int, ByteBuffer)` existed overrides this method. New
+   * code should override that one instead, which doesn't box.
+   *
    * @param o1 An 'Integer' index of the first key into the bb.
    * @param o2 An 'Integer' index of the second key into the bb.
    * @param bb A {@code ByteBuffer} to get the keys.
@@ -0,0 +1,404 @@
+/*
+ * Copyright 2021 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.flatbuffers;
+
+import static com.google.flatbuffers.Constants.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/// @file
+/// @addtogroup flatbuffers_java_api
+/// @{
+
+/**
+ * Checks that a FlatBuffer is safe to read with the generated accessors, without copying it.
+ *
+ * Like the C++ `flatbuffers::Verifier`, it checks in a single pass that every offset, vtable,
+ * vector and string reachable from the root table lies inside the buffer and is aligned, and that
+ * strings are zero-terminated. The nesting depth and the number of tables are bounded, so that
+ * verification time is bounded too, even for malicious buffers reusing the same objects.
+ *
+ * Verification is driven by the `verify` methods of the generated code, e.g.
+ * `Monster.verifyMonsterBuffer(bb)`. A `Verifier` is not thread-safe and must only be used for a
+ * single buffer.
+ */
+public class Verifier {
+  /** Default maximum nesting depth of tables, as in the C++ runtime. */
+  public static final int DEFAULT_MAX_DEPTH = 64;
+  /** Default maximum number of tables, as in the C++ runtime. */
+  public static final int DEFAULT_MAX_TABLES = 1000000;
+
+  /**
+   * Verifies a table, usually through the static `verify` method of a generated table.
+   */
+  public interface TableVerifier {
+    /**
+     * @param verifier The `Verifier` checking the buffer.
+     * @param tablePos The position of the table in the buffer.
+     * @return True if the table and everything it references are valid.
+     */
+    boolean verify(Verifier verifier, int tablePos);
+  }
+
+  /**
+   * Verifies the value of a union, given its type, through the generated union class.
+   */
+  public interface UnionVerifier {
+    /**
+     * @param verifier The `Verifier` checking the buffer.
+     * @param type The type of the union value, never `NONE`.
+     * @param tablePos The position of the union value in the buffer.
+     * @return True if the value is valid. Unknown types, added by a newer schema, are valid.
+     */
+    boolean verify(Verifier verifier, byte type, int tablePos);
+  }
+
+  private final ByteBuffer bb;
+  /** Position of the first byte of the buffer, against which alignment is checked. */
+  private final int start;
+  /** Position after the last byte of the buffer. */
+  private final int end;
+  private final int maxDepth;
+  private final int maxTables;
+  private final boolean checkAlignment;
+  private int depth;
+  private int numTables;
+
+  /**
+   * Creates a verifier for the FlatBuffer between the position and the limit of `bb`, with the
+   * default limits.
+   *
+   * @param bb The buffer to verify. Its position, limit and byte order are not modified.
+   */
+  public Verifier(ByteBuffer bb) {
+    this(bb, DEFAULT_MAX_DEPTH, DEFAULT_MAX_TABLES, true);
+  }
+
+  /**
+   * Creates a verifier for the FlatBuffer between the position and the limit of `bb`.
+   *
+   * @param bb The buffer to verify. Its position, limit and byte order are not modified.
+   * @param maxDepth The maximum nesting depth of tables.
+   * @param maxTables The maximum number of tables, counting each time a table is referenced.
+   * @param checkAlignment Whether scalars must be aligned to their size.
+   */
+  public Verifier(ByteBuffer bb, int maxDepth, int maxTables, boolean checkAlignment) {
+    this.bb = bb.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    this.start = bb.position();
+    this.end = bb.limit();
+    this.maxDepth = maxDepth;
+    this.maxTables = maxTables;
+    this.checkAlignment = checkAlignment;
+  }
+
+  /**
+   * Returns the number of tables verified so far.
+   */
+  public int getNumTables() {
+    return numTables;
+  }
+
+  /**
+   * Verifies a whole buffer, as finished by `FlatBufferBuilder.finish()`.
+   *
+   * @param identifier The expected file identifier, or `null` if it is not checked.
+   * @param rootVerifier The verifier of the root table type.
+   * @return True if the buffer is valid.
+   */
+  public boolean verifyBuffer(String identifier, TableVerifier rootVerifier) {
+    return verifyBufferAt(start, identifier, rootVerifier);
+  }
+
+  /**
+   * Verifies a whole buffer, as finished by `FlatBufferBuilder.finishSizePrefixed()`. The size
+   * prefix must not extend past the end of the buffer.
+   *
+   * @param identifier The expected file identifier, or `null` if it is not checked.
+   * @param rootVerifier The verifier of the root table type.
+   * @return True if the buffer is valid.
+   */
+  public boolean verifySizePrefixedBuffer(String identifier, TableVerifier rootVerifier) {
+    if (!verifyAlignedRange(start, SIZE_PREFIX_LENGTH, SIZEOF_INT)) return false;
+    long size = bb.getInt(start) & 0xFFFFFFFFL;
+    if (size > end - start - SIZE_PREFIX_LENGTH) return false;
+    return verifyBufferAt(start + SIZE_PREFIX_LENGTH, identifier, rootVerifier);
+  }
+
+  private boolean verifyBufferAt(int bufferStart, String identifier, TableVerifier rootVerifier) {
+    int minSize = SIZEOF_INT + (identifier != null ? FILE_IDENTIFIER_LENGTH : 0);
+    if (!verifyAlignedRange(bufferStart, minSize, SIZEOF_INT)) return false;
+    if (identifier != null) {
+      if (identifier.length() != FILE_IDENTIFIER_LENGTH) return false;
+      for (int i = 0; i < FILE_IDENTIFIER_LENGTH; i++) {
+        if (identifier.charAt(i) != (char) bb.get(bufferStart + SIZEOF_INT + i)) return false;
+      }
+    }
+    int rootPos = indirect(bufferStart);
+    return rootPos >= 0 && rootVerifier.verify(this, rootPos);
+  }
+
+  /**
+   * Checks the vtable of a table, and accounts for it in the depth and table limits. Must be
+   * balanced by `verifyTableEnd()`, generated code calls both.
+   *
+   * @param tablePos The position of the table in the buffer.
+   * @return True if the table and its vtable are in the buffer.
+   */
+  public boolean verifyTableStart(int tablePos) {
+    depth++;
+    numTables++;
+    if (depth > maxDepth || numTables > maxTables) return false;
+    if (!verifyAlignedRange(tablePos, SIZEOF_INT, SIZEOF_INT)) return false;
+    long vtable = (long) tablePos - bb.getInt(tablePos);
+    if (!verifyAlignedRange(vtable, 2 * SIZEOF_SHORT, SIZEOF_SHORT)) return false;
+    int vtableSize = bb.getShort((int) vtable) & 0xFFFF;
+    int tableSize = bb.getShort((int) vtable + SIZEOF_SHORT) & 0xFFFF;
+    return (vtableSize & 1) == 0
+        && vtableSize >= 2 * SIZEOF_SHORT
+        && verifyRange(vtable, vtableSize)
+        && verifyRange(tablePos, tableSize);
+  }
+
+  /**
+   * Ends the verification of the table started by the last call to `verifyTableStart()`.
+   *
+   * @return Always true, so that generated code can chain it with the field checks.
+   */
+  public boolean verifyTableEnd() {
+    depth--;
+    return true;
+  }
+
+  /**
+   * Checks a scalar or struct field stored inline in a table.
+   *
+   * @param tablePos The position of the table, already checked by `verifyTableStart()`.
+   * @param vtableOffset The offset of the field in the vtable.
+   * @param size The size of the field.
+   * @param align The alignment of the field.
+   * @param required Whether the field must be present.
+   * @return True if the field is absent and not required, or in the buffer.
+   */
+  public boolean verifyField(int tablePos, int vtableOffset, int size, int align,
+                             boolean required) {
+    int fieldOffset = fieldOffset(tablePos, vtableOffset);
+    if (fieldOffset == 0) return !required;
+    return verifyAlignedRange((long) tablePos + fieldOffset, size, align);
+  }
+
+  /**
+   * Checks a string field.
+   *
+   * @param tablePos The position of the table, already checked by `verifyTableStart()`.
+   * @param vtableOffset The offset of the field in the vtable.
+   * @param required Whether the field must be present.
+   * @return True if the field is absent and not required, or a string in the buffer.
+   */
+  public boolean verifyString(int tablePos, int vtableOffset, boolean required) {
+    int fieldPos = offsetField(tablePos, vtableOffset);
+    if (fieldPos == 0) return !required;
+    return fieldPos > 0 && verifyStringAt(indirect(fieldPos));
+  }
+
+  /**
+   * Checks a vector of scalars or structs.
+   *
+   * @param tablePos The position of the table, already checked by `verifyTableStart()`.
+   * @param vtableOffset The offset of the field in the vtable.
+   * @param elemSize The size of an element.
+   * @param required Whether the field must be present.
+   * @return True if the field is absent and not required, or a vector in the buffer.
+   */
+  public boolean verifyVector(int tablePos, int vtableOffset, int elemSize, boolean required) {
+    int fieldPos = offsetField(tablePos, vtableOffset);
+    if (fieldPos == 0) return !required;
+    return fieldPos > 0 && verifyVectorAt(indirect(fieldPos), elemSize) >= 0;
+  }
+
+  /**
+   * Checks a vector of strings.
+   *
+   * @param tablePos The position of the table, already checked by `verifyTableStart()`.
+   * @param vtableOffset The offset of the field in the vtable.
+   * @param required Whether the field must be present.
+   * @return True if the field is absent and not required, or a vector of strings in the buffer.
+   */
+  public boolean verifyVectorOfStrings(int tablePos, int vtableOffset, boolean required) {
+    int fieldPos = offsetField(tablePos, vtableOffset);
+    if (fieldPos == 0) return !required;
+    if (fieldPos < 0) return false;
+    int vectorPos = indirect(fieldPos);
+    int length = verifyVectorAt(vectorPos, SIZEOF_INT);
+    if (length < 0) return false;
+    for (int i = 0; i < length; i++) {
+      if (!verifyStringAt(indirect(vectorPos + SIZEOF_INT + i * SIZEOF_INT))) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Checks a table field.
+   *
+   * @param tablePos The position of the table, already checked by `verifyTableStart()`.
+   * @param vtableOffset The offset of the field in the vtable.
+   * @param verifier The verifier of the type of the field.
+   * @param required Whether the field must be present.
+   * @return True if the field is absent and not required, or a valid table.
+   */
+  public boolean verifyTable(int tablePos, int vtableOffset, TableVerifier verifier,
+                             boolean required) {
+    int fieldPos = offsetField(tablePos, vtableOffset);
+    if (fieldPos == 0) return !required;
+    if (fieldPos < 0) return false;
+    int childPos = indirect(fieldPos);
+    return childPos >= 0 && verifier.verify(this, childPos);
+  }
+
+  /**
+   * Checks a vector of tables.
+   *
+   * @param tablePos The position of the table, already checked by `verifyTableStart()`.
+   * @param vtableOffset The offset of the field in the vtable.
+   * @param verifier The verifier of the type of the elements.
+   * @param required Whether the field must be present.
+   * @return True if the field is absent and not required, or a vector of valid tables.
+   */
+  public boolean verifyVectorOfTables(int tablePos, int vtableOffset, TableVerifier verifier,
+                                      boolean required) {
+    int fieldPos = offsetField(tablePos, vtableOffset);
+    if (fieldPos == 0) return !required;
+    if (fieldPos < 0) return false;
+    int vectorPos = indirect(fieldPos);
+    int length = verifyVectorAt(vectorPos, SIZEOF_INT);
+    if (length < 0) return false;
+    for (int i = 0; i < length; i++) {
+      int childPos = indirect(vectorPos + SIZEOF_INT + i * SIZEOF_INT);
+      if (childPos < 0 || !verifier.verify(this, childPos)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Checks a union field. Its type field must have been checked with `verifyField()`.
+   *
+   * @param tablePos The position of the table, already checked by `verifyTableStart()`.
+   * @param typeVtableOffset The offset of the type field in the vtable.
+   * @param vtableOffset The offset of the value field in the vtable.
+   * @param verifier The verifier of the union.
+   * @param required Whether the field must be present.
+   * @return True if the field is absent and not required, or a valid union value.
+   */
+  public boolean verifyUnion(int tablePos, int typeVtableOffset, int vtableOffset,
+                             UnionVerifier verifier, boolean required) {
+    int typeOffset = fieldOffset(tablePos, typeVtableOffset);
+    byte type = typeOffset != 0 ? bb.get(tablePos + typeOffset) : 0;
+    int fieldPos = offsetField(tablePos, vtableOffset);
+    if (fieldPos == 0) return !required;
+    if (fieldPos < 0) return false;
+    if (type == 0) return true;
+    int valuePos = indirect(fieldPos);
+    return valuePos >= 0 && verifier.verify(this, type, valuePos);
+  }
+
+  /**
+   * Checks a vector of bytes holding a nested FlatBuffer, and the nested buffer itself.
+   *
+   * The nested buffer counts towards the depth and table limits of this verifier.
+   *
+   * @param tablePos The position of the table, already checked by `verifyTableStart()`.
+   * @param vtableOffset The offset of the field in the vtable.
+   * @param identifier The expected file identifier, or `null` if it is not checked.
+   * @param rootVerifier The verifier of the root table type of the nested buffer.
+   * @param required Whether the field must be present.
+   * @return True if the field is absent and not required, or a valid nested FlatBuffer.
+   */
+  public boolean verifyNestedFlatBuffer(int tablePos, int vtableOffset, String identifier,
+                                        TableVerifier rootVerifier, boolean required) {
+    int fieldPos = offsetField(tablePos, vtableOffset);
+    if (fieldPos == 0) return !required;
+    if (fieldPos < 0) return false;
+    int vectorPos = indirect(fieldPos);
+    int length = verifyVectorAt(vectorPos, SIZEOF_BYTE);
+    if (length < 0) return false;
+    // An empty vector is how an absent nested buffer is usually stored.
+    if (length == 0) return true;
+    ByteBuffer nested = bb.duplicate();
+    nested.limit(vectorPos + SIZEOF_INT + length);
+    nested.position(vectorPos + SIZEOF_INT);
+    Verifier nestedVerifier = new Verifier(
+        nested, maxDepth - depth, maxTables - numTables, checkAlignment);
+    boolean valid = nestedVerifier.verifyBuffer(identifier, rootVerifier);
+    numTables += nestedVerifier.numTables;
+    return valid;
+  }
+
+  /**
+   * Returns the offset of a field in a table whose vtable is already checked, or 0 if absent.
+   */
+  private int fieldOffset(int tablePos, int vtableOffset) {
+    int vtable = tablePos - bb.getInt(tablePos);
+    int vtableSize = bb.getShort(vtable) & 0xFFFF;
+    return vtableOffset < vtableSize ? bb.getShort(vtable + vtableOffset) & 0xFFFF : 0;
+  }
+
+  /**
+   * Returns the position of an offset field, 0 if it is absent, or -1 if it is not in the
+   * buffer.
+   */
+  private int offsetField(int tablePos, int vtableOffset) {
+    int fieldOffset = fieldOffset(tablePos, vtableOffset);
+    if (fieldOffset == 0) return 0;
+    long fieldPos = (long) tablePos + fieldOffset;
+    return verifyAlignedRange(fieldPos, SIZEOF_INT, SIZEOF_INT) ? (int) fieldPos : -1;
+  }
+
+  /**
+   * Follows the unsigned offset at `pos`, which must be in the buffer. Returns -1 if the target
+   * is out of the buffer.
+   */
+  private int indirect(int pos) {
+    long target = pos + (bb.getInt(pos) & 0xFFFFFFFFL);
+    return target < end ? (int) target : -1;
+  }
+
+  /**
+   * Checks the vector at `vectorPos`, returning its length, or -1 if it is not in the buffer.
+   */
+  private int verifyVectorAt(int vectorPos, int elemSize) {
+    if (vectorPos < 0 || !verifyAlignedRange(vectorPos, SIZEOF_INT, SIZEOF_INT)) return -1;
+    long length = bb.getInt(vectorPos) & 0xFFFFFFFFL;
+    if (!verifyRange((long) vectorPos + SIZEOF_INT, length * elemSize)) return -1;
+    return (int) length;
+  }
+
+  private boolean verifyStringAt(int stringPos) {
+    int length = verifyVectorAt(stringPos, SIZEOF_BYTE);
+    if (length < 0) return false;
+    long terminatorPos = (long) stringPos + SIZEOF_INT + length;
+    return verifyRange(terminatorPos, SIZEOF_BYTE) && bb.get((int) terminatorPos) == 0;
+  }
+
+  private boolean verifyRange(long pos, long size) {
+    return pos >= start && size >= 0 && size <= end - pos;
+  }
+
+  private boolean verifyAlignedRange(long pos, long size, int align) {
+    return verifyRange(pos, size) && (!checkAlignment || ((pos - start) & (align - 1)) == 0);
+  }
+}
+
+/// @}
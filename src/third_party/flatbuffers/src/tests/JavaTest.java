@@ -12,6 +12,7 @@ import com.google.flatbuffers.FlexBuffers;
 import com.google.flatbuffers.FlexBuffersBuilder;
 import com.google.flatbuffers.StringVector;
 import com.google.flatbuffers.UnionVector;
+import com.google.flatbuffers.Verifier;
 import com.google.flatbuffers.FlexBuffers.FlexBufferException;
 import com.google.flatbuffers.FlexBuffers.Reference;
 import com.google.flatbuffers.FlexBuffers.Vector;
@@ -99,6 +100,12 @@ class JavaTest {
 
         TestVectorOfBytes();
 
+        TestVerifier(data);
+
+        TestSharedStrings();
+
+        TestSortedVectorOfTables();
+
         System.out.println("FlatBuffers test: completed successfully");
     }
 
@@ -240,6 +247,130 @@ class JavaTest {
         TestEq(nestedMonsterName, nestedMonster.name());
     }
 
+    static void TestVerifier(byte[] cppData) {
+        // A buffer generated by C++ code.
+        TestEq(Monster.verifyMonsterBuffer(ByteBuffer.wrap(cppData)), true);
+        TestEq(new Verifier(ByteBuffer.wrap(cppData)).verifyBuffer("XXXX", Monster.VERIFIER), false);
+
+        // A buffer with a nested FlatBuffer, its size-prefixed variant, and one at an offset.
+        FlatBufferBuilder fbb1 = new FlatBufferBuilder(16);
+        int str1 = fbb1.createString("NestedMonsterName");
+        Monster.startMonster(fbb1);
+        Monster.addName(fbb1, str1);
+        int monster1 = Monster.endMonster(fbb1);
+        Monster.finishMonsterBuffer(fbb1, monster1);
+        byte[] nestedBytes = fbb1.sizedByteArray();
+
+        FlatBufferBuilder fbb2 = new FlatBufferBuilder(16);
+        int str2 = fbb2.createString("My Monster");
+        int nestedBuffer = Monster.createTestnestedflatbufferVector(fbb2, nestedBytes);
+        Monster.startMonster(fbb2);
+        Monster.addName(fbb2, str2);
+        Monster.addTestnestedflatbuffer(fbb2, nestedBuffer);
+        int monster2 = Monster.endMonster(fbb2);
+        Monster.finishMonsterBuffer(fbb2, monster2);
+        TestEq(Monster.verifyMonsterBuffer(fbb2.dataBuffer()), true);
+        Verifier verifier = new Verifier(fbb2.dataBuffer());
+        TestEq(verifier.verifyBuffer("MONS", Monster.VERIFIER), true);
+        TestEq(verifier.getNumTables(), 2);
+        TestEq(new Verifier(fbb2.dataBuffer(), 1, Verifier.DEFAULT_MAX_TABLES, true)
+            .verifyBuffer("MONS", Monster.VERIFIER), false);
+        TestEq(new Verifier(fbb2.dataBuffer(), Verifier.DEFAULT_MAX_DEPTH, 1, true)
+            .verifyBuffer("MONS", Monster.VERIFIER), false);
+
+        FlatBufferBuilder fbb3 = new FlatBufferBuilder(16);
+        int str3 = fbb3.createString("Sized Monster");
+        Monster.startMonster(fbb3);
+        Monster.addName(fbb3, str3);
+        Monster.finishSizePrefixedMonsterBuffer(fbb3, Monster.endMonster(fbb3));
+        TestEq(Monster.verifySizePrefixedMonsterBuffer(fbb3.dataBuffer()), true);
+        TestEq(Monster.verifyMonsterBuffer(fbb3.dataBuffer()), false);
+
+        // A buffer missing its last bytes, where the root table is.
+        ByteBuffer truncated = ByteBuffer.wrap(cppData);
+        truncated.limit(cppData.length - 8);
+        TestEq(Monster.verifyMonsterBuffer(truncated), false);
+
+        // A string without its terminator.
+        byte[] unterminated = fbb1.sizedByteArray();
+        int nameEnd = new String(unterminated, java.nio.charset.StandardCharsets.ISO_8859_1)
+            .indexOf("NestedMonsterName") + "NestedMonsterName".length();
+        unterminated[nameEnd] = 'x';
+        TestEq(Monster.verifyMonsterBuffer(ByteBuffer.wrap(unterminated)), false);
+
+        // Corrupting any byte must never make the verifier read out of the buffer.
+        byte[] corrupted = cppData.clone();
+        for (int i = 0; i < corrupted.length; i++) {
+            byte original = corrupted[i];
+            for (int value : new int[] {0, 1, 0x7F, 0x80, 0xFF}) {
+                corrupted[i] = (byte) value;
+                Monster.verifyMonsterBuffer(ByteBuffer.wrap(corrupted));
+            }
+            corrupted[i] = original;
+        }
+    }
+
+    static void TestSharedStrings() {
+        FlatBufferBuilder fbb = new FlatBufferBuilder(1);
+        for (int round = 0; round < 2; round++) {
+            // Enough distinct strings to grow the pool.
+            int[] offsets = new int[100];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = fbb.createSharedString("name" + (i % 40));
+            }
+            for (int i = 0; i < offsets.length; i++) {
+                TestEq(offsets[i], offsets[i % 40]);
+                if (i > 0 && i < 40) TestEq(offsets[i] != offsets[i - 1], true);
+            }
+            int name = fbb.createSharedString("name7");
+            TestEq(name, offsets[7]);
+            Monster.startMonster(fbb);
+            Monster.addName(fbb, name);
+            Monster.finishMonsterBuffer(fbb, Monster.endMonster(fbb));
+            TestEq(Monster.getRootAsMonster(fbb.dataBuffer()).name(), "name7");
+            // The pool doesn't outlive the data it points to.
+            fbb.clear();
+        }
+    }
+
+    static void TestSortedVectorOfTables() {
+        FlatBufferBuilder fbb = new FlatBufferBuilder(1);
+        // Enough tables to merge several runs, with duplicate keys.
+        long[] ids = new long[100];
+        int[] offsets = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            // Keys must be present, so ids avoid the default value 0.
+            ids[i] = (i * 37) % 50 + 1;
+            offsets[i] = Referrable.createReferrable(fbb, ids[i]);
+        }
+        int[] unsorted = offsets.clone();
+        int vector = fbb.createSortedVectorOfTables(new Referrable(), offsets);
+        int name = fbb.createString("Sorted");
+        Monster.startMonster(fbb);
+        Monster.addName(fbb, name);
+        Monster.addVectorOfReferrables(fbb, vector);
+        Monster.finishMonsterBuffer(fbb, Monster.endMonster(fbb));
+        Monster monster = Monster.getRootAsMonster(fbb.dataBuffer());
+        TestEq(monster.vectorOfReferrablesLength(), ids.length);
+        for (int i = 1; i < ids.length; i++) {
+            long previous = monster.vectorOfReferrables(i - 1).id();
+            long current = monster.vectorOfReferrables(i).id();
+            TestEq(previous <= current, true);
+            // Tables with equal keys keep their order.
+            if (previous == current) {
+                TestEq(Arrays.asList(toIntegers(unsorted)).indexOf(offsets[i - 1])
+                    < Arrays.asList(toIntegers(unsorted)).indexOf(offsets[i]), true);
+            }
+        }
+        TestEq(monster.vectorOfReferrablesByKey(13).id(), 13L);
+    }
+
+    static Integer[] toIntegers(int[] values) {
+        Integer[] integers = new Integer[values.length];
+        for (int i = 0; i < values.length; i++) integers[i] = values[i];
+        return integers;
+    }
+
     static void TestCreateByteVector() {
         FlatBufferBuilder fbb = new FlatBufferBuilder(16);
         int str = fbb.createString("MyMonster");
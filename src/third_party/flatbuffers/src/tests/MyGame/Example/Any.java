@@ -2,6 +2,8 @@
 
 package MyGame.Example;
 
+import com.google.flatbuffers.Verifier;
+
 public final class Any {
   private Any() { }
   public static final byte NONE = 0;
@@ -12,5 +14,16 @@ public final class Any {
   public static final String[] names = { "NONE", "Monster", "TestSimpleTableWithEnum", "MyGame_Example2_Monster", };
 
   public static String name(int e) { return names[e]; }
+
+  public static final Verifier.UnionVerifier VERIFIER = new Verifier.UnionVerifier() {
+    public boolean verify(Verifier verifier, byte type, int tablePos) {
+      switch (type) {
+        case Monster: return MyGame.Example.Monster.verify(verifier, tablePos);
+        case TestSimpleTableWithEnum: return MyGame.Example.TestSimpleTableWithEnum.verify(verifier, tablePos);
+        case MyGame_Example2_Monster: return MyGame.Example2.Monster.verify(verifier, tablePos);
+        default: return true;
+      }
+    }
+  };
 }
 
@@ -2,6 +2,8 @@
 
 package MyGame.Example;
 
+import com.google.flatbuffers.Verifier;
+
 public final class AnyAmbiguousAliases {
   private AnyAmbiguousAliases() { }
   public static final byte NONE = 0;
@@ -12,5 +14,16 @@ public final class AnyAmbiguousAliases {
   public static final String[] names = { "NONE", "M1", "M2", "M3", };
 
   public static String name(int e) { return names[e]; }
+
+  public static final Verifier.UnionVerifier VERIFIER = new Verifier.UnionVerifier() {
+    public boolean verify(Verifier verifier, byte type, int tablePos) {
+      switch (type) {
+        case M1: return MyGame.Example.Monster.verify(verifier, tablePos);
+        case M2: return MyGame.Example.Monster.verify(verifier, tablePos);
+        case M3: return MyGame.Example.Monster.verify(verifier, tablePos);
+        default: return true;
+      }
+    }
+  };
 }
 
@@ -2,6 +2,8 @@
 
 package MyGame.Example;
 
+import com.google.flatbuffers.Verifier;
+
 public final class AnyUniqueAliases {
   private AnyUniqueAliases() { }
   public static final byte NONE = 0;
@@ -12,5 +14,16 @@ public final class AnyUniqueAliases {
   public static final String[] names = { "NONE", "M", "TS", "M2", };
 
   public static String name(int e) { return names[e]; }
+
+  public static final Verifier.UnionVerifier VERIFIER = new Verifier.UnionVerifier() {
+    public boolean verify(Verifier verifier, byte type, int tablePos) {
+      switch (type) {
+        case M: return MyGame.Example.Monster.verify(verifier, tablePos);
+        case TS: return MyGame.Example.TestSimpleTableWithEnum.verify(verifier, tablePos);
+        case M2: return MyGame.Example2.Monster.verify(verifier, tablePos);
+        default: return true;
+      }
+    }
+  };
 }
 
@@ -16,6 +16,8 @@ public final class Monster extends Table {
   public static Monster getRootAsMonster(ByteBuffer _bb) { return getRootAsMonster(_bb, new Monster()); }
   public static Monster getRootAsMonster(ByteBuffer _bb, Monster obj) { _bb.order(ByteOrder.LITTLE_ENDIAN); return (obj.__assign(_bb.getInt(_bb.position()) + _bb.position(), _bb)); }
   public static boolean MonsterBufferHasIdentifier(ByteBuffer _bb) { return __has_identifier(_bb, "MONS"); }
+  public static boolean verifyMonsterBuffer(ByteBuffer _bb) { return new Verifier(_bb).verifyBuffer("MONS", VERIFIER); }
+  public static boolean verifySizePrefixedMonsterBuffer(ByteBuffer _bb) { return new Verifier(_bb).verifySizePrefixedBuffer("MONS", VERIFIER); }
   public void __init(int _i, ByteBuffer _bb) { __reset(_i, _bb); }
   public Monster __assign(int _i, ByteBuffer _bb) { __init(_i, _bb); return this; }
 
@@ -290,7 +292,7 @@ public final class Monster extends Table {
   public static void finishSizePrefixedMonsterBuffer(FlatBufferBuilder builder, int offset) { builder.finishSizePrefixed(offset, "MONS"); }
 
   @Override
-  protected int keysCompare(Integer o1, Integer o2, ByteBuffer _bb) { return compareStrings(__offset(10, o1, _bb), __offset(10, o2, _bb), _bb); }
+  protected int keysCompare(int o1, int o2, ByteBuffer _bb) { return compareStrings(__offset(10, o1, _bb), __offset(10, o2, _bb), _bb); }
 
   public static Monster __lookup_by_key(Monster obj, int vectorLocation, String key, ByteBuffer bb) {
     byte[] byteKey = key.getBytes(java.nio.charset.StandardCharsets.UTF_8);
@@ -313,6 +315,60 @@ public final class Monster extends Table {
     return null;
   }
 
+  public static final Verifier.TableVerifier VERIFIER = new Verifier.TableVerifier() { public boolean verify(Verifier verifier, int tablePos) { return Monster.verify(verifier, tablePos); } };
+  public static boolean verify(Verifier verifier, int _pos) {
+    return verifier.verifyTableStart(_pos)
+      && verifier.verifyField(_pos, 4, 32, 8, false)  // pos
+      && verifier.verifyField(_pos, 6, 2, 2, false)  // mana
+      && verifier.verifyField(_pos, 8, 2, 2, false)  // hp
+      && verifier.verifyString(_pos, 10, true)  // name
+      && verifier.verifyVector(_pos, 14, 1, false)  // inventory
+      && verifier.verifyField(_pos, 16, 1, 1, false)  // color
+      && verifier.verifyField(_pos, 18, 1, 1, false)  // test_type
+      && verifier.verifyUnion(_pos, 18, 20, MyGame.Example.Any.VERIFIER, false)  // test
+      && verifier.verifyVector(_pos, 22, 4, false)  // test4
+      && verifier.verifyVectorOfStrings(_pos, 24, false)  // testarrayofstring
+      && verifier.verifyVectorOfTables(_pos, 26, MyGame.Example.Monster.VERIFIER, false)  // testarrayoftables
+      && verifier.verifyTable(_pos, 28, MyGame.Example.Monster.VERIFIER, false)  // enemy
+      && verifier.verifyNestedFlatBuffer(_pos, 30, null, MyGame.Example.Monster.VERIFIER, false)  // testnestedflatbuffer
+      && verifier.verifyTable(_pos, 32, MyGame.Example.Stat.VERIFIER, false)  // testempty
+      && verifier.verifyField(_pos, 34, 1, 1, false)  // testbool
+      && verifier.verifyField(_pos, 36, 4, 4, false)  // testhashs32_fnv1
+      && verifier.verifyField(_pos, 38, 4, 4, false)  // testhashu32_fnv1
+      && verifier.verifyField(_pos, 40, 8, 8, false)  // testhashs64_fnv1
+      && verifier.verifyField(_pos, 42, 8, 8, false)  // testhashu64_fnv1
+      && verifier.verifyField(_pos, 44, 4, 4, false)  // testhashs32_fnv1a
+      && verifier.verifyField(_pos, 46, 4, 4, false)  // testhashu32_fnv1a
+      && verifier.verifyField(_pos, 48, 8, 8, false)  // testhashs64_fnv1a
+      && verifier.verifyField(_pos, 50, 8, 8, false)  // testhashu64_fnv1a
+      && verifier.verifyVector(_pos, 52, 1, false)  // testarrayofbools
+      && verifier.verifyField(_pos, 54, 4, 4, false)  // testf
+      && verifier.verifyField(_pos, 56, 4, 4, false)  // testf2
+      && verifier.verifyField(_pos, 58, 4, 4, false)  // testf3
+      && verifier.verifyVectorOfStrings(_pos, 60, false)  // testarrayofstring2
+      && verifier.verifyVector(_pos, 62, 8, false)  // testarrayofsortedstruct
+      && verifier.verifyVector(_pos, 64, 1, false)  // flex
+      && verifier.verifyVector(_pos, 66, 4, false)  // test5
+      && verifier.verifyVector(_pos, 68, 8, false)  // vector_of_longs
+      && verifier.verifyVector(_pos, 70, 8, false)  // vector_of_doubles
+      && verifier.verifyTable(_pos, 72, MyGame.InParentNamespace.VERIFIER, false)  // parent_namespace_test
+      && verifier.verifyVectorOfTables(_pos, 74, MyGame.Example.Referrable.VERIFIER, false)  // vector_of_referrables
+      && verifier.verifyField(_pos, 76, 8, 8, false)  // single_weak_reference
+      && verifier.verifyVector(_pos, 78, 8, false)  // vector_of_weak_references
+      && verifier.verifyVectorOfTables(_pos, 80, MyGame.Example.Referrable.VERIFIER, false)  // vector_of_strong_referrables
+      && verifier.verifyField(_pos, 82, 8, 8, false)  // co_owning_reference
+      && verifier.verifyVector(_pos, 84, 8, false)  // vector_of_co_owning_references
+      && verifier.verifyField(_pos, 86, 8, 8, false)  // non_owning_reference
+      && verifier.verifyVector(_pos, 88, 8, false)  // vector_of_non_owning_references
+      && verifier.verifyField(_pos, 90, 1, 1, false)  // any_unique_type
+      && verifier.verifyUnion(_pos, 90, 92, MyGame.Example.AnyUniqueAliases.VERIFIER, false)  // any_unique
+      && verifier.verifyField(_pos, 94, 1, 1, false)  // any_ambiguous_type
+      && verifier.verifyUnion(_pos, 94, 96, MyGame.Example.AnyAmbiguousAliases.VERIFIER, false)  // any_ambiguous
+      && verifier.verifyVector(_pos, 98, 1, false)  // vector_of_enums
+      && verifier.verifyField(_pos, 100, 1, 1, false)  // signed_enum
+      && verifier.verifyTableEnd();
+  }
+
   public static final class Vector extends BaseVector {
     public Vector __assign(int _vector, int _element_size, ByteBuffer _bb) { __reset(_vector, _element_size, _bb); return this; }
 
@@ -33,7 +33,7 @@ public final class Referrable extends Table {
   }
 
   @Override
-  protected int keysCompare(Integer o1, Integer o2, ByteBuffer _bb) {
+  protected int keysCompare(int o1, int o2, ByteBuffer _bb) {
     long val_1 = _bb.getLong(__offset(4, o1, _bb));
     long val_2 = _bb.getLong(__offset(4, o2, _bb));
     return val_1 > val_2 ? 1 : val_1 < val_2 ? -1 : 0;
@@ -60,6 +60,13 @@ public final class Referrable extends Table {
     return null;
   }
 
+  public static final Verifier.TableVerifier VERIFIER = new Verifier.TableVerifier() { public boolean verify(Verifier verifier, int tablePos) { return Referrable.verify(verifier, tablePos); } };
+  public static boolean verify(Verifier verifier, int _pos) {
+    return verifier.verifyTableStart(_pos)
+      && verifier.verifyField(_pos, 4, 8, 8, false)  // id
+      && verifier.verifyTableEnd();
+  }
+
   public static final class Vector extends BaseVector {
     public Vector __assign(int _vector, int _element_size, ByteBuffer _bb) { __reset(_vector, _element_size, _bb); return this; }
 
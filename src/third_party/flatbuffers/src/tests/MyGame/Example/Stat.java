@@ -43,6 +43,15 @@ public final class Stat extends Table {
     return o;
   }
 
+  public static final Verifier.TableVerifier VERIFIER = new Verifier.TableVerifier() { public boolean verify(Verifier verifier, int tablePos) { return Stat.verify(verifier, tablePos); } };
+  public static boolean verify(Verifier verifier, int _pos) {
+    return verifier.verifyTableStart(_pos)
+      && verifier.verifyString(_pos, 4, false)  // id
+      && verifier.verifyField(_pos, 6, 8, 8, false)  // val
+      && verifier.verifyField(_pos, 8, 2, 2, false)  // count
+      && verifier.verifyTableEnd();
+  }
+
   public static final class Vector extends BaseVector {
     public Vector __assign(int _vector, int _element_size, ByteBuffer _bb) { __reset(_vector, _element_size, _bb); return this; }
 
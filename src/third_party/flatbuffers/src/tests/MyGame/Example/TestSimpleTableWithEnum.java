@@ -32,6 +32,13 @@ final class TestSimpleTableWithEnum extends Table {
     return o;
   }
 
+  public static final Verifier.TableVerifier VERIFIER = new Verifier.TableVerifier() { public boolean verify(Verifier verifier, int tablePos) { return TestSimpleTableWithEnum.verify(verifier, tablePos); } };
+  public static boolean verify(Verifier verifier, int _pos) {
+    return verifier.verifyTableStart(_pos)
+      && verifier.verifyField(_pos, 4, 1, 1, false)  // color
+      && verifier.verifyTableEnd();
+  }
+
   static final class Vector extends BaseVector {
     public Vector __assign(int _vector, int _element_size, ByteBuffer _bb) { __reset(_vector, _element_size, _bb); return this; }
 
@@ -102,6 +102,24 @@ public final class TypeAliases extends Table {
     return o;
   }
 
+  public static final Verifier.TableVerifier VERIFIER = new Verifier.TableVerifier() { public boolean verify(Verifier verifier, int tablePos) { return TypeAliases.verify(verifier, tablePos); } };
+  public static boolean verify(Verifier verifier, int _pos) {
+    return verifier.verifyTableStart(_pos)
+      && verifier.verifyField(_pos, 4, 1, 1, false)  // i8
+      && verifier.verifyField(_pos, 6, 1, 1, false)  // u8
+      && verifier.verifyField(_pos, 8, 2, 2, false)  // i16
+      && verifier.verifyField(_pos, 10, 2, 2, false)  // u16
+      && verifier.verifyField(_pos, 12, 4, 4, false)  // i32
+      && verifier.verifyField(_pos, 14, 4, 4, false)  // u32
+      && verifier.verifyField(_pos, 16, 8, 8, false)  // i64
+      && verifier.verifyField(_pos, 18, 8, 8, false)  // u64
+      && verifier.verifyField(_pos, 20, 4, 4, false)  // f32
+      && verifier.verifyField(_pos, 22, 8, 8, false)  // f64
+      && verifier.verifyVector(_pos, 24, 1, false)  // v8
+      && verifier.verifyVector(_pos, 26, 8, false)  // vf64
+      && verifier.verifyTableEnd();
+  }
+
   public static final class Vector extends BaseVector {
     public Vector __assign(int _vector, int _element_size, ByteBuffer _bb) { __reset(_vector, _element_size, _bb); return this; }
 
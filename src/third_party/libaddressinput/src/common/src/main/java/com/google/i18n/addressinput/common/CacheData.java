@@ -334,14 +334,14 @@ public final class CacheData {
    */
   void getFromRegionDataConstants(final LookupKey key) {
     checkNotNull(key, "null key not allowed.");
-    String data = RegionDataConstants.getCountryFormatMap().get(
-        key.getValueForUpperLevelField(AddressField.COUNTRY));
-    if (data != null) {
-      try {
-        cache.putObj(key.toString(), JsoMap.buildJsoMap(data));
-      } catch (JSONException e) {
-        logger.warning("Failed to parse data for key " + key + " from RegionDataConstants");
+    try {
+      JsoMap data = FormatInterpreter.getRegionData(
+          key.getValueForUpperLevelField(AddressField.COUNTRY));
+      if (data != null) {
+        cache.putObj(key.toString(), data);
       }
+    } catch (JSONException e) {
+      logger.warning("Failed to parse data for key " + key + " from RegionDataConstants");
     }
   }
 
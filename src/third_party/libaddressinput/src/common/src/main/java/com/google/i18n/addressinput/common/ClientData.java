@@ -142,10 +142,9 @@ public final class ClientData implements DataSource {
 
     for (String countryCode : RegionDataConstants.getCountryFormatMap().keySet()) {
       countries.append(countryCode + "~");
-      String json = RegionDataConstants.getCountryFormatMap().get(countryCode);
       JsoMap jso = null;
       try {
-        jso = JsoMap.buildJsoMap(json);
+        jso = FormatInterpreter.getRegionData(countryCode);
       } catch (JSONException e) {
         // Ignore.
       }
@@ -23,6 +23,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 
 /**
@@ -31,6 +33,10 @@ import java.util.regex.Pattern;
  * Not all fields require all types of validation, although this could be done. In particular,
  * the current implementation only provides known value verification for the hierarchical fields,
  * and only provides format and match verification for the postal code field.
+ * <p>
+ * Verifiers are immutable once built. A verifier created with {@code cacheRefinedVerifiers} also
+ * caches the verifiers it refines, so the verifier graph of each region is only built once and can
+ * be shared by threads verifying addresses concurrently.
  */
 public final class FieldVerifier {
   // A value for a particular language is has the language separated by this String.
@@ -39,6 +45,9 @@ public final class FieldVerifier {
   private static final String LIST_DELIMITER = "~";
   // Keys are built up using this delimiter: eg data/US, data/US/CA.
   private static final String KEY_NODE_DELIMITER = "/";
+  // Maximum number of sublevel values whose refined verifier is cached by each verifier. Bounds the
+  // memory used by misspelled values, which all share the same (empty) refined verifier.
+  private static final int MAX_CACHED_REFINEMENTS = 1024;
 
   private static final FormatInterpreter FORMAT_INTERPRETER =
       new FormatInterpreter(new FormOptions().createSnapshot());
@@ -70,6 +79,15 @@ public final class FieldVerifier {
   // Defines the valid range of a postal code number.
   private Pattern match;
 
+  // Lowercase keys plus latin or local names, precomputed for isKnownInScript.
+  private Set<String> latinCandidates;
+  private Set<String> localCandidates;
+
+  // Refined verifiers by sublevel value, or null if refined verifiers are not cached.
+  private final ConcurrentMap<String, FieldVerifier> refinedVerifiers;
+  // The verifier refined for sublevel values without data, shared when caching refined verifiers.
+  private volatile FieldVerifier emptyRefinement;
+
   /**
    * Creates the root field verifier for a particular data source. Defaults useRegionDataConstants
    * to true.
@@ -82,9 +100,24 @@ public final class FieldVerifier {
    * Creates the root field verifier for a particular data source.
    */
   public FieldVerifier(DataSource dataSource, boolean useRegionDataConstants) {
+    this(dataSource, useRegionDataConstants, false /* cacheRefinedVerifiers */);
+  }
+
+  /**
+   * Creates the root field verifier for a particular data source. If cacheRefinedVerifiers is
+   * true, the verifiers for the regions and sub-regions of addresses are built once and reused
+   * by all verifications, including the verifiers for values without data. This should only be
+   * used with a data source whose data doesn't change, for example one that doesn't need to fetch
+   * data or has already fetched it.
+   */
+  public FieldVerifier(DataSource dataSource, boolean useRegionDataConstants,
+      boolean cacheRefinedVerifiers) {
     this.dataSource = dataSource;
     this.useRegionDataConstants = useRegionDataConstants;
+    refinedVerifiers =
+        cacheRefinedVerifiers ? new ConcurrentHashMap<String, FieldVerifier>() : null;
     populateRootVerifier();
+    populateCandidates();
   }
 
   /**
@@ -106,6 +139,32 @@ public final class FieldVerifier {
     // candidateValues should never be inherited from the parent, but built up from the
     // localNames in this node.
     candidateValues = Util.buildNameToKeyMap(keys, localNames, latinNames);
+    populateCandidates();
+    refinedVerifiers = parent.refinedVerifiers != null
+        ? new ConcurrentHashMap<String, FieldVerifier>() : null;
+  }
+
+  /**
+   * Sets latinCandidates and localCandidates from the keys and names of this verifier.
+   */
+  private void populateCandidates() {
+    latinCandidates = buildCandidates(latinNames);
+    localCandidates = buildCandidates(localNames);
+  }
+
+  private Set<String> buildCandidates(String[] names) {
+    Set<String> candidates = new HashSet<String>();
+    if (names != null) {
+      for (String name : names) {
+        candidates.add(Util.toLowerCaseLocaleIndependent(name));
+      }
+    }
+    if (keys != null) {
+      for (String name : keys) {
+        candidates.add(Util.toLowerCaseLocaleIndependent(name));
+      }
+    }
+    return candidates;
   }
 
   /**
@@ -249,9 +308,44 @@ public final class FieldVerifier {
   }
 
   FieldVerifier refineVerifier(String sublevel) {
-    if (Util.trimToNull(sublevel) == null || id == null) {
+    if (refinedVerifiers == null) {
+      return createRefinedVerifier(sublevel);
+    }
+    String cacheKey = sublevel == null ? "" : sublevel;
+    FieldVerifier verifier = refinedVerifiers.get(cacheKey);
+    if (verifier == null) {
+      verifier = createRefinedVerifier(sublevel);
+      if (refinedVerifiers.size() < MAX_CACHED_REFINEMENTS) {
+        FieldVerifier existing = refinedVerifiers.putIfAbsent(cacheKey, verifier);
+        if (existing != null) {
+          verifier = existing;
+        }
+      }
+    }
+    return verifier;
+  }
+
+  /**
+   * Returns the verifier refined for a sublevel value without data. It is shared by all such
+   * values when caching refined verifiers.
+   */
+  private FieldVerifier getEmptyRefinement() {
+    if (refinedVerifiers == null) {
       return new FieldVerifier(this, null);
     }
+    FieldVerifier verifier = emptyRefinement;
+    if (verifier == null) {
+      // Racing threads may build equivalent verifiers, of which only one is kept.
+      verifier = new FieldVerifier(this, null);
+      emptyRefinement = verifier;
+    }
+    return verifier;
+  }
+
+  private FieldVerifier createRefinedVerifier(String sublevel) {
+    if (Util.trimToNull(sublevel) == null || id == null) {
+      return getEmptyRefinement();
+    }
 
     // Split the subkey into key + language (if any). Check the language is an acceptable
     // alternative for the region, for which we have data. If not, we drop it from the data key.
@@ -259,7 +353,7 @@ public final class FieldVerifier {
 
     if (parts.length == 0){
       // May only contains the LOCALE_DELIMITER.
-      return new FieldVerifier(this, null);
+      return getEmptyRefinement();
     }
 
     // Makes the new key - the old key, plus the new data, minus the language code.
@@ -285,7 +379,7 @@ public final class FieldVerifier {
     // If that failed, then we try to look up the local name equivalent of this latin name.
     // First check these exist.
     if (latinNames == null) {
-      return new FieldVerifier(this, null);
+      return getEmptyRefinement();
     }
     for (int n = 0; n < latinNames.length; n++) {
       if (latinNames[n].equalsIgnoreCase(sublevel)) {
@@ -307,7 +401,7 @@ public final class FieldVerifier {
       }
     }
     // No sub-verifiers were found.
-    return new FieldVerifier(this, null);
+    return getEmptyRefinement();
   }
 
   /**
@@ -392,18 +486,7 @@ public final class FieldVerifier {
     }
     // Otherwise, if we know the script, we want to restrict the candidates to only names in
     // that script.
-    String[] namesToConsider = (script == ScriptType.LATIN) ? latinNames : localNames;
-    Set<String> candidates = new HashSet<String>();
-    if (namesToConsider != null) {
-      for (String name : namesToConsider) {
-        candidates.add(Util.toLowerCaseLocaleIndependent(name));
-      }
-    }
-    if (keys != null) {
-      for (String name : keys) {
-        candidates.add(Util.toLowerCaseLocaleIndependent(name));
-      }
-    }
+    Set<String> candidates = (script == ScriptType.LATIN) ? latinCandidates : localCandidates;
 
     if (candidates.size() == 0 || trimmedValue == null) {
       return true;
@@ -25,19 +25,36 @@ import org.json.JSONTokener;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Address format interpreter. A utility to find address format related info.
+ * <p>
+ * The JSON data of each region in {@link RegionDataConstants} is parsed once, the first time the
+ * region is used, and its format strings are kept as lists of tokens, so rendering a form or an
+ * address doesn't parse any JSON or format string again.
  */
 public final class FormatInterpreter {
   private static final String NEW_LINE = "%n";
 
+  // Parsed region data by region code, filled in as regions are used.
+  private static final ConcurrentMap<String, RegionFormat> REGION_FORMATS =
+      new ConcurrentHashMap<String, RegionFormat>();
+
   private final FormOptions.Snapshot formOptions;
 
+  // Address field orders by region code, for the local and latin scripts.
+  private final ConcurrentMap<String, List<AddressField>> localFieldOrders =
+      new ConcurrentHashMap<String, List<AddressField>>();
+  private final ConcurrentMap<String, List<AddressField>> latinFieldOrders =
+      new ConcurrentHashMap<String, List<AddressField>>();
+
   /**
    * Creates a new instance of {@link FormatInterpreter}.
    */
@@ -56,20 +73,32 @@ public final class FormatInterpreter {
    *
    * @param scriptType if {@link ScriptType#LOCAL}, use local format; else use Latin format.
    */
-  // TODO: Consider not re-doing this work every time the widget is re-rendered.
-  @SuppressWarnings("deprecation")  // For legacy address fields.
   public List<AddressField> getAddressFieldOrder(ScriptType scriptType, String regionCode) {
     Util.checkNotNull(scriptType);
     Util.checkNotNull(regionCode);
-    String formatString = getFormatString(scriptType, regionCode);
-    return getAddressFieldOrder(formatString, regionCode);
+    // The order only depends on the region data and the form options, which never change, so it
+    // is only built once per region and script.
+    ConcurrentMap<String, List<AddressField>> fieldOrders =
+        (scriptType == ScriptType.LOCAL) ? localFieldOrders : latinFieldOrders;
+    List<AddressField> fieldOrder = fieldOrders.get(regionCode);
+    if (fieldOrder == null) {
+      fieldOrder = getAddressFieldOrder(getFormatTokens(scriptType, regionCode), regionCode);
+      fieldOrders.put(regionCode, fieldOrder);
+    }
+    return fieldOrder;
   }
 
   List<AddressField> getAddressFieldOrder(String formatString, String regionCode) {
+    return getAddressFieldOrder(getFormatSubstrings(formatString), regionCode);
+  }
+
+  @SuppressWarnings("deprecation")  // For legacy address fields.
+  private List<AddressField> getAddressFieldOrder(
+      List<String> formatSubstrings, String regionCode) {
     EnumSet<AddressField> visibleFields = EnumSet.noneOf(AddressField.class);
     List<AddressField> fieldOrder = new ArrayList<AddressField>();
     // TODO: Change this to just enumerate the address fields directly.
-    for (String substring : getFormatSubstrings(formatString)) {
+    for (String substring : formatSubstrings) {
       // Skips un-escaped characters and new lines.
       if (!substring.matches("%.") || substring.equals(NEW_LINE)) {
         continue;
@@ -182,7 +211,8 @@ public final class FormatInterpreter {
    * based upon the "width_overrides" field in RegionDataConstants for {@code regionCode}.
    */
   static WidthType getWidthOverride(AddressField field, String regionCode) {
-    return getWidthOverride(field, regionCode, RegionDataConstants.getCountryFormatMap());
+    Util.checkNotNull(regionCode);
+    return parseWidthOverride(field, getJsonValue(regionCode, AddressDataKey.WIDTH_OVERRIDES));
   }
 
   /**
@@ -192,8 +222,11 @@ public final class FormatInterpreter {
   static WidthType getWidthOverride(
       AddressField field, String regionCode, Map<String, String> regionDataMap) {
     Util.checkNotNull(regionCode);
-    String overridesString =
-        getJsonValue(regionCode, AddressDataKey.WIDTH_OVERRIDES, regionDataMap);
+    return parseWidthOverride(
+        field, getJsonValue(regionCode, AddressDataKey.WIDTH_OVERRIDES, regionDataMap));
+  }
+
+  private static WidthType parseWidthOverride(AddressField field, String overridesString) {
     if (overridesString == null || overridesString.isEmpty()) {
       return null;
     }
@@ -249,8 +282,7 @@ public final class FormatInterpreter {
     }
 
     List<String> prunedFormat = new ArrayList<String>();
-    String formatString = getFormatString(scriptType, regionCode);
-    List<String> formatSubstrings = getFormatSubstrings(formatString);
+    List<String> formatSubstrings = getFormatTokens(scriptType, regionCode);
     for (int i = 0; i < formatSubstrings.size(); i++) {
       String formatSubstring = formatSubstrings.get(i);
       // Always keep the newlines.
@@ -344,7 +376,7 @@ public final class FormatInterpreter {
    */
   // TODO: Create a common method which does field parsing in one place (there are about 4 other
   // places in this library where format strings are parsed).
-  private List<String> getFormatSubstrings(String formatString) {
+  private static List<String> getFormatSubstrings(String formatString) {
     List<String> parts = new ArrayList<String>();
 
     boolean escaped = false;
@@ -369,18 +401,47 @@ public final class FormatInterpreter {
     return parts;
   }
 
-  private static String getFormatString(ScriptType scriptType, String regionCode) {
-    String format = (scriptType == ScriptType.LOCAL)
-        ? getJsonValue(regionCode, AddressDataKey.FMT)
-        : getJsonValue(regionCode, AddressDataKey.LFMT);
-    if (format == null) {
-      format = getJsonValue("ZZ", AddressDataKey.FMT);
+  /**
+   * Returns the tokens of the format string of {@code regionCode} (see
+   * {@link #getFormatSubstrings}), falling back to the format of the default region.
+   */
+  private static List<String> getFormatTokens(ScriptType scriptType, String regionCode) {
+    RegionFormat regionFormat = getRegionFormat(regionCode);
+    List<String> tokens = (scriptType == ScriptType.LOCAL)
+        ? regionFormat.formatTokens
+        : regionFormat.latinFormatTokens;
+    if (tokens == null) {
+      tokens = getRegionFormat("ZZ").formatTokens;
     }
-    return format;
+    return tokens;
   }
 
   private static String getJsonValue(String regionCode, AddressDataKey key) {
-    return getJsonValue(regionCode, key, RegionDataConstants.getCountryFormatMap());
+    return getRegionFormat(regionCode).values.get(key);
+  }
+
+  /**
+   * Returns a copy of the data of {@code regionCode} in {@link RegionDataConstants}, or null if
+   * there is none. The JSON of the region is only parsed the first time the region is used.
+   */
+  static JsoMap getRegionData(String regionCode) throws JSONException {
+    if (!RegionDataConstants.getCountryFormatMap().containsKey(regionCode)) {
+      return null;
+    }
+    return JsoMap.copyOf(getRegionFormat(regionCode).json);
+  }
+
+  private static RegionFormat getRegionFormat(String regionCode) {
+    Util.checkNotNull(regionCode);
+    RegionFormat regionFormat = REGION_FORMATS.get(regionCode);
+    if (regionFormat == null) {
+      String jsonString = RegionDataConstants.getCountryFormatMap().get(regionCode);
+      Util.checkNotNull(jsonString, "no json data for region code " + regionCode);
+      // Threads racing to use a new region may each parse it, and keep the last one.
+      regionFormat = new RegionFormat(regionCode, jsonString);
+      REGION_FORMATS.put(regionCode, regionFormat);
+    }
+    return regionFormat;
   }
 
   /**
@@ -405,4 +466,41 @@ public final class FormatInterpreter {
       throw new RuntimeException("Invalid json for region code " + regionCode + ": " + jsonString);
     }
   }
+
+  /**
+   * The data of a region in {@link RegionDataConstants}, parsed from its JSON string.
+   */
+  private static final class RegionFormat {
+    // The parsed JSON of the region. It is shared, so it is only handed out as copies.
+    final JSONObject json;
+    // The string values of the region, by key.
+    final Map<AddressDataKey, String> values =
+        new EnumMap<AddressDataKey, String>(AddressDataKey.class);
+    // Tokens of the local and latin format strings, or null if the region has no such format.
+    final List<String> formatTokens;
+    final List<String> latinFormatTokens;
+
+    RegionFormat(String regionCode, String jsonString) {
+      try {
+        json = new JSONObject(new JSONTokener(jsonString));
+        for (AddressDataKey key : AddressDataKey.values()) {
+          String keyName = Util.toLowerCaseLocaleIndependent(key.name());
+          if (json.has(keyName)) {
+            values.put(key, json.getString(keyName));
+          }
+        }
+      } catch (JSONException e) {
+        throw new RuntimeException(
+            "Invalid json for region code " + regionCode + ": " + jsonString);
+      }
+      formatTokens = tokenize(values.get(AddressDataKey.FMT));
+      latinFormatTokens = tokenize(values.get(AddressDataKey.LFMT));
+    }
+
+    private static List<String> tokenize(String formatString) {
+      return formatString != null
+          ? Collections.unmodifiableList(getFormatSubstrings(formatString))
+          : null;
+    }
+  }
 }
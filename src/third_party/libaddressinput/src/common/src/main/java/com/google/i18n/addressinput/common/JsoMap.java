@@ -40,6 +40,23 @@ public final class JsoMap extends JSONObject {
     return new JsoMap(new JSONTokener(json));
   }
 
+  /**
+   * Construct a shallow copy of a JSON object: nested objects and arrays are shared with it.
+   *
+   * @param copyFrom the object to copy.
+   * @return a JsoMap object with the same entries as the supplied object.
+   */
+  @SuppressWarnings("unchecked")
+  // JSONObject.keys() has no type information.
+  static JsoMap copyOf(JSONObject copyFrom) throws JSONException {
+    ArrayList<String> keys = new ArrayList<String>(copyFrom.length());
+    for (Iterator<String> it = copyFrom.keys(); it.hasNext(); ) {
+      keys.add(it.next());
+    }
+    String[] names = new String[keys.size()];
+    return new JsoMap(copyFrom, keys.toArray(names));
+  }
+
   /**
    * Construct an empty JsoMap.
    *
@@ -143,19 +160,11 @@ public final class JsoMap extends JSONObject {
    * @return JsoMap object.
    * @throws ClassCastException, IllegalArgumentException.
    */
-  @SuppressWarnings("unchecked")
-  // JSONObject.keys() has no type information.
   JsoMap getObj(String key) throws ClassCastException, IllegalArgumentException {
     try {
       Object o = super.get(key);
       if (o instanceof JSONObject) {
-        JSONObject value = (JSONObject) o;
-        ArrayList<String> keys = new ArrayList<String>(value.length());
-        for (Iterator<String> it = value.keys(); it.hasNext(); ) {
-          keys.add(it.next());
-        }
-        String[] names = new String[keys.size()];
-        return new JsoMap(value, keys.toArray(names));
+        return copyOf((JSONObject) o);
       } else if (o instanceof Integer) {
         throw new IllegalArgumentException();
       } else {
@@ -33,6 +33,9 @@ import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Performs various consistency checks on an AddressData. This uses a {@link FieldVerifier} to check
@@ -42,6 +45,32 @@ public final class StandardAddressVerifier {
 
   private static final String LOCALE_DELIMITER = "--";
 
+  // All the fields, never modified.
+  private static final EnumSet<AddressField> ALL_FIELDS = EnumSet.allOf(AddressField.class);
+
+  // Listener for verifications that don't report progress.
+  private static final DataLoadListener NO_OP_LISTENER = new DataLoadListener() {
+    @Override
+    public void dataLoadingBegin() {
+    }
+
+    @Override
+    public void dataLoadingEnd() {
+    }
+  };
+
+  /**
+   * Receives the results of {@link #verifyAll}.
+   */
+  public interface BulkVerificationListener {
+    /**
+     * Called with the problems found in an address, on the thread which verified it. The problems
+     * are cleared and reused for another address when this returns, so they must be copied (see
+     * {@link AddressProblems#copyInto}) to be kept.
+     */
+    void onAddressVerified(AddressData address, AddressProblems problems);
+  }
+
   protected final FieldVerifier rootVerifier;
 
   protected final Map<AddressField, List<AddressProblemType>> problemMap;
@@ -78,6 +107,91 @@ public final class StandardAddressVerifier {
     verifier.start();
   }
 
+  /**
+   * Verifies a sequence of addresses in parallel, reporting the problems found in each address to
+   * listener. Returns when all addresses are verified.
+   * <p>
+   * The addresses are verified by {@code parallelism} tasks run by executor, which pull addresses
+   * from the iterator one at a time and reuse a single {@link AddressProblems}. The iterator does
+   * not need to be thread-safe. To avoid rebuilding the verifiers for the regions of each address,
+   * the root verifier should be created with {@code cacheRefinedVerifiers}.
+   *
+   * @throws RuntimeException the first exception thrown by a verification, the iterator or
+   *     the listener, after which no more addresses are verified. An {@link Error} thrown by them
+   *     is rethrown in the same way.
+   * @throws InterruptedException if interrupted while waiting for the tasks to complete. The tasks
+   *     stop after the address they are verifying.
+   */
+  public void verifyAll(Iterator<AddressData> addresses, Executor executor, int parallelism,
+      BulkVerificationListener listener) throws InterruptedException {
+    Util.checkNotNull(addresses, "Cannot verify null addresses");
+    Util.checkNotNull(listener, "Cannot report to a null listener");
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    BulkVerifier bulkVerifier = new BulkVerifier(addresses, listener, parallelism);
+    for (int i = 0; i < parallelism; i++) {
+      executor.execute(bulkVerifier);
+    }
+    try {
+      bulkVerifier.done.await();
+    } catch (InterruptedException e) {
+      bulkVerifier.error.compareAndSet(null, new RuntimeException("Verification interrupted"));
+      throw e;
+    }
+    Throwable error = bulkVerifier.error.get();
+    if (error instanceof RuntimeException) {
+      throw (RuntimeException) error;
+    } else if (error instanceof Error) {
+      throw (Error) error;
+    } else if (error != null) {
+      throw new RuntimeException(error);
+    }
+  }
+
+  /**
+   * Verifies addresses pulled from a shared iterator, run by each task of {@link #verifyAll}.
+   */
+  private class BulkVerifier implements Runnable {
+    private final Iterator<AddressData> addresses;
+    private final BulkVerificationListener listener;
+    private final CountDownLatch done;
+    // The first throwable caught by a task, rethrown by verifyAll on the calling thread.
+    private final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+    BulkVerifier(Iterator<AddressData> addresses, BulkVerificationListener listener,
+        int taskCount) {
+      this.addresses = addresses;
+      this.listener = listener;
+      done = new CountDownLatch(taskCount);
+    }
+
+    @Override
+    public void run() {
+      AddressProblems problems = new AddressProblems();
+      try {
+        AddressData address;
+        while (error.get() == null && (address = nextAddress()) != null) {
+          problems.clear();
+          new Verifier(address, problems, NO_OP_LISTENER, ALL_FIELDS).run();
+          listener.onAddressVerified(address, problems);
+        }
+      } catch (Throwable e) {
+        // Errors are caught too, so that they are not lost in the executor and the remaining
+        // addresses are not left silently unverified.
+        error.compareAndSet(null, e);
+      } finally {
+        done.countDown();
+      }
+    }
+
+    private AddressData nextAddress() {
+      synchronized (addresses) {
+        return addresses.hasNext() ? addresses.next() : null;
+      }
+    }
+  }
+
   /**
    * Verifies only the specified fields in the address.
    */
@@ -93,7 +207,7 @@ public final class StandardAddressVerifier {
     private EnumSet<AddressField> addressFieldsToVerify;
 
     Verifier(AddressData address, AddressProblems problems, DataLoadListener listener) {
-      this(address, problems, listener, EnumSet.allOf(AddressField.class));
+      this(address, problems, listener, ALL_FIELDS);
     }
 
     Verifier(
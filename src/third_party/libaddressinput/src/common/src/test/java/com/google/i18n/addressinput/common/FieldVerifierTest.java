@@ -20,7 +20,9 @@ import static com.google.common.truth.Truth.assertThat;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import com.google.i18n.addressinput.testing.AddressDataMapLoader;
@@ -609,4 +611,23 @@ public class FieldVerifierTest {
     assertFalse(problems.isEmpty());
     assertEquals(AddressProblemType.UNKNOWN_VALUE, problems.getProblem(AddressField.LOCALITY));
   }
+
+  @Test public void testCachedRefinedVerifiers() {
+    FieldVerifier root = new FieldVerifier(
+        new AddressVerificationData(AddressDataMapLoader.TEST_COUNTRY_DATA),
+        true /* useRegionDataConstants */, true /* cacheRefinedVerifiers */);
+    FieldVerifier us = root.refineVerifier("US");
+    assertEquals("data/US", us.id);
+    assertSame(us, root.refineVerifier("US"));
+    assertSame(us.refineVerifier("CA"), us.refineVerifier("CA"));
+    // Values without data share the same empty verifier.
+    FieldVerifier unknown = us.refineVerifier("Unknown state");
+    assertNull(unknown.id);
+    assertSame(unknown, us.refineVerifier("Another unknown state"));
+    assertSame(unknown, us.refineVerifier(null));
+
+    FieldVerifier uncachedRoot =
+        new FieldVerifier(new AddressVerificationData(AddressDataMapLoader.TEST_COUNTRY_DATA));
+    assertNotSame(uncachedRoot.refineVerifier("US"), uncachedRoot.refineVerifier("US"));
+  }
 }
@@ -97,6 +97,50 @@ public class FormatInterpreterTest {
         .inOrder();
   }
 
+  @Test public void testAddressFieldOrderMatchesRegionData() {
+    FormatInterpreter formatInterpreter = new FormatInterpreter(new FormOptions().createSnapshot());
+    Map<String, String> regionDataMap = RegionDataConstants.getCountryFormatMap();
+    String defaultFormat = FormatInterpreter.getJsonValue("ZZ", AddressDataKey.FMT, regionDataMap);
+    for (String regionCode : regionDataMap.keySet()) {
+      String format = FormatInterpreter.getJsonValue(regionCode, AddressDataKey.FMT, regionDataMap);
+      String latinFormat =
+          FormatInterpreter.getJsonValue(regionCode, AddressDataKey.LFMT, regionDataMap);
+      assertWithMessage("Local field order of " + regionCode)
+          .that(formatInterpreter.getAddressFieldOrder(ScriptType.LOCAL, regionCode))
+          .isEqualTo(formatInterpreter.getAddressFieldOrder(
+              format != null ? format : defaultFormat, regionCode));
+      assertWithMessage("Latin field order of " + regionCode)
+          .that(formatInterpreter.getAddressFieldOrder(ScriptType.LATIN, regionCode))
+          .isEqualTo(formatInterpreter.getAddressFieldOrder(
+              latinFormat != null ? latinFormat : defaultFormat, regionCode));
+      String require =
+          FormatInterpreter.getJsonValue(regionCode, AddressDataKey.REQUIRE, regionDataMap);
+      if (require == null) {
+        require = FormatInterpreter.getJsonValue("ZZ", AddressDataKey.REQUIRE, regionDataMap);
+      }
+      assertWithMessage("Required fields of " + regionCode)
+          .that(FormatInterpreter.getRequiredFields(regionCode))
+          .isEqualTo(FormatInterpreter.getRequiredFields(require, regionCode));
+      // The field order is only built once.
+      assertThat(formatInterpreter.getAddressFieldOrder(ScriptType.LOCAL, regionCode))
+          .isSameAs(formatInterpreter.getAddressFieldOrder(ScriptType.LOCAL, regionCode));
+    }
+  }
+
+  @Test public void testGetRegionDataMatchesRegionData() throws Exception {
+    for (Map.Entry<String, String> entry : RegionDataConstants.getCountryFormatMap().entrySet()) {
+      String expected = JsoMap.buildJsoMap(entry.getValue()).toString();
+      JsoMap regionData = FormatInterpreter.getRegionData(entry.getKey());
+      assertWithMessage("Data of " + entry.getKey())
+          .that(regionData.toString())
+          .isEqualTo(expected);
+      // Each call returns a copy, which can be changed without affecting the next ones.
+      regionData.delKey("name");
+      assertThat(FormatInterpreter.getRegionData(entry.getKey()).toString()).isEqualTo(expected);
+    }
+    assertThat(FormatInterpreter.getRegionData("XX")).isNull();
+  }
+
   @Test public void testGetEnvelopeAddress_MissingFields_LiteralsBetweenFields() {
     FormatInterpreter formatInterpreter = new FormatInterpreter(new FormOptions().createSnapshot());
     AddressData.Builder addressBuilder = AddressData.builder()
@@ -32,9 +32,15 @@ import static org.junit.Assert.assertEquals;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -362,4 +368,64 @@ public class StandardAddressVerifierTest {
     assertThat(problems.getProblem(POSTAL_CODE)).isEqualTo(INVALID_FORMAT);
     assertThat(problems.getProblem(ADMIN_AREA)).isNull();
   }
+
+  @Test public void testVerifyAll() throws Exception {
+    List<AddressData> addresses = new ArrayList<AddressData>();
+    for (int i = 0; i < 100; i++) {
+      addresses.add(AddressData.builder(VALID_US_ADDRESS)
+          .setPostalCode(i % 2 == 0 ? "94025" : "12345")
+          .setAdminArea(i % 5 == 0 ? "Invalid admin area" : "CA")
+          .build());
+    }
+    FieldVerifier fieldVerifier = new FieldVerifier(
+        new AddressVerificationData(TEST_COUNTRY_DATA),
+        true /* useRegionDataConstants */, true /* cacheRefinedVerifiers */);
+    StandardAddressVerifier verifier = new StandardAddressVerifier(fieldVerifier);
+    // Identity map as the addresses are not all distinct.
+    final Map<AddressData, Map<AddressField, AddressProblemType>> results =
+        Collections.synchronizedMap(
+            new IdentityHashMap<AddressData, Map<AddressField, AddressProblemType>>());
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      verifier.verifyAll(addresses.iterator(), executor, 4,
+          new StandardAddressVerifier.BulkVerificationListener() {
+            @Override
+            public void onAddressVerified(AddressData address, AddressProblems problems) {
+              results.put(address, new HashMap<AddressField, AddressProblemType>(
+                  problems.getProblems()));
+            }
+          });
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(addresses.size(), results.size());
+    for (AddressData address : addresses) {
+      assertEquals(verify(address).getProblems(), results.get(address));
+    }
+  }
+
+  @Test public void testVerifyAllRethrowsErrors() throws Exception {
+    List<AddressData> addresses = new ArrayList<AddressData>();
+    for (int i = 0; i < 10; i++) {
+      addresses.add(VALID_US_ADDRESS);
+    }
+    final AssertionError error = new AssertionError("Listener failure");
+    AssertionError thrown = null;
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      verifierFor(StandardChecks.PROBLEM_MAP).verifyAll(addresses.iterator(), executor, 2,
+          new StandardAddressVerifier.BulkVerificationListener() {
+            @Override
+            public void onAddressVerified(AddressData address, AddressProblems problems) {
+              throw error;
+            }
+          });
+    } catch (AssertionError e) {
+      thrown = e;
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(thrown).isSameAs(error);
+  }
 }
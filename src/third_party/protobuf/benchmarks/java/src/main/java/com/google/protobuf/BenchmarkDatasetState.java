@@ -0,0 +1,61 @@
+package com.google.protobuf;
+
+import com.google.protobuf.ProtoCaliperBenchmark.BenchmarkMessageType;
+import com.google.protobuf.benchmarks.Benchmarks.BenchmarkDataset;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * JMH state holding one benchmark dataset: the serialized payloads and the parsed messages. It is
+ * shared by all JMH benchmarks in this package and loads the same files as
+ * {@link ProtoCaliperBenchmark}.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatasetState {
+  @Param("")
+  public String dataFile;
+
+  public BenchmarkMessageType benchmarkMessageType;
+  public Message defaultMessage;
+  public ExtensionRegistry extensions;
+  public List<byte[]> inputDataList;
+  public List<Message> sampleMessageList;
+  /** Largest serialized size among the payloads, for sizing reusable output buffers. */
+  public int maxSerializedSize;
+
+  @Setup
+  public void setUp() throws IOException {
+    BenchmarkDataset benchmarkDataset;
+    if (!dataFile.equals("")) {
+      RandomAccessFile file = new RandomAccessFile(new File(dataFile), "r");
+      byte[] inputData = new byte[(int) file.length()];
+      file.readFully(inputData);
+      file.close();
+      benchmarkDataset = BenchmarkDataset.parseFrom(inputData);
+      benchmarkMessageType =
+          BenchmarkMessageType.forMessageName(benchmarkDataset.getMessageName());
+    } else {
+      benchmarkDataset = BenchmarkDataset.getDefaultInstance();
+      benchmarkMessageType = BenchmarkMessageType.GOOGLE_MESSAGE2;
+    }
+    defaultMessage = benchmarkMessageType.getDefaultInstance();
+    extensions = benchmarkMessageType.getExtensionRegistry();
+    inputDataList = new ArrayList<byte[]>();
+    sampleMessageList = new ArrayList<Message>();
+    maxSerializedSize = 0;
+    for (int i = 0; i < benchmarkDataset.getPayloadCount(); i++) {
+      byte[] singleInputData = benchmarkDataset.getPayload(i).toByteArray();
+      inputDataList.add(singleInputData);
+      sampleMessageList.add(
+          defaultMessage.newBuilderForType().mergeFrom(singleInputData, extensions).build());
+      maxSerializedSize = Math.max(maxSerializedSize, singleInputData.length);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package com.google.protobuf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures building a {@link RopeByteString} from many pieces, both by repeated
+ * {@link ByteString#concat} and by {@link ByteString#copyFrom(Iterable)}, and reading it back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class ByteStringBenchmark {
+  @Param({"1000"})
+  private int pieceCount;
+
+  /** Sizes around RopeByteString's copy threshold (128 bytes) take different paths. */
+  @Param({"16", "256", "4096"})
+  private int pieceSize;
+
+  private List<ByteString> pieces;
+  private ByteString rope;
+
+  @Setup
+  public void setUp() {
+    pieces = new ArrayList<ByteString>();
+    for (int i = 0; i < pieceCount; i++) {
+      byte[] bytes = new byte[pieceSize];
+      for (int j = 0; j < pieceSize; j++) {
+        bytes[j] = (byte) (i + j);
+      }
+      pieces.add(ByteString.copyFrom(bytes));
+    }
+    rope = ByteString.copyFrom(pieces);
+  }
+
+  @Benchmark
+  public ByteString concatLeftToRight() {
+    ByteString result = ByteString.EMPTY;
+    for (int i = 0; i < pieces.size(); i++) {
+      result = result.concat(pieces.get(i));
+    }
+    return result;
+  }
+
+  @Benchmark
+  public ByteString concatRightToLeft() {
+    ByteString result = ByteString.EMPTY;
+    for (int i = pieces.size() - 1; i >= 0; i--) {
+      result = pieces.get(i).concat(result);
+    }
+    return result;
+  }
+
+  @Benchmark
+  public ByteString copyFromIterable() {
+    return ByteString.copyFrom(pieces);
+  }
+
+  @Benchmark
+  public byte[] ropeToByteArray() {
+    return rope.toByteArray();
+  }
+
+  @Benchmark
+  public ByteString ropeSubstring() {
+    return rope.substring(rope.size() / 4, rope.size() * 3 / 4);
+  }
+
+  @Benchmark
+  public void ropeIterate(Blackhole blackhole) {
+    ByteString.ByteIterator iterator = rope.iterator();
+    int sum = 0;
+    while (iterator.hasNext()) {
+      sum += iterator.nextByte();
+    }
+    blackhole.consume(sum);
+  }
+
+  @Benchmark
+  public byte[] ropeReadThroughCodedInput() throws IOException {
+    return rope.newCodedInput().readRawBytes(rope.size());
+  }
+}
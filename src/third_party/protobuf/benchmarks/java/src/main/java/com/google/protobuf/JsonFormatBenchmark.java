@@ -0,0 +1,110 @@
+package com.google.protobuf;
+
+import com.google.protobuf.util.JsonFormat;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the JsonFormat.Printer output paths on the benchmark datasets: building a String,
+ * appending UTF-16 text to a Writer over a byte stream, and encoding UTF-8 directly with
+ * {@link JsonFormat.Printer#writeTo}. Also compares the tree-based and the streaming
+ * JsonFormat.Parser. Run with {@code -prof gc} to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class JsonFormatBenchmark {
+  @Param({"false", "true"})
+  private boolean omittingInsignificantWhitespace;
+
+  private List<Message> sampleMessageList;
+  private List<String> jsonList;
+  private Message defaultMessage;
+  private JsonFormat.Printer printer;
+  private JsonFormat.Parser parser;
+  private JsonFormat.Parser streamingParser;
+  private ByteArrayOutputStream output;
+
+  @Setup
+  public void setUp(BenchmarkDatasetState dataset) throws IOException {
+    sampleMessageList = dataset.sampleMessageList;
+    defaultMessage = dataset.defaultMessage;
+    printer = JsonFormat.printer();
+    if (omittingInsignificantWhitespace) {
+      printer = printer.omittingInsignificantWhitespace();
+    }
+    parser = JsonFormat.parser();
+    streamingParser = parser.usingStreamingParser();
+    jsonList = new ArrayList<String>();
+    for (Message message : sampleMessageList) {
+      jsonList.add(printer.print(message));
+    }
+    output = new ByteArrayOutputStream(64 * 1024);
+  }
+
+  @Benchmark
+  public void printToString(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < sampleMessageList.size(); i++) {
+      blackhole.consume(printer.print(sampleMessageList.get(i)));
+    }
+  }
+
+  @Benchmark
+  public void appendToWriter(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < sampleMessageList.size(); i++) {
+      output.reset();
+      Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+      printer.appendTo(sampleMessageList.get(i), writer);
+      writer.flush();
+      blackhole.consume(output.size());
+    }
+  }
+
+  @Benchmark
+  public void writeToOutputStream(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < sampleMessageList.size(); i++) {
+      output.reset();
+      printer.writeTo(sampleMessageList.get(i), output);
+      blackhole.consume(output.size());
+    }
+  }
+
+  @Benchmark
+  public void parse(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < jsonList.size(); i++) {
+      Message.Builder builder = defaultMessage.newBuilderForType();
+      parser.merge(jsonList.get(i), builder);
+      blackhole.consume(builder.build());
+    }
+  }
+
+  @Benchmark
+  public void parseStreaming(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < jsonList.size(); i++) {
+      Message.Builder builder = defaultMessage.newBuilderForType();
+      streamingParser.merge(jsonList.get(i), builder);
+      blackhole.consume(builder.build());
+    }
+  }
+}
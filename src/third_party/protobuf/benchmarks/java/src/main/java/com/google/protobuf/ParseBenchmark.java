@@ -0,0 +1,149 @@
+package com.google.protobuf;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parses the benchmark dataset from each kind of input, so that every CodedInputStream
+ * implementation is measured on its own: byte[] ({@code ArrayDecoder}), direct ByteBuffer
+ * ({@code UnsafeDirectNioDecoder}), InputStream ({@code StreamDecoder}) and a list of direct
+ * ByteBuffers ({@code IterableDirectByteBufferDecoder}). The {@code schema*} benchmarks go through
+ * {@link MessageSchema}, reading from a {@link BinaryReader} or a {@link CodedInputStreamReader},
+ * instead of the generated parsing code.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class ParseBenchmark {
+  /** Size of the pieces the input is split into for the Iterable<ByteBuffer> decoder. */
+  @Param("4096")
+  private int chunkSize;
+
+  private Parser<? extends Message> parser;
+  private ExtensionRegistry extensions;
+  private Schema<Message> schema;
+  private List<byte[]> arrays;
+  private List<ByteBuffer> heapBuffers;
+  private List<ByteBuffer> directBuffers;
+  private List<List<ByteBuffer>> chunkedDirectBuffers;
+  private List<ByteArrayInputStream> inputStreams;
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setUp(BenchmarkDatasetState dataset) {
+    parser = dataset.defaultMessage.getParserForType();
+    extensions = dataset.extensions;
+    schema = (Schema<Message>) Protobuf.getInstance().schemaFor(dataset.defaultMessage.getClass());
+    arrays = dataset.inputDataList;
+    heapBuffers = new ArrayList<ByteBuffer>();
+    directBuffers = new ArrayList<ByteBuffer>();
+    chunkedDirectBuffers = new ArrayList<List<ByteBuffer>>();
+    inputStreams = new ArrayList<ByteArrayInputStream>();
+    for (byte[] data : arrays) {
+      heapBuffers.add(ByteBuffer.wrap(data));
+      directBuffers.add(toDirect(data, 0, data.length));
+      List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+      for (int offset = 0; offset < data.length; offset += chunkSize) {
+        chunks.add(toDirect(data, offset, Math.min(chunkSize, data.length - offset)));
+      }
+      chunkedDirectBuffers.add(chunks);
+      inputStreams.add(new ByteArrayInputStream(data));
+    }
+  }
+
+  private static ByteBuffer toDirect(byte[] data, int offset, int length) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+    buffer.put(data, offset, length);
+    buffer.flip();
+    return buffer;
+  }
+
+  @Benchmark
+  public void parseFromByteArray(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < arrays.size(); i++) {
+      blackhole.consume(parser.parseFrom(arrays.get(i), extensions));
+    }
+  }
+
+  @Benchmark
+  public void parseFromHeapByteBuffer(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < heapBuffers.size(); i++) {
+      blackhole.consume(parser.parseFrom(heapBuffers.get(i), extensions));
+    }
+  }
+
+  @Benchmark
+  public void parseFromDirectByteBuffer(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < directBuffers.size(); i++) {
+      blackhole.consume(parser.parseFrom(directBuffers.get(i), extensions));
+    }
+  }
+
+  @Benchmark
+  public void parseFromDirectByteBufferIterable(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < chunkedDirectBuffers.size(); i++) {
+      CodedInputStream input = CodedInputStream.newInstance(chunkedDirectBuffers.get(i));
+      blackhole.consume(parser.parseFrom(input, extensions));
+    }
+  }
+
+  @Benchmark
+  public void parseFromInputStream(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < inputStreams.size(); i++) {
+      ByteArrayInputStream input = inputStreams.get(i);
+      input.reset();
+      blackhole.consume(parser.parseFrom(input, extensions));
+    }
+  }
+
+  @Benchmark
+  public void schemaParseFromHeapBinaryReader(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < heapBuffers.size(); i++) {
+      blackhole.consume(schemaParse(BinaryReader.newInstance(heapBuffers.get(i), true)));
+    }
+  }
+
+  // BinaryReader doesn't support direct buffers, so the schema is fed by the
+  // UnsafeDirectNioDecoder instead.
+  @Benchmark
+  public void schemaParseFromDirectCodedInputStream(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < directBuffers.size(); i++) {
+      CodedInputStream input = CodedInputStream.newInstance(directBuffers.get(i));
+      blackhole.consume(schemaParse(CodedInputStreamReader.forCodedInput(input)));
+    }
+  }
+
+  @Benchmark
+  public void schemaParseFromCodedInputStream(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < arrays.size(); i++) {
+      CodedInputStream input = CodedInputStream.newInstance(arrays.get(i));
+      blackhole.consume(schemaParse(CodedInputStreamReader.forCodedInput(input)));
+    }
+  }
+
+  private Message schemaParse(Reader reader) throws IOException {
+    Message message = schema.newInstance();
+    schema.mergeFrom(message, reader, extensions);
+    schema.makeImmutable(message);
+    return message;
+  }
+}
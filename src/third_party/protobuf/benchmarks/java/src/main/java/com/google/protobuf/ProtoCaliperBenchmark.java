@@ -92,6 +92,23 @@ public class ProtoCaliperBenchmark {
 
     abstract ExtensionRegistry getExtensionRegistry();
     abstract Message getDefaultInstance();
+
+    static BenchmarkMessageType forMessageName(String messageName) {
+      if (messageName.equals("benchmarks.proto3.GoogleMessage1")) {
+        return GOOGLE_MESSAGE1_PROTO3;
+      } else if (messageName.equals("benchmarks.proto2.GoogleMessage1")) {
+        return GOOGLE_MESSAGE1_PROTO2;
+      } else if (messageName.equals("benchmarks.proto2.GoogleMessage2")) {
+        return GOOGLE_MESSAGE2;
+      } else if (messageName.equals("benchmarks.google_message3.GoogleMessage3")) {
+        return GOOGLE_MESSAGE3;
+      } else if (messageName.equals("benchmarks.google_message4.GoogleMessage4")) {
+        return GOOGLE_MESSAGE4;
+      } else {
+        throw new IllegalStateException("Invalid DataFile! There's no testing message named "
+            + messageName);
+      }
+    }
   }
 
   private BenchmarkMessageType benchmarkMessageType;
@@ -108,22 +125,7 @@ public class ProtoCaliperBenchmark {
   private List<Message> sampleMessageList;
 
   private BenchmarkMessageType getMessageType() throws IOException {
-    if (benchmarkDataset.getMessageName().equals("benchmarks.proto3.GoogleMessage1")) {
-      return BenchmarkMessageType.GOOGLE_MESSAGE1_PROTO3;
-    } else if (benchmarkDataset.getMessageName().equals("benchmarks.proto2.GoogleMessage1")) {
-      return BenchmarkMessageType.GOOGLE_MESSAGE1_PROTO2;
-    } else if (benchmarkDataset.getMessageName().equals("benchmarks.proto2.GoogleMessage2")) {
-      return BenchmarkMessageType.GOOGLE_MESSAGE2;
-    } else if (benchmarkDataset.getMessageName().
-        equals("benchmarks.google_message3.GoogleMessage3")) {
-      return BenchmarkMessageType.GOOGLE_MESSAGE3;
-    } else if (benchmarkDataset.getMessageName().
-        equals("benchmarks.google_message4.GoogleMessage4")) {
-      return BenchmarkMessageType.GOOGLE_MESSAGE4;
-    } else {
-      throw new IllegalStateException("Invalid DataFile! There's no testing message named "
-          + benchmarkDataset.getMessageName());
-    }
+    return BenchmarkMessageType.forMessageName(benchmarkDataset.getMessageName());
   }
 
   @BeforeExperiment
@@ -0,0 +1,110 @@
+package com.google.protobuf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Serializes the benchmark dataset to each kind of output: a new byte[] ({@code ArrayEncoder}), a
+ * reused byte[], a direct ByteBuffer ({@code UnsafeDirectNioEncoder}) and an OutputStream. The
+ * {@code schema*} benchmarks write through {@link MessageSchema} into a {@link BinaryWriter}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class SerializeBenchmark {
+  private List<Message> messages;
+  private Schema<Message> schema;
+  private byte[] reusableArray;
+  private ByteBuffer reusableDirectBuffer;
+  private ByteArrayOutputStream reusableStream;
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setUp(BenchmarkDatasetState dataset) {
+    messages = dataset.sampleMessageList;
+    schema = (Schema<Message>) Protobuf.getInstance().schemaFor(dataset.defaultMessage.getClass());
+    reusableArray = new byte[dataset.maxSerializedSize];
+    reusableDirectBuffer = ByteBuffer.allocateDirect(dataset.maxSerializedSize);
+    reusableStream = new ByteArrayOutputStream(dataset.maxSerializedSize);
+  }
+
+  @Benchmark
+  public void serializeToByteArray(Blackhole blackhole) {
+    for (int i = 0; i < messages.size(); i++) {
+      blackhole.consume(messages.get(i).toByteArray());
+    }
+  }
+
+  @Benchmark
+  public void serializeToReusedByteArray(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < messages.size(); i++) {
+      CodedOutputStream output = CodedOutputStream.newInstance(reusableArray);
+      messages.get(i).writeTo(output);
+      blackhole.consume(output.getTotalBytesWritten());
+    }
+  }
+
+  @Benchmark
+  public void serializeToDirectByteBuffer(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < messages.size(); i++) {
+      reusableDirectBuffer.clear();
+      CodedOutputStream output = CodedOutputStream.newInstance(reusableDirectBuffer);
+      messages.get(i).writeTo(output);
+      output.flush();
+      blackhole.consume(output.getTotalBytesWritten());
+    }
+  }
+
+  @Benchmark
+  public void serializeToOutputStream(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < messages.size(); i++) {
+      reusableStream.reset();
+      messages.get(i).writeTo(reusableStream);
+      blackhole.consume(reusableStream.size());
+    }
+  }
+
+  @Benchmark
+  public void schemaSerializeToHeapBinaryWriter(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < messages.size(); i++) {
+      BinaryWriter writer = BinaryWriter.newHeapInstance(BufferAllocator.unpooled());
+      schema.writeTo(messages.get(i), writer);
+      blackhole.consume(writer.complete());
+    }
+  }
+
+  @Benchmark
+  public void schemaSerializeToDirectBinaryWriter(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < messages.size(); i++) {
+      BinaryWriter writer = BinaryWriter.newDirectInstance(BufferAllocator.unpooled());
+      schema.writeTo(messages.get(i), writer);
+      blackhole.consume(writer.complete());
+    }
+  }
+
+  @Benchmark
+  public void schemaSerializeToCodedOutputStream(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < messages.size(); i++) {
+      CodedOutputStream output = CodedOutputStream.newInstance(reusableArray);
+      schema.writeTo(messages.get(i), CodedOutputStreamWriter.forCodedOutput(output));
+      blackhole.consume(output.getTotalBytesWritten());
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package com.google.protobuf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Prints the benchmark dataset with {@link TextFormat} and parses it back. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class TextFormatBenchmark {
+  private List<Message> messages;
+  private List<String> texts;
+  private Message defaultMessage;
+  private ExtensionRegistry extensions;
+  private StringBuilder output;
+
+  @Setup
+  public void setUp(BenchmarkDatasetState dataset) {
+    messages = dataset.sampleMessageList;
+    defaultMessage = dataset.defaultMessage;
+    extensions = dataset.extensions;
+    texts = new ArrayList<String>();
+    for (Message message : messages) {
+      texts.add(TextFormat.printer().printToString(message));
+    }
+    output = new StringBuilder();
+  }
+
+  @Benchmark
+  public void printToString(Blackhole blackhole) {
+    for (int i = 0; i < messages.size(); i++) {
+      blackhole.consume(TextFormat.printer().printToString(messages.get(i)));
+    }
+  }
+
+  @Benchmark
+  public void printToStringBuilder(Blackhole blackhole) throws IOException {
+    for (int i = 0; i < messages.size(); i++) {
+      output.setLength(0);
+      TextFormat.printer().print(messages.get(i), output);
+      blackhole.consume(output.length());
+    }
+  }
+
+  @Benchmark
+  public void merge(Blackhole blackhole) throws TextFormat.ParseException {
+    for (int i = 0; i < texts.size(); i++) {
+      Message.Builder builder = defaultMessage.newBuilderForType();
+      TextFormat.getParser().merge(texts.get(i), extensions, builder);
+      blackhole.consume(builder.build());
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package com.google.protobuf;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@link Utf8} encoders, decoders and validators on heap arrays and direct buffers,
+ * for strings that are pure ASCII, mostly two-byte, mostly three-byte or made of surrogate pairs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class Utf8Benchmark {
+  /** Kinds of text, by the number of UTF-8 bytes per character. */
+  public enum TextKind {
+    ASCII(0x20, 0x7F),
+    TWO_BYTES(0x80, 0x800),
+    THREE_BYTES(0x800, 0xD800),
+    SURROGATE_PAIRS(0x10000, 0x110000);
+
+    private final int minCodePoint;
+    private final int maxCodePoint;
+
+    TextKind(int minCodePoint, int maxCodePoint) {
+      this.minCodePoint = minCodePoint;
+      this.maxCodePoint = maxCodePoint;
+    }
+  }
+
+  @Param({"ASCII", "TWO_BYTES", "THREE_BYTES", "SURROGATE_PAIRS"})
+  private TextKind textKind;
+
+  /** Length of the text in code points. */
+  @Param({"16", "1024"})
+  private int length;
+
+  private String text;
+  private byte[] encoded;
+  private ByteBuffer encodedDirect;
+  private byte[] outputArray;
+  private ByteBuffer outputDirect;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      builder.appendCodePoint(
+          textKind.minCodePoint + random.nextInt(textKind.maxCodePoint - textKind.minCodePoint));
+    }
+    text = builder.toString();
+    encoded = text.getBytes(Internal.UTF_8);
+    encodedDirect = ByteBuffer.allocateDirect(encoded.length);
+    encodedDirect.put(encoded);
+    encodedDirect.flip();
+    outputArray = new byte[encoded.length];
+    outputDirect = ByteBuffer.allocateDirect(encoded.length);
+  }
+
+  @Benchmark
+  public int encodedLength() {
+    return Utf8.encodedLength(text);
+  }
+
+  @Benchmark
+  public int encodeToArray() {
+    return Utf8.encode(text, outputArray, 0, outputArray.length);
+  }
+
+  @Benchmark
+  public int encodeToDirectBuffer() {
+    outputDirect.clear();
+    Utf8.encodeUtf8(text, outputDirect);
+    return outputDirect.position();
+  }
+
+  @Benchmark
+  public String decodeFromArray() throws InvalidProtocolBufferException {
+    return Utf8.decodeUtf8(encoded, 0, encoded.length);
+  }
+
+  @Benchmark
+  public String decodeFromDirectBuffer() throws InvalidProtocolBufferException {
+    return Utf8.decodeUtf8(encodedDirect, 0, encoded.length);
+  }
+
+  @Benchmark
+  public boolean isValidArray() {
+    return Utf8.isValidUtf8(encoded);
+  }
+
+  @Benchmark
+  public boolean isValidDirectBuffer() {
+    return Utf8.isValidUtf8(encodedDirect);
+  }
+}
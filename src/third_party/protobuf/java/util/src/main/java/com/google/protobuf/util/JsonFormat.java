@@ -43,6 +43,8 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
 import com.google.protobuf.Any;
 import com.google.protobuf.BoolValue;
 import com.google.protobuf.ByteString;
@@ -72,11 +74,15 @@ import com.google.protobuf.Timestamp;
 import com.google.protobuf.UInt32Value;
 import com.google.protobuf.UInt64Value;
 import com.google.protobuf.Value;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.lang.ref.SoftReference;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.Collection;
 import java.util.Collections;
@@ -87,6 +93,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 /**
@@ -138,6 +145,9 @@ public class JsonFormat {
     private final boolean omittingInsignificantWhitespace;
     private final boolean printingEnumsAsInts;
     private final boolean sortingMapKeys;
+    // Field names rendered for this Printer's configuration, indexed by FieldDescriptor.getIndex().
+    private final Map<Descriptor, JsonFieldName[]> fieldNames =
+        new ConcurrentHashMap<Descriptor, JsonFieldName[]>();
 
     private Printer(
         com.google.protobuf.TypeRegistry registry,
@@ -358,17 +368,47 @@ public class JsonFormat {
     public void appendTo(MessageOrBuilder message, Appendable output) throws IOException {
       // TODO(xiaofeng): Investigate the allocation overhead and optimize for
       // mobile.
-      new PrinterImpl(
-              registry,
-              oldRegistry,
-              alwaysOutputDefaultValueFields,
-              includingDefaultValueFields,
-              preservingProtoFieldNames,
-              output,
-              omittingInsignificantWhitespace,
-              printingEnumsAsInts,
-              sortingMapKeys)
-          .print(message);
+      TextGenerator generator =
+          omittingInsignificantWhitespace
+              ? new CompactTextGenerator(output)
+              : new PrettyTextGenerator(output);
+      newPrinterImpl(generator).print(message);
+    }
+
+    /**
+     * Converts a protobuf message to JSON format and writes it to {@code output} encoded as UTF-8.
+     * The output is produced the same way as by {@link #appendTo}, but it is encoded straight into
+     * a byte buffer that is reused across calls on the same thread, and field names are encoded
+     * only once per message type and {@link Printer}. This avoids most of the temporary strings
+     * created by {@link #appendTo} and {@link #print}.
+     *
+     * @throws InvalidProtocolBufferException if the message contains Any types that can't be
+     *     resolved.
+     * @throws IOException if writing to the output fails.
+     */
+    public void writeTo(MessageOrBuilder message, OutputStream output) throws IOException {
+      Utf8TextGenerator generator =
+          new Utf8TextGenerator(output, omittingInsignificantWhitespace);
+      try {
+        newPrinterImpl(generator).print(message);
+        generator.flush();
+      } finally {
+        generator.release();
+      }
+    }
+
+    private PrinterImpl newPrinterImpl(TextGenerator generator) {
+      return new PrinterImpl(
+          registry,
+          oldRegistry,
+          alwaysOutputDefaultValueFields,
+          includingDefaultValueFields,
+          preservingProtoFieldNames,
+          generator,
+          omittingInsignificantWhitespace,
+          printingEnumsAsInts,
+          sortingMapKeys,
+          fieldNames);
     }
 
     /**
@@ -397,7 +437,8 @@ public class JsonFormat {
         com.google.protobuf.TypeRegistry.getEmptyTypeRegistry(),
         TypeRegistry.getEmptyTypeRegistry(),
         false,
-        Parser.DEFAULT_RECURSION_LIMIT);
+        Parser.DEFAULT_RECURSION_LIMIT,
+        false);
   }
 
   /**
@@ -408,6 +449,7 @@ public class JsonFormat {
     private final TypeRegistry oldRegistry;
     private final boolean ignoringUnknownFields;
     private final int recursionLimit;
+    private final boolean usingStreamingParser;
 
     // The default parsing recursion limit is aligned with the proto binary parser.
     private static final int DEFAULT_RECURSION_LIMIT = 100;
@@ -416,11 +458,13 @@ public class JsonFormat {
         com.google.protobuf.TypeRegistry registry,
         TypeRegistry oldRegistry,
         boolean ignoreUnknownFields,
-        int recursionLimit) {
+        int recursionLimit,
+        boolean usingStreamingParser) {
       this.registry = registry;
       this.oldRegistry = oldRegistry;
       this.ignoringUnknownFields = ignoreUnknownFields;
       this.recursionLimit = recursionLimit;
+      this.usingStreamingParser = usingStreamingParser;
     }
 
     /**
@@ -438,7 +482,8 @@ public class JsonFormat {
           com.google.protobuf.TypeRegistry.getEmptyTypeRegistry(),
           oldRegistry,
           ignoringUnknownFields,
-          recursionLimit);
+          recursionLimit,
+          usingStreamingParser);
     }
 
     /**
@@ -452,7 +497,8 @@ public class JsonFormat {
           || this.registry != com.google.protobuf.TypeRegistry.getEmptyTypeRegistry()) {
         throw new IllegalArgumentException("Only one registry is allowed.");
       }
-      return new Parser(registry, oldRegistry, ignoringUnknownFields, recursionLimit);
+      return new Parser(
+          registry, oldRegistry, ignoringUnknownFields, recursionLimit, usingStreamingParser);
     }
 
     /**
@@ -460,7 +506,22 @@ public class JsonFormat {
      * encountered. The new Parser clones all other configurations from this Parser.
      */
     public Parser ignoringUnknownFields() {
-      return new Parser(this.registry, oldRegistry, true, recursionLimit);
+      return new Parser(this.registry, oldRegistry, true, recursionLimit, usingStreamingParser);
+    }
+
+    /**
+     * Creates a new {@link Parser} that merges JSON tokens directly into the message builder
+     * instead of first building a {@link JsonElement} tree of the whole input. Peak memory use
+     * then depends on the nesting depth of the message rather than on the size of the document.
+     * The new Parser clones all other configurations from this Parser.
+     *
+     * <p>The accepted input and the resulting messages are the same as for the default parser,
+     * with one exception: a JSON object that repeats the same key is rejected instead of keeping
+     * the last value. An {@code Any} whose {@code "@type"} is not the first key is buffered and
+     * parsed the same way as by the default parser.
+     */
+    public Parser usingStreamingParser() {
+      return new Parser(registry, oldRegistry, ignoringUnknownFields, recursionLimit, true);
     }
 
     /**
@@ -472,8 +533,13 @@ public class JsonFormat {
     public void merge(String json, Message.Builder builder) throws InvalidProtocolBufferException {
       // TODO(xiaofeng): Investigate the allocation overhead and optimize for
       // mobile.
-      new ParserImpl(registry, oldRegistry, ignoringUnknownFields, recursionLimit)
-          .merge(json, builder);
+      ParserImpl parser =
+          new ParserImpl(registry, oldRegistry, ignoringUnknownFields, recursionLimit);
+      if (usingStreamingParser) {
+        parser.mergeStreaming(json, builder);
+      } else {
+        parser.merge(json, builder);
+      }
     }
 
     /**
@@ -486,13 +552,19 @@ public class JsonFormat {
     public void merge(Reader json, Message.Builder builder) throws IOException {
       // TODO(xiaofeng): Investigate the allocation overhead and optimize for
       // mobile.
-      new ParserImpl(registry, oldRegistry, ignoringUnknownFields, recursionLimit)
-          .merge(json, builder);
+      ParserImpl parser =
+          new ParserImpl(registry, oldRegistry, ignoringUnknownFields, recursionLimit);
+      if (usingStreamingParser) {
+        parser.mergeStreaming(json, builder);
+      } else {
+        parser.merge(json, builder);
+      }
     }
 
     // For testing only.
     Parser usingRecursionLimit(int recursionLimit) {
-      return new Parser(registry, oldRegistry, ignoringUnknownFields, recursionLimit);
+      return new Parser(
+          registry, oldRegistry, ignoringUnknownFields, recursionLimit, usingStreamingParser);
     }
   }
 
@@ -621,6 +693,33 @@ public class JsonFormat {
     void outdent();
 
     void print(final CharSequence text) throws IOException;
+
+    /** Prints a double-quoted JSON string, escaped the same way as Gson does. */
+    void printString(final String value) throws IOException;
+
+    /** Prints a field name followed by its colon. */
+    void printFieldName(final JsonFieldName name) throws IOException;
+
+    /** Prints a signed decimal integer. */
+    void printLong(final long value) throws IOException;
+  }
+
+  private static class GsonHolder {
+    private static final Gson DEFAULT_GSON = new GsonBuilder().create();
+  }
+
+  /**
+   * A field name as printed by a {@link Printer}, i.e. {@code "name":} plus the separator, kept both
+   * as text and as UTF-8 bytes so that it is only rendered once per Printer.
+   */
+  private static final class JsonFieldName {
+    private final String text;
+    private final byte[] utf8;
+
+    private JsonFieldName(String name, CharSequence blankOrSpace) {
+      this.text = "\"" + name + "\":" + blankOrSpace;
+      this.utf8 = text.getBytes(StandardCharsets.UTF_8);
+    }
   }
 
   /**
@@ -646,6 +745,21 @@ public class JsonFormat {
     public void print(final CharSequence text) throws IOException {
       output.append(text);
     }
+
+    @Override
+    public void printString(final String value) throws IOException {
+      output.append(GsonHolder.DEFAULT_GSON.toJson(value));
+    }
+
+    @Override
+    public void printFieldName(final JsonFieldName name) throws IOException {
+      output.append(name.text);
+    }
+
+    @Override
+    public void printLong(final long value) throws IOException {
+      output.append(Long.toString(value));
+    }
   }
   /**
    * A TextGenerator adds indentation when writing formatted text.
@@ -695,6 +809,22 @@ public class JsonFormat {
       write(text.subSequence(pos, size));
     }
 
+    @Override
+    public void printString(final String value) throws IOException {
+      // Escaped strings never contain a raw newline.
+      write(GsonHolder.DEFAULT_GSON.toJson(value));
+    }
+
+    @Override
+    public void printFieldName(final JsonFieldName name) throws IOException {
+      write(name.text);
+    }
+
+    @Override
+    public void printLong(final long value) throws IOException {
+      write(Long.toString(value));
+    }
+
     private void write(final CharSequence data) throws IOException {
       if (data.length() == 0) {
         return;
@@ -707,6 +837,263 @@ public class JsonFormat {
     }
   }
 
+  /**
+   * A TextGenerator that encodes its output as UTF-8 into a byte buffer and writes it to an
+   * {@link OutputStream} in chunks. It produces the same text as {@link CompactTextGenerator} or
+   * {@link PrettyTextGenerator}, without allocating for the common cases.
+   */
+  private static final class Utf8TextGenerator implements TextGenerator {
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    // Same approach as com.google.protobuf.ByteBufferWriter: keep one buffer per thread, and let
+    // the GC reclaim it under memory pressure.
+    private static final ThreadLocal<SoftReference<byte[]>> BUFFER =
+        new ThreadLocal<SoftReference<byte[]>>();
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+    private final OutputStream output;
+    private final boolean pretty;
+    private byte[] buffer;
+    private int position;
+    private int indentLevel;
+    private boolean atStartOfLine = true;
+
+    private Utf8TextGenerator(final OutputStream output, boolean omittingInsignificantWhitespace) {
+      this.output = output;
+      this.pretty = !omittingInsignificantWhitespace;
+      this.buffer = acquireBuffer();
+    }
+
+    private static byte[] acquireBuffer() {
+      SoftReference<byte[]> reference = BUFFER.get();
+      byte[] buffer = reference != null ? reference.get() : null;
+      if (buffer == null) {
+        return new byte[BUFFER_SIZE];
+      }
+      // Take the buffer out of the cache while it is in use, in case writeTo() is re-entered from
+      // the output stream on the same thread.
+      BUFFER.set(null);
+      return buffer;
+    }
+
+    /** Returns the buffer to the per-thread cache. The generator must not be used afterwards. */
+    void release() {
+      if (buffer != null) {
+        BUFFER.set(new SoftReference<byte[]>(buffer));
+        buffer = null;
+      }
+    }
+
+    /** Writes all buffered bytes to the output stream. */
+    void flush() throws IOException {
+      if (position > 0) {
+        output.write(buffer, 0, position);
+        position = 0;
+      }
+    }
+
+    @Override
+    public void indent() {
+      indentLevel++;
+    }
+
+    @Override
+    public void outdent() {
+      if (indentLevel == 0) {
+        throw new IllegalArgumentException(" Outdent() without matching Indent().");
+      }
+      indentLevel--;
+    }
+
+    @Override
+    public void print(final CharSequence text) throws IOException {
+      final int size = text.length();
+      for (int i = 0; i < size; i++) {
+        char c = text.charAt(i);
+        startLine();
+        if (c == '\n') {
+          writeByte('\n');
+          atStartOfLine = true;
+          continue;
+        }
+        if (Character.isHighSurrogate(c) && i + 1 < size) {
+          char low = text.charAt(i + 1);
+          if (Character.isLowSurrogate(low)) {
+            writeCodePoint(Character.toCodePoint(c, low));
+            i++;
+            continue;
+          }
+        }
+        writeChar(c);
+      }
+    }
+
+    @Override
+    public void printString(final String value) throws IOException {
+      startLine();
+      writeByte('"');
+      final int size = value.length();
+      for (int i = 0; i < size; i++) {
+        char c = value.charAt(i);
+        switch (c) {
+          case '"':
+            writeEscape('"');
+            break;
+          case '\\':
+            writeEscape('\\');
+            break;
+          case '\t':
+            writeEscape('t');
+            break;
+          case '\b':
+            writeEscape('b');
+            break;
+          case '\n':
+            writeEscape('n');
+            break;
+          case '\r':
+            writeEscape('r');
+            break;
+          case '\f':
+            writeEscape('f');
+            break;
+          // Gson escapes these by default so that the output is safe to embed in HTML.
+          case '<':
+          case '>':
+          case '&':
+          case '=':
+          case '\'':
+          case '\u2028':
+          case '\u2029':
+            writeUnicodeEscape(c);
+            break;
+          default:
+            if (c < 0x20) {
+              writeUnicodeEscape(c);
+            } else if (c < 0x80) {
+              writeByte(c);
+            } else if (Character.isHighSurrogate(c)
+                && i + 1 < size
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+              writeCodePoint(Character.toCodePoint(c, value.charAt(i + 1)));
+              i++;
+            } else {
+              writeChar(c);
+            }
+        }
+      }
+      writeByte('"');
+    }
+
+    @Override
+    public void printFieldName(final JsonFieldName name) throws IOException {
+      startLine();
+      writeBytes(name.utf8);
+    }
+
+    @Override
+    public void printLong(long value) throws IOException {
+      startLine();
+      if (value == Long.MIN_VALUE) {
+        print(Long.toString(value));
+        return;
+      }
+      ensureCapacity(20);
+      if (value < 0) {
+        buffer[position++] = '-';
+        value = -value;
+      }
+      int digits = 1;
+      for (long rest = value / 10; rest != 0; rest /= 10) {
+        digits++;
+      }
+      int end = position + digits;
+      for (int i = end - 1; i >= position; i--) {
+        buffer[i] = (byte) ('0' + (int) (value % 10));
+        value /= 10;
+      }
+      position = end;
+    }
+
+    private void startLine() throws IOException {
+      if (atStartOfLine) {
+        atStartOfLine = false;
+        if (pretty) {
+          for (int i = 0; i < indentLevel; i++) {
+            writeByte(' ');
+            writeByte(' ');
+          }
+        }
+      }
+    }
+
+    private void writeEscape(char c) throws IOException {
+      writeByte('\\');
+      writeByte(c);
+    }
+
+    private void writeUnicodeEscape(char c) throws IOException {
+      ensureCapacity(6);
+      buffer[position++] = '\\';
+      buffer[position++] = 'u';
+      buffer[position++] = HEX_DIGITS[(c >> 12) & 0xF];
+      buffer[position++] = HEX_DIGITS[(c >> 8) & 0xF];
+      buffer[position++] = HEX_DIGITS[(c >> 4) & 0xF];
+      buffer[position++] = HEX_DIGITS[c & 0xF];
+    }
+
+    /** Encodes a single UTF-16 unit; unpaired surrogates become '?' as in String.getBytes(). */
+    private void writeChar(char c) throws IOException {
+      ensureCapacity(3);
+      if (c < 0x80) {
+        buffer[position++] = (byte) c;
+      } else if (c < 0x800) {
+        buffer[position++] = (byte) (0xC0 | (c >>> 6));
+        buffer[position++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        buffer[position++] = '?';
+      } else {
+        buffer[position++] = (byte) (0xE0 | (c >>> 12));
+        buffer[position++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+        buffer[position++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+
+    private void writeCodePoint(int codePoint) throws IOException {
+      ensureCapacity(4);
+      buffer[position++] = (byte) (0xF0 | (codePoint >>> 18));
+      buffer[position++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+      buffer[position++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+      buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+    }
+
+    private void writeByte(int b) throws IOException {
+      if (position == buffer.length) {
+        flush();
+      }
+      buffer[position++] = (byte) b;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+      if (bytes.length > buffer.length - position) {
+        flush();
+        if (bytes.length > buffer.length) {
+          output.write(bytes);
+          return;
+        }
+      }
+      System.arraycopy(bytes, 0, buffer, position, bytes.length);
+      position += bytes.length;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+      if (buffer.length - position < length) {
+        flush();
+      }
+    }
+  }
+
   /**
    * A Printer converts protobuf messages to JSON format.
    */
@@ -719,14 +1106,14 @@ public class JsonFormat {
     private final boolean printingEnumsAsInts;
     private final boolean sortingMapKeys;
     private final TextGenerator generator;
-    // We use Gson to help handle string escapes.
-    private final Gson gson;
+    private final Map<Descriptor, JsonFieldName[]> fieldNames;
     private final CharSequence blankOrSpace;
     private final CharSequence blankOrNewLine;
-
-    private static class GsonHolder {
-      private static final Gson DEFAULT_GSON = new GsonBuilder().create();
-    }
+    // Punctuation followed by the whitespace above, so that it isn't concatenated on every use.
+    private final CharSequence openBraceAndNewLine;
+    private final CharSequence commaAndNewLine;
+    private final CharSequence commaAndSpace;
+    private final CharSequence colonAndSpace;
 
     PrinterImpl(
         com.google.protobuf.TypeRegistry registry,
@@ -734,10 +1121,11 @@ public class JsonFormat {
         boolean alwaysOutputDefaultValueFields,
         Set<FieldDescriptor> includingDefaultValueFields,
         boolean preservingProtoFieldNames,
-        Appendable jsonOutput,
+        TextGenerator generator,
         boolean omittingInsignificantWhitespace,
         boolean printingEnumsAsInts,
-        boolean sortingMapKeys) {
+        boolean sortingMapKeys,
+        Map<Descriptor, JsonFieldName[]> fieldNames) {
       this.registry = registry;
       this.oldRegistry = oldRegistry;
       this.alwaysOutputDefaultValueFields = alwaysOutputDefaultValueFields;
@@ -745,16 +1133,23 @@ public class JsonFormat {
       this.preservingProtoFieldNames = preservingProtoFieldNames;
       this.printingEnumsAsInts = printingEnumsAsInts;
       this.sortingMapKeys = sortingMapKeys;
-      this.gson = GsonHolder.DEFAULT_GSON;
+      this.generator = generator;
+      this.fieldNames = fieldNames;
       // json format related properties, determined by printerType
       if (omittingInsignificantWhitespace) {
-        this.generator = new CompactTextGenerator(jsonOutput);
         this.blankOrSpace = "";
         this.blankOrNewLine = "";
+        this.openBraceAndNewLine = "{";
+        this.commaAndNewLine = ",";
+        this.commaAndSpace = ",";
+        this.colonAndSpace = ":";
       } else {
-        this.generator = new PrettyTextGenerator(jsonOutput);
         this.blankOrSpace = " ";
         this.blankOrNewLine = "\n";
+        this.openBraceAndNewLine = "{\n";
+        this.commaAndNewLine = ",\n";
+        this.commaAndSpace = ", ";
+        this.colonAndSpace = ": ";
       }
     }
 
@@ -892,10 +1287,14 @@ public class JsonFormat {
       if (printer != null) {
         // If the type is one of the well-known types, we use a special
         // formatting.
-        generator.print("{" + blankOrNewLine);
+        generator.print(openBraceAndNewLine);
         generator.indent();
-        generator.print("\"@type\":" + blankOrSpace + gson.toJson(typeUrl) + "," + blankOrNewLine);
-        generator.print("\"value\":" + blankOrSpace);
+        generator.print("\"@type\":");
+        generator.print(blankOrSpace);
+        generator.printString(typeUrl);
+        generator.print(commaAndNewLine);
+        generator.print("\"value\":");
+        generator.print(blankOrSpace);
         printer.print(this, contentMessage);
         generator.print(blankOrNewLine);
         generator.outdent();
@@ -986,12 +1385,14 @@ public class JsonFormat {
 
     /** Prints a regular message with an optional type URL. */
     private void print(MessageOrBuilder message, String typeUrl) throws IOException {
-      generator.print("{" + blankOrNewLine);
+      generator.print(openBraceAndNewLine);
       generator.indent();
 
       boolean printedField = false;
       if (typeUrl != null) {
-        generator.print("\"@type\":" + blankOrSpace + gson.toJson(typeUrl));
+        generator.print("\"@type\":");
+        generator.print(blankOrSpace);
+        generator.printString(typeUrl);
         printedField = true;
       }
       Map<FieldDescriptor, Object> fieldsToPrint = null;
@@ -1022,7 +1423,7 @@ public class JsonFormat {
       for (Map.Entry<FieldDescriptor, Object> field : fieldsToPrint.entrySet()) {
         if (printedField) {
           // Add line-endings for the previous field.
-          generator.print("," + blankOrNewLine);
+          generator.print(commaAndNewLine);
         } else {
           printedField = true;
         }
@@ -1038,11 +1439,7 @@ public class JsonFormat {
     }
 
     private void printField(FieldDescriptor field, Object value) throws IOException {
-      if (preservingProtoFieldNames) {
-        generator.print("\"" + field.getName() + "\":" + blankOrSpace);
-      } else {
-        generator.print("\"" + field.getJsonName() + "\":" + blankOrSpace);
-      }
+      generator.printFieldName(getFieldName(field));
       if (field.isMapField()) {
         printMapFieldValue(field, value);
       } else if (field.isRepeated()) {
@@ -1052,13 +1449,37 @@ public class JsonFormat {
       }
     }
 
+    private JsonFieldName getFieldName(FieldDescriptor field) {
+      if (field.isExtension()) {
+        // Extensions are indexed within their scope rather than within the containing type.
+        return newFieldName(field);
+      }
+      Descriptor type = field.getContainingType();
+      JsonFieldName[] names = fieldNames.get(type);
+      if (names == null) {
+        List<FieldDescriptor> fields = type.getFields();
+        names = new JsonFieldName[fields.size()];
+        for (FieldDescriptor typeField : fields) {
+          names[typeField.getIndex()] = newFieldName(typeField);
+        }
+        // Concurrent printers may compute the same names; either copy is fine to keep.
+        fieldNames.put(type, names);
+      }
+      return names[field.getIndex()];
+    }
+
+    private JsonFieldName newFieldName(FieldDescriptor field) {
+      return new JsonFieldName(
+          preservingProtoFieldNames ? field.getName() : field.getJsonName(), blankOrSpace);
+    }
+
     @SuppressWarnings("rawtypes")
     private void printRepeatedFieldValue(FieldDescriptor field, Object value) throws IOException {
       generator.print("[");
       boolean printedElement = false;
       for (Object element : (List) value) {
         if (printedElement) {
-          generator.print("," + blankOrSpace);
+          generator.print(commaAndSpace);
         } else {
           printedElement = true;
         }
@@ -1075,7 +1496,7 @@ public class JsonFormat {
       if (keyField == null || valueField == null) {
         throw new InvalidProtocolBufferException("Invalid map field.");
       }
-      generator.print("{" + blankOrNewLine);
+      generator.print(openBraceAndNewLine);
       generator.indent();
 
       @SuppressWarnings("unchecked") // Object guaranteed to be a List for a map field.
@@ -1107,13 +1528,13 @@ public class JsonFormat {
         Object entryKey = entry.getField(keyField);
         Object entryValue = entry.getField(valueField);
         if (printedElement) {
-          generator.print("," + blankOrNewLine);
+          generator.print(commaAndNewLine);
         } else {
           printedElement = true;
         }
         // Key fields are always double-quoted.
         printSingleFieldValue(keyField, entryKey, true);
-        generator.print(":" + blankOrSpace);
+        generator.print(colonAndSpace);
         printSingleFieldValue(valueField, entryValue);
       }
       if (printedElement) {
@@ -1143,7 +1564,7 @@ public class JsonFormat {
           if (alwaysWithQuotes) {
             generator.print("\"");
           }
-          generator.print(((Integer) value).toString());
+          generator.printLong((Integer) value);
           if (alwaysWithQuotes) {
             generator.print("\"");
           }
@@ -1152,7 +1573,9 @@ public class JsonFormat {
         case INT64:
         case SINT64:
         case SFIXED64:
-          generator.print("\"" + ((Long) value).toString() + "\"");
+          generator.print("\"");
+          generator.printLong((Long) value);
+          generator.print("\"");
           break;
 
         case BOOL:
@@ -1216,7 +1639,7 @@ public class JsonFormat {
           if (alwaysWithQuotes) {
             generator.print("\"");
           }
-          generator.print(unsignedToString((Integer) value));
+          generator.printLong(((Integer) value) & 0x00000000FFFFFFFFL);
           if (alwaysWithQuotes) {
             generator.print("\"");
           }
@@ -1224,11 +1647,18 @@ public class JsonFormat {
 
         case UINT64:
         case FIXED64:
-          generator.print("\"" + unsignedToString((Long) value) + "\"");
+          generator.print("\"");
+          long longValue = (Long) value;
+          if (longValue >= 0) {
+            generator.printLong(longValue);
+          } else {
+            generator.print(unsignedToString(longValue));
+          }
+          generator.print("\"");
           break;
 
         case STRING:
-          generator.print(gson.toJson(value));
+          generator.printString((String) value);
           break;
 
         case BYTES:
@@ -1250,9 +1680,11 @@ public class JsonFormat {
             }
           } else {
             if (printingEnumsAsInts || ((EnumValueDescriptor) value).getIndex() == -1) {
-              generator.print(String.valueOf(((EnumValueDescriptor) value).getNumber()));
+              generator.printLong(((EnumValueDescriptor) value).getNumber());
             } else {
-              generator.print("\"" + ((EnumValueDescriptor) value).getName() + "\"");
+              generator.print("\"");
+              generator.print(((EnumValueDescriptor) value).getName());
+              generator.print("\"");
             }
           }
           break;
@@ -1265,15 +1697,6 @@ public class JsonFormat {
     }
   }
 
-  /** Convert an unsigned 32-bit integer to a string. */
-  private static String unsignedToString(final int value) {
-    if (value >= 0) {
-      return Integer.toString(value);
-    } else {
-      return Long.toString(value & 0x00000000FFFFFFFFL);
-    }
-  }
-
   /** Convert an unsigned 64-bit integer to a string. */
   private static String unsignedToString(final long value) {
     if (value >= 0) {
@@ -1347,6 +1770,43 @@ public class JsonFormat {
       }
     }
 
+    void mergeStreaming(Reader json, Message.Builder builder) throws IOException {
+      try {
+        JsonReader reader = new JsonReader(json);
+        // JsonParser.parse() always reads leniently, so the streaming parser does the same in
+        // order to accept exactly the inputs the tree-based parser accepts.
+        reader.setLenient(true);
+        mergeStreaming(reader, builder);
+      } catch (InvalidProtocolBufferException e) {
+        throw e;
+      } catch (MalformedJsonException | EOFException e) {
+        throw new InvalidProtocolBufferException(e.getMessage());
+      } catch (IOException e) {
+        throw e;
+      } catch (JsonIOException e) {
+        // Unwrap IOException.
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        } else {
+          throw new InvalidProtocolBufferException(e.getMessage());
+        }
+      } catch (Exception e) {
+        // We convert all exceptions from JSON parsing to our own exceptions.
+        throw new InvalidProtocolBufferException(e.getMessage());
+      }
+    }
+
+    void mergeStreaming(String json, Message.Builder builder)
+        throws InvalidProtocolBufferException {
+      try {
+        mergeStreaming(new StringReader(json), builder);
+      } catch (InvalidProtocolBufferException e) {
+        throw e;
+      } catch (IOException e) {
+        throw new InvalidProtocolBufferException(e.getMessage());
+      }
+    }
+
     private interface WellKnownTypeParser {
       void merge(ParserImpl parser, JsonElement json, Message.Builder builder)
           throws InvalidProtocolBufferException;
@@ -1528,13 +1988,7 @@ public class JsonFormat {
         throw new InvalidProtocolBufferException("Missing type url when parsing: " + json);
       }
       String typeUrl = typeUrlElement.getAsString();
-      Descriptor contentType = registry.getDescriptorForTypeUrl(typeUrl);
-      if (contentType == null) {
-        contentType = oldRegistry.getDescriptorForTypeUrl(typeUrl);
-        if (contentType == null) {
-          throw new InvalidProtocolBufferException("Cannot resolve type: " + typeUrl);
-        }
-      }
+      Descriptor contentType = resolveAnyContentType(typeUrl);
       builder.setField(typeUrlField, typeUrl);
       Message.Builder contentBuilder =
           DynamicMessage.getDefaultInstance(contentType).newBuilderForType();
@@ -1550,6 +2004,18 @@ public class JsonFormat {
       builder.setField(valueField, contentBuilder.build().toByteString());
     }
 
+    private Descriptor resolveAnyContentType(String typeUrl)
+        throws InvalidProtocolBufferException {
+      Descriptor contentType = registry.getDescriptorForTypeUrl(typeUrl);
+      if (contentType == null) {
+        contentType = oldRegistry.getDescriptorForTypeUrl(typeUrl);
+        if (contentType == null) {
+          throw new InvalidProtocolBufferException("Cannot resolve type: " + typeUrl);
+        }
+      }
+      return contentType;
+    }
+
     private void mergeFieldMask(JsonElement json, Message.Builder builder)
         throws InvalidProtocolBufferException {
       FieldMask value = FieldMaskUtil.fromJsonString(json.getAsString());
@@ -1737,6 +2203,313 @@ public class JsonFormat {
       }
     }
 
+    // The methods below are the streaming counterparts of the tree-based merge methods above. They
+    // consume exactly one JSON value from the reader and write it straight into the builder.
+    // Scalars are still materialized as JsonPrimitives so that the parse*() methods are shared,
+    // but no JsonObject or JsonArray is ever built except in the fallbacks noted below.
+
+    private void mergeStreaming(JsonReader reader, Message.Builder builder) throws IOException {
+      String typeName = builder.getDescriptorForType().getFullName();
+      WellKnownTypeParser specialParser = wellKnownTypeParsers.get(typeName);
+      if (specialParser == null) {
+        mergeMessage(reader, builder);
+      } else if (typeName.equals(Any.getDescriptor().getFullName())) {
+        mergeAny(reader, builder);
+      } else if (typeName.equals(Struct.getDescriptor().getFullName())) {
+        mergeStruct(reader, builder);
+      } else if (typeName.equals(ListValue.getDescriptor().getFullName())) {
+        mergeListValue(reader, builder);
+      } else if (typeName.equals(Value.getDescriptor().getFullName())) {
+        mergeValue(reader, builder);
+      } else {
+        // Wrappers, Timestamp, Duration and FieldMask are all represented by a single scalar.
+        specialParser.merge(this, readPrimitive(reader), builder);
+      }
+    }
+
+    /**
+     * Reads the next value as a {@link JsonElement}. Scalars produce a single {@link JsonPrimitive}
+     * or {@link JsonNull}. Objects and arrays are only expected here for malformed input, where
+     * they are buffered so that the error reported matches the tree-based parser.
+     */
+    private JsonElement readPrimitive(JsonReader reader) throws IOException {
+      switch (reader.peek()) {
+        case STRING:
+          return new JsonPrimitive(reader.nextString());
+        case BOOLEAN:
+          return new JsonPrimitive(reader.nextBoolean());
+        case NULL:
+          reader.nextNull();
+          return JsonNull.INSTANCE;
+        default:
+          // Numbers are read through Gson so that they keep their original textual form.
+          return jsonParser.parse(reader);
+      }
+    }
+
+    private void mergeMessage(JsonReader reader, Message.Builder builder) throws IOException {
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+        throw new InvalidProtocolBufferException(
+            "Expect message object but got: " + jsonParser.parse(reader));
+      }
+      reader.beginObject();
+      mergeFields(reader, builder, false);
+      reader.endObject();
+    }
+
+    private void mergeFields(JsonReader reader, Message.Builder builder, boolean skipTypeUrl)
+        throws IOException {
+      Map<String, FieldDescriptor> fieldNameMap = getFieldNameMap(builder.getDescriptorForType());
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (skipTypeUrl && name.equals("@type")) {
+          reader.skipValue();
+          continue;
+        }
+        FieldDescriptor field = fieldNameMap.get(name);
+        if (field == null) {
+          if (ignoringUnknownFields) {
+            reader.skipValue();
+            continue;
+          }
+          throw new InvalidProtocolBufferException(
+              "Cannot find field: "
+                  + name
+                  + " in message "
+                  + builder.getDescriptorForType().getFullName());
+        }
+        mergeField(field, reader, builder);
+      }
+    }
+
+    private void mergeAny(JsonReader reader, Message.Builder builder) throws IOException {
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+        mergeAny(jsonParser.parse(reader), builder);
+        return;
+      }
+      reader.beginObject();
+      if (!reader.hasNext()) {
+        reader.endObject();
+        mergeAny(new JsonObject(), builder);
+        return;
+      }
+      String firstName = reader.nextName();
+      if (!firstName.equals("@type")) {
+        // The content type is only known once "@type" has been seen, so the object has to be
+        // buffered when it comes later.
+        JsonObject object = new JsonObject();
+        object.add(firstName, jsonParser.parse(reader));
+        while (reader.hasNext()) {
+          object.add(reader.nextName(), jsonParser.parse(reader));
+        }
+        reader.endObject();
+        mergeAny(object, builder);
+        return;
+      }
+
+      Descriptor descriptor = builder.getDescriptorForType();
+      FieldDescriptor typeUrlField = descriptor.findFieldByName("type_url");
+      FieldDescriptor valueField = descriptor.findFieldByName("value");
+      if (typeUrlField == null
+          || valueField == null
+          || typeUrlField.getType() != FieldDescriptor.Type.STRING
+          || valueField.getType() != FieldDescriptor.Type.BYTES) {
+        throw new InvalidProtocolBufferException("Invalid Any type.");
+      }
+      String typeUrl = readPrimitive(reader).getAsString();
+      Descriptor contentType = resolveAnyContentType(typeUrl);
+      builder.setField(typeUrlField, typeUrl);
+      Message.Builder contentBuilder =
+          DynamicMessage.getDefaultInstance(contentType).newBuilderForType();
+      if (wellKnownTypeParsers.containsKey(contentType.getFullName())) {
+        while (reader.hasNext()) {
+          if (reader.nextName().equals("value")) {
+            mergeStreaming(reader, contentBuilder);
+          } else {
+            reader.skipValue();
+          }
+        }
+      } else {
+        mergeFields(reader, contentBuilder, true);
+      }
+      reader.endObject();
+      builder.setField(valueField, contentBuilder.build().toByteString());
+    }
+
+    private void mergeStruct(JsonReader reader, Message.Builder builder) throws IOException {
+      Descriptor descriptor = builder.getDescriptorForType();
+      FieldDescriptor field = descriptor.findFieldByName("fields");
+      if (field == null) {
+        throw new InvalidProtocolBufferException("Invalid Struct type.");
+      }
+      mergeMapField(field, reader, builder);
+    }
+
+    private void mergeListValue(JsonReader reader, Message.Builder builder) throws IOException {
+      Descriptor descriptor = builder.getDescriptorForType();
+      FieldDescriptor field = descriptor.findFieldByName("values");
+      if (field == null) {
+        throw new InvalidProtocolBufferException("Invalid ListValue type.");
+      }
+      mergeRepeatedField(field, reader, builder);
+    }
+
+    private void mergeValue(JsonReader reader, Message.Builder builder) throws IOException {
+      Descriptor type = builder.getDescriptorForType();
+      switch (reader.peek()) {
+        case BOOLEAN:
+          builder.setField(type.findFieldByName("bool_value"), reader.nextBoolean());
+          break;
+        case NUMBER:
+          builder.setField(
+              type.findFieldByName("number_value"), Double.parseDouble(reader.nextString()));
+          break;
+        case STRING:
+          builder.setField(type.findFieldByName("string_value"), reader.nextString());
+          break;
+        case BEGIN_OBJECT:
+          {
+            FieldDescriptor field = type.findFieldByName("struct_value");
+            Message.Builder structBuilder = builder.newBuilderForField(field);
+            mergeStreaming(reader, structBuilder);
+            builder.setField(field, structBuilder.build());
+            break;
+          }
+        case BEGIN_ARRAY:
+          {
+            FieldDescriptor field = type.findFieldByName("list_value");
+            Message.Builder listBuilder = builder.newBuilderForField(field);
+            mergeStreaming(reader, listBuilder);
+            builder.setField(field, listBuilder.build());
+            break;
+          }
+        case NULL:
+          reader.nextNull();
+          builder.setField(
+              type.findFieldByName("null_value"), NullValue.NULL_VALUE.getValueDescriptor());
+          break;
+        default:
+          throw new IllegalStateException("Unexpected json data: " + reader.peek());
+      }
+    }
+
+    private void mergeField(FieldDescriptor field, JsonReader reader, Message.Builder builder)
+        throws IOException {
+      if (field.isRepeated()) {
+        if (builder.getRepeatedFieldCount(field) > 0) {
+          throw new InvalidProtocolBufferException(
+              "Field " + field.getFullName() + " has already been set.");
+        }
+      } else {
+        if (builder.hasField(field)) {
+          throw new InvalidProtocolBufferException(
+              "Field " + field.getFullName() + " has already been set.");
+        }
+      }
+      if (field.isRepeated() && reader.peek() == JsonToken.NULL) {
+        // We allow "null" as value for all field types and treat it as if the
+        // field is not present.
+        reader.nextNull();
+        return;
+      }
+      if (field.isMapField()) {
+        mergeMapField(field, reader, builder);
+      } else if (field.isRepeated()) {
+        mergeRepeatedField(field, reader, builder);
+      } else if (field.getContainingOneof() != null) {
+        Object value = readFieldValue(field, reader, builder);
+        if (value == null) {
+          // A field interpreted as "null" is means it's treated as absent.
+          return;
+        }
+        if (builder.getOneofFieldDescriptor(field.getContainingOneof()) != null) {
+          throw new InvalidProtocolBufferException(
+              "Cannot set field "
+                  + field.getFullName()
+                  + " because another field "
+                  + builder.getOneofFieldDescriptor(field.getContainingOneof()).getFullName()
+                  + " belonging to the same oneof has already been set ");
+        }
+        builder.setField(field, value);
+      } else {
+        Object value = readFieldValue(field, reader, builder);
+        if (value != null) {
+          // A field interpreted as "null" is means it's treated as absent.
+          builder.setField(field, value);
+        }
+      }
+    }
+
+    private void mergeMapField(FieldDescriptor field, JsonReader reader, Message.Builder builder)
+        throws IOException {
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+        throw new InvalidProtocolBufferException(
+            "Expect a map object but found: " + jsonParser.parse(reader));
+      }
+      Descriptor type = field.getMessageType();
+      FieldDescriptor keyField = type.findFieldByName("key");
+      FieldDescriptor valueField = type.findFieldByName("value");
+      if (keyField == null || valueField == null) {
+        throw new InvalidProtocolBufferException("Invalid map field: " + field.getFullName());
+      }
+      reader.beginObject();
+      while (reader.hasNext()) {
+        Message.Builder entryBuilder = builder.newBuilderForField(field);
+        Object key = parseFieldValue(keyField, new JsonPrimitive(reader.nextName()), entryBuilder);
+        Object value = readFieldValue(valueField, reader, entryBuilder);
+        if (value == null) {
+          if (ignoringUnknownFields && valueField.getType() == Type.ENUM) {
+            continue;
+          } else {
+            throw new InvalidProtocolBufferException("Map value cannot be null.");
+          }
+        }
+        entryBuilder.setField(keyField, key);
+        entryBuilder.setField(valueField, value);
+        builder.addRepeatedField(field, entryBuilder.build());
+      }
+      reader.endObject();
+    }
+
+    private void mergeRepeatedField(
+        FieldDescriptor field, JsonReader reader, Message.Builder builder) throws IOException {
+      if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+        throw new InvalidProtocolBufferException(
+            "Expect an array but found: " + jsonParser.parse(reader));
+      }
+      reader.beginArray();
+      while (reader.hasNext()) {
+        Object value = readFieldValue(field, reader, builder);
+        if (value == null) {
+          if (ignoringUnknownFields && field.getType() == Type.ENUM) {
+            continue;
+          } else {
+            throw new InvalidProtocolBufferException(
+                "Repeated field elements cannot be null in field: " + field.getFullName());
+          }
+        }
+        builder.addRepeatedField(field, value);
+      }
+      reader.endArray();
+    }
+
+    private Object readFieldValue(FieldDescriptor field, JsonReader reader, Message.Builder builder)
+        throws IOException {
+      if (reader.peek() != JsonToken.NULL
+          && (field.getType() == FieldDescriptor.Type.MESSAGE
+              || field.getType() == FieldDescriptor.Type.GROUP)) {
+        if (currentDepth >= recursionLimit) {
+          throw new InvalidProtocolBufferException("Hit recursion limit.");
+        }
+        ++currentDepth;
+        Message.Builder subBuilder = builder.newBuilderForField(field);
+        mergeStreaming(reader, subBuilder);
+        --currentDepth;
+        return subBuilder.build();
+      }
+      return parseFieldValue(field, readPrimitive(reader), builder);
+    }
+
     private int parseInt32(JsonElement json) throws InvalidProtocolBufferException {
       try {
         return Integer.parseInt(json.getAsString());
@@ -65,6 +65,7 @@ import com.google.protobuf.util.proto.JsonTestProto.TestRecursive;
 import com.google.protobuf.util.proto.JsonTestProto.TestStruct;
 import com.google.protobuf.util.proto.JsonTestProto.TestTimestamp;
 import com.google.protobuf.util.proto.JsonTestProto.TestWrappers;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -1327,6 +1328,49 @@ public class JsonFormatTest extends TestCase {
     assertEquals(message.getOptionalString(), builder.getOptionalString());
   }
 
+  private void assertWriteToEquals(JsonFormat.Printer printer, Message message) throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    printer.writeTo(message, output);
+    assertEquals(printer.print(message), new String(output.toByteArray(), "UTF-8"));
+  }
+
+  public void testWriteTo() throws Exception {
+    TestAllTypes.Builder builder = TestAllTypes.newBuilder();
+    setAllFields(builder);
+    builder.setOptionalString("</script> \u20ac \ud834\udd20 \"\\\n\u0001\u2028");
+    builder.setOptionalUint32(-1);
+    builder.setOptionalUint64(-1L);
+    builder.setOptionalInt64(Long.MIN_VALUE);
+    TestAllTypes message = builder.build();
+    assertWriteToEquals(JsonFormat.printer(), message);
+    assertWriteToEquals(JsonFormat.printer().omittingInsignificantWhitespace(), message);
+    assertWriteToEquals(JsonFormat.printer().preservingProtoFieldNames(), message);
+    assertWriteToEquals(JsonFormat.printer().printingEnumsAsInts(), message);
+    assertWriteToEquals(JsonFormat.printer().includingDefaultValueFields(), message);
+
+    TestMap.Builder mapBuilder = TestMap.newBuilder();
+    mapBuilder.putStringToInt32Map("\u20ac", 1);
+    mapBuilder.putStringToInt32Map("foo", 99);
+    mapBuilder.putInt32ToInt32Map(-3, -3);
+    mapBuilder.putInt32ToInt32Map(10, 10);
+    assertWriteToEquals(JsonFormat.printer().sortingMapKeys(), mapBuilder.build());
+
+    JsonFormat.TypeRegistry registry =
+        JsonFormat.TypeRegistry.newBuilder().add(TestAllTypes.getDescriptor()).build();
+    JsonFormat.Printer printer = JsonFormat.printer().usingTypeRegistry(registry);
+    assertWriteToEquals(printer, TestAny.newBuilder().setAnyValue(Any.pack(message)).build());
+    assertWriteToEquals(printer, Any.pack(Int32Value.newBuilder().setValue(12345).build()));
+
+    // A long string spans several internal buffer flushes.
+    StringBuilder longString = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      longString.append("\u00e9\u20ac<");
+    }
+    assertWriteToEquals(
+        JsonFormat.printer(),
+        TestAllTypes.newBuilder().setOptionalString(longString.toString()).build());
+  }
+
   public void testIncludingDefaultValueFields() throws Exception {
     TestAllTypes message = TestAllTypes.getDefaultInstance();
     assertEquals("{\n}", JsonFormat.printer().print(message));
@@ -1724,6 +1768,145 @@ public class JsonFormatTest extends TestCase {
     }
   }
 
+  private void assertStreamingParserEquals(
+      Message message, JsonFormat.TypeRegistry registry, String json) throws Exception {
+    Message.Builder builder = message.newBuilderForType();
+    JsonFormat.parser().usingTypeRegistry(registry).usingStreamingParser().merge(json, builder);
+    assertEquals(message.toString(), builder.build().toString());
+
+    builder = message.newBuilderForType();
+    JsonFormat.parser()
+        .usingTypeRegistry(registry)
+        .usingStreamingParser()
+        .merge(new StringReader(json), builder);
+    assertEquals(message.toString(), builder.build().toString());
+  }
+
+  public void testStreamingParserAllFields() throws Exception {
+    TestAllTypes.Builder builder = TestAllTypes.newBuilder();
+    setAllFields(builder);
+    TestAllTypes message = builder.build();
+    assertStreamingParserEquals(
+        message, TypeRegistry.getEmptyTypeRegistry(), toJsonString(message));
+  }
+
+  public void testStreamingParserWellKnownTypes() throws Exception {
+    TestStruct.Builder structBuilder = TestStruct.newBuilder();
+    structBuilder
+        .getStructValueBuilder()
+        .putFields("null_value", Value.newBuilder().setNullValueValue(0).build())
+        .putFields("string_value", Value.newBuilder().setStringValue("hello").build())
+        .putFields(
+            "list_value",
+            Value.newBuilder()
+                .setListValue(
+                    ListValue.newBuilder()
+                        .addValues(Value.newBuilder().setNumberValue(1.125).build())
+                        .addValues(Value.newBuilder().setBoolValue(true).build()))
+                .build());
+    TestStruct struct = structBuilder.build();
+    assertStreamingParserEquals(struct, TypeRegistry.getEmptyTypeRegistry(), toJsonString(struct));
+
+    TestTimestamp timestamp =
+        TestTimestamp.newBuilder()
+            .setTimestampValue(Timestamps.parse("1970-01-01T00:00:00Z"))
+            .build();
+    assertStreamingParserEquals(
+        timestamp, TypeRegistry.getEmptyTypeRegistry(), toJsonString(timestamp));
+
+    TestDuration duration =
+        TestDuration.newBuilder().setDurationValue(Durations.parse("12345s")).build();
+    assertStreamingParserEquals(
+        duration, TypeRegistry.getEmptyTypeRegistry(), toJsonString(duration));
+
+    TestFieldMask fieldMask =
+        TestFieldMask.newBuilder()
+            .setFieldMaskValue(FieldMaskUtil.fromString("foo.bar,baz,foo_bar.baz"))
+            .build();
+    assertStreamingParserEquals(
+        fieldMask, TypeRegistry.getEmptyTypeRegistry(), toJsonString(fieldMask));
+
+    TestWrappers.Builder wrappersBuilder = TestWrappers.newBuilder();
+    wrappersBuilder.getInt32ValueBuilder().setValue(1);
+    wrappersBuilder.getStringValueBuilder().setValue("1");
+    TestWrappers wrappers = wrappersBuilder.build();
+    assertStreamingParserEquals(
+        wrappers, TypeRegistry.getEmptyTypeRegistry(), toJsonString(wrappers));
+  }
+
+  public void testStreamingParserAny() throws Exception {
+    JsonFormat.TypeRegistry registry =
+        JsonFormat.TypeRegistry.newBuilder().add(TestAllTypes.getDescriptor()).build();
+    TestAllTypes content = TestAllTypes.newBuilder().setOptionalInt32(1234).build();
+    TestAny message = TestAny.newBuilder().setAnyValue(Any.pack(content)).build();
+    String json = JsonFormat.printer().usingTypeRegistry(registry).print(message);
+    assertStreamingParserEquals(message, registry, json);
+
+    // "@type" is not required to be the first key.
+    assertStreamingParserEquals(
+        message,
+        registry,
+        "{\n"
+            + "  \"anyValue\": {\n"
+            + "    \"optionalInt32\": 1234,\n"
+            + "    \"@type\": \"type.googleapis.com/json_test.TestAllTypes\"\n"
+            + "  }\n"
+            + "}");
+
+    Any anyMessage = Any.pack(Any.pack(content));
+    assertStreamingParserEquals(
+        anyMessage, registry, JsonFormat.printer().usingTypeRegistry(registry).print(anyMessage));
+
+    anyMessage = Any.pack(Int32Value.newBuilder().setValue(12345).build());
+    assertStreamingParserEquals(
+        anyMessage, registry, JsonFormat.printer().usingTypeRegistry(registry).print(anyMessage));
+
+    TestAny emptyAny = TestAny.newBuilder().setAnyValue(Any.getDefaultInstance()).build();
+    assertStreamingParserEquals(emptyAny, registry, "{\"anyValue\": {}}");
+  }
+
+  public void testStreamingParserRejectsInvalidInput() throws Exception {
+    JsonFormat.Parser parser = JsonFormat.parser().usingStreamingParser();
+    try {
+      parser.merge("{\"optionalInt32\": 1, \"optionalInt32\": 2}", TestAllTypes.newBuilder());
+      fail("Exception is expected.");
+    } catch (InvalidProtocolBufferException e) {
+      // Expected.
+    }
+    try {
+      parser.merge("{\"unknownField\": [1, {\"a\": 2}]}", TestAllTypes.newBuilder());
+      fail("Exception is expected.");
+    } catch (InvalidProtocolBufferException e) {
+      // Expected.
+    }
+    try {
+      parser.merge(new StringReader("{ xxx - yyy }"), TestAllTypes.newBuilder());
+      fail("Exception is expected.");
+    } catch (InvalidProtocolBufferException e) {
+      // Expected.
+    }
+    try {
+      parser.merge("{\"optionalInt32\": 1", TestAllTypes.newBuilder());
+      fail("Exception is expected.");
+    } catch (InvalidProtocolBufferException e) {
+      // Expected.
+    }
+
+    TestAllTypes.Builder builder = TestAllTypes.newBuilder();
+    parser
+        .ignoringUnknownFields()
+        .merge("{\"unknownField\": [1, {\"a\": 2}], \"optionalInt32\": 3}", builder);
+    assertEquals(3, builder.getOptionalInt32());
+
+    String input = "{\"nested\": {\"nested\": {\"nested\": {\"nested\": {\"value\": 1}}}}}";
+    try {
+      parser.usingRecursionLimit(3).merge(input, TestRecursive.newBuilder());
+      fail("Exception is expected.");
+    } catch (InvalidProtocolBufferException e) {
+      // Expected.
+    }
+  }
+
   // Test that an error is thrown if a nested JsonObject is parsed as a primitive field.
   public void testJsonObjectForPrimitiveField() throws Exception {
     TestAllTypes.Builder builder = TestAllTypes.newBuilder();
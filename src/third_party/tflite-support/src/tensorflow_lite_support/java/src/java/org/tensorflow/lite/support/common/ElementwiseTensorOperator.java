@@ -0,0 +1,54 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.support.common;
+
+import org.tensorflow.lite.DataType;
+
+/**
+ * A {@link TensorOperator} which computes each element of its output only from the element at the
+ * same position of its input, and from the channel (the index along the last axis) of that
+ * element.
+ *
+ * <p>Consecutive element-wise operators can be fused into a single pass over the tensor data by
+ * {@link FusedTensorOperator}.
+ */
+public interface ElementwiseTensorOperator extends TensorOperator {
+    /**
+     * Returns whether the operator returns its input unchanged when applied on a tensor of {@code
+     * inputType}.
+     */
+    boolean isIdentity(DataType inputType);
+
+    /** Returns the data type of the tensor produced from a tensor of {@code inputType}. */
+    DataType getOutputDataType(DataType inputType);
+
+    /**
+     * Checks that the operator can be applied on a tensor of {@code shape}.
+     *
+     * @throws IllegalArgumentException if it can't.
+     */
+    void checkInputShape(int[] shape);
+
+    /**
+     * Applies the operator in place on {@code length} consecutive elements of a tensor, stored as
+     * floats from the start of {@code values}.
+     *
+     * @param values the values of the elements, replaced with the output values.
+     * @param length the number of elements to transform.
+     * @param firstIndex the flat index in the tensor of the first element.
+     */
+    void applyToElements(float[] values, int length, int firstIndex);
+}
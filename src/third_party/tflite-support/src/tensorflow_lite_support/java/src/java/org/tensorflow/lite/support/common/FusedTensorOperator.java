@@ -0,0 +1,182 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.support.common;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Applies a chain of {@link ElementwiseTensorOperator}s in a single pass over the tensor data,
+ * instead of copying the tensor into a new array and a new {@link TensorBuffer} for each operator.
+ *
+ * <p>The result is the same as applying the operators one after the other. It is written in place
+ * into the input {@link TensorBuffer} when the chain doesn't change the data type, and otherwise
+ * into one of two output {@link TensorBuffer}s owned by this operator, used alternately. The
+ * output of a call is therefore only valid until the call after the next one, but repeated calls
+ * on tensors of the same shape allocate no tensor memory.
+ *
+ * <p><b>WARNING:</b> Instances of {@code FusedTensorOperator} are <b>not</b> thread-safe.
+ */
+public final class FusedTensorOperator implements TensorOperator {
+    // Number of elements transformed by each operator at a time, small enough to stay in cache.
+    private static final int CHUNK_SIZE = 1024;
+
+    private final ElementwiseTensorOperator[] operators;
+    // The non-identity operators for the current input data type.
+    private final ElementwiseTensorOperator[] activeOperators;
+    private final float[] chunk = new float[CHUNK_SIZE];
+    private final TensorBuffer[] outputBuffers = new TensorBuffer[2];
+    private int nextOutputBuffer;
+
+    /**
+     * Fuses {@code operators}, applied in order.
+     *
+     * @throws IllegalArgumentException if {@code operators} is empty.
+     */
+    public FusedTensorOperator(@NonNull List<? extends ElementwiseTensorOperator> operators) {
+        SupportPreconditions.checkNotNull(operators, "Operators cannot be null.");
+        SupportPreconditions.checkArgument(!operators.isEmpty(), "Operators cannot be empty.");
+        this.operators = operators.toArray(new ElementwiseTensorOperator[0]);
+        this.activeOperators = new ElementwiseTensorOperator[this.operators.length];
+    }
+
+    /**
+     * Returns {@code operators}, in which each run of consecutive {@link
+     * ElementwiseTensorOperator}s is replaced with a {@link FusedTensorOperator}.
+     */
+    @NonNull
+    public static List<Operator<TensorBuffer>> fuse(
+            @NonNull List<? extends Operator<TensorBuffer>> operators) {
+        List<Operator<TensorBuffer>> fused = new ArrayList<>();
+        List<ElementwiseTensorOperator> run = new ArrayList<>();
+        for (Operator<TensorBuffer> op : operators) {
+            if (op instanceof ElementwiseTensorOperator) {
+                run.add((ElementwiseTensorOperator) op);
+                continue;
+            }
+            if (!run.isEmpty()) {
+                fused.add(new FusedTensorOperator(run));
+                run = new ArrayList<>();
+            }
+            fused.add(op);
+        }
+        if (!run.isEmpty()) {
+            fused.add(new FusedTensorOperator(run));
+        }
+        return fused;
+    }
+
+    @Override
+    @NonNull
+    public TensorBuffer apply(@NonNull TensorBuffer input) {
+        SupportPreconditions.checkNotNull(input, "Op cannot apply on null tensor.");
+        DataType inputType = input.getDataType();
+        DataType outputType = inputType;
+        int activeCount = 0;
+        for (ElementwiseTensorOperator op : operators) {
+            if (op.isIdentity(outputType)) {
+                continue;
+            }
+            activeOperators[activeCount++] = op;
+            outputType = op.getOutputDataType(outputType);
+        }
+        if (activeCount == 0) {
+            return input;
+        }
+
+        int[] shape = input.getShape();
+        for (int i = 0; i < activeCount; i++) {
+            activeOperators[i].checkInputShape(shape);
+        }
+        ByteBuffer inputData = input.getBuffer();
+        TensorBuffer output = input;
+        if (outputType != inputType || inputData.isReadOnly()) {
+            output = getOutputBuffer(shape, outputType, input.isDynamic());
+        }
+        ByteBuffer outputData = output.getBuffer();
+
+        int flatSize = input.getFlatSize();
+        for (int start = 0; start < flatSize; start += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, flatSize - start);
+            readChunk(inputData, inputType, start, length);
+            for (int i = 0; i < activeCount; i++) {
+                activeOperators[i].applyToElements(chunk, length, start);
+            }
+            writeChunk(outputData, outputType, start, length);
+        }
+        return output;
+    }
+
+    private void readChunk(ByteBuffer data, DataType type, int start, int length) {
+        if (type == DataType.FLOAT32) {
+            for (int i = 0; i < length; i++) {
+                chunk[i] = data.getFloat((start + i) << 2);
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                chunk[i] = data.get(start + i) & 0xff;
+            }
+        }
+    }
+
+    private void writeChunk(ByteBuffer data, DataType type, int start, int length) {
+        if (type == DataType.FLOAT32) {
+            for (int i = 0; i < length; i++) {
+                data.putFloat((start + i) << 2, chunk[i]);
+            }
+        } else {
+            // Same clamping as TensorBufferUint8#loadArray(float[], int[]).
+            for (int i = 0; i < length; i++) {
+                data.put(start + i, (byte) Math.max(Math.min(chunk[i], 255.0f), 0.0f));
+            }
+        }
+    }
+
+    /** Returns the next output buffer, reallocated if it doesn't match the requested tensor. */
+    private TensorBuffer getOutputBuffer(int[] shape, DataType type, boolean isDynamic) {
+        TensorBuffer buffer = outputBuffers[nextOutputBuffer];
+        if (buffer == null || buffer.getDataType() != type || buffer.isDynamic() != isDynamic
+                || !Arrays.equals(buffer.getShape(), shape)) {
+            if (isDynamic) {
+                buffer = TensorBuffer.createDynamic(type);
+                ByteBuffer data =
+                        ByteBuffer.allocateDirect(type.byteSize() * computeFlatSize(shape));
+                data.order(ByteOrder.nativeOrder());
+                buffer.loadBuffer(data, shape);
+            } else {
+                buffer = TensorBuffer.createFixedSize(shape, type);
+            }
+            outputBuffers[nextOutputBuffer] = buffer;
+        }
+        nextOutputBuffer = 1 - nextOutputBuffer;
+        return buffer;
+    }
+
+    private static int computeFlatSize(int[] shape) {
+        int flatSize = 1;
+        for (int s : shape) {
+            flatSize *= s;
+        }
+        return flatSize;
+    }
+}
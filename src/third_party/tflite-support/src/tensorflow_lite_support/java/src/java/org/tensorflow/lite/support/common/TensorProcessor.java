@@ -17,6 +17,8 @@ package org.tensorflow.lite.support.common;
 
 import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
 
+import java.util.List;
+
 /**
  * TensorProcessor is a helper class for preprocessing and postprocessing tensors. It could
  * transform a {@link TensorBuffer} to another by executing a chain of {@link TensorOperator}.
@@ -32,12 +34,30 @@ import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
  * @see TensorProcessor#process(TensorBuffer) to apply the processor on a {@link TensorBuffer}.
  */
 public class TensorProcessor extends SequentialProcessor<TensorBuffer> {
+    // The operators executed when fused execution is enabled, or null.
+    private final List<Operator<TensorBuffer>> fusedOperatorList;
+
     private TensorProcessor(Builder builder) {
         super(builder);
+        fusedOperatorList =
+                builder.fusedExecution ? FusedTensorOperator.fuse(operatorList) : null;
+    }
+
+    @Override
+    public TensorBuffer process(TensorBuffer x) {
+        if (fusedOperatorList == null) {
+            return super.process(x);
+        }
+        for (Operator<TensorBuffer> op : fusedOperatorList) {
+            x = op.apply(x);
+        }
+        return x;
     }
 
     /** The Builder to create an {@link TensorProcessor}, which could be executed later. */
     public static class Builder extends SequentialProcessor.Builder<TensorBuffer> {
+        private boolean fusedExecution;
+
         /**
          * Creates a Builder to build {@link TensorProcessor}.
          *
@@ -58,6 +78,21 @@ public class TensorProcessor extends SequentialProcessor<TensorBuffer> {
             return this;
         }
 
+        /**
+         * Sets whether consecutive {@link ElementwiseTensorOperator}s are executed in a single pass
+         * over the tensor by a {@link FusedTensorOperator}. Disabled by default.
+         *
+         * <p>With fused execution, the input of {@link TensorProcessor#process} may be overwritten,
+         * and its output is only valid until the call after the next one, as it may be reused by
+         * later calls. The processor is then not thread-safe.
+         *
+         * @param fusedExecution whether to fuse element-wise operators.
+         */
+        public TensorProcessor.Builder setFusedExecution(boolean fusedExecution) {
+            this.fusedExecution = fusedExecution;
+            return this;
+        }
+
         /** Completes the building process and gets the {@link TensorProcessor} instance. */
         @Override
         public TensorProcessor build() {
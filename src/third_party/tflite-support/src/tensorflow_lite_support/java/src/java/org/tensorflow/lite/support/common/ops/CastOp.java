@@ -16,12 +16,12 @@ limitations under the License.
 package org.tensorflow.lite.support.common.ops;
 
 import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.support.common.ElementwiseTensorOperator;
 import org.tensorflow.lite.support.common.SupportPreconditions;
-import org.tensorflow.lite.support.common.TensorOperator;
 import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
 
 /** Casts a {@link TensorBuffer} to a specified data type. */
-public class CastOp implements TensorOperator {
+public class CastOp implements ElementwiseTensorOperator {
     private final DataType destinationType;
 
     /**
@@ -51,4 +51,28 @@ public class CastOp implements TensorOperator {
         }
         return TensorBuffer.createFrom(input, destinationType);
     }
+
+    @Override
+    public boolean isIdentity(DataType inputType) {
+        return inputType == destinationType;
+    }
+
+    @Override
+    public DataType getOutputDataType(DataType inputType) {
+        return destinationType;
+    }
+
+    @Override
+    public void checkInputShape(int[] shape) {}
+
+    @Override
+    public void applyToElements(float[] values, int length, int firstIndex) {
+        if (destinationType != DataType.UINT8) {
+            return;
+        }
+        // Same conversion as TensorBuffer#createFrom(TensorBuffer, DataType) to UINT8.
+        for (int i = 0; i < length; i++) {
+            values[i] = Math.max(Math.min((int) values[i], 255), 0);
+        }
+    }
 }
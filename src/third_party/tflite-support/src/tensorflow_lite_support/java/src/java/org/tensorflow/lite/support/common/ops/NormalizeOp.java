@@ -17,15 +17,15 @@ package org.tensorflow.lite.support.common.ops;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.support.common.ElementwiseTensorOperator;
 import org.tensorflow.lite.support.common.SupportPreconditions;
-import org.tensorflow.lite.support.common.TensorOperator;
 import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
 import org.tensorflow.lite.support.tensorbuffer.TensorBufferFloat;
 
 /**
  * Normalizes a {@link TensorBuffer} with given mean and stddev: output = (input - mean) / stddev.
  */
-public class NormalizeOp implements TensorOperator {
+public class NormalizeOp implements ElementwiseTensorOperator {
     // mean.length should always be equal to stddev.length and always >= 1.
     private final float[] mean;
     private final float[] stddev;
@@ -137,16 +137,10 @@ public class NormalizeOp implements TensorOperator {
             return input;
         }
         int[] shape = input.getShape();
-        SupportPreconditions.checkArgument(
-                numChannels == 1 || (shape.length != 0 && shape[shape.length - 1] == numChannels),
-                "Number of means (stddevs) is not same with number of channels (size of last axis).");
+        checkInputShape(shape);
         // TODO(136750944): Eliminate the array copy here.
         float[] values = input.getFloatArray();
-        int j = 0;
-        for (int i = 0; i < values.length; i++) {
-            values[i] = (values[i] - mean[j]) / stddev[j];
-            j = (j + 1) % numChannels;
-        }
+        applyToElements(values, values.length, 0);
         TensorBuffer output;
         if (input.isDynamic()) {
             output = TensorBufferFloat.createDynamic(DataType.FLOAT32);
@@ -156,4 +150,30 @@ public class NormalizeOp implements TensorOperator {
         output.loadArray(values, shape);
         return output;
     }
+
+    @Override
+    public boolean isIdentity(DataType inputType) {
+        return isIdentityOp;
+    }
+
+    @Override
+    public DataType getOutputDataType(DataType inputType) {
+        return isIdentityOp ? inputType : DataType.FLOAT32;
+    }
+
+    @Override
+    public void checkInputShape(int[] shape) {
+        SupportPreconditions.checkArgument(
+                numChannels == 1 || (shape.length != 0 && shape[shape.length - 1] == numChannels),
+                "Number of means (stddevs) is not same with number of channels (size of last axis).");
+    }
+
+    @Override
+    public void applyToElements(float[] values, int length, int firstIndex) {
+        int j = firstIndex % numChannels;
+        for (int i = 0; i < length; i++) {
+            values[i] = (values[i] - mean[j]) / stddev[j];
+            j = (j + 1) % numChannels;
+        }
+    }
 }
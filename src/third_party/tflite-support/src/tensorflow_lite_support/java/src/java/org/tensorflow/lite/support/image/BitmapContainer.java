@@ -24,6 +24,8 @@ import android.graphics.Bitmap.Config;
 import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
 
+import java.nio.ByteBuffer;
+
 /** Holds a {@link Bitmap} and converts it to other image formats as needed. */
 final class BitmapContainer implements ImageContainer {
     private final Bitmap bitmap;
@@ -50,19 +52,29 @@ final class BitmapContainer implements ImageContainer {
     }
 
     @Override
-    public Bitmap getBitmap() {
+    public Bitmap getBitmap(ImageConversionContext context) {
         // Not making a defensive copy for performance considerations. During image processing,
         // users may need to set and get the bitmap many times.
         return bitmap;
     }
 
     @Override
-    public TensorBuffer getTensorBuffer(DataType dataType) {
+    public TensorBuffer getTensorBuffer(DataType dataType, ImageConversionContext context) {
+        if (context != null) {
+            return ImageConversions.convertBitmapToTensorBuffer(bitmap, dataType, context);
+        }
         TensorBuffer buffer = TensorBuffer.createDynamic(dataType);
         ImageConversions.convertBitmapToTensorBuffer(bitmap, buffer);
         return buffer;
     }
 
+    @Override
+    public void writeTo(DataType dataType, ByteBuffer dst, ImageConversionContext context) {
+        int size = bitmap.getWidth() * bitmap.getHeight();
+        int[] pixels = context != null ? context.getPixels(size) : new int[size];
+        ImageConversions.convertBitmapToBuffer(bitmap, dataType, dst, pixels);
+    }
+
     @Override
     public int getWidth() {
         return bitmap.getWidth();
@@ -32,8 +32,9 @@ public enum ColorSpaceType {
         private static final int CHANNEL_VALUE = 3;
 
         @Override
-        Bitmap convertTensorBufferToBitmap(TensorBuffer buffer) {
-            return ImageConversions.convertRgbTensorBufferToBitmap(buffer);
+        Bitmap convertTensorBufferToBitmap(
+                TensorBuffer buffer, ImageConversionContext context) {
+            return ImageConversions.convertRgbTensorBufferToBitmap(buffer, context);
         }
 
         @Override
@@ -73,7 +74,8 @@ public enum ColorSpaceType {
         private static final int CHANNEL_VALUE = 1;
 
         @Override
-        Bitmap convertTensorBufferToBitmap(TensorBuffer buffer) {
+        Bitmap convertTensorBufferToBitmap(
+                TensorBuffer buffer, ImageConversionContext context) {
             return ImageConversions.convertGrayscaleTensorBufferToBitmap(buffer);
         }
 
@@ -151,9 +153,11 @@ public enum ColorSpaceType {
      * Converts a {@link TensorBuffer} that represents an image to a Bitmap with the color space
      * type.
      *
+     * @param context holds the buffers to reuse for the conversion, or null to allocate new ones
      * @throws IllegalArgumentException if the shape of buffer does not match the color space type
      */
-    abstract Bitmap convertTensorBufferToBitmap(TensorBuffer buffer);
+    abstract Bitmap convertTensorBufferToBitmap(
+            TensorBuffer buffer, ImageConversionContext context);
 
     /**
      * Returns the width of the given shape corresponding to the color space type.
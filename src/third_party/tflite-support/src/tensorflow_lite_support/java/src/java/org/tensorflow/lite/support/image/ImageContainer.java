@@ -20,6 +20,8 @@ import android.graphics.Bitmap;
 import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
 
+import java.nio.ByteBuffer;
+
 /**
  * Handles image conversion across different image types.
  *
@@ -41,14 +43,28 @@ interface ImageContainer {
     /** Returns the height of the image. */
     int getHeight();
 
-    /** Gets the {@link Bitmap} representation of the underlying image format. */
-    Bitmap getBitmap();
+    /**
+     * Gets the {@link Bitmap} representation of the underlying image format.
+     *
+     * @param context holds the buffers to reuse for a conversion, or null to allocate new ones
+     */
+    Bitmap getBitmap(ImageConversionContext context);
 
     /**
      * Gets the {@link TensorBuffer} representation with the specific {@code dataType} of the
      * underlying image format.
+     *
+     * @param context holds the buffers to reuse for a conversion, or null to allocate new ones
+     */
+    TensorBuffer getTensorBuffer(DataType dataType, ImageConversionContext context);
+
+    /**
+     * Writes the {@link TensorBuffer} representation with the specific {@code dataType} of the
+     * underlying image format into {@code dst}, from its position.
+     *
+     * @param context holds the buffers to reuse for a conversion, or null to allocate new ones
      */
-    TensorBuffer getTensorBuffer(DataType dataType);
+    void writeTo(DataType dataType, ByteBuffer dst, ImageConversionContext context);
 
     /** Returns the color space type of the image. */
     ColorSpaceType getColorSpaceType();
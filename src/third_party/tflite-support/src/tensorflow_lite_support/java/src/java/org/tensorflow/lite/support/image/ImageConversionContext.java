@@ -0,0 +1,78 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.support.image;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
+
+/**
+ * Holds the buffers used to convert images between {@link Bitmap} and {@link TensorBuffer}, so
+ * that converting frames of the same size doesn't allocate memory after the first frame.
+ *
+ * <p>A context is attached to one or more {@link TensorImage}s with {@link
+ * TensorImage#setConversionContext}. The {@link TensorBuffer}s and {@link Bitmap}s returned by
+ * those images are then owned by the context, and are overwritten by the next conversion of the
+ * same type and size. Copy them if they need to outlive the next frame.
+ *
+ * <p>IMPORTANT: this class is not thread-safe.
+ */
+public final class ImageConversionContext {
+    private int[] pixels = new int[0];
+    private TensorBuffer uint8Buffer;
+    private TensorBuffer float32Buffer;
+    private Bitmap rgbBitmap;
+
+    /** Creates an empty context. Buffers are allocated by the first conversions. */
+    public ImageConversionContext() {}
+
+    /** Returns an array of at least {@code size} elements to hold ARGB pixels. */
+    int[] getPixels(int size) {
+        if (pixels.length < size) {
+            pixels = new int[size];
+        }
+        return pixels;
+    }
+
+    /** Returns a fixed-size {@link TensorBuffer} of {@code dataType} for an (h, w, 3) image. */
+    TensorBuffer getRgbTensorBuffer(DataType dataType, int width, int height) {
+        TensorBuffer buffer = dataType == DataType.UINT8 ? uint8Buffer : float32Buffer;
+        if (buffer == null || !isRgbShape(buffer.getShape(), width, height)) {
+            buffer = TensorBuffer.createFixedSize(new int[] {height, width, 3}, dataType);
+            if (dataType == DataType.UINT8) {
+                uint8Buffer = buffer;
+            } else {
+                float32Buffer = buffer;
+            }
+        }
+        return buffer;
+    }
+
+    /** Returns a mutable {@link Config#ARGB_8888} {@link Bitmap} of the given size. */
+    Bitmap getRgbBitmap(int width, int height) {
+        if (rgbBitmap == null || rgbBitmap.getWidth() != width
+                || rgbBitmap.getHeight() != height) {
+            rgbBitmap = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+        }
+        return rgbBitmap;
+    }
+
+    private static boolean isRgbShape(int[] shape, int width, int height) {
+        return shape.length == 3 && shape[0] == height && shape[1] == width && shape[2] == 3;
+    }
+}
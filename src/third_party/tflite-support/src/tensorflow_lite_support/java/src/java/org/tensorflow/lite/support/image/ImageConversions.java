@@ -21,6 +21,7 @@ import android.graphics.Color;
 import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
@@ -36,25 +37,44 @@ class ImageConversions {
      * <p>Data in buffer will be converted into integer to match the Bitmap API.
      *
      * @param buffer a RGB image. Its shape should be either (h, w, 3) or (1, h, w, 3)
+     * @param context holds the Bitmap and the pixel array to reuse, or null to allocate new ones
      * @throws IllegalArgumentException if the shape of buffer is neither (h, w, 3) nor (1, h, w, 3)
      */
-    static Bitmap convertRgbTensorBufferToBitmap(TensorBuffer buffer) {
+    static Bitmap convertRgbTensorBufferToBitmap(
+            TensorBuffer buffer, ImageConversionContext context) {
         int[] shape = buffer.getShape();
         ColorSpaceType rgb = ColorSpaceType.RGB;
         rgb.assertShape(shape);
 
         int h = rgb.getHeight(shape);
         int w = rgb.getWidth(shape);
-        Bitmap bitmap = Bitmap.createBitmap(w, h, rgb.toBitmapConfig());
-
-        // TODO(b/138904567): Find a way to avoid creating multiple intermediate buffers every time.
-        int[] intValues = new int[w * h];
-        int[] rgbValues = buffer.getIntArray();
-        for (int i = 0, j = 0; i < intValues.length; i++) {
-            int r = rgbValues[j++];
-            int g = rgbValues[j++];
-            int b = rgbValues[j++];
-            intValues[i] = Color.rgb(r, g, b);
+        Bitmap bitmap;
+        int[] intValues;
+        if (context != null) {
+            bitmap = context.getRgbBitmap(w, h);
+            intValues = context.getPixels(w * h);
+        } else {
+            bitmap = Bitmap.createBitmap(w, h, rgb.toBitmapConfig());
+            intValues = new int[w * h];
+        }
+
+        // Reads the values straight from the underlying ByteBuffer, with the same casting as
+        // TensorBuffer#getIntArray().
+        ByteBuffer rgbValues = buffer.getBuffer();
+        if (buffer.getDataType() == DataType.FLOAT32) {
+            for (int i = 0, j = 0; i < w * h; i++, j += 12) {
+                int r = (int) rgbValues.getFloat(j);
+                int g = (int) rgbValues.getFloat(j + 4);
+                int b = (int) rgbValues.getFloat(j + 8);
+                intValues[i] = Color.rgb(r, g, b);
+            }
+        } else {
+            for (int i = 0, j = 0; i < w * h; i++, j += 3) {
+                int r = rgbValues.get(j) & 0xff;
+                int g = rgbValues.get(j + 1) & 0xff;
+                int b = rgbValues.get(j + 2) & 0xff;
+                intValues[i] = Color.rgb(r, g, b);
+            }
         }
         bitmap.setPixels(intValues, 0, w, 0, 0, w, h);
 
@@ -106,37 +126,81 @@ class ImageConversions {
     static void convertBitmapToTensorBuffer(Bitmap bitmap, TensorBuffer buffer) {
         int w = bitmap.getWidth();
         int h = bitmap.getHeight();
-        int[] intValues = new int[w * h];
-        bitmap.getPixels(intValues, 0, w, 0, 0, w, h);
-        // TODO(b/138904567): Find a way to avoid creating multiple intermediate buffers every time.
-        int flatSize = w * h * 3;
-        int[] shape = new int[] {h, w, 3};
-        switch (buffer.getDataType()) {
-            case UINT8:
-                byte[] byteArr = new byte[w * h * 3];
-                for (int i = 0, j = 0; i < intValues.length; i++) {
-                    byteArr[j++] = (byte) ((intValues[i] >> 16) & 0xff);
-                    byteArr[j++] = (byte) ((intValues[i] >> 8) & 0xff);
-                    byteArr[j++] = (byte) (intValues[i] & 0xff);
-                }
-                ByteBuffer byteBuffer = ByteBuffer.allocateDirect(flatSize);
-                byteBuffer.order(ByteOrder.nativeOrder());
-                byteBuffer.put(byteArr);
-                buffer.loadBuffer(byteBuffer, shape);
-                break;
-            case FLOAT32:
-                float[] floatArr = new float[w * h * 3];
-                for (int i = 0, j = 0; i < intValues.length; i++) {
-                    floatArr[j++] = (float) ((intValues[i] >> 16) & 0xff);
-                    floatArr[j++] = (float) ((intValues[i] >> 8) & 0xff);
-                    floatArr[j++] = (float) (intValues[i] & 0xff);
-                }
-                buffer.loadArray(floatArr, shape);
-                break;
-            default:
-                // Should never happen.
-                throw new IllegalStateException(
-                        "The type of TensorBuffer, " + buffer.getBuffer() + ", is unsupported.");
+        checkDataType(buffer.getDataType());
+        ByteBuffer byteBuffer =
+                ByteBuffer.allocateDirect(w * h * 3 * buffer.getDataType().byteSize());
+        byteBuffer.order(ByteOrder.nativeOrder());
+        convertBitmapToBuffer(bitmap, buffer.getDataType(), byteBuffer, new int[w * h]);
+        buffer.loadBuffer(byteBuffer, new int[] {h, w, 3});
+    }
+
+    /**
+     * Converts an Image in a Bitmap to a (h, w, 3) TensorBuffer owned by {@code context}, which is
+     * reused by the next conversions of images of the same size and data type.
+     *
+     * @param bitmap The Bitmap object representing the image. Currently we only support ARGB_8888
+     *     config.
+     * @param dataType The data type of the TensorBuffer, either UINT8 or FLOAT32.
+     */
+    static TensorBuffer convertBitmapToTensorBuffer(
+            Bitmap bitmap, DataType dataType, ImageConversionContext context) {
+        int w = bitmap.getWidth();
+        int h = bitmap.getHeight();
+        checkDataType(dataType);
+        TensorBuffer buffer = context.getRgbTensorBuffer(dataType, w, h);
+        ByteBuffer byteBuffer = buffer.getBuffer();
+        byteBuffer.rewind();
+        convertBitmapToBuffer(bitmap, dataType, byteBuffer, context.getPixels(w * h));
+        byteBuffer.rewind();
+        return buffer;
+    }
+
+    /**
+     * Writes the RGB values of the pixels of a Bitmap into a ByteBuffer, as a (h, w, 3) tensor of
+     * the given data type, without any intermediate copy.
+     *
+     * @param bitmap The Bitmap object representing the image. Currently we only support ARGB_8888
+     *     config.
+     * @param dataType The data type of the values, either UINT8 or FLOAT32.
+     * @param dst The destination, written from its position, which is advanced past the values.
+     *     Float values are written in the byte order of {@code dst}.
+     * @param pixels A scratch array of at least w*h elements.
+     * @throws java.nio.BufferOverflowException if {@code dst} doesn't have enough space remaining.
+     */
+    static void convertBitmapToBuffer(
+            Bitmap bitmap, DataType dataType, ByteBuffer dst, int[] pixels) {
+        int w = bitmap.getWidth();
+        int h = bitmap.getHeight();
+        checkDataType(dataType);
+        if (dst.remaining() < w * h * 3 * dataType.byteSize()) {
+            throw new BufferOverflowException();
+        }
+        bitmap.getPixels(pixels, 0, w, 0, 0, w, h);
+        int position = dst.position();
+        if (dataType == DataType.UINT8) {
+            for (int i = 0; i < w * h; i++) {
+                int pixel = pixels[i];
+                dst.put(position++, (byte) ((pixel >> 16) & 0xff));
+                dst.put(position++, (byte) ((pixel >> 8) & 0xff));
+                dst.put(position++, (byte) (pixel & 0xff));
+            }
+        } else {
+            for (int i = 0; i < w * h; i++) {
+                int pixel = pixels[i];
+                dst.putFloat(position, (float) ((pixel >> 16) & 0xff));
+                dst.putFloat(position + 4, (float) ((pixel >> 8) & 0xff));
+                dst.putFloat(position + 8, (float) (pixel & 0xff));
+                position += 12;
+            }
+        }
+        dst.position(position);
+    }
+
+    private static void checkDataType(DataType dataType) {
+        if (dataType != DataType.UINT8 && dataType != DataType.FLOAT32) {
+            // Should never happen.
+            throw new IllegalStateException(
+                    "The type of TensorBuffer, " + dataType + ", is unsupported.");
         }
     }
 
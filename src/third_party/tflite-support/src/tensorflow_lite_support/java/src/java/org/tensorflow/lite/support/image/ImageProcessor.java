@@ -18,6 +18,8 @@ package org.tensorflow.lite.support.image;
 import android.graphics.PointF;
 import android.graphics.RectF;
 
+import org.tensorflow.lite.support.common.ElementwiseTensorOperator;
+import org.tensorflow.lite.support.common.FusedTensorOperator;
 import org.tensorflow.lite.support.common.Operator;
 import org.tensorflow.lite.support.common.SequentialProcessor;
 import org.tensorflow.lite.support.common.SupportPreconditions;
@@ -54,8 +56,55 @@ import java.util.ListIterator;
  * @see ImageProcessor#process(TensorImage) to apply the processor on a {@link TensorImage}
  */
 public class ImageProcessor extends SequentialProcessor<TensorImage> {
+    // The operators executed when fused execution is enabled, or null.
+    private final List<Operator<TensorImage>> fusedOperatorList;
+    // The index in fusedOperatorList of each operator of operatorList which is not fused.
+    private final int[] fusedOperatorIndex;
+
     private ImageProcessor(Builder builder) {
         super(builder);
+        fusedOperatorIndex = new int[operatorList.size()];
+        fusedOperatorList = builder.fusedExecution ? fuseOperators() : null;
+    }
+
+    /**
+     * Replaces each run of consecutive wrapped {@link ElementwiseTensorOperator}s with a single
+     * wrapped {@link FusedTensorOperator}.
+     */
+    private List<Operator<TensorImage>> fuseOperators() {
+        List<Operator<TensorImage>> fused = new ArrayList<>();
+        List<ElementwiseTensorOperator> run = new ArrayList<>();
+        for (int i = 0; i < operatorList.size(); i++) {
+            Operator<TensorImage> op = operatorList.get(i);
+            TensorOperator tensorOp = op instanceof TensorOperatorWrapper
+                    ? ((TensorOperatorWrapper) op).getTensorOperator()
+                    : null;
+            if (tensorOp instanceof ElementwiseTensorOperator) {
+                run.add((ElementwiseTensorOperator) tensorOp);
+                continue;
+            }
+            if (!run.isEmpty()) {
+                fused.add(new TensorOperatorWrapper(new FusedTensorOperator(run)));
+                run = new ArrayList<>();
+            }
+            fusedOperatorIndex[i] = fused.size();
+            fused.add(op);
+        }
+        if (!run.isEmpty()) {
+            fused.add(new TensorOperatorWrapper(new FusedTensorOperator(run)));
+        }
+        return fused;
+    }
+
+    @Override
+    public TensorImage process(TensorImage x) {
+        if (fusedOperatorList == null) {
+            return super.process(x);
+        }
+        for (Operator<TensorImage> op : fusedOperatorList) {
+            x = op.apply(x);
+        }
+        return x;
     }
 
     /**
@@ -122,6 +171,8 @@ public class ImageProcessor extends SequentialProcessor<TensorImage> {
      * @see #build() complete the building process and get a built Processor
      */
     public static class Builder extends SequentialProcessor.Builder<TensorImage> {
+        private boolean fusedExecution;
+
         public Builder() {
             super();
         }
@@ -148,6 +199,22 @@ public class ImageProcessor extends SequentialProcessor<TensorImage> {
             return add(new TensorOperatorWrapper(op));
         }
 
+        /**
+         * Sets whether consecutive {@link TensorOperator}s implementing {@link
+         * ElementwiseTensorOperator} are executed in a single pass over the image by a {@link
+         * FusedTensorOperator}. Disabled by default.
+         *
+         * <p>With fused execution, the tensor loaded into the input of {@link
+         * ImageProcessor#process} may be overwritten, and the data of its output is only valid
+         * until the call after the next one, as it may be reused by later calls.
+         *
+         * @param fusedExecution whether to fuse element-wise operators
+         */
+        public Builder setFusedExecution(boolean fusedExecution) {
+            this.fusedExecution = fusedExecution;
+            return this;
+        }
+
         /** Completes the building process and gets the {@link ImageProcessor} instance. */
         @Override
         public ImageProcessor build() {
@@ -199,5 +266,8 @@ public class ImageProcessor extends SequentialProcessor<TensorImage> {
         int index = indexes.get(occurrence);
         Rot90Op newRot = new Rot90Op(k);
         operatorList.set(index, newRot);
+        if (fusedOperatorList != null) {
+            fusedOperatorList.set(fusedOperatorIndex[index], newRot);
+        }
     }
 }
@@ -21,6 +21,8 @@ import android.util.Log;
 import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
 
+import java.nio.ByteBuffer;
+
 /** Holds a {@link TensorBuffer} and converts it to other image formats as needed. */
 final class TensorBufferContainer implements ImageContainer {
     private final TensorBuffer buffer;
@@ -50,7 +52,7 @@ final class TensorBufferContainer implements ImageContainer {
     }
 
     @Override
-    public Bitmap getBitmap() {
+    public Bitmap getBitmap(ImageConversionContext context) {
         if (buffer.getDataType() != DataType.UINT8) {
             // Print warning instead of throwing an exception. When using float models, users may
             // want to convert the resulting float image into Bitmap. That's fine to do so, as long
@@ -60,11 +62,11 @@ final class TensorBufferContainer implements ImageContainer {
                             + " will cause numeric casting and clamping on the data value.");
         }
 
-        return colorSpaceType.convertTensorBufferToBitmap(buffer);
+        return colorSpaceType.convertTensorBufferToBitmap(buffer, context);
     }
 
     @Override
-    public TensorBuffer getTensorBuffer(DataType dataType) {
+    public TensorBuffer getTensorBuffer(DataType dataType, ImageConversionContext context) {
         // If the data type of buffer is desired, return it directly. Not making a defensive copy
         // for performance considerations. During image processing, users may need to set and get
         // the TensorBuffer many times. Otherwise, create another one with the expected data type.
@@ -72,6 +74,14 @@ final class TensorBufferContainer implements ImageContainer {
                                                 : TensorBuffer.createFrom(buffer, dataType);
     }
 
+    @Override
+    public void writeTo(DataType dataType, ByteBuffer dst, ImageConversionContext context) {
+        ByteBuffer src = getTensorBuffer(dataType, context).getBuffer();
+        src.rewind();
+        dst.put(src);
+        src.rewind();
+    }
+
     @Override
     public int getWidth() {
         return colorSpaceType.getWidth(buffer.getShape());
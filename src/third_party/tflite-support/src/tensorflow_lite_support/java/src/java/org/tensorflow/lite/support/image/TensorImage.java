@@ -51,6 +51,7 @@ import java.nio.ByteBuffer;
 public class TensorImage {
     private final DataType dataType;
     private ImageContainer container = null;
+    private ImageConversionContext conversionContext = null;
 
     /**
      * Initializes a {@link TensorImage} object.
@@ -221,7 +222,7 @@ public class TensorImage {
             throw new IllegalStateException("No image has been loaded yet.");
         }
 
-        return container.getBitmap();
+        return container.getBitmap(conversionContext);
     }
 
     /**
@@ -261,7 +262,47 @@ public class TensorImage {
             throw new IllegalStateException("No image has been loaded yet.");
         }
 
-        return container.getTensorBuffer(dataType);
+        return container.getTensorBuffer(dataType, conversionContext);
+    }
+
+    /**
+     * Writes the image data with the data type of this {@link TensorImage} into {@code dst}, such
+     * as the input buffer of a TFLite interpreter, without converting the image into an
+     * intermediate {@link TensorBuffer} when a {@link Bitmap} is loaded.
+     *
+     * <p>The values are laid out as in {@link #getBuffer}, written from the position of {@code
+     * dst}, which is advanced past them. {@code dst} should be in native byte order.
+     *
+     * @param dst the destination buffer
+     * @throws IllegalStateException if the {@link TensorImage} never loads data
+     * @throws java.nio.BufferOverflowException if {@code dst} doesn't have enough space remaining
+     */
+    public void writeTo(ByteBuffer dst) {
+        if (container == null) {
+            throw new IllegalStateException("No image has been loaded yet.");
+        }
+
+        container.writeTo(dataType, dst, conversionContext);
+    }
+
+    /**
+     * Sets the context holding the buffers reused to convert the image between {@link Bitmap} and
+     * {@link TensorBuffer}, for example to process a stream of camera frames without allocating
+     * memory for each frame.
+     *
+     * <p>Important: the {@link Bitmap}, {@link ByteBuffer} and {@link TensorBuffer} returned by
+     * {@link #getBitmap}, {@link #getBuffer} and {@link #getTensorBuffer} after a conversion are
+     * then owned by {@code context}, and are overwritten by its next conversion of the same type.
+     *
+     * @param context the context to use, or null to allocate new buffers for each conversion
+     */
+    public void setConversionContext(ImageConversionContext context) {
+        conversionContext = context;
+    }
+
+    /** Returns the context set by {@link #setConversionContext}, or null. */
+    public ImageConversionContext getConversionContext() {
+        return conversionContext;
     }
 
     /**
@@ -46,6 +46,11 @@ public class TensorOperatorWrapper implements ImageOperator {
         tensorOp = op;
     }
 
+    /** Returns the wrapped {@link TensorOperator}. */
+    public TensorOperator getTensorOperator() {
+        return tensorOp;
+    }
+
     @Override
     @NonNull
     public TensorImage apply(@NonNull TensorImage image) {
@@ -54,6 +59,7 @@ public class TensorOperatorWrapper implements ImageOperator {
         // Some ops may change the data type of the underlying TensorBuffer, such as CastOp.
         // Therefore, need to create a new TensorImage with the correct data type.
         TensorImage resImage = new TensorImage(resBuffer.getDataType());
+        resImage.setConversionContext(image.getConversionContext());
         resImage.load(resBuffer);
         return resImage;
     }
@@ -0,0 +1,610 @@
+/* Copyright 2021 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.support.model;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.support.common.SupportPreconditions;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A thread-safe pool of TFLite interpreters sharing one memory-mapped model.
+ *
+ * <p>{@link Interpreter} is not thread-safe. Concurrent callers of {@link #run} each borrow an idle
+ * interpreter of the pool, and wait for one to be returned when they are all busy.
+ *
+ * <p>For models with a single input and a single output whose first axis is a batch axis of size
+ * 1, {@link #runBatched} coalesces the single-item requests waiting for an interpreter into a
+ * batch, run with a single inference after resizing the input. Batches only form when requests
+ * arrive faster than the interpreters serve them, so batching adds no latency to a lightly loaded
+ * pool.
+ *
+ * <p>The pool records the time spent by requests waiting for an interpreter, the size of the
+ * batches and the native inference durations in {@link Histogram}s.
+ *
+ * <p>Only the CPU is supported, as delegates cannot be shared across interpreters.
+ */
+public final class InterpreterPool implements Closeable {
+    /**
+     * Options for creating an {@link InterpreterPool}. Configurable parameters includes:
+     *
+     * <ul>
+     *   <li>{@code poolSize} {@link Builder#setPoolSize(int)} specifies the number of interpreters.
+     *       The default value is 1.
+     *   <li>{@code numThreads} {@link Builder#setNumThreads(int)} specifies the number of threads
+     *       used by each interpreter. The default value is 1.
+     *   <li>{@code maxBatchSize} {@link Builder#setMaxBatchSize(int)} specifies the maximum number
+     *       of requests coalesced by {@link #runBatched}. The default value is 1, which disables
+     *       batching.
+     * </ul>
+     */
+    public static class Options {
+        private final int poolSize;
+        private final int numThreads;
+        private final int maxBatchSize;
+
+        /** Builder of {@link Options}. See its doc for details. */
+        public static class Builder {
+            private int poolSize = 1;
+            private int numThreads = 1;
+            private int maxBatchSize = 1;
+
+            public Builder setPoolSize(int poolSize) {
+                this.poolSize = poolSize;
+                return this;
+            }
+
+            public Builder setNumThreads(int numThreads) {
+                this.numThreads = numThreads;
+                return this;
+            }
+
+            public Builder setMaxBatchSize(int maxBatchSize) {
+                this.maxBatchSize = maxBatchSize;
+                return this;
+            }
+
+            public Options build() {
+                return new Options(this);
+            }
+        }
+
+        private Options(Builder builder) {
+            poolSize = builder.poolSize;
+            numThreads = builder.numThreads;
+            maxBatchSize = builder.maxBatchSize;
+        }
+    }
+
+    /**
+     * A thread-safe histogram of non-negative values, with exponential buckets: bucket 0 counts
+     * the values lower than 1, and bucket {@code i > 0} the values in [2^(i-1), 2^i).
+     */
+    public static final class Histogram {
+        /** The number of buckets, enough for all the positive {@code long} values. */
+        public static final int BUCKET_COUNT = 64;
+
+        private final long[] counts = new long[BUCKET_COUNT];
+        private long count;
+        private long sum;
+
+        private Histogram() {}
+
+        /** Returns the bucket of {@code value}. */
+        public static int getBucket(long value) {
+            return value <= 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(value);
+        }
+
+        /** Returns the lowest value counted by {@code bucket}. */
+        public static long getBucketMinimum(int bucket) {
+            SupportPreconditions.checkElementIndex(bucket, BUCKET_COUNT, "bucket");
+            return bucket == 0 ? 0 : 1L << (bucket - 1);
+        }
+
+        synchronized void record(long value) {
+            counts[getBucket(value)]++;
+            count++;
+            sum += value;
+        }
+
+        /** Returns the number of values recorded in {@code bucket}. */
+        public synchronized long getBucketCount(int bucket) {
+            SupportPreconditions.checkElementIndex(bucket, BUCKET_COUNT, "bucket");
+            return counts[bucket];
+        }
+
+        /** Returns the number of values recorded. */
+        public synchronized long getCount() {
+            return count;
+        }
+
+        /** Returns the sum of the values recorded. */
+        public synchronized long getSum() {
+            return sum;
+        }
+
+        /** Returns the mean of the values recorded, or 0 if there are none. */
+        public synchronized double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+    }
+
+    /**
+     * The operations of an {@link Interpreter} used by the pool, which tests implement without a
+     * model.
+     */
+    interface PoolableInterpreter {
+        int getInputTensorCount();
+
+        int getOutputTensorCount();
+
+        /** Returns the shape of the first input. */
+        int[] getInputShape();
+
+        /** Returns the byte size of the first input. */
+        int getInputBytes();
+
+        /** Returns the shape of the first output, once the tensors are allocated. */
+        int[] getOutputShape();
+
+        /** Returns the byte size of the first output, once the tensors are allocated. */
+        int getOutputBytes();
+
+        /** Resizes the first input. */
+        void resizeInput(int[] shape);
+
+        void runForMultipleInputsOutputs(Object[] inputs, Map<Integer, Object> outputs);
+
+        void run(ByteBuffer input, ByteBuffer output);
+
+        @Nullable
+        Long getLastNativeInferenceDurationNanoseconds();
+
+        void close();
+    }
+
+    /** Creates the interpreters of a pool. */
+    interface InterpreterFactory {
+        PoolableInterpreter create();
+    }
+
+    /** A {@link PoolableInterpreter} running an {@link Interpreter}. */
+    private static final class TfLiteInterpreter implements PoolableInterpreter {
+        private final Interpreter interpreter;
+
+        TfLiteInterpreter(Interpreter interpreter) {
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        public int getInputTensorCount() {
+            return interpreter.getInputTensorCount();
+        }
+
+        @Override
+        public int getOutputTensorCount() {
+            return interpreter.getOutputTensorCount();
+        }
+
+        @Override
+        public int[] getInputShape() {
+            return interpreter.getInputTensor(0).shape();
+        }
+
+        @Override
+        public int getInputBytes() {
+            return interpreter.getInputTensor(0).numBytes();
+        }
+
+        @Override
+        public int[] getOutputShape() {
+            interpreter.allocateTensors();
+            return interpreter.getOutputTensor(0).shape();
+        }
+
+        @Override
+        public int getOutputBytes() {
+            interpreter.allocateTensors();
+            return interpreter.getOutputTensor(0).numBytes();
+        }
+
+        @Override
+        public void resizeInput(int[] shape) {
+            interpreter.resizeInput(0, shape);
+        }
+
+        @Override
+        public void runForMultipleInputsOutputs(Object[] inputs, Map<Integer, Object> outputs) {
+            interpreter.runForMultipleInputsOutputs(inputs, outputs);
+        }
+
+        @Override
+        public void run(ByteBuffer input, ByteBuffer output) {
+            interpreter.run(input, output);
+        }
+
+        @Override
+        @Nullable
+        public Long getLastNativeInferenceDurationNanoseconds() {
+            return interpreter.getLastNativeInferenceDurationNanoseconds();
+        }
+
+        @Override
+        public void close() {
+            interpreter.close();
+        }
+    }
+
+    /** A single-item request of {@link #runBatched}. */
+    private static final class BatchRequest {
+        final ByteBuffer input;
+        final ByteBuffer output;
+        final long enqueueTimeNanos;
+        // Guarded by lock.
+        boolean taken;
+        boolean done;
+        RuntimeException error;
+
+        BatchRequest(ByteBuffer input, ByteBuffer output) {
+            this.input = input;
+            this.output = output;
+            enqueueTimeNanos = System.nanoTime();
+        }
+    }
+
+    /** An interpreter of the pool, with the buffers it uses to run batches. */
+    private static final class PooledInterpreter {
+        final PoolableInterpreter interpreter;
+        // The batch size the input is currently resized to.
+        int batchSize = 1;
+        // Views of the batch input buffer with the exact size of a batch of each size, by size.
+        ByteBuffer[] batchInputs;
+        ByteBuffer batchOutput;
+
+        PooledInterpreter(PoolableInterpreter interpreter) {
+            this.interpreter = interpreter;
+        }
+    }
+
+    private final Object lock = new Object();
+    private final MappedByteBuffer model;
+    private final int maxBatchSize;
+    // The shape of the input for a single item, and the sizes of an item of input and output.
+    private final int[] itemInputShape;
+    private final int itemInputBytes;
+    private final int itemOutputBytes;
+    // Guarded by lock.
+    private final ArrayDeque<PooledInterpreter> idleInterpreters = new ArrayDeque<>();
+    private final ArrayDeque<BatchRequest> pendingRequests = new ArrayDeque<>();
+    private boolean closed;
+
+    private final Histogram queueWaitNanos = new Histogram();
+    private final Histogram batchSizes = new Histogram();
+    private final Histogram inferenceDurationNanos = new Histogram();
+
+    /**
+     * Creates a pool of interpreters running {@code model}.
+     *
+     * @param model The loaded TFLite model, shared by the interpreters.
+     * @param options The options of the pool.
+     * @throws IllegalArgumentException if an option is not positive, or if batching is enabled
+     *     but the model doesn't have a single input and a single output with a batch axis of size
+     *     1.
+     */
+    public static InterpreterPool create(
+            @NonNull MappedByteBuffer model, @NonNull Options options) {
+        SupportPreconditions.checkNotNull(model, "Model cannot be null.");
+        SupportPreconditions.checkArgument(options.poolSize > 0, "Pool size must be positive.");
+        SupportPreconditions.checkArgument(
+                options.numThreads > 0, "Number of threads must be positive.");
+        SupportPreconditions.checkArgument(
+                options.maxBatchSize > 0, "Max batch size must be positive.");
+        final Interpreter.Options interpreterOptions =
+                new Interpreter.Options().setNumThreads(options.numThreads);
+        return new InterpreterPool(model, options, new InterpreterFactory() {
+            @Override
+            public PoolableInterpreter create() {
+                return new TfLiteInterpreter(new Interpreter(model, interpreterOptions));
+            }
+        });
+    }
+
+    InterpreterPool(
+            MappedByteBuffer model, Options options, InterpreterFactory interpreterFactory) {
+        this.model = model;
+        maxBatchSize = options.maxBatchSize;
+        // The model is checked with the first interpreter before creating the others, and the
+        // interpreters already created are closed if the check or a creation fails.
+        try {
+            PoolableInterpreter first = interpreterFactory.create();
+            idleInterpreters.add(new PooledInterpreter(first));
+            if (maxBatchSize == 1) {
+                itemInputShape = null;
+                itemInputBytes = 0;
+                itemOutputBytes = 0;
+            } else {
+                SupportPreconditions.checkArgument(
+                        first.getInputTensorCount() == 1 && first.getOutputTensorCount() == 1,
+                        "Batching requires a model with a single input and a single output.");
+                itemInputShape = first.getInputShape();
+                SupportPreconditions.checkArgument(
+                        itemInputShape.length > 0 && itemInputShape[0] == 1,
+                        "Batching requires an input with a batch axis of size 1, but the input "
+                                + "shape is " + Arrays.toString(itemInputShape));
+                int[] outputShape = first.getOutputShape();
+                SupportPreconditions.checkArgument(outputShape.length > 0 && outputShape[0] == 1,
+                        "Batching requires an output with a batch axis of size 1, but the output "
+                                + "shape is " + Arrays.toString(outputShape));
+                itemInputBytes = first.getInputBytes();
+                itemOutputBytes = first.getOutputBytes();
+            }
+            for (int i = 1; i < options.poolSize; i++) {
+                idleInterpreters.add(new PooledInterpreter(interpreterFactory.create()));
+            }
+        } catch (RuntimeException | Error e) {
+            for (PooledInterpreter pooled : idleInterpreters) {
+                pooled.interpreter.close();
+            }
+            idleInterpreters.clear();
+            throw e;
+        }
+    }
+
+    /** Returns the memory-mapped model data shared by the interpreters. */
+    @NonNull
+    public MappedByteBuffer getData() {
+        return model;
+    }
+
+    /**
+     * Runs model inference on multiple inputs with an idle interpreter of the pool, waiting for
+     * one to be idle if needed.
+     *
+     * @see Interpreter#runForMultipleInputsOutputs for the inputs and outputs supported.
+     * @throws IllegalStateException if the pool is closed.
+     * @throws InterruptedException if interrupted while waiting for an interpreter.
+     */
+    public void run(@NonNull Object[] inputs, @NonNull Map<Integer, Object> outputs)
+            throws InterruptedException {
+        long enqueueTimeNanos = System.nanoTime();
+        PooledInterpreter pooled;
+        synchronized (lock) {
+            while (!closed && idleInterpreters.isEmpty()) {
+                lock.wait();
+            }
+            SupportPreconditions.checkState(!closed, "The interpreter pool is closed.");
+            pooled = idleInterpreters.poll();
+        }
+        queueWaitNanos.record(System.nanoTime() - enqueueTimeNanos);
+        try {
+            if (pooled.batchSize != 1) {
+                pooled.interpreter.resizeInput(itemInputShape);
+                pooled.batchSize = 1;
+            }
+            pooled.interpreter.runForMultipleInputsOutputs(inputs, outputs);
+            recordInferenceDuration(pooled.interpreter);
+        } finally {
+            release(pooled);
+        }
+    }
+
+    /**
+     * Runs model inference on a single item, possibly in a batch with the items of concurrent
+     * calls.
+     *
+     * @param input the input of the item, with the byte size of the model input. Its content
+     *     should remain unchanged until the call returns.
+     * @param output receives the output of the item from its position, which is advanced past it.
+     * @throws IllegalStateException if batching is disabled, or if the pool is closed.
+     * @throws IllegalArgumentException if {@code input} or {@code output} doesn't match the size
+     *     of the model input or output, or if an error occurs when running the inference.
+     * @throws InterruptedException if interrupted before the request started running.
+     */
+    public void runBatched(@NonNull ByteBuffer input, @NonNull ByteBuffer output)
+            throws InterruptedException {
+        SupportPreconditions.checkState(maxBatchSize > 1, "Batching is disabled.");
+        SupportPreconditions.checkArgument(input.remaining() == itemInputBytes,
+                "The input has " + input.remaining() + " bytes, but the model takes "
+                        + itemInputBytes);
+        SupportPreconditions.checkArgument(output.remaining() >= itemOutputBytes,
+                "The output has " + output.remaining() + " bytes, but the model produces "
+                        + itemOutputBytes);
+        BatchRequest request = new BatchRequest(input, output);
+        synchronized (lock) {
+            SupportPreconditions.checkState(!closed, "The interpreter pool is closed.");
+            pendingRequests.add(request);
+            lock.notifyAll();
+        }
+        while (true) {
+            PooledInterpreter pooled;
+            List<BatchRequest> batch = new ArrayList<>();
+            synchronized (lock) {
+                try {
+                    // Wait for an interpreter to run the request, unless another thread took it.
+                    while (!request.done && !closed
+                            && (request.taken || idleInterpreters.isEmpty())) {
+                        lock.wait();
+                    }
+                } catch (InterruptedException e) {
+                    if (!request.taken) {
+                        pendingRequests.remove(request);
+                        throw e;
+                    }
+                    // Another thread is running the request and writing into its output.
+                    waitUninterruptibly(request);
+                    Thread.currentThread().interrupt();
+                }
+                if (request.done) {
+                    if (request.error != null) {
+                        throw request.error;
+                    }
+                    return;
+                }
+                if (closed && !request.taken) {
+                    pendingRequests.remove(request);
+                    throw new IllegalStateException("The interpreter pool is closed.");
+                }
+                if (request.taken) {
+                    // The pool was closed while another thread runs the request.
+                    waitUninterruptibly(request);
+                    continue;
+                }
+                // The request is still pending: lead a batch of the oldest requests.
+                pooled = idleInterpreters.poll();
+                while (batch.size() < maxBatchSize && !pendingRequests.isEmpty()) {
+                    BatchRequest pending = pendingRequests.poll();
+                    pending.taken = true;
+                    batch.add(pending);
+                }
+            }
+            RuntimeException error = new IllegalStateException("The batch failed to run.");
+            try {
+                runBatch(pooled, batch);
+                error = null;
+            } catch (RuntimeException e) {
+                error = e;
+            } finally {
+                synchronized (lock) {
+                    for (BatchRequest batchRequest : batch) {
+                        batchRequest.done = true;
+                        batchRequest.error = error;
+                    }
+                }
+                release(pooled);
+            }
+        }
+    }
+
+    private void runBatch(PooledInterpreter pooled, List<BatchRequest> batch) {
+        long startTimeNanos = System.nanoTime();
+        for (BatchRequest request : batch) {
+            queueWaitNanos.record(startTimeNanos - request.enqueueTimeNanos);
+        }
+        batchSizes.record(batch.size());
+
+        int size = batch.size();
+        if (pooled.batchInputs == null) {
+            pooled.batchInputs = new ByteBuffer[maxBatchSize + 1];
+            ByteBuffer batchInput = ByteBuffer.allocateDirect(maxBatchSize * itemInputBytes);
+            batchInput.order(ByteOrder.nativeOrder());
+            for (int i = 1; i <= maxBatchSize; i++) {
+                batchInput.clear().limit(i * itemInputBytes);
+                pooled.batchInputs[i] = batchInput.slice().order(ByteOrder.nativeOrder());
+            }
+            pooled.batchOutput = ByteBuffer.allocateDirect(maxBatchSize * itemOutputBytes);
+            pooled.batchOutput.order(ByteOrder.nativeOrder());
+        }
+        if (pooled.batchSize != size) {
+            int[] shape = itemInputShape.clone();
+            shape[0] = size;
+            pooled.interpreter.resizeInput(shape);
+            pooled.batchSize = size;
+        }
+
+        ByteBuffer batchInput = pooled.batchInputs[size];
+        batchInput.clear();
+        for (BatchRequest request : batch) {
+            int position = request.input.position();
+            batchInput.put(request.input);
+            request.input.position(position);
+        }
+        batchInput.rewind();
+        ByteBuffer batchOutput = pooled.batchOutput;
+        batchOutput.clear();
+        pooled.interpreter.run(batchInput, batchOutput);
+        recordInferenceDuration(pooled.interpreter);
+
+        for (int i = 0; i < size; i++) {
+            batchOutput.limit((i + 1) * itemOutputBytes).position(i * itemOutputBytes);
+            batch.get(i).output.put(batchOutput);
+        }
+    }
+
+    private void recordInferenceDuration(PoolableInterpreter interpreter) {
+        Long durationNanos = interpreter.getLastNativeInferenceDurationNanoseconds();
+        if (durationNanos != null) {
+            inferenceDurationNanos.record(durationNanos);
+        }
+    }
+
+    private void waitUninterruptibly(BatchRequest request) {
+        while (!request.done) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                // Keep waiting: the interrupt status is restored by the caller.
+            }
+        }
+    }
+
+    private void release(PooledInterpreter pooled) {
+        synchronized (lock) {
+            if (closed) {
+                pooled.interpreter.close();
+            } else {
+                idleInterpreters.add(pooled);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /** Returns the nanoseconds spent by each request waiting for an interpreter. */
+    public Histogram getQueueWaitHistogram() {
+        return queueWaitNanos;
+    }
+
+    /** Returns the number of requests of each batch run by {@link #runBatched}. */
+    public Histogram getBatchSizeHistogram() {
+        return batchSizes;
+    }
+
+    /**
+     * Returns the native inference durations in nanoseconds, as reported by {@link
+     * Interpreter#getLastNativeInferenceDurationNanoseconds}.
+     */
+    public Histogram getInferenceDurationHistogram() {
+        return inferenceDurationNanos;
+    }
+
+    /**
+     * Closes the pool. Idle interpreters are closed immediately, and busy ones when their current
+     * inference completes. Waiting and later requests fail with an {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (PooledInterpreter pooled : idleInterpreters) {
+                pooled.interpreter.close();
+            }
+            idleInterpreters.clear();
+            lock.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/* Copyright 2021 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.support.common;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.support.common.ops.CastOp;
+import org.tensorflow.lite.support.common.ops.DequantizeOp;
+import org.tensorflow.lite.support.common.ops.NormalizeOp;
+import org.tensorflow.lite.support.common.ops.QuantizeOp;
+import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests of {@link FusedTensorOperator}, checking that a {@link TensorProcessor} with fused
+ * execution produces the same tensors as one executing its operators one after the other.
+ */
+@RunWith(JUnit4.class)
+public final class FusedTensorOperatorTest {
+    // Larger than the chunk size of FusedTensorOperator, and not a multiple of it.
+    private static final int[] SHAPE = {2, 700, 3};
+    private static final float[] MEAN = {127.5f, 120.0f, 100.0f};
+    private static final float[] STDDEV = {127.5f, 60.0f, 2.0f};
+
+    @Test
+    public void normalizeOnFloatTensor() {
+        assertSameOutputs(DataType.FLOAT32, /*isDynamic=*/false, new NormalizeOp(MEAN, STDDEV));
+    }
+
+    @Test
+    public void normalizeOnUint8Tensor() {
+        assertSameOutputs(DataType.UINT8, /*isDynamic=*/false, new NormalizeOp(127.5f, 127.5f));
+    }
+
+    @Test
+    public void consecutiveNormalizes() {
+        assertSameOutputs(DataType.FLOAT32, /*isDynamic=*/false, new NormalizeOp(MEAN, STDDEV),
+                new NormalizeOp(0.0f, 1.0f), new NormalizeOp(-0.5f, 0.25f));
+    }
+
+    @Test
+    public void castFloatToUint8() {
+        assertSameOutputs(DataType.FLOAT32, /*isDynamic=*/false, new CastOp(DataType.UINT8));
+    }
+
+    @Test
+    public void castUint8ToFloat() {
+        assertSameOutputs(DataType.UINT8, /*isDynamic=*/false, new CastOp(DataType.FLOAT32));
+    }
+
+    @Test
+    public void castToSameType() {
+        assertSameOutputs(DataType.UINT8, /*isDynamic=*/false, new CastOp(DataType.UINT8));
+    }
+
+    @Test
+    public void quantize() {
+        assertSameOutputs(DataType.FLOAT32, /*isDynamic=*/false, new QuantizeOp(128.0f, 0.5f),
+                new CastOp(DataType.UINT8));
+    }
+
+    @Test
+    public void dequantize() {
+        assertSameOutputs(DataType.UINT8, /*isDynamic=*/false, new DequantizeOp(128.0f, 0.5f));
+    }
+
+    @Test
+    public void quantizeThenDequantize() {
+        assertSameOutputs(DataType.FLOAT32, /*isDynamic=*/false, new QuantizeOp(10.0f, 1.5f),
+                new CastOp(DataType.UINT8), new DequantizeOp(10.0f, 1.5f));
+    }
+
+    @Test
+    public void mixedChain() {
+        assertSameOutputs(DataType.UINT8, /*isDynamic=*/false, new DequantizeOp(0.0f, 2.0f),
+                new NormalizeOp(MEAN, STDDEV), new QuantizeOp(64.0f, 0.02f),
+                new CastOp(DataType.UINT8), new CastOp(DataType.FLOAT32),
+                new NormalizeOp(1.0f, 3.0f));
+    }
+
+    @Test
+    public void mixedChainWithUnfusedOperator() {
+        TensorOperator square = new TensorOperator() {
+            @Override
+            public TensorBuffer apply(TensorBuffer input) {
+                float[] values = input.getFloatArray();
+                for (int i = 0; i < values.length; i++) {
+                    values[i] *= values[i];
+                }
+                TensorBuffer output =
+                        TensorBuffer.createFixedSize(input.getShape(), DataType.FLOAT32);
+                output.loadArray(values);
+                return output;
+            }
+        };
+        assertSameOutputs(DataType.UINT8, /*isDynamic=*/false, new NormalizeOp(MEAN, STDDEV),
+                square, new QuantizeOp(0.0f, 0.1f), new CastOp(DataType.UINT8));
+    }
+
+    @Test
+    public void mixedChainOnDynamicTensor() {
+        assertSameOutputs(DataType.FLOAT32, /*isDynamic=*/true, new NormalizeOp(MEAN, STDDEV),
+                new CastOp(DataType.UINT8), new DequantizeOp(3.0f, 0.5f));
+    }
+
+    @Test
+    public void fuseGroupsConsecutiveElementwiseOperators() {
+        TensorOperator other = new TensorOperator() {
+            @Override
+            public TensorBuffer apply(TensorBuffer input) {
+                return input;
+            }
+        };
+        List<Operator<TensorBuffer>> fused = FusedTensorOperator.fuse(Arrays.asList(
+                new NormalizeOp(0.5f, 2.0f), new CastOp(DataType.UINT8), other,
+                new DequantizeOp(1.0f, 2.0f)));
+
+        assertThat(fused.size()).isEqualTo(3);
+        assertThat(fused.get(0)).isInstanceOf(FusedTensorOperator.class);
+        assertThat(fused.get(1)).isSameInstanceAs(other);
+        assertThat(fused.get(2)).isInstanceOf(FusedTensorOperator.class);
+    }
+
+    @Test
+    public void outputIsValidUntilTheCallAfterTheNextOne() {
+        TensorProcessor processor = new TensorProcessor.Builder()
+                                            .add(new NormalizeOp(MEAN, STDDEV))
+                                            .add(new CastOp(DataType.UINT8))
+                                            .setFusedExecution(true)
+                                            .build();
+        TensorBuffer first = processor.process(createInput(DataType.FLOAT32, false, 1));
+        float[] firstValues = first.getFloatArray();
+        TensorBuffer second = processor.process(createInput(DataType.FLOAT32, false, 2));
+
+        assertThat(second).isNotSameInstanceAs(first);
+        assertThat(first.getFloatArray()).isEqualTo(firstValues);
+    }
+
+    private static void assertSameOutputs(
+            DataType inputType, boolean isDynamic, TensorOperator... ops) {
+        TensorProcessor.Builder unfusedBuilder = new TensorProcessor.Builder();
+        TensorProcessor.Builder fusedBuilder =
+                new TensorProcessor.Builder().setFusedExecution(true);
+        for (TensorOperator op : ops) {
+            unfusedBuilder.add(op);
+            fusedBuilder.add(op);
+        }
+        TensorProcessor unfused = unfusedBuilder.build();
+        TensorProcessor fused = fusedBuilder.build();
+
+        // Run twice, to also go through the output buffers reused by the fused operator.
+        for (int seed = 1; seed <= 2; seed++) {
+            TensorBuffer expected = unfused.process(createInput(inputType, isDynamic, seed));
+            TensorBuffer actual = fused.process(createInput(inputType, isDynamic, seed));
+
+            assertThat(actual.getDataType()).isEqualTo(expected.getDataType());
+            assertThat(actual.getShape()).isEqualTo(expected.getShape());
+            assertThat(actual.isDynamic()).isEqualTo(expected.isDynamic());
+            assertThat(actual.getFloatArray()).isEqualTo(expected.getFloatArray());
+        }
+    }
+
+    /**
+     * Creates a tensor of {@link #SHAPE}, with values covering the range of {@code dataType} and
+     * beyond, including fractional values for {@link DataType#FLOAT32}.
+     */
+    private static TensorBuffer createInput(DataType dataType, boolean isDynamic, int seed) {
+        int flatSize = SHAPE[0] * SHAPE[1] * SHAPE[2];
+        float[] values = new float[flatSize];
+        for (int i = 0; i < flatSize; i++) {
+            int value = (i * 37 + seed * 11) % 301 - 20;
+            values[i] = dataType == DataType.FLOAT32 ? value + (i % 4) * 0.25f : value;
+        }
+        TensorBuffer input = isDynamic ? TensorBuffer.createDynamic(dataType)
+                                       : TensorBuffer.createFixedSize(SHAPE, dataType);
+        input.loadArray(values, SHAPE);
+        return input;
+    }
+}
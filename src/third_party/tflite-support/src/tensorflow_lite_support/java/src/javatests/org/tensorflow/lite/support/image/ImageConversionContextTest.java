@@ -0,0 +1,237 @@
+/* Copyright 2021 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.support.image;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Color;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Tests that converting images with an {@link ImageConversionContext}, or with {@link
+ * TensorImage#writeTo}, gives the same values as the conversions without a context, and reuses the
+ * buffers of the context.
+ */
+@RunWith(RobolectricTestRunner.class)
+public final class ImageConversionContextTest {
+    private static final int WIDTH = 7;
+    private static final int HEIGHT = 5;
+
+    @Test
+    public void bitmapToTensorBuffer_uint8() {
+        assertBitmapToTensorBufferMatches(DataType.UINT8);
+    }
+
+    @Test
+    public void bitmapToTensorBuffer_float32() {
+        assertBitmapToTensorBufferMatches(DataType.FLOAT32);
+    }
+
+    @Test
+    public void writeTo_uint8() {
+        assertWriteToMatches(DataType.UINT8, /*context=*/null);
+        assertWriteToMatches(DataType.UINT8, new ImageConversionContext());
+    }
+
+    @Test
+    public void writeTo_float32() {
+        assertWriteToMatches(DataType.FLOAT32, /*context=*/null);
+        assertWriteToMatches(DataType.FLOAT32, new ImageConversionContext());
+    }
+
+    @Test
+    public void tensorBufferToBitmap_uint8() {
+        assertTensorBufferToBitmapMatches(DataType.UINT8);
+    }
+
+    @Test
+    public void tensorBufferToBitmap_float32() {
+        assertTensorBufferToBitmapMatches(DataType.FLOAT32);
+    }
+
+    @Test
+    public void writeTo_throwsWhenBufferIsTooSmall() {
+        TensorImage image = new TensorImage(DataType.FLOAT32);
+        image.load(createBitmap(1));
+        ByteBuffer dst = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 3 * 4 - 1);
+
+        assertThrows(BufferOverflowException.class, () -> image.writeTo(dst));
+        assertThat(dst.position()).isEqualTo(0);
+    }
+
+    @Test
+    public void contextReusesTensorBuffer() {
+        ImageConversionContext context = new ImageConversionContext();
+        TensorImage image = new TensorImage(DataType.FLOAT32);
+        image.setConversionContext(context);
+
+        image.load(createBitmap(1));
+        TensorBuffer first = image.getTensorBuffer();
+        image.load(createBitmap(2));
+        TensorBuffer second = image.getTensorBuffer();
+
+        assertThat(second).isSameInstanceAs(first);
+        assertThat(second.getFloatArray()).isEqualTo(getRgbValues(createBitmap(2)));
+    }
+
+    @Test
+    public void contextReusesBitmap() {
+        ImageConversionContext context = new ImageConversionContext();
+        TensorImage image = new TensorImage(DataType.UINT8);
+        image.setConversionContext(context);
+
+        image.load(createPixels(1), new int[] {HEIGHT, WIDTH, 3});
+        Bitmap first = image.getBitmap();
+        image.load(createPixels(2), new int[] {HEIGHT, WIDTH, 3});
+        Bitmap second = image.getBitmap();
+
+        assertThat(second).isSameInstanceAs(first);
+        assertThat(getPixels(second)).isEqualTo(getPixels(createBitmap(2)));
+    }
+
+    @Test
+    public void contextReallocatesForNewSize() {
+        ImageConversionContext context = new ImageConversionContext();
+        TensorImage image = new TensorImage(DataType.UINT8);
+        image.setConversionContext(context);
+
+        image.load(createBitmap(1));
+        TensorBuffer first = image.getTensorBuffer();
+        Bitmap larger = Bitmap.createBitmap(WIDTH + 1, HEIGHT, Config.ARGB_8888);
+        image.load(larger);
+        TensorBuffer second = image.getTensorBuffer();
+
+        assertThat(second).isNotSameInstanceAs(first);
+        assertThat(second.getShape()).isEqualTo(new int[] {HEIGHT, WIDTH + 1, 3});
+    }
+
+    private static void assertBitmapToTensorBufferMatches(DataType dataType) {
+        Bitmap bitmap = createBitmap(1);
+        TensorImage legacy = new TensorImage(dataType);
+        legacy.load(bitmap);
+        TensorImage withContext = new TensorImage(dataType);
+        withContext.setConversionContext(new ImageConversionContext());
+        withContext.load(bitmap);
+
+        TensorBuffer expected = legacy.getTensorBuffer();
+        TensorBuffer actual = withContext.getTensorBuffer();
+
+        assertThat(expected.getFloatArray()).isEqualTo(getRgbValues(bitmap));
+        assertThat(actual.getDataType()).isEqualTo(dataType);
+        assertThat(actual.getShape()).isEqualTo(expected.getShape());
+        assertThat(actual.getFloatArray()).isEqualTo(expected.getFloatArray());
+        assertThat(getBytes(withContext.getBuffer())).isEqualTo(getBytes(legacy.getBuffer()));
+    }
+
+    private static void assertWriteToMatches(DataType dataType, ImageConversionContext context) {
+        int size = WIDTH * HEIGHT * 3 * dataType.byteSize();
+        int offset = 5;
+        TensorImage legacy = new TensorImage(dataType);
+        legacy.load(createBitmap(1));
+        TensorImage image = new TensorImage(dataType);
+        image.setConversionContext(context);
+        image.load(createBitmap(1));
+        ByteBuffer dst = ByteBuffer.allocateDirect(offset + size);
+        dst.order(ByteOrder.nativeOrder());
+        dst.position(offset);
+
+        image.writeTo(dst);
+
+        assertThat(dst.position()).isEqualTo(offset + size);
+        assertThat(getBytes(dst, offset, size)).isEqualTo(getBytes(legacy.getBuffer()));
+    }
+
+    private static void assertTensorBufferToBitmapMatches(DataType dataType) {
+        float[] pixels = createPixels(1);
+        int[] shape = new int[] {HEIGHT, WIDTH, 3};
+        TensorImage legacy = new TensorImage(dataType);
+        legacy.load(pixels, shape);
+        TensorImage withContext = new TensorImage(dataType);
+        withContext.setConversionContext(new ImageConversionContext());
+        withContext.load(pixels, shape);
+
+        int[] expected = getPixels(legacy.getBitmap());
+
+        assertThat(expected).isEqualTo(getPixels(createBitmap(1)));
+        assertThat(getPixels(withContext.getBitmap())).isEqualTo(expected);
+    }
+
+    /** Returns RGB values, with fractional parts for FLOAT32 images, matching createBitmap. */
+    private static float[] createPixels(int seed) {
+        int[] argb = getPixels(createBitmap(seed));
+        float[] pixels = new float[argb.length * 3];
+        for (int i = 0; i < argb.length; i++) {
+            pixels[i * 3] = Color.red(argb[i]) + 0.75f;
+            pixels[i * 3 + 1] = Color.green(argb[i]) + 0.5f;
+            pixels[i * 3 + 2] = Color.blue(argb[i]);
+        }
+        return pixels;
+    }
+
+    private static Bitmap createBitmap(int seed) {
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Config.ARGB_8888);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = Color.rgb((i * 37 + seed) % 255, (i * 11 + seed * 3) % 255, 254 - i);
+        }
+        bitmap.setPixels(pixels, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+        return bitmap;
+    }
+
+    private static float[] getRgbValues(Bitmap bitmap) {
+        int[] pixels = getPixels(bitmap);
+        float[] values = new float[pixels.length * 3];
+        for (int i = 0; i < pixels.length; i++) {
+            values[i * 3] = Color.red(pixels[i]);
+            values[i * 3 + 1] = Color.green(pixels[i]);
+            values[i * 3 + 2] = Color.blue(pixels[i]);
+        }
+        return values;
+    }
+
+    private static int[] getPixels(Bitmap bitmap) {
+        int w = bitmap.getWidth();
+        int h = bitmap.getHeight();
+        int[] pixels = new int[w * h];
+        bitmap.getPixels(pixels, 0, w, 0, 0, w, h);
+        return pixels;
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        return getBytes(buffer, 0, buffer.limit());
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return bytes;
+    }
+}
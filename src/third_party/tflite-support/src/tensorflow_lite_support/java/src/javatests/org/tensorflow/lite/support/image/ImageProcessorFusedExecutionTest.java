@@ -0,0 +1,153 @@
+/* Copyright 2021 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.support.image;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.graphics.PointF;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.support.common.TensorOperator;
+import org.tensorflow.lite.support.common.ops.CastOp;
+import org.tensorflow.lite.support.common.ops.DequantizeOp;
+import org.tensorflow.lite.support.common.ops.NormalizeOp;
+import org.tensorflow.lite.support.common.ops.QuantizeOp;
+import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
+
+/**
+ * Tests that an {@link ImageProcessor} with fused execution produces the same images as one
+ * executing its operators one after the other.
+ */
+@RunWith(JUnit4.class)
+public final class ImageProcessorFusedExecutionTest {
+    private static final int HEIGHT = 40;
+    private static final int WIDTH = 30;
+    private static final float[] MEAN = {127.5f, 120.0f, 100.0f};
+    private static final float[] STDDEV = {127.5f, 60.0f, 2.0f};
+
+    /** An operator which is not fused, mirroring the image horizontally. */
+    private static final class MirrorOp implements ImageOperator {
+        @Override
+        public TensorImage apply(TensorImage image) {
+            TensorBuffer input = image.getTensorBuffer();
+            float[] values = input.getFloatArray();
+            float[] mirrored = new float[values.length];
+            int height = image.getHeight();
+            int width = image.getWidth();
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    for (int c = 0; c < 3; c++) {
+                        mirrored[(y * width + x) * 3 + c] =
+                                values[(y * width + width - 1 - x) * 3 + c];
+                    }
+                }
+            }
+            TensorImage output = new TensorImage(image.getDataType());
+            output.load(mirrored, input.getShape());
+            return output;
+        }
+
+        @Override
+        public int getOutputImageHeight(int inputImageHeight, int inputImageWidth) {
+            return inputImageHeight;
+        }
+
+        @Override
+        public int getOutputImageWidth(int inputImageHeight, int inputImageWidth) {
+            return inputImageWidth;
+        }
+
+        @Override
+        public PointF inverseTransform(PointF point, int inputImageHeight, int inputImageWidth) {
+            return new PointF(inputImageWidth - 1 - point.x, point.y);
+        }
+    }
+
+    @Test
+    public void normalize() {
+        assertSameOutputs(DataType.UINT8, new NormalizeOp(MEAN, STDDEV));
+    }
+
+    @Test
+    public void castAndNormalize() {
+        assertSameOutputs(DataType.FLOAT32, new CastOp(DataType.UINT8),
+                new NormalizeOp(127.5f, 127.5f));
+    }
+
+    @Test
+    public void quantizeAndDequantize() {
+        assertSameOutputs(DataType.FLOAT32, new NormalizeOp(MEAN, STDDEV),
+                new QuantizeOp(128.0f, 0.01f), new CastOp(DataType.UINT8),
+                new DequantizeOp(128.0f, 0.01f));
+    }
+
+    @Test
+    public void mixedChainWithUnfusedOperator() {
+        assertSameOutputs(buildMixedChain(/*fusedExecution=*/false),
+                buildMixedChain(/*fusedExecution=*/true), DataType.UINT8);
+    }
+
+    private static ImageProcessor buildMixedChain(boolean fusedExecution) {
+        return new ImageProcessor.Builder()
+                .add(new DequantizeOp(0.0f, 2.0f))
+                .add(new CastOp(DataType.UINT8))
+                .add(new MirrorOp())
+                .add(new NormalizeOp(MEAN, STDDEV))
+                .add(new QuantizeOp(64.0f, 0.02f))
+                .add(new CastOp(DataType.UINT8))
+                .setFusedExecution(fusedExecution)
+                .build();
+    }
+
+    private static void assertSameOutputs(DataType inputType, TensorOperator... ops) {
+        ImageProcessor.Builder unfusedBuilder = new ImageProcessor.Builder();
+        ImageProcessor.Builder fusedBuilder = new ImageProcessor.Builder().setFusedExecution(true);
+        for (TensorOperator op : ops) {
+            unfusedBuilder.add(op);
+            fusedBuilder.add(op);
+        }
+
+        assertSameOutputs(unfusedBuilder.build(), fusedBuilder.build(), inputType);
+    }
+
+    private static void assertSameOutputs(
+            ImageProcessor unfused, ImageProcessor fused, DataType inputType) {
+        // Run twice, to also go through the output buffers reused by the fused operators.
+        for (int seed = 1; seed <= 2; seed++) {
+            TensorImage expected = unfused.process(createImage(inputType, seed));
+            TensorImage actual = fused.process(createImage(inputType, seed));
+
+            assertThat(actual.getDataType()).isEqualTo(expected.getDataType());
+            assertThat(actual.getWidth()).isEqualTo(expected.getWidth());
+            assertThat(actual.getHeight()).isEqualTo(expected.getHeight());
+            assertThat(actual.getTensorBuffer().getFloatArray())
+                    .isEqualTo(expected.getTensorBuffer().getFloatArray());
+        }
+    }
+
+    private static TensorImage createImage(DataType dataType, int seed) {
+        float[] pixels = new float[HEIGHT * WIDTH * 3];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (i * 37 + seed * 11) % 256 + (dataType == DataType.FLOAT32 ? 0.5f : 0.0f);
+        }
+        TensorImage image = new TensorImage(dataType);
+        image.load(pixels, new int[] {HEIGHT, WIDTH, 3});
+        return image;
+    }
+}
@@ -0,0 +1,526 @@
+/* Copyright 2021 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.support.model;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests of {@link InterpreterPool}, with fake interpreters whose model adds 1 to each int of the
+ * input.
+ */
+@RunWith(JUnit4.class)
+public final class InterpreterPoolTest {
+    private static final long TIMEOUT_MILLIS = 10_000;
+    private static final long INFERENCE_DURATION_NANOS = 1000;
+
+    /**
+     * A fake interpreter of a model taking and producing a single int per item. Runs can be made
+     * to block with {@link Shared#blockRuns}.
+     */
+    private static final class FakeInterpreter implements InterpreterPool.PoolableInterpreter {
+        private final Shared shared;
+        private int batchSize = 1;
+        volatile boolean closed;
+
+        FakeInterpreter(Shared shared) {
+            this.shared = shared;
+        }
+
+        @Override
+        public int getInputTensorCount() {
+            return 1;
+        }
+
+        @Override
+        public int getOutputTensorCount() {
+            return 1;
+        }
+
+        @Override
+        public int[] getInputShape() {
+            return shared.inputShape.clone();
+        }
+
+        @Override
+        public int getInputBytes() {
+            return 4;
+        }
+
+        @Override
+        public int[] getOutputShape() {
+            return new int[] {1, 1};
+        }
+
+        @Override
+        public int getOutputBytes() {
+            return 4;
+        }
+
+        @Override
+        public void resizeInput(int[] shape) {
+            batchSize = shape[0];
+        }
+
+        @Override
+        public void runForMultipleInputsOutputs(Object[] inputs, Map<Integer, Object> outputs) {
+            shared.startRun(1);
+            try {
+                ((int[]) outputs.get(0))[0] = ((int[]) inputs[0])[0] + 1;
+            } finally {
+                shared.endRun();
+            }
+        }
+
+        @Override
+        public void run(ByteBuffer input, ByteBuffer output) {
+            assertThat(input.remaining()).isEqualTo(4 * batchSize);
+            shared.startRun(batchSize);
+            try {
+                for (int i = 0; i < batchSize; i++) {
+                    output.putInt(input.getInt() + 1);
+                }
+            } finally {
+                shared.endRun();
+            }
+        }
+
+        @Override
+        public Long getLastNativeInferenceDurationNanoseconds() {
+            return INFERENCE_DURATION_NANOS;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /** The state shared by the fake interpreters of a pool. */
+    private static final class Shared implements InterpreterPool.InterpreterFactory {
+        final List<FakeInterpreter> interpreters = new ArrayList<>();
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger runningCount = new AtomicInteger();
+        final AtomicInteger maxRunningCount = new AtomicInteger();
+        int[] inputShape = {1, 1};
+        // The number of interpreters created before create() throws.
+        int maxCreateCount = Integer.MAX_VALUE;
+        private CountDownLatch blockedRuns = new CountDownLatch(0);
+        private CountDownLatch unblocked = new CountDownLatch(0);
+
+        @Override
+        public InterpreterPool.PoolableInterpreter create() {
+            if (interpreters.size() == maxCreateCount) {
+                throw new IllegalStateException("Failed to create an interpreter.");
+            }
+            FakeInterpreter interpreter = new FakeInterpreter(this);
+            interpreters.add(interpreter);
+            return interpreter;
+        }
+
+        /** Makes the next {@code count} runs block until the returned latch is counted down. */
+        synchronized CountDownLatch blockRuns(int count) {
+            blockedRuns = new CountDownLatch(count);
+            unblocked = new CountDownLatch(1);
+            return unblocked;
+        }
+
+        /** Waits for the runs made to block to start. */
+        void awaitBlockedRuns() throws InterruptedException {
+            CountDownLatch latch;
+            synchronized (this) {
+                latch = blockedRuns;
+            }
+            assertThat(latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+        }
+
+        /** Waits for {@code count} runs to be in progress. */
+        void awaitRunningCount(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (runningCount.get() != count) {
+                assertThat(System.currentTimeMillis()).isLessThan(deadline);
+                Thread.sleep(1);
+            }
+        }
+
+        void startRun(int batchSize) {
+            batchSizes.add(batchSize);
+            int running = runningCount.incrementAndGet();
+            maxRunningCount.accumulateAndGet(running, Math::max);
+            CountDownLatch latch;
+            CountDownLatch gate;
+            synchronized (this) {
+                latch = blockedRuns;
+                gate = unblocked;
+                if (latch.getCount() == 0) {
+                    return;
+                }
+                latch.countDown();
+            }
+            // Uninterruptibly, like a native inference.
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    gate.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void endRun() {
+            runningCount.decrementAndGet();
+        }
+    }
+
+    /** A thread calling {@link InterpreterPool#runBatched} with a single int. */
+    private static final class BatchedRequestThread extends Thread {
+        private final InterpreterPool pool;
+        private final int value;
+        volatile int result;
+        volatile Throwable error;
+        volatile boolean interruptedOnReturn;
+
+        BatchedRequestThread(InterpreterPool pool, int value) {
+            this.pool = pool;
+            this.value = value;
+        }
+
+        @Override
+        public void run() {
+            ByteBuffer input = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+            input.putInt(0, value);
+            ByteBuffer output = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+            try {
+                pool.runBatched(input, output);
+                result = output.getInt(0);
+            } catch (Throwable e) {
+                error = e;
+            }
+            interruptedOnReturn = Thread.currentThread().isInterrupted();
+        }
+
+        /** Starts the thread and waits for it to wait on the pool. */
+        BatchedRequestThread startAndAwaitWaiting() throws InterruptedException {
+            start();
+            awaitWaiting(this);
+            return this;
+        }
+
+        void joinAndAssertResult() throws InterruptedException {
+            join(TIMEOUT_MILLIS);
+            assertThat(isAlive()).isFalse();
+            assertThat(error).isNull();
+            assertThat(result).isEqualTo(value + 1);
+        }
+    }
+
+    private final Shared shared = new Shared();
+    private InterpreterPool pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private void createPool(int poolSize, int maxBatchSize) {
+        InterpreterPool.Options options = new InterpreterPool.Options.Builder()
+                                                  .setPoolSize(poolSize)
+                                                  .setMaxBatchSize(maxBatchSize)
+                                                  .build();
+        // The model data is unused by the fake interpreters.
+        pool = new InterpreterPool(null, options, shared);
+    }
+
+    /** Waits for {@code thread} to wait, on the pool or on a fake interpreter. */
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (thread.getState() != Thread.State.WAITING) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void run_concurrentCallsAreLimitedToPoolSize() throws Exception {
+        createPool(2, 1);
+        CountDownLatch gate = shared.blockRuns(2);
+        List<Thread> threads = new ArrayList<>();
+        final int[][] results = new int[6][];
+        for (int i = 0; i < results.length; i++) {
+            final int index = i;
+            results[i] = new int[1];
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    Map<Integer, Object> outputs = new HashMap<>();
+                    outputs.put(0, results[index]);
+                    try {
+                        pool.run(new Object[] {new int[] {index}}, outputs);
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        shared.awaitBlockedRuns();
+        for (Thread thread : threads) {
+            awaitWaiting(thread);
+        }
+        // Two calls run, and the others wait for their interpreters.
+        assertThat(shared.runningCount.get()).isEqualTo(2);
+
+        gate.countDown();
+        for (Thread thread : threads) {
+            thread.join(TIMEOUT_MILLIS);
+            assertThat(thread.isAlive()).isFalse();
+        }
+        for (int i = 0; i < results.length; i++) {
+            assertThat(results[i][0]).isEqualTo(i + 1);
+        }
+        assertThat(shared.maxRunningCount.get()).isEqualTo(2);
+        assertThat(pool.getQueueWaitHistogram().getCount()).isEqualTo(6);
+        assertThat(pool.getInferenceDurationHistogram().getCount()).isEqualTo(6);
+        assertThat(pool.getBatchSizeHistogram().getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void runBatched_coalescesWaitingRequestsAndSplitsOutputs() throws Exception {
+        createPool(1, 3);
+        CountDownLatch gate = shared.blockRuns(1);
+        BatchedRequestThread first = new BatchedRequestThread(pool, 0);
+        first.start();
+        shared.awaitBlockedRuns();
+        List<BatchedRequestThread> waiting = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            waiting.add(new BatchedRequestThread(pool, i * 10).startAndAwaitWaiting());
+        }
+
+        gate.countDown();
+        first.joinAndAssertResult();
+        for (BatchedRequestThread thread : waiting) {
+            thread.joinAndAssertResult();
+        }
+        // The five waiting requests ran in a full batch and a partial one.
+        assertThat(shared.batchSizes).isEqualTo(Arrays.asList(1, 3, 2));
+        assertThat(shared.maxRunningCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void runBatched_recordsHistograms() throws Exception {
+        createPool(1, 4);
+        CountDownLatch gate = shared.blockRuns(1);
+        BatchedRequestThread first = new BatchedRequestThread(pool, 0);
+        first.start();
+        shared.awaitBlockedRuns();
+        List<BatchedRequestThread> waiting = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            waiting.add(new BatchedRequestThread(pool, i).startAndAwaitWaiting());
+        }
+        gate.countDown();
+        first.joinAndAssertResult();
+        for (BatchedRequestThread thread : waiting) {
+            thread.joinAndAssertResult();
+        }
+
+        InterpreterPool.Histogram batchSizes = pool.getBatchSizeHistogram();
+        assertThat(batchSizes.getCount()).isEqualTo(2);
+        assertThat(batchSizes.getSum()).isEqualTo(4);
+        assertThat(batchSizes.getBucketCount(InterpreterPool.Histogram.getBucket(1)))
+                .isEqualTo(1);
+        assertThat(batchSizes.getBucketCount(InterpreterPool.Histogram.getBucket(3)))
+                .isEqualTo(1);
+        assertThat(pool.getQueueWaitHistogram().getCount()).isEqualTo(4);
+        InterpreterPool.Histogram inferenceDurations = pool.getInferenceDurationHistogram();
+        assertThat(inferenceDurations.getCount()).isEqualTo(2);
+        assertThat(inferenceDurations.getSum()).isEqualTo(2 * INFERENCE_DURATION_NANOS);
+    }
+
+    @Test
+    public void create_closesCreatedInterpretersWhenCreationFails() {
+        shared.maxCreateCount = 2;
+
+        assertThrows(IllegalStateException.class, () -> createPool(3, 1));
+        assertThat(shared.interpreters).hasSize(2);
+        for (FakeInterpreter interpreter : shared.interpreters) {
+            assertThat(interpreter.closed).isTrue();
+        }
+    }
+
+    @Test
+    public void create_checksBatchingWithFirstInterpreterAndClosesIt() {
+        shared.inputShape = new int[] {2, 1};
+
+        assertThrows(IllegalArgumentException.class, () -> createPool(3, 2));
+        assertThat(shared.interpreters).hasSize(1);
+        assertThat(shared.interpreters.get(0).closed).isTrue();
+    }
+
+    @Test
+    public void histogram_bucketsAreExponential() {
+        assertThat(InterpreterPool.Histogram.getBucket(-1)).isEqualTo(0);
+        assertThat(InterpreterPool.Histogram.getBucket(0)).isEqualTo(0);
+        assertThat(InterpreterPool.Histogram.getBucket(1)).isEqualTo(1);
+        assertThat(InterpreterPool.Histogram.getBucket(3)).isEqualTo(2);
+        assertThat(InterpreterPool.Histogram.getBucket(4)).isEqualTo(3);
+        assertThat(InterpreterPool.Histogram.getBucket(Long.MAX_VALUE))
+                .isEqualTo(InterpreterPool.Histogram.BUCKET_COUNT - 1);
+        assertThat(InterpreterPool.Histogram.getBucketMinimum(0)).isEqualTo(0);
+        assertThat(InterpreterPool.Histogram.getBucketMinimum(3)).isEqualTo(4);
+    }
+
+    @Test
+    public void runBatched_interruptedBeforeTaken_removesRequest() throws Exception {
+        createPool(1, 2);
+        CountDownLatch gate = shared.blockRuns(1);
+        BatchedRequestThread first = new BatchedRequestThread(pool, 0);
+        first.start();
+        shared.awaitBlockedRuns();
+        BatchedRequestThread interrupted = new BatchedRequestThread(pool, 1).startAndAwaitWaiting();
+
+        interrupted.interrupt();
+        interrupted.join(TIMEOUT_MILLIS);
+        assertThat(interrupted.error).isInstanceOf(InterruptedException.class);
+        gate.countDown();
+        first.joinAndAssertResult();
+
+        // The interrupted request was not run, and the pool still serves requests.
+        BatchedRequestThread next = new BatchedRequestThread(pool, 2);
+        next.start();
+        next.joinAndAssertResult();
+        assertThat(shared.batchSizes).isEqualTo(Arrays.asList(1, 1));
+    }
+
+    @Test
+    public void runBatched_interruptedAfterTaken_completesAndKeepsInterrupt() throws Exception {
+        createPool(1, 2);
+        CountDownLatch gate = shared.blockRuns(1);
+        BatchedRequestThread first = new BatchedRequestThread(pool, 0);
+        first.start();
+        shared.awaitBlockedRuns();
+        BatchedRequestThread second = new BatchedRequestThread(pool, 1).startAndAwaitWaiting();
+        BatchedRequestThread third = new BatchedRequestThread(pool, 2).startAndAwaitWaiting();
+
+        // One of the two waiting requests leads their batch, and the other waits for it.
+        CountDownLatch batchGate = shared.blockRuns(1);
+        gate.countDown();
+        first.joinAndAssertResult();
+        shared.awaitBlockedRuns();
+        awaitWaiting(second);
+        awaitWaiting(third);
+        second.interrupt();
+        third.interrupt();
+        batchGate.countDown();
+
+        second.joinAndAssertResult();
+        third.joinAndAssertResult();
+        assertThat(second.interruptedOnReturn).isTrue();
+        assertThat(third.interruptedOnReturn).isTrue();
+        assertThat(shared.batchSizes).isEqualTo(Arrays.asList(1, 2));
+    }
+
+    @Test
+    public void close_failsPendingRequestsAndClosesBusyInterpretersOnceIdle() throws Exception {
+        createPool(2, 2);
+        CountDownLatch gate = shared.blockRuns(2);
+        BatchedRequestThread busy1 = new BatchedRequestThread(pool, 0);
+        busy1.start();
+        // Each busy request leads a batch of its own.
+        shared.awaitRunningCount(1);
+        BatchedRequestThread busy2 = new BatchedRequestThread(pool, 1);
+        busy2.start();
+        shared.awaitBlockedRuns();
+        BatchedRequestThread pending = new BatchedRequestThread(pool, 2).startAndAwaitWaiting();
+
+        pool.close();
+        pending.join(TIMEOUT_MILLIS);
+        assertThat(pending.error).isInstanceOf(IllegalStateException.class);
+        // The busy interpreters are closed once their inferences complete.
+        for (FakeInterpreter interpreter : shared.interpreters) {
+            assertThat(interpreter.closed).isFalse();
+        }
+        gate.countDown();
+        busy1.joinAndAssertResult();
+        busy2.joinAndAssertResult();
+        for (FakeInterpreter interpreter : shared.interpreters) {
+            assertThat(interpreter.closed).isTrue();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        assertThrows(IllegalStateException.class, () -> pool.runBatched(buffer, buffer));
+        assertThrows(IllegalStateException.class,
+                () -> pool.run(new Object[] {new int[1]}, new HashMap<Integer, Object>()));
+    }
+
+    @Test
+    public void close_closesIdleInterpretersNowAndBusyOnesOnceIdle() throws Exception {
+        createPool(2, 1);
+        CountDownLatch gate = shared.blockRuns(1);
+        final int[] output = new int[1];
+        Thread busy = new Thread() {
+            @Override
+            public void run() {
+                Map<Integer, Object> outputs = new HashMap<>();
+                outputs.put(0, output);
+                try {
+                    pool.run(new Object[] {new int[] {41}}, outputs);
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        };
+        busy.start();
+        shared.awaitBlockedRuns();
+
+        pool.close();
+        // The idle interpreter is closed immediately, the busy one once its inference completes.
+        assertThat(shared.interpreters.get(0).closed || shared.interpreters.get(1).closed)
+                .isTrue();
+        assertThat(shared.interpreters.get(0).closed && shared.interpreters.get(1).closed)
+                .isFalse();
+        gate.countDown();
+        busy.join(TIMEOUT_MILLIS);
+        assertThat(output[0]).isEqualTo(42);
+        assertThat(shared.interpreters.get(0).closed && shared.interpreters.get(1).closed)
+                .isTrue();
+    }
+}
@@ -15,6 +15,7 @@ import android.os.SystemClock;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.Timer;
@@ -28,13 +29,19 @@ public class FileVideoCapturer implements VideoCapturer {
   }
 
   /**
-   * Read video data from file for the .y4m container.
+   * Read video data from file for the .y4m container. The file is memory-mapped, and the frames
+   * are views of the mapping, so no frame data is copied.
    */
   @SuppressWarnings("StringSplitter")
   private static class VideoReaderY4M implements VideoReader {
     private static final String TAG = "VideoReaderY4M";
     private static final String Y4M_FRAME_DELIMETER = "FRAME";
     private static final int FRAME_DELIMETER_LENGTH = Y4M_FRAME_DELIMETER.length() + 1;
+    private static final byte[] FRAME_DELIMETER_BYTES =
+        (Y4M_FRAME_DELIMETER + "\n").getBytes(Charset.forName("US-ASCII"));
+    // The file is mapped in windows of whole frames of about this size by default, so that long
+    // clips don't need to fit in the address space.
+    private static final long DEFAULT_MAPPING_WINDOW_SIZE = 64 * 1024 * 1024;
 
     private final int frameWidth;
     private final int frameHeight;
@@ -42,8 +49,17 @@ public class FileVideoCapturer implements VideoCapturer {
     private final long videoStart;
     private final RandomAccessFile mediaFile;
     private final FileChannel mediaFileChannel;
-
-    public VideoReaderY4M(String file) throws IOException {
+    // Size of a frame including its delimiter.
+    private final int frameStride;
+    private final int frameCount;
+    private final int framesPerWindow;
+    private int frameIndex;
+    // Frames [windowStartFrame, windowStartFrame + windowFrameCount) are mapped in |window|.
+    private MappedByteBuffer window;
+    private int windowStartFrame;
+    private int windowFrameCount;
+
+    public VideoReaderY4M(String file, long mappingWindowSize) throws IOException {
       mediaFile = new RandomAccessFile(file, "r");
       mediaFileChannel = mediaFile.getChannel();
       StringBuilder builder = new StringBuilder();
@@ -90,43 +106,73 @@ public class FileVideoCapturer implements VideoCapturer {
       frameWidth = w;
       frameHeight = h;
       Logging.d(TAG, "frame dim: (" + w + ", " + h + ")");
+
+      frameStride = FRAME_DELIMETER_LENGTH + w * h * 3 / 2;
+      final long frames = (mediaFileChannel.size() - videoStart) / frameStride;
+      if (frames == 0) {
+        throw new RuntimeException("Found no frame in file: " + file);
+      }
+      frameCount = (int) Math.min(frames, Integer.MAX_VALUE);
+      framesPerWindow = (int) Math.max(1, mappingWindowSize / frameStride);
+    }
+
+    // Returns a view of the frame at |index|, including its delimiter.
+    private ByteBuffer mapFrame(int index) throws IOException {
+      if (window == null || index < windowStartFrame
+          || index >= windowStartFrame + windowFrameCount) {
+        // The previous window is unmapped once the frames referencing it are garbage collected.
+        windowStartFrame = index;
+        windowFrameCount = Math.min(framesPerWindow, frameCount - index);
+        window = mediaFileChannel.map(FileChannel.MapMode.READ_ONLY,
+            videoStart + (long) index * frameStride, (long) windowFrameCount * frameStride);
+      }
+      final ByteBuffer frame = window.duplicate();
+      frame.position((index - windowStartFrame) * frameStride);
+      frame.limit(frame.position() + frameStride);
+      return frame.slice();
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int size) {
+      final ByteBuffer duplicate = buffer.duplicate();
+      duplicate.position(offset);
+      duplicate.limit(offset + size);
+      return duplicate.slice();
     }
 
     @Override
     public VideoFrame getNextFrame() {
       final long captureTimeNs = TimeUnit.MILLISECONDS.toNanos(SystemClock.elapsedRealtime());
-      final JavaI420Buffer buffer = JavaI420Buffer.allocate(frameWidth, frameHeight);
-      final ByteBuffer dataY = buffer.getDataY();
-      final ByteBuffer dataU = buffer.getDataU();
-      final ByteBuffer dataV = buffer.getDataV();
-      final int chromaHeight = (frameHeight + 1) / 2;
-      final int sizeY = frameHeight * buffer.getStrideY();
-      final int sizeU = chromaHeight * buffer.getStrideU();
-      final int sizeV = chromaHeight * buffer.getStrideV();
-
+      if (frameIndex == frameCount) {
+        // We reach end of file, loop
+        frameIndex = 0;
+      }
+      final ByteBuffer frame;
       try {
-        ByteBuffer frameDelim = ByteBuffer.allocate(FRAME_DELIMETER_LENGTH);
-        if (mediaFileChannel.read(frameDelim) < FRAME_DELIMETER_LENGTH) {
-          // We reach end of file, loop
-          mediaFileChannel.position(videoStart);
-          if (mediaFileChannel.read(frameDelim) < FRAME_DELIMETER_LENGTH) {
-            throw new RuntimeException("Error looping video");
-          }
-        }
-        String frameDelimStr = new String(frameDelim.array(), Charset.forName("US-ASCII"));
-        if (!frameDelimStr.equals(Y4M_FRAME_DELIMETER + "\n")) {
+        frame = mapFrame(frameIndex++);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      for (int i = 0; i < FRAME_DELIMETER_LENGTH; ++i) {
+        if (frame.get(i) != FRAME_DELIMETER_BYTES[i]) {
+          final byte[] frameDelim = new byte[FRAME_DELIMETER_LENGTH];
+          frame.get(frameDelim);
           throw new RuntimeException(
               "Frames should be delimited by FRAME plus newline, found delimter was: '"
-              + frameDelimStr + "'");
+              + new String(frameDelim, Charset.forName("US-ASCII")) + "'");
         }
-
-        mediaFileChannel.read(dataY);
-        mediaFileChannel.read(dataU);
-        mediaFileChannel.read(dataV);
-      } catch (IOException e) {
-        throw new RuntimeException(e);
       }
 
+      final int chromaWidth = (frameWidth + 1) / 2;
+      final int chromaHeight = (frameHeight + 1) / 2;
+      final int sizeY = frameWidth * frameHeight;
+      final int sizeUV = chromaWidth * chromaHeight;
+      final int offsetY = FRAME_DELIMETER_LENGTH;
+      final int offsetU = offsetY + sizeY;
+      final int offsetV = offsetU + sizeUV;
+      // The mapping is kept alive by the views, so the buffer needs no release callback.
+      final JavaI420Buffer buffer = JavaI420Buffer.wrap(frameWidth, frameHeight,
+          slice(frame, offsetY, sizeY), frameWidth, slice(frame, offsetU, sizeUV), chromaWidth,
+          slice(frame, offsetV, sizeUV), chromaWidth, null /* releaseCallback */);
       return new VideoFrame(buffer, 0 /* rotation */, captureTimeNs);
     }
 
@@ -154,8 +200,13 @@ public class FileVideoCapturer implements VideoCapturer {
   };
 
   public FileVideoCapturer(String inputFile) throws IOException {
+    this(inputFile, VideoReaderY4M.DEFAULT_MAPPING_WINDOW_SIZE);
+  }
+
+  // Visible for testing.
+  FileVideoCapturer(String inputFile, long mappingWindowSize) throws IOException {
     try {
-      videoReader = new VideoReaderY4M(inputFile);
+      videoReader = new VideoReaderY4M(inputFile, mappingWindowSize);
     } catch (IOException e) {
       Logging.d(TAG, "Could not open video file: " + inputFile);
       throw e;
@@ -26,6 +26,14 @@ public class JavaI420Buffer implements VideoFrame.I420Buffer {
   private final int strideV;
   private final RefCountDelegate refCountDelegate;
 
+  // Scaled buffers are typically produced at a steady resolution, so keeping a few released ones
+  // avoids allocating and freeing a frame of native memory per frame. They are freed once no frame
+  // has been scaled for a while, as the pool outlives the pipelines using it.
+  private static final int CROP_AND_SCALE_POOL_SIZE = 3;
+  private static final long CROP_AND_SCALE_POOL_IDLE_TIMEOUT_MS = 2000;
+  private static final JavaI420BufferPool cropAndScalePool =
+      new JavaI420BufferPool(CROP_AND_SCALE_POOL_SIZE, CROP_AND_SCALE_POOL_IDLE_TIMEOUT_MS);
+
   private JavaI420Buffer(int width, int height, ByteBuffer dataY, int strideY, ByteBuffer dataU,
       int strideU, ByteBuffer dataV, int strideV, @Nullable Runnable releaseCallback) {
     this.width = width;
@@ -77,15 +85,38 @@ public class JavaI420Buffer implements VideoFrame.I420Buffer {
 
   /** Allocates an empty I420Buffer suitable for an image of the given dimensions. */
   public static JavaI420Buffer allocate(int width, int height) {
+    ByteBuffer buffer = JniCommon.nativeAllocateByteBuffer(getAllocationSize(width, height));
+    return wrapAllocation(
+        width, height, buffer, () -> { JniCommon.nativeFreeByteBuffer(buffer); });
+  }
+
+  /**
+   * Returns the pool used by cropAndScale() to allocate the scaled buffers. It is exposed so that
+   * its hit rate can be monitored, and its idle buffers freed with trim() under memory pressure
+   * before the idle timeout of the pool frees them.
+   */
+  public static JavaI420BufferPool getCropAndScalePool() {
+    return cropAndScalePool;
+  }
+
+  /** Returns the size of the single allocation backing an I420 image of the given dimensions. */
+  static int getAllocationSize(int width, int height) {
+    return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+  }
+
+  /**
+   * Wraps the planes of an image of the given dimensions laid out in |buffer|, which must be at
+   * least getAllocationSize() bytes.
+   */
+  static JavaI420Buffer wrapAllocation(
+      int width, int height, ByteBuffer buffer, Runnable releaseCallback) {
     int chromaHeight = (height + 1) / 2;
     int strideUV = (width + 1) / 2;
     int yPos = 0;
     int uPos = yPos + width * height;
     int vPos = uPos + strideUV * chromaHeight;
 
-    ByteBuffer buffer =
-        JniCommon.nativeAllocateByteBuffer(width * height + 2 * strideUV * chromaHeight);
-
+    buffer.clear();
     buffer.position(yPos);
     buffer.limit(uPos);
     ByteBuffer dataY = buffer.slice();
@@ -99,7 +130,7 @@ public class JavaI420Buffer implements VideoFrame.I420Buffer {
     ByteBuffer dataV = buffer.slice();
 
     return new JavaI420Buffer(width, height, dataY, width, dataU, strideUV, dataV, strideUV,
-        () -> { JniCommon.nativeFreeByteBuffer(buffer); });
+        releaseCallback);
   }
 
   @Override
@@ -184,7 +215,7 @@ public class JavaI420Buffer implements VideoFrame.I420Buffer {
           dataU.slice(), buffer.getStrideU(), dataV.slice(), buffer.getStrideV(), buffer::release);
     }
 
-    JavaI420Buffer newBuffer = JavaI420Buffer.allocate(scaleWidth, scaleHeight);
+    JavaI420Buffer newBuffer = cropAndScalePool.allocate(scaleWidth, scaleHeight);
     nativeCropAndScaleI420(buffer.getDataY(), buffer.getStrideY(), buffer.getDataU(),
         buffer.getStrideU(), buffer.getDataV(), buffer.getStrideV(), cropX, cropY, cropWidth,
         cropHeight, newBuffer.getDataY(), newBuffer.getStrideY(), newBuffer.getDataU(),
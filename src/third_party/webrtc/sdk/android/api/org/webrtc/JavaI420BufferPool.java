@@ -0,0 +1,248 @@
+/*
+ *  Copyright 2021 The WebRTC project authors. All Rights Reserved.
+ *
+ *  Use of this source code is governed by a BSD-style license
+ *  that can be found in the LICENSE file in the root of the source
+ *  tree. An additional intellectual property rights grant can be found
+ *  in the file PATENTS.  All contributing project authors may
+ *  be found in the AUTHORS file in the root of the source tree.
+ */
+
+package org.webrtc;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Pool of the native memory backing JavaI420Buffers, keyed by frame dimensions. The buffers
+ * allocated from the pool are ref counted as usual, and their memory returns to the pool instead
+ * of being freed when they are released for the last time. This avoids allocating and freeing a
+ * frame of direct memory per frame in pipelines producing frames of the same size. A pool created
+ * with an idle timeout frees its idle buffers once it has not been used for that long, so that the
+ * memory is not kept after a pipeline stops.
+ *
+ * This class is thread safe: buffers can be allocated and released on any thread.
+ */
+public class JavaI420BufferPool {
+  // Shared by the pools with an idle timeout, and only created when one is used.
+  private static class TrimTimerHolder {
+    static final Timer timer = new Timer("JavaI420BufferPool", true /* isDaemon */);
+  }
+
+  private final Object lock = new Object();
+  private final int maxIdleBuffers;
+  private final long idleTimeoutMs;
+  // Idle buffers by frame dimensions, with the least recently used dimensions first. Both
+  // allocating and releasing a buffer count as a use of its dimensions.
+  private final LinkedHashMap<Long, ArrayDeque<ByteBuffer>> idleBuffers =
+      new LinkedHashMap<>(4, 0.75f, true /* accessOrder */);
+  private int idleBufferCount;
+  private int outstandingBufferCount;
+  private long hitCount;
+  private long missCount;
+  private boolean disposed;
+  // Time of the last allocation or release, and the pending trim, if any.
+  private long lastUseTimeMs;
+  private @Nullable TimerTask trimTask;
+
+  /**
+   * @param maxIdleBuffers Maximum number of released buffers kept for reuse. When the pool is full,
+   *     the buffers of the least recently used dimensions are freed first.
+   */
+  public JavaI420BufferPool(int maxIdleBuffers) {
+    this(maxIdleBuffers, 0 /* idleTimeoutMs */);
+  }
+
+  /**
+   * @param maxIdleBuffers Maximum number of released buffers kept for reuse. When the pool is full,
+   *     the buffers of the least recently used dimensions are freed first.
+   * @param idleTimeoutMs Time after which the idle buffers are freed if no buffer was allocated or
+   *     released in the meantime, or 0 to keep them until trim() or dispose() is called.
+   */
+  public JavaI420BufferPool(int maxIdleBuffers, long idleTimeoutMs) {
+    if (maxIdleBuffers < 0) {
+      throw new IllegalArgumentException("maxIdleBuffers must be non-negative: " + maxIdleBuffers);
+    }
+    if (idleTimeoutMs < 0) {
+      throw new IllegalArgumentException("idleTimeoutMs must be non-negative: " + idleTimeoutMs);
+    }
+    this.maxIdleBuffers = maxIdleBuffers;
+    this.idleTimeoutMs = idleTimeoutMs;
+  }
+
+  /**
+   * Allocates an I420Buffer suitable for an image of the given dimensions, reusing the memory of
+   * a released buffer of the same dimensions if there is one. The contents of the buffer are
+   * undefined.
+   */
+  public JavaI420Buffer allocate(int width, int height) {
+    final long key = ((long) width << 32) | (height & 0xFFFFFFFFL);
+    ByteBuffer buffer = null;
+    synchronized (lock) {
+      if (disposed) {
+        throw new IllegalStateException("allocate() called on a disposed pool");
+      }
+      ArrayDeque<ByteBuffer> buffers = idleBuffers.get(key);
+      if (buffers != null && !buffers.isEmpty()) {
+        buffer = buffers.pollLast();
+        --idleBufferCount;
+        ++hitCount;
+      } else {
+        ++missCount;
+      }
+      ++outstandingBufferCount;
+      lastUseTimeMs = SystemClock.elapsedRealtime();
+    }
+    if (buffer == null) {
+      buffer = JniCommon.nativeAllocateByteBuffer(JavaI420Buffer.getAllocationSize(width, height));
+    }
+    final ByteBuffer allocation = buffer;
+    return JavaI420Buffer.wrapAllocation(
+        width, height, allocation, () -> { returnBuffer(key, allocation); });
+  }
+
+  private void returnBuffer(long key, ByteBuffer buffer) {
+    ByteBuffer evicted = buffer;
+    synchronized (lock) {
+      --outstandingBufferCount;
+      if (!disposed && maxIdleBuffers > 0) {
+        evicted = (idleBufferCount == maxIdleBuffers) ? evictLeastRecentlyUsed() : null;
+        ArrayDeque<ByteBuffer> buffers = idleBuffers.get(key);
+        if (buffers == null) {
+          buffers = new ArrayDeque<>();
+          idleBuffers.put(key, buffers);
+        }
+        buffers.addLast(buffer);
+        ++idleBufferCount;
+        lastUseTimeMs = SystemClock.elapsedRealtime();
+        if (idleTimeoutMs > 0 && trimTask == null) {
+          scheduleTrimLocked(idleTimeoutMs);
+        }
+      }
+    }
+    if (evicted != null) {
+      JniCommon.nativeFreeByteBuffer(evicted);
+    }
+  }
+
+  private void scheduleTrimLocked(long delayMs) {
+    trimTask = new TimerTask() {
+      @Override
+      public void run() {
+        trimIfIdle();
+      }
+    };
+    TrimTimerHolder.timer.schedule(trimTask, delayMs);
+  }
+
+  // Frees the idle buffers if the pool was not used during the idle timeout, or checks again once
+  // the timeout has elapsed since the last use.
+  private void trimIfIdle() {
+    synchronized (lock) {
+      trimTask = null;
+      if (disposed || idleBufferCount == 0) {
+        return;
+      }
+      final long idleMs = SystemClock.elapsedRealtime() - lastUseTimeMs;
+      if (idleMs < idleTimeoutMs) {
+        scheduleTrimLocked(idleTimeoutMs - idleMs);
+        return;
+      }
+    }
+    trim();
+  }
+
+  // Removes an idle buffer of the least recently used dimensions, and the dimensions that no
+  // longer have idle buffers.
+  private ByteBuffer evictLeastRecentlyUsed() {
+    Iterator<ArrayDeque<ByteBuffer>> it = idleBuffers.values().iterator();
+    while (it.hasNext()) {
+      ArrayDeque<ByteBuffer> buffers = it.next();
+      ByteBuffer buffer = buffers.pollFirst();
+      if (buffers.isEmpty()) {
+        it.remove();
+      }
+      if (buffer != null) {
+        --idleBufferCount;
+        return buffer;
+      }
+    }
+    return null;
+  }
+
+  /** Frees the idle buffers. The pool can still be used and will allocate new buffers. */
+  public void trim() {
+    for (ByteBuffer buffer : takeIdleBuffers()) {
+      JniCommon.nativeFreeByteBuffer(buffer);
+    }
+  }
+
+  /**
+   * Frees the idle buffers. The buffers still in use are freed when they are released, and the
+   * pool can no longer be used to allocate.
+   */
+  public void dispose() {
+    synchronized (lock) {
+      disposed = true;
+      if (trimTask != null) {
+        trimTask.cancel();
+        trimTask = null;
+      }
+    }
+    trim();
+  }
+
+  private ArrayDeque<ByteBuffer> takeIdleBuffers() {
+    ArrayDeque<ByteBuffer> taken = new ArrayDeque<>();
+    synchronized (lock) {
+      for (ArrayDeque<ByteBuffer> buffers : idleBuffers.values()) {
+        taken.addAll(buffers);
+      }
+      idleBuffers.clear();
+      idleBufferCount = 0;
+    }
+    return taken;
+  }
+
+  /** Returns the number of allocations served by the memory of a released buffer. */
+  public long getHitCount() {
+    synchronized (lock) {
+      return hitCount;
+    }
+  }
+
+  /** Returns the number of allocations that allocated new memory. */
+  public long getMissCount() {
+    synchronized (lock) {
+      return missCount;
+    }
+  }
+
+  /** Returns the fraction of the allocations served by reused memory, or 0 if none were made. */
+  public double getHitRate() {
+    synchronized (lock) {
+      final long allocationCount = hitCount + missCount;
+      return allocationCount == 0 ? 0 : (double) hitCount / allocationCount;
+    }
+  }
+
+  /** Returns the number of buffers allocated from the pool that have not been released yet. */
+  public int getOutstandingBufferCount() {
+    synchronized (lock) {
+      return outstandingBufferCount;
+    }
+  }
+
+  /** Returns the number of released buffers kept for reuse. */
+  public int getIdleBufferCount() {
+    synchronized (lock) {
+      return idleBufferCount;
+    }
+  }
+}
@@ -15,31 +15,44 @@ import android.os.HandlerThread;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.concurrent.CountDownLatch;
 
 /**
- * Can be used to save the video frames to file.
+ * Can be used to save the video frames to file. Frames are converted and written on a dedicated
+ * file thread, in batches of several frames, so that writing the file doesn't slow down
+ * rendering.
  */
 public class VideoFileRenderer implements VideoSink {
   private static final String TAG = "VideoFileRenderer";
+  private static final byte[] FRAME_DELIMITER = "FRAME\n".getBytes(Charset.forName("US-ASCII"));
+  // Frames are written in batches of about this size by default.
+  private static final int DEFAULT_OUTPUT_BATCH_SIZE = 4 * 1024 * 1024;
 
   private final HandlerThread renderThread;
   private final Handler renderThreadHandler;
   private final HandlerThread fileThread;
   private final Handler fileThreadHandler;
-  private final FileOutputStream videoOutFile;
+  private final FileChannel videoOutChannel;
   private final String outputFileName;
   private final int outputFileWidth;
   private final int outputFileHeight;
   private final int outputFrameSize;
-  private final ByteBuffer outputFrameBuffer;
+  // Frames waiting to be written, each preceded by its delimiter. Only accessed on the file thread.
+  private final ByteBuffer outputBatchBuffer;
   private EglBase eglBase;
   private YuvConverter yuvConverter;
   private int frameCount;
 
   public VideoFileRenderer(String outputFile, int outputFileWidth, int outputFileHeight,
       final EglBase.Context sharedContext) throws IOException {
+    this(outputFile, outputFileWidth, outputFileHeight, sharedContext, DEFAULT_OUTPUT_BATCH_SIZE);
+  }
+
+  // Visible for testing.
+  VideoFileRenderer(String outputFile, int outputFileWidth, int outputFileHeight,
+      final EglBase.Context sharedContext, int outputBatchSize) throws IOException {
     if ((outputFileWidth % 2) == 1 || (outputFileHeight % 2) == 1) {
       throw new IllegalArgumentException("Does not support uneven width or height");
     }
@@ -49,12 +62,15 @@ public class VideoFileRenderer implements VideoSink {
     this.outputFileHeight = outputFileHeight;
 
     outputFrameSize = outputFileWidth * outputFileHeight * 3 / 2;
-    outputFrameBuffer = ByteBuffer.allocateDirect(outputFrameSize);
+    final int outputFrameStride = FRAME_DELIMITER.length + outputFrameSize;
+    outputBatchBuffer = ByteBuffer.allocateDirect(
+        Math.max(1, outputBatchSize / outputFrameStride) * outputFrameStride);
 
-    videoOutFile = new FileOutputStream(outputFile);
-    videoOutFile.write(
+    // Closing the channel also closes the stream.
+    videoOutChannel = new FileOutputStream(outputFile).getChannel();
+    writeFully(ByteBuffer.wrap(
         ("YUV4MPEG2 C420 W" + outputFileWidth + " H" + outputFileHeight + " Ip F30:1 A1:1\n")
-            .getBytes(Charset.forName("US-ASCII")));
+            .getBytes(Charset.forName("US-ASCII"))));
 
     renderThread = new HandlerThread(TAG + "RenderThread");
     renderThread.start();
@@ -112,22 +128,39 @@ public class VideoFileRenderer implements VideoSink {
     scaledBuffer.release();
 
     fileThreadHandler.post(() -> {
+      if (outputBatchBuffer.remaining() < FRAME_DELIMITER.length + outputFrameSize) {
+        flushOutputBatch();
+      }
+      outputBatchBuffer.put(FRAME_DELIMITER);
+      // Rotate straight into the batch, behind the delimiter.
+      final ByteBuffer outputFrameBuffer = outputBatchBuffer.slice();
+      outputFrameBuffer.limit(outputFrameSize);
       YuvHelper.I420Rotate(i420.getDataY(), i420.getStrideY(), i420.getDataU(), i420.getStrideU(),
-          i420.getDataV(), i420.getStrideV(), outputFrameBuffer, i420.getWidth(), i420.getHeight(),
-          frame.getRotation());
+          i420.getDataV(), i420.getStrideV(), outputFrameBuffer.slice(), i420.getWidth(),
+          i420.getHeight(), frame.getRotation());
       i420.release();
-
-      try {
-        videoOutFile.write("FRAME\n".getBytes(Charset.forName("US-ASCII")));
-        videoOutFile.write(
-            outputFrameBuffer.array(), outputFrameBuffer.arrayOffset(), outputFrameSize);
-      } catch (IOException e) {
-        throw new RuntimeException("Error writing video to disk", e);
-      }
+      outputBatchBuffer.position(outputBatchBuffer.position() + outputFrameSize);
       frameCount++;
     });
   }
 
+  /** Writes the batched frames to file. Must be called on the file thread. */
+  private void flushOutputBatch() {
+    outputBatchBuffer.flip();
+    try {
+      writeFully(outputBatchBuffer);
+    } catch (IOException e) {
+      throw new RuntimeException("Error writing video to disk", e);
+    }
+    outputBatchBuffer.clear();
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      videoOutChannel.write(buffer);
+    }
+  }
+
   /**
    * Release all resources. All already posted frames will be rendered first.
    */
@@ -141,8 +174,9 @@ public class VideoFileRenderer implements VideoSink {
     });
     ThreadUtils.awaitUninterruptibly(cleanupBarrier);
     fileThreadHandler.post(() -> {
+      flushOutputBatch();
       try {
-        videoOutFile.close();
+        videoOutChannel.close();
         Logging.d(TAG,
             "Video written to disk as " + outputFileName + ". The number of frames is " + frameCount
                 + " and the dimensions of the frames are " + outputFileWidth + "x"
@@ -15,6 +15,8 @@ import static org.junit.Assert.assertTrue;
 
 import android.os.Environment;
 import android.support.test.filters.SmallTest;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
@@ -123,7 +125,79 @@ public class FileVideoCapturerTest {
     }
   }
 
-  private static void assertByteBufferContents(byte[] expected, ByteBuffer actual) {
+  @Test
+  @SmallTest
+  public void testVideoCaptureFromFileAcrossMappingWindows() throws IOException {
+    final int frameWidth = 4;
+    final int frameHeight = 4;
+    final int frameSize = frameWidth * frameHeight * 3 / 2;
+    final int frameStride = "FRAME\n".length() + frameSize;
+    final int frameCount = 5;
+    final String videoPath = Environment.getExternalStorageDirectory().getPath()
+        + "/chromium_tests_root/testvideowindows.y4m";
+
+    final FileOutputStream videoOut = new FileOutputStream(videoPath);
+    try {
+      videoOut.write(("YUV4MPEG2 C420 W" + frameWidth + " H" + frameHeight + " Ip F30:1 A1:1\n")
+                         .getBytes(Charset.forName("US-ASCII")));
+      for (int i = 0; i < frameCount; ++i) {
+        videoOut.write("FRAME\n".getBytes(Charset.forName("US-ASCII")));
+        videoOut.write(getFrameContents(i, frameSize));
+      }
+    } finally {
+      videoOut.close();
+    }
+
+    // Two frames per window, which doesn't divide the frame count, so the last window is partial.
+    final FileVideoCapturer fileVideoCapturer =
+        new FileVideoCapturer(videoPath, 2 * frameStride + 1 /* mappingWindowSize */);
+    final MockCapturerObserver capturerObserver = new MockCapturerObserver();
+    fileVideoCapturer.initialize(
+        null /* surfaceTextureHelper */, null /* applicationContext */, capturerObserver);
+
+    // Read past the end of the file, so that the capturer loops back to the first frame.
+    final int capturedFrameCount = 2 * frameCount + 1;
+    for (int i = 0; i < capturedFrameCount; ++i) {
+      fileVideoCapturer.tick();
+    }
+    fileVideoCapturer.dispose();
+
+    // The earlier frames are still readable after their window has been replaced.
+    final ArrayList<VideoFrame> frames = capturerObserver.getMinimumFramesBlocking(0);
+    assertEquals(capturedFrameCount, frames.size());
+    for (int i = 0; i < capturedFrameCount; ++i) {
+      final VideoFrame frame = frames.get(i);
+      assertByteBufferContents(
+          getFrameContents(i % frameCount, frameSize), getI420Contents(frame, frameSize));
+      frame.release();
+    }
+
+    new File(videoPath).delete();
+  }
+
+  // Returns contents that are distinct for each frame.
+  static byte[] getFrameContents(int frameIndex, int frameSize) {
+    final byte[] contents = new byte[frameSize];
+    for (int i = 0; i < frameSize; ++i) {
+      contents[i] = (byte) (frameIndex * frameSize + i);
+    }
+    return contents;
+  }
+
+  // Returns the Y, U and V planes of |frame|, which must be tightly packed.
+  static ByteBuffer getI420Contents(VideoFrame frame, int frameSize) {
+    final VideoFrame.Buffer buffer = frame.getBuffer();
+    assertTrue(buffer instanceof VideoFrame.I420Buffer);
+    final VideoFrame.I420Buffer i420Buffer = (VideoFrame.I420Buffer) buffer;
+    final ByteBuffer contents = ByteBuffer.allocate(frameSize);
+    contents.put(i420Buffer.getDataY());
+    contents.put(i420Buffer.getDataU());
+    contents.put(i420Buffer.getDataV());
+    contents.rewind();
+    return contents;
+  }
+
+  static void assertByteBufferContents(byte[] expected, ByteBuffer actual) {
     assertEquals("Unexpected ByteBuffer size.", expected.length, actual.remaining());
     for (int i = 0; i < expected.length; i++) {
       assertEquals("Unexpected byte at index: " + i, expected[i], actual.get());
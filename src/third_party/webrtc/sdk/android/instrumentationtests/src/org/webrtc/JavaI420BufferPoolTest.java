@@ -0,0 +1,126 @@
+/*
+ *  Copyright 2021 The WebRTC project authors. All Rights Reserved.
+ *
+ *  Use of this source code is governed by a BSD-style license
+ *  that can be found in the LICENSE file in the root of the source
+ *  tree. An additional intellectual property rights grant can be found
+ *  in the file PATENTS.  All contributing project authors may
+ *  be found in the AUTHORS file in the root of the source tree.
+ */
+
+package org.webrtc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import android.os.SystemClock;
+import android.support.test.filters.SmallTest;
+import org.chromium.base.test.BaseJUnit4ClassRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(BaseJUnit4ClassRunner.class)
+public class JavaI420BufferPoolTest {
+  @Before
+  public void setUp() {
+    NativeLibrary.initialize(new NativeLibrary.DefaultLoader(), TestConstants.NATIVE_LIBRARY);
+  }
+
+  @SmallTest
+  @Test
+  public void testReusesReleasedBuffersOfSameSize() {
+    final JavaI420BufferPool pool = new JavaI420BufferPool(2 /* maxIdleBuffers */);
+    final JavaI420Buffer first = pool.allocate(16, 8);
+    first.retain();
+    first.release();
+    assertEquals(1, pool.getOutstandingBufferCount());
+    first.release();
+    assertEquals(0, pool.getOutstandingBufferCount());
+    assertEquals(1, pool.getIdleBufferCount());
+
+    // A buffer of another size allocates new memory.
+    final JavaI420Buffer other = pool.allocate(8, 8);
+    assertEquals(0, pool.getHitCount());
+    assertEquals(2, pool.getMissCount());
+
+    final JavaI420Buffer second = pool.allocate(16, 8);
+    assertEquals(1, pool.getHitCount());
+    assertEquals(0, pool.getIdleBufferCount());
+    assertEquals(2, pool.getOutstandingBufferCount());
+    assertEquals(1.0 / 3, pool.getHitRate(), 1e-9);
+    assertEquals(16, second.getStrideY());
+    assertEquals(8, second.getStrideU());
+    assertEquals(16 * 8, second.getDataY().capacity());
+    assertEquals(8 * 4, second.getDataV().capacity());
+
+    other.release();
+    second.release();
+    pool.dispose();
+    assertEquals(0, pool.getIdleBufferCount());
+  }
+
+  @SmallTest
+  @Test
+  public void testEvictsLeastRecentlyUsedSize() {
+    final JavaI420BufferPool pool = new JavaI420BufferPool(1 /* maxIdleBuffers */);
+    final JavaI420Buffer small = pool.allocate(8, 8);
+    final JavaI420Buffer large = pool.allocate(16, 16);
+    small.release();
+    large.release();
+    assertEquals(1, pool.getIdleBufferCount());
+
+    // Only the most recently used size was kept.
+    pool.allocate(8, 8).release();
+    assertEquals(0, pool.getHitCount());
+    pool.allocate(8, 8).release();
+    assertEquals(1, pool.getHitCount());
+    pool.dispose();
+  }
+
+  @SmallTest
+  @Test
+  public void testBuffersReleasedAfterDisposeAreFreed() {
+    final JavaI420BufferPool pool = new JavaI420BufferPool(2 /* maxIdleBuffers */);
+    final JavaI420Buffer buffer = pool.allocate(8, 8);
+    pool.dispose();
+    buffer.release();
+    assertEquals(0, pool.getOutstandingBufferCount());
+    assertEquals(0, pool.getIdleBufferCount());
+  }
+
+  @SmallTest
+  @Test
+  public void testFreesIdleBuffersAfterIdleTimeout() throws InterruptedException {
+    final JavaI420BufferPool pool =
+        new JavaI420BufferPool(2 /* maxIdleBuffers */, 50 /* idleTimeoutMs */);
+    pool.allocate(8, 8).release();
+    assertEquals(1, pool.getIdleBufferCount());
+
+    final long deadlineMs = SystemClock.elapsedRealtime() + 5000;
+    while (pool.getIdleBufferCount() != 0 && SystemClock.elapsedRealtime() < deadlineMs) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, pool.getIdleBufferCount());
+
+    // The pool can still be used after it was trimmed.
+    pool.allocate(8, 8).release();
+    assertEquals(1, pool.getIdleBufferCount());
+    pool.dispose();
+  }
+
+  @SmallTest
+  @Test
+  public void testCropAndScaleUsesPool() {
+    final JavaI420BufferPool pool = JavaI420Buffer.getCropAndScalePool();
+    pool.trim();
+    final JavaI420Buffer buffer = JavaI420Buffer.allocate(16, 16);
+    final long missCount = pool.getMissCount();
+    final VideoFrame.Buffer scaled = buffer.cropAndScale(0, 0, 16, 16, 8, 8);
+    assertEquals(missCount + 1, pool.getMissCount());
+    scaled.release();
+    buffer.cropAndScale(0, 0, 16, 16, 8, 8).release();
+    assertNotEquals(0, pool.getHitCount());
+    buffer.release();
+  }
+}
@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import org.chromium.base.test.BaseJUnit4ClassRunner;
 import org.junit.Before;
 import org.junit.Test;
@@ -88,4 +89,68 @@ public class VideoFileRendererTest {
 
     new File(videoOutPath).delete();
   }
+
+  @Test
+  @SmallTest
+  public void testRenderingToFileInBatches() throws IOException, InterruptedException {
+    EglBase eglBase = EglBase.create();
+    final String videoOutPath = Environment.getExternalStorageDirectory().getPath()
+        + "/chromium_tests_root/testvideooutbatches.y4m";
+    final int frameWidth = 4;
+    final int frameHeight = 4;
+    final int frameSize = frameWidth * frameHeight * 3 / 2;
+    final int frameStride = "FRAME\n".length() + frameSize;
+    final int frameCount = 5;
+    // Two frames per batch, which doesn't divide the frame count, so the last batch is only
+    // written on release().
+    VideoFileRenderer videoFileRenderer = new VideoFileRenderer(videoOutPath, frameWidth,
+        frameHeight, eglBase.getEglBaseContext(), 2 * frameStride + 1 /* outputBatchSize */);
+
+    for (int i = 0; i < frameCount; ++i) {
+      final ByteBuffer contents = ByteBuffer.allocateDirect(frameSize);
+      contents.put(FileVideoCapturerTest.getFrameContents(i, frameSize));
+      final int sizeY = frameWidth * frameHeight;
+      final int sizeUV = sizeY / 4;
+      VideoFrame.I420Buffer buffer = JavaI420Buffer.wrap(frameWidth, frameHeight,
+          slice(contents, 0, sizeY), frameWidth, slice(contents, sizeY, sizeUV), frameWidth / 2,
+          slice(contents, sizeY + sizeUV, sizeUV), frameWidth / 2, null /* releaseCallback */);
+      VideoFrame frame = new VideoFrame(buffer, 0 /* rotation */, 0 /* timestampNs */);
+      videoFileRenderer.onFrame(frame);
+      frame.release();
+    }
+    videoFileRenderer.release();
+    eglBase.release();
+
+    final String header = "YUV4MPEG2 C420 W4 H4 Ip F30:1 A1:1\n";
+    assertEquals(header.length() + frameCount * frameStride, new File(videoOutPath).length());
+
+    // Read the frames back.
+    final FileVideoCapturer fileVideoCapturer = new FileVideoCapturer(videoOutPath);
+    final FileVideoCapturerTest.MockCapturerObserver capturerObserver =
+        new FileVideoCapturerTest.MockCapturerObserver();
+    fileVideoCapturer.initialize(
+        null /* surfaceTextureHelper */, null /* applicationContext */, capturerObserver);
+    for (int i = 0; i < frameCount; ++i) {
+      fileVideoCapturer.tick();
+    }
+    fileVideoCapturer.dispose();
+
+    final ArrayList<VideoFrame> frames = capturerObserver.getMinimumFramesBlocking(frameCount);
+    for (int i = 0; i < frameCount; ++i) {
+      final VideoFrame frame = frames.get(i);
+      FileVideoCapturerTest.assertByteBufferContents(
+          FileVideoCapturerTest.getFrameContents(i, frameSize),
+          FileVideoCapturerTest.getI420Contents(frame, frameSize));
+      frame.release();
+    }
+
+    new File(videoOutPath).delete();
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int size) {
+    final ByteBuffer duplicate = buffer.duplicate();
+    duplicate.position(offset);
+    duplicate.limit(offset + size);
+    return duplicate.slice();
+  }
 }
@@ -56,7 +56,8 @@ public class NV21Buffer implements VideoFrame.Buffer {
   @Override
   public VideoFrame.Buffer cropAndScale(
       int cropX, int cropY, int cropWidth, int cropHeight, int scaleWidth, int scaleHeight) {
-    JavaI420Buffer newBuffer = JavaI420Buffer.allocate(scaleWidth, scaleHeight);
+    JavaI420Buffer newBuffer =
+        JavaI420Buffer.getCropAndScalePool().allocate(scaleWidth, scaleHeight);
     nativeCropAndScale(cropX, cropY, cropWidth, cropHeight, scaleWidth, scaleHeight, data, width,
         height, newBuffer.getDataY(), newBuffer.getStrideY(), newBuffer.getDataU(),
         newBuffer.getStrideU(), newBuffer.getDataV(), newBuffer.getStrideV());